@@ -0,0 +1,284 @@
+package ObjectTracker;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+/**
+ *  This class reads the records written to a memory-mapped
+ *  trace file by a TraceAgent running in the target program.
+ *  Method names are recorded once by the agent and looked up
+ *  here by their ID numbers.
+ *
+ *  @author  Eoin O'Connor
+ *  @see TraceAgent
+ *  @see ObjectTracker
+ */
+public class AgentTraceReader
+{
+   /**
+    *  The trace file.
+    */
+   private File file;
+   /**
+    *  The memory-mapped trace file.
+    */
+   private MappedByteBuffer buffer;
+   /**
+    *  The size of the ring of records.
+    */
+   private int capacity;
+   /**
+    *  The total number of bytes read.
+    */
+   private long readPosition;
+   /**
+    *  The class name of each method, indexed by method ID number.
+    */
+   private ArrayList classNames;
+   /**
+    *  The name of each method, indexed by method ID number.
+    */
+   private ArrayList methodNames;
+   /**
+    *  The name of each thread, keyed by thread ID number.
+    */
+   private HashMap threadNames;
+   /**
+    *  The kind of the current record.
+    */
+   private int kind;
+   /**
+    *  The thread ID number of the current record.
+    */
+   private long threadID;
+   /**
+    *  The method ID number of the current record.
+    */
+   private int methodID;
+   /**
+    *  The time of the current record.
+    */
+   private long time;
+   /**
+    *  The difference between the wall clock and the
+    *  System.nanoTime() clock of this JVM.
+    */
+   private long clockOffset;
+   /**
+    *  Copied over each record once it has been read.
+    */
+   private byte [] zeros;
+
+   /**
+    *  Constructor: creates an empty trace file of the given
+    *  size and maps it.
+    *
+    *  @param  size  The size of the trace file in bytes.
+    *  @throws IOException If the trace file cannot be created.
+    */
+   public AgentTraceReader(int size) throws IOException
+   {
+      file = File.createTempFile("objecttracker",".trace");
+      file.deleteOnExit();
+      RandomAccessFile raf = new RandomAccessFile(file,"rw");
+      raf.setLength(size);
+      buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE,0,size);
+      buffer.order(ByteOrder.nativeOrder());
+      raf.close();
+      capacity = (size - TraceAgent.HEADER_SIZE) & ~7;
+      readPosition = 0;
+      classNames = new ArrayList();
+      methodNames = new ArrayList();
+      threadNames = new HashMap();
+      clockOffset = TraceAgent.getClockOffset();
+      zeros = new byte[4096];
+   }
+
+   /**
+    *  Returns the trace file to be given to the agent.
+    *
+    *  @return The trace file.
+    */
+   public File getFile()
+   {
+      return file;
+   }
+
+   /**
+    *  Writes the class filter into the trace file, so that the agent
+    *  only instruments the classes in it. If the names do not fit in
+    *  the header the filter is not written and every class is traced.
+    *
+    *  @param  list  The names of the classes to be traced.
+    */
+   public void setClassFilter(ArrayList list)
+   {
+      StringBuffer names = new StringBuffer();
+      Iterator it = list.iterator();
+      while(it.hasNext())
+         names.append((String)it.next()).append('\n');
+
+      byte [] bytes;
+      try
+      {
+         bytes = names.toString().getBytes("UTF-8");
+      }
+      catch(UnsupportedEncodingException e)
+      {
+         bytes = names.toString().getBytes();
+      }
+      if(bytes.length > TraceAgent.HEADER_SIZE - TraceAgent.FILTER_AREA)
+         return;
+
+      for(int i=0;i<bytes.length;i++)
+         buffer.put(TraceAgent.FILTER_AREA + i,bytes[i]);
+      TraceAgent.POSITION.setRelease(buffer,TraceAgent.FILTER_LENGTH,(long)bytes.length);
+   }
+
+   /**
+    *  Moves to the next thread, entry or exit record. Method
+    *  name records are stored as they are passed. Each record
+    *  is cleared once it has been read, so that its length reads
+    *  as zero until the agent writes over it again.
+    *
+    *  @return True if there is a record, false if the agent has
+    *          not written any more yet.
+    */
+   public boolean next()
+   {
+      long writePosition = (long)TraceAgent.POSITION.getAcquire(buffer,TraceAgent.WRITE_POSITION);
+      while(readPosition < writePosition)
+      {
+         int offset = TraceAgent.HEADER_SIZE + (int)(readPosition % capacity);
+         int length = (int)TraceAgent.LENGTH.getAcquire(buffer,offset);
+         if(length==0) // reserved, but not written yet
+            return false;
+         if(length==TraceAgent.WRAP)
+         {
+            buffer.putInt(offset,0);
+            readPosition += capacity - (offset - TraceAgent.HEADER_SIZE);
+            TraceAgent.POSITION.setRelease(buffer,TraceAgent.READ_POSITION,readPosition);
+            continue;
+         }
+
+         kind = buffer.get(offset+4);
+         ByteBuffer data = buffer.duplicate();
+         data.order(ByteOrder.nativeOrder());
+         data.position(offset+8);
+         if(kind==TraceAgent.METHOD_RECORD)
+         {
+            int id = data.getInt();
+            while(classNames.size()<=id)
+            {
+               classNames.add(null);
+               methodNames.add(null);
+            }
+            classNames.set(id,getString(data));
+            methodNames.set(id,getString(data));
+         }
+         else if(kind==TraceAgent.THREAD_RECORD)
+         {
+            threadID = data.getLong();
+            threadNames.put(new Long(threadID),getString(data));
+         }
+         else
+         {
+            threadID = data.getLong();
+            methodID = data.getInt();
+            data.getInt();
+            time = data.getLong() + buffer.getLong(TraceAgent.CLOCK_OFFSET) - clockOffset;
+         }
+
+         for(int i=0;i<length;i+=zeros.length)
+            buffer.put(offset + i,zeros,0,Math.min(zeros.length,length - i));
+         readPosition += length;
+         TraceAgent.POSITION.setRelease(buffer,TraceAgent.READ_POSITION,readPosition);
+         if(kind!=TraceAgent.METHOD_RECORD)
+            return true;
+      }
+      return false;
+   }
+
+   /**
+    *  Reads a string from a record.
+    *
+    *  @param  data  The record, positioned at the string.
+    *  @return The string.
+    */
+   private String getString(ByteBuffer data)
+   {
+      byte [] bytes = new byte[data.getShort()];
+      data.get(bytes);
+      try
+      {
+         return new String(bytes,"UTF-8");
+      }
+      catch(UnsupportedEncodingException e)
+      {
+         return new String(bytes);
+      }
+   }
+
+   /**
+    *  Returns the kind of the current record.
+    *
+    *  @return TraceAgent.THREAD_RECORD, ENTRY_RECORD or EXIT_RECORD.
+    */
+   public int getKind()
+   {
+      return kind;
+   }
+
+   /**
+    *  Returns the thread ID number of the current record.
+    *
+    *  @return The thread ID number.
+    */
+   public long getThreadID()
+   {
+      return threadID;
+   }
+
+   /**
+    *  Returns the thread name of the current record.
+    *
+    *  @return The thread name.
+    */
+   public String getThreadName()
+   {
+      return (String)threadNames.get(new Long(threadID));
+   }
+
+   /**
+    *  Returns the method name of the current entry or exit record.
+    *
+    *  @return The method name.
+    */
+   public String getMethodName()
+   {
+      return (String)methodNames.get(methodID);
+   }
+
+   /**
+    *  Returns the class name of the current entry or exit record.
+    *
+    *  @return The class name.
+    */
+   public String getClassName()
+   {
+      return (String)classNames.get(methodID);
+   }
+
+   /**
+    *  Returns the time of the current entry or exit record,
+    *  moved onto the System.nanoTime() clock of this JVM.
+    *
+    *  @return The time in nanoseconds.
+    */
+   public long getTime()
+   {
+      return time;
+   }
+}
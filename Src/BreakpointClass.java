@@ -0,0 +1,260 @@
+package ObjectTracker;
+
+import com.sun.jdi.*;
+import java.util.*;
+
+/**
+ *  This class represents a breakpoint set by the user. A
+ *  breakpoint stops the target program at the start of a method.
+ *  It may be given a hit count, so that it only stops the program
+ *  the nth time the method is called, and a condition of the form
+ *  <code>name op value</code>, where name is a local variable or
+ *  argument of the method or a field of its instance and op is one
+ *  of ==, !=, &lt;, &lt;=, &gt; or &gt;=. The condition is only
+ *  evaluated when the breakpoint is reached.
+ *
+ *  @author  Eoin O'Connor
+ *  @see BreakpointsPanel
+ *  @see ObjectTracker
+ */
+public class BreakpointClass
+{
+   /**
+    *  The operators a condition may use. The two character
+    *  operators come first so that they are found before
+    *  the single character ones.
+    */
+   private static final String [] OPERATORS = {"==","!=","<=",">=","<",">"};
+
+   /**
+    *  The name of the method.
+    */
+   private String methodName;
+   /**
+    *  The number of calls at which to stop, or 0 to stop every call.
+    */
+   private int hitCount;
+   /**
+    *  The condition, or null if there is none.
+    */
+   private String condition;
+   /**
+    *  The variable name of the condition.
+    */
+   private String variable;
+   /**
+    *  The operator of the condition.
+    */
+   private String operator;
+   /**
+    *  The value of the condition.
+    */
+   private String value;
+
+   /**
+    *  Constructor: initializes a breakpoint.
+    *
+    *  @param  m  The name of the method, either as given in the
+    *             displays, e.g. Account.deposit(int), or as the
+    *             class name and method name, e.g. Account.deposit.
+    *  @param  h  The number of calls at which to stop, or 0.
+    *  @param  c  The condition, or null.
+    *  @throws IllegalArgumentException If the condition cannot be read.
+    */
+   public BreakpointClass(String m,int h,String c)
+   {
+      methodName = m;
+      hitCount = h;
+      if(c!=null && c.trim().length() > 0)
+      {
+         condition = c.trim();
+         for(int i=0;i<OPERATORS.length && operator==null;i++)
+         {
+            int index = condition.indexOf(OPERATORS[i]);
+            if(index > 0)
+            {
+               operator = OPERATORS[i];
+               variable = condition.substring(0,index).trim();
+               value = condition.substring(index + operator.length()).trim();
+            }
+         }
+         if(operator==null || variable.length()==0 || value.length()==0)
+            throw new IllegalArgumentException("Condition must be of the form: name op value");
+         if(value.length() > 1 && value.startsWith("\"") && value.endsWith("\""))
+            value = value.substring(1,value.length()-1);
+      }
+   }
+
+   /**
+    *  Returns the name of the method.
+    *
+    *  @return The name of the method.
+    */
+   public String getMethodName()
+   {
+      return methodName;
+   }
+
+   /**
+    *  Returns the number of calls at which to stop.
+    *
+    *  @return The hit count, or 0 if there is none.
+    */
+   public int getHitCount()
+   {
+      return hitCount;
+   }
+
+   /**
+    *  Returns the condition.
+    *
+    *  @return The condition, or null if there is none.
+    */
+   public String getCondition()
+   {
+      return condition;
+   }
+
+   /**
+    *  Returns true if the breakpoint is set on a method.
+    *
+    *  @param  method   The method.
+    *  @return True if the breakpoint is set on the method.
+    */
+   public boolean matches(Method method)
+   {
+      return methodName.equals(method.toString())
+         || methodName.equals(method.declaringType().name() + "." + method.name());
+   }
+
+   /**
+    *  Returns true if the condition is met in a stack frame.
+    *  A breakpoint without a condition is always met.
+    *
+    *  @param  frame The frame of the method at the breakpoint.
+    *  @return True if the condition is met.
+    *  @throws IncompatibleThreadStateException If the thread is not suspended.
+    */
+   public boolean isConditionMet(StackFrame frame) throws IncompatibleThreadStateException
+   {
+      if(condition==null)
+         return true;
+
+      Value actual = null;
+      boolean isFound = false;
+      try
+      {
+         LocalVariable local = frame.visibleVariableByName(variable);
+         if(local!=null)
+         {
+            actual = frame.getValue(local);
+            isFound = true;
+         }
+      }
+      catch(AbsentInformationException e)
+      {
+         // the class was compiled without local variable information
+      }
+
+      if(!isFound && frame.thisObject()!=null)
+      {
+         String name = variable.startsWith("this.") ? variable.substring(5) : variable;
+         Field field = frame.thisObject().referenceType().fieldByName(name);
+         if(field!=null)
+         {
+            actual = frame.thisObject().getValue(field);
+            isFound = true;
+         }
+      }
+
+      if(!isFound)
+         return false;
+
+      return compare(actual);
+   }
+
+   /**
+    *  Compares a value from the target program with the
+    *  value of the condition.
+    *
+    *  @param  actual   The value from the target program.
+    *  @return True if the condition holds.
+    */
+   private boolean compare(Value actual)
+   {
+      String text;
+      if(actual==null)
+         text = "null";
+      else if(actual instanceof StringReference)
+         text = ((StringReference)actual).value();
+      else if(actual instanceof CharValue)
+         text = String.valueOf(((CharValue)actual).value());
+      else
+         text = actual.toString();
+
+      int result;
+      if(actual instanceof PrimitiveValue && !(actual instanceof BooleanValue) && !(actual instanceof CharValue))
+      {
+         try
+         {
+            result = Double.compare(((PrimitiveValue)actual).doubleValue(),Double.parseDouble(value));
+         }
+         catch(NumberFormatException e)
+         {
+            return false;
+         }
+      }
+      else
+         result = text.compareTo(value);
+
+      if(operator.equals("=="))
+         return result==0;
+      else if(operator.equals("!="))
+         return result!=0;
+      else if(operator.equals("<"))
+         return result<0;
+      else if(operator.equals("<="))
+         return result<=0;
+      else if(operator.equals(">"))
+         return result>0;
+      else
+         return result>=0;
+   }
+
+   /**
+    *  Returns the breakpoint as it is shown in the
+    *  breakpoint list.
+    *
+    *  @return The breakpoint as a string.
+    */
+   public String toString()
+   {
+      String s = methodName;
+      if(hitCount > 0)
+         s = s + " #" + hitCount;
+      if(condition!=null)
+         s = s + " if " + condition;
+      return s;
+   }
+
+   /**
+    *  Returns true if another breakpoint is the same.
+    *
+    *  @param  o  The other breakpoint.
+    *  @return True if the breakpoints are the same.
+    */
+   public boolean equals(Object o)
+   {
+      return (o instanceof BreakpointClass) && toString().equals(o.toString());
+   }
+
+   /**
+    *  Returns a hash code for the breakpoint.
+    *
+    *  @return The hash code.
+    */
+   public int hashCode()
+   {
+      return toString().hashCode();
+   }
+}
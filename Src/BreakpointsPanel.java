@@ -9,9 +9,11 @@ import java.util.*;
 /**
  *  This class represents a panel. The purpose of the panel is to allow the user
  *  to enter and remove method names to and from a list. This can then be used
- *  to set breakpoints in a program.
+ *  to set breakpoints in a program. Each breakpoint may also be given a hit
+ *  count and a condition.
  *
  *  @author  Eoin O'Connor
+ *  @see BreakpointClass
  *  @see UserOptionsPanel
  *  @see ObjectTracker
  */
@@ -38,7 +40,15 @@ public class BreakpointsPanel extends JPanel
     */
    private JTextField textField;
    /**
-    *  The list of method names.
+    *  The field used to enter the hit count of a breakpoint.
+    */
+   private JTextField hitCountField;
+   /**
+    *  The field used to enter the condition of a breakpoint.
+    */
+   private JTextField conditionField;
+   /**
+    *  The list of breakpoints.
     */
    private ArrayList methodList;
 
@@ -80,7 +90,7 @@ public class BreakpointsPanel extends JPanel
                   ListIterator it = methodList.listIterator();
                   while(it.hasNext())
                   {
-                     listModel.addElement((String)it.next());
+                     listModel.addElement(it.next());
                   }
 
                JScrollPane listScroller = new JScrollPane(list);
@@ -91,37 +101,75 @@ public class BreakpointsPanel extends JPanel
          mainPanel.add(listPanel,"Center");
 
             JPanel fieldPanel = new JPanel();
-            fieldPanel.setLayout(new FlowLayout());
+            fieldPanel.setLayout(new GridLayout(3,1));
                textField = new JTextField(20);
                textField.setText("Enter method name");
             fieldPanel.add(textField);
 
+               JPanel hitCountPanel = new JPanel();
+               hitCountPanel.setLayout(new FlowLayout());
+                  hitCountPanel.add(new JLabel("Stop at call number:"));
+                  hitCountField = new JTextField(5);
+                  hitCountPanel.add(hitCountField);
+            fieldPanel.add(hitCountPanel);
+
+               JPanel conditionPanel = new JPanel();
+               conditionPanel.setLayout(new FlowLayout());
+                  conditionPanel.add(new JLabel("Condition:"));
+                  conditionField = new JTextField(15);
+                  conditionPanel.add(conditionField);
+            fieldPanel.add(conditionPanel);
+
          mainPanel.add(fieldPanel,"South");
 
       add(mainPanel);
    }
 
    /**
-    *  Adds the method name in the JTextField to the JList and
-    *  to the ArrayList. Resets the JTextField.
+    *  Adds a breakpoint for the method name, hit count and condition
+    *  in the JTextFields to the JList and to the ArrayList. Resets
+    *  the JTextFields.
     */
    private void addMethod()
    {
-      String methodName = textField.getText();
+      String methodName = textField.getText().trim();
       if(methodName.length() > 0)
       {
-         if(!methodList.contains(methodName))
+         BreakpointClass breakpoint;
+         try
+         {
+            int hitCount = 0;
+            if(hitCountField.getText().trim().length() > 0)
+               hitCount = Integer.parseInt(hitCountField.getText().trim());
+            if(hitCount < 0)
+               throw new NumberFormatException();
+            breakpoint = new BreakpointClass(methodName,hitCount,conditionField.getText());
+         }
+         catch(NumberFormatException e)
+         {
+            JOptionPane.showMessageDialog(this,"The call number must be a positive number.","Set Breakpoints",JOptionPane.ERROR_MESSAGE);
+            return;
+         }
+         catch(IllegalArgumentException e)
+         {
+            JOptionPane.showMessageDialog(this,e.getMessage(),"Set Breakpoints",JOptionPane.ERROR_MESSAGE);
+            return;
+         }
+
+         if(!methodList.contains(breakpoint))
          {
-            listModel.addElement(methodName);
+            listModel.addElement(breakpoint);
             list.setModel(listModel);
-            methodList.add(methodName);
+            methodList.add(breakpoint);
          }
          textField.setText("");
+         hitCountField.setText("");
+         conditionField.setText("");
       }
    }
 
    /**
-    *  Removes the selected method name in the JList
+    *  Removes the selected breakpoint in the JList
     *  from the ArrayList and from the JList.
     */
    private void removeMethod()
@@ -129,8 +177,7 @@ public class BreakpointsPanel extends JPanel
       int index = list.getSelectedIndex();
       if(index > -1)
       {
-         String methodName = (String)list.getSelectedValue();
-         methodList.remove(methodName);
+         methodList.remove(list.getSelectedValue());
          listModel.remove(index);
          list.setModel(listModel);
       }
@@ -139,7 +186,7 @@ public class BreakpointsPanel extends JPanel
    /**
     *  Returns the methodList.
     *
-    *  @return  ArrayList
+    *  @return  ArrayList of BreakpointClass
     */
    public ArrayList getMethodList()
    {
@@ -160,7 +207,7 @@ public class BreakpointsPanel extends JPanel
       ListIterator it = methodList.listIterator();
       while(it.hasNext())
       {
-         listModel.addElement((String)it.next());
+         listModel.addElement(it.next());
       }
       list.setModel(listModel);
    }
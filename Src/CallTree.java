@@ -0,0 +1,576 @@
+package ObjectTracker;
+
+import java.util.*;
+
+/**
+ *  This class implements a calling context tree for a thread.
+ *  Every distinct path of calls from the start of the thread has
+ *  one node, which holds the number of calls made along that path
+ *  and their total, self, shortest and longest times. The nodes
+ *  are updated in place as methods start and end, so the memory
+ *  used grows with the number of paths through the program rather
+ *  than with the number of calls.
+ *  <p>
+ *  Node 0 is the root, which stands for the thread itself. The
+ *  children of a node are found through an open addressing table
+ *  keyed by the parent node and the method ID number.
+ *
+ *  @author  Eoin O'Connor
+ *  @see ThreadManager
+ *  @see SequencePanel
+ *  @see RunTimePanel
+ */
+public class CallTree
+{
+   /**
+    *  The MethodTable ID number of each node's method.
+    */
+   private int [] methodIDs;
+   /**
+    *  The parent of each node, or -1 for the root.
+    */
+   private int [] parents;
+   /**
+    *  The first child of each node, or -1 if it has none.
+    */
+   private int [] firstChildren;
+   /**
+    *  The next sibling of each node, or -1 if it is the last.
+    */
+   private int [] nextSiblings;
+   /**
+    *  The depth of each node. The root is at depth 0.
+    */
+   private int [] depths;
+   /**
+    *  The number of calls made along the path of each node.
+    */
+   private long [] counts;
+   /**
+    *  The number of calls traced while each node's calls ran,
+    *  counting the calls themselves.
+    */
+   private long [] tracedCalls;
+   /**
+    *  The total time of each node's calls.
+    */
+   private long [] totalTimes;
+   /**
+    *  The time of each node's calls not spent in the methods they called.
+    */
+   private long [] selfTimes;
+   /**
+    *  The time of the shortest of each node's calls.
+    */
+   private long [] minTimes;
+   /**
+    *  The time of the longest of each node's calls.
+    */
+   private long [] maxTimes;
+   /**
+    *  The MethodClass used to display each node.
+    */
+   private MethodClass [] methods;
+   /**
+    *  The number of nodes, including the root.
+    */
+   private volatile int numNodes;
+   /**
+    *  The keys of the child table. Each key holds a parent node
+    *  and a method ID number, or -1 if the entry is empty.
+    */
+   private long [] childKeys;
+   /**
+    *  The child node of each entry in the child table.
+    */
+   private int [] childNodes;
+   /**
+    *  The nodes of the calls that have not ended, outermost first.
+    */
+   private int [] stackNodes;
+   /**
+    *  The start time of each call on the stack.
+    */
+   private long [] stackStartTimes;
+   /**
+    *  The time spent in the methods called by each call on the stack.
+    */
+   private long [] stackChildTimes;
+   /**
+    *  The number of calls traced when each call on the stack started.
+    */
+   private long [] stackCalls;
+   /**
+    *  The number of calls on the stack.
+    */
+   private int stackCount;
+   /**
+    *  The number of calls traced.
+    */
+   private long numCalls;
+   /**
+    *  The greatest depth of any node.
+    */
+   private int maxDepth;
+   /**
+    *  The time of the call that ended last.
+    */
+   private long lastTime;
+   /**
+    *  The number of calls traced while the call that ended
+    *  last ran, counting itself.
+    */
+   private long lastTracedCalls;
+
+   /**
+    *  Constructor: creates a tree holding only the root.
+    */
+   public CallTree()
+   {
+      methodIDs = new int[256];
+      parents = new int[256];
+      firstChildren = new int[256];
+      nextSiblings = new int[256];
+      depths = new int[256];
+      counts = new long[256];
+      tracedCalls = new long[256];
+      totalTimes = new long[256];
+      selfTimes = new long[256];
+      minTimes = new long[256];
+      maxTimes = new long[256];
+      methods = new MethodClass[256];
+      childKeys = new long[512];
+      Arrays.fill(childKeys,-1);
+      childNodes = new int[512];
+      stackNodes = new int[64];
+      stackStartTimes = new long[64];
+      stackChildTimes = new long[64];
+      stackCalls = new long[64];
+      stackCount = 0;
+      numCalls = 0;
+      maxDepth = 0;
+
+      methodIDs[0] = -1;
+      parents[0] = -1;
+      firstChildren[0] = -1;
+      nextSiblings[0] = -1;
+      numNodes = 1;
+   }
+
+   /**
+    *  A method has started. Finds or adds the node for the
+    *  path to it and pushes the call onto the stack.
+    *
+    *  @param  methodID    The ID number of the method.
+    *  @param  time        The time at which the method started.
+    *  @return The node of the call.
+    */
+   public int enter(int methodID,long time)
+   {
+      int parent = stackCount>0 ? stackNodes[stackCount-1] : 0;
+      int node = getChild(parent,methodID);
+      if(node<0)
+         node = addNode(parent,methodID);
+
+      if(stackCount==stackNodes.length)
+      {
+         int size = stackNodes.length*2;
+         stackNodes = Arrays.copyOf(stackNodes,size);
+         stackStartTimes = Arrays.copyOf(stackStartTimes,size);
+         stackChildTimes = Arrays.copyOf(stackChildTimes,size);
+         stackCalls = Arrays.copyOf(stackCalls,size);
+      }
+      stackNodes[stackCount] = node;
+      stackStartTimes[stackCount] = time;
+      stackChildTimes[stackCount] = 0;
+      stackCalls[stackCount] = numCalls;
+      stackCount++;
+      numCalls++;
+      return node;
+   }
+
+   /**
+    *  The method at the top of the stack has ended. Pops it
+    *  and adds its time to its node.
+    *
+    *  @param  time  The time at which the method ended.
+    *  @return The node of the call.
+    */
+   public int exit(long time)
+   {
+      stackCount--;
+      int node = stackNodes[stackCount];
+      long duration = time - stackStartTimes[stackCount];
+
+      if(counts[node]==0 || duration < minTimes[node])
+         minTimes[node] = duration;
+      if(duration > maxTimes[node])
+         maxTimes[node] = duration;
+      counts[node]++;
+      lastTime = duration;
+      lastTracedCalls = numCalls - stackCalls[stackCount];
+      tracedCalls[node] += lastTracedCalls;
+      totalTimes[node] += duration;
+      selfTimes[node] += duration - stackChildTimes[stackCount];
+      if(stackCount>0)
+         stackChildTimes[stackCount-1] += duration;
+      return node;
+   }
+
+   /**
+    *  Moves the start times of the calls on the stack forward,
+    *  so that time spent paused is not counted.
+    *
+    *  @param  pauseTime   The length of the pause.
+    */
+   public void skipTime(long pauseTime)
+   {
+      for(int i=0;i<stackCount;i++)
+         stackStartTimes[i] += pauseTime;
+   }
+
+   /**
+    *  Returns the child of a node for a method.
+    *
+    *  @param  parent   The parent node.
+    *  @param  methodID The ID number of the method.
+    *  @return The child node, or -1 if there is none.
+    */
+   private int getChild(int parent,int methodID)
+   {
+      long key = ((long)parent << 32) | (methodID & 0xffffffffL);
+      int mask = childKeys.length - 1;
+      int i = hash(key) & mask;
+      while(childKeys[i]!=-1)
+      {
+         if(childKeys[i]==key)
+            return childNodes[i];
+         i = (i + 1) & mask;
+      }
+      return -1;
+   }
+
+   /**
+    *  Adds a new node for a method below a parent node.
+    *
+    *  @param  parent   The parent node.
+    *  @param  methodID The ID number of the method.
+    *  @return The new node.
+    */
+   private int addNode(int parent,int methodID)
+   {
+      int node = numNodes;
+      if(node==methodIDs.length)
+      {
+         int size = methodIDs.length*2;
+         methodIDs = Arrays.copyOf(methodIDs,size);
+         parents = Arrays.copyOf(parents,size);
+         firstChildren = Arrays.copyOf(firstChildren,size);
+         nextSiblings = Arrays.copyOf(nextSiblings,size);
+         depths = Arrays.copyOf(depths,size);
+         counts = Arrays.copyOf(counts,size);
+         tracedCalls = Arrays.copyOf(tracedCalls,size);
+         totalTimes = Arrays.copyOf(totalTimes,size);
+         selfTimes = Arrays.copyOf(selfTimes,size);
+         minTimes = Arrays.copyOf(minTimes,size);
+         maxTimes = Arrays.copyOf(maxTimes,size);
+         methods = Arrays.copyOf(methods,size);
+      }
+      methodIDs[node] = methodID;
+      parents[node] = parent;
+      firstChildren[node] = -1;
+      depths[node] = depths[parent] + 1;
+      if(depths[node] > maxDepth)
+         maxDepth = depths[node];
+
+      // add the node to the end of its parent's children, so that they stay in the order they were first called
+      nextSiblings[node] = -1;
+      if(firstChildren[parent]<0)
+         firstChildren[parent] = node;
+      else
+      {
+         int sibling = firstChildren[parent];
+         while(nextSiblings[sibling]>=0)
+            sibling = nextSiblings[sibling];
+         nextSiblings[sibling] = node;
+      }
+
+      if((node+1)*2 > childKeys.length)
+         growChildTable();
+      putChild(((long)parent << 32) | (methodID & 0xffffffffL),node);
+
+      numNodes = node + 1; // the node is complete before it can be seen
+      return node;
+   }
+
+   /**
+    *  Adds an entry to the child table.
+    *
+    *  @param  key   The parent node and method ID number.
+    *  @param  node  The child node.
+    */
+   private void putChild(long key,int node)
+   {
+      int mask = childKeys.length - 1;
+      int i = hash(key) & mask;
+      while(childKeys[i]!=-1)
+         i = (i + 1) & mask;
+      childKeys[i] = key;
+      childNodes[i] = node;
+   }
+
+   /**
+    *  Doubles the size of the child table.
+    */
+   private void growChildTable()
+   {
+      long [] oldKeys = childKeys;
+      int [] oldNodes = childNodes;
+      childKeys = new long[oldKeys.length*2];
+      Arrays.fill(childKeys,-1);
+      childNodes = new int[oldNodes.length*2];
+      for(int i=0;i<oldKeys.length;i++)
+      {
+         if(oldKeys[i]!=-1)
+            putChild(oldKeys[i],oldNodes[i]);
+      }
+   }
+
+   /**
+    *  Spreads the bits of a key for the child table.
+    *
+    *  @param  key   The key.
+    *  @return The hash of the key.
+    */
+   private static int hash(long key)
+   {
+      key = key * 0x9E3779B97F4A7C15L;
+      return (int)(key ^ (key >>> 32));
+   }
+
+   /**
+    *  Returns the time of the call that ended last.
+    *
+    *  @return The time in nanoseconds.
+    */
+   public long getLastTime()
+   {
+      return lastTime;
+   }
+
+   /**
+    *  Returns the number of calls traced while the call that
+    *  ended last ran, counting itself.
+    *
+    *  @return The number of calls.
+    */
+   public long getLastTracedCalls()
+   {
+      return lastTracedCalls;
+   }
+
+   /**
+    *  Returns the number of nodes, including the root.
+    *
+    *  @return The number of nodes.
+    */
+   public int getNumNodes()
+   {
+      return numNodes;
+   }
+
+   /**
+    *  Returns the greatest depth of any node.
+    *
+    *  @return The greatest depth.
+    */
+   public int getMaxDepth()
+   {
+      return maxDepth;
+   }
+
+   /**
+    *  Returns the number of calls on the stack.
+    *
+    *  @return The number of calls on the stack.
+    */
+   public int getStackCount()
+   {
+      return stackCount;
+   }
+
+   /**
+    *  Returns the node of a call on the stack.
+    *
+    *  @param  n  The position on the stack, starting at 0 for the outermost call.
+    *  @return The node of the call.
+    */
+   public int getStackNode(int n)
+   {
+      return stackNodes[n];
+   }
+
+   /**
+    *  Returns the method ID number of a node.
+    *
+    *  @param  node  The node.
+    *  @return The method ID number.
+    */
+   public int getMethodID(int node)
+   {
+      return methodIDs[node];
+   }
+
+   /**
+    *  Returns the parent of a node.
+    *
+    *  @param  node  The node.
+    *  @return The parent node, or -1 for the root.
+    */
+   public int getParent(int node)
+   {
+      return parents[node];
+   }
+
+   /**
+    *  Returns the first child of a node.
+    *
+    *  @param  node  The node.
+    *  @return The first child, or -1 if it has none.
+    */
+   public int getFirstChild(int node)
+   {
+      return firstChildren[node];
+   }
+
+   /**
+    *  Returns the next sibling of a node.
+    *
+    *  @param  node  The node.
+    *  @return The next sibling, or -1 if it is the last.
+    */
+   public int getNextSibling(int node)
+   {
+      return nextSiblings[node];
+   }
+
+   /**
+    *  Returns the node after a node when the tree is walked depth
+    *  first, with each node's children in the order they were
+    *  first called.
+    *
+    *  @param  node  The node, or 0 to start at the root.
+    *  @return The next node, or -1 if it is the last.
+    */
+   public int getNextNode(int node)
+   {
+      if(firstChildren[node]>=0)
+         return firstChildren[node];
+      while(node>0 && nextSiblings[node]<0)
+         node = parents[node];
+      if(node<=0)
+         return -1;
+      return nextSiblings[node];
+   }
+
+   /**
+    *  Returns the depth of a node.
+    *
+    *  @param  node  The node.
+    *  @return The depth, starting at 1 for the outermost calls.
+    */
+   public int getDepth(int node)
+   {
+      return depths[node];
+   }
+
+   /**
+    *  Returns the number of calls that have ended along a node's path.
+    *
+    *  @param  node  The node.
+    *  @return The number of calls.
+    */
+   public long getCount(int node)
+   {
+      return counts[node];
+   }
+
+   /**
+    *  Returns the number of calls traced while a node's calls
+    *  ran, counting the calls themselves.
+    *
+    *  @param  node  The node.
+    *  @return The number of calls traced.
+    */
+   public long getTracedCalls(int node)
+   {
+      return tracedCalls[node];
+   }
+
+   /**
+    *  Returns the total time of a node's calls.
+    *
+    *  @param  node  The node.
+    *  @return The total time in nanoseconds.
+    */
+   public long getTotalTime(int node)
+   {
+      return totalTimes[node];
+   }
+
+   /**
+    *  Returns the time of a node's calls not spent in
+    *  the methods they called.
+    *
+    *  @param  node  The node.
+    *  @return The self time in nanoseconds.
+    */
+   public long getSelfTime(int node)
+   {
+      return selfTimes[node];
+   }
+
+   /**
+    *  Returns the time of the shortest of a node's calls.
+    *
+    *  @param  node  The node.
+    *  @return The shortest time in nanoseconds.
+    */
+   public long getMinTime(int node)
+   {
+      return minTimes[node];
+   }
+
+   /**
+    *  Returns the time of the longest of a node's calls.
+    *
+    *  @param  node  The node.
+    *  @return The longest time in nanoseconds.
+    */
+   public long getMaxTime(int node)
+   {
+      return maxTimes[node];
+   }
+
+   /**
+    *  Returns the MethodClass used to display a node.
+    *
+    *  @param  node  The node.
+    *  @return The MethodClass, or null if none has been set.
+    */
+   public MethodClass getMethod(int node)
+   {
+      return methods[node];
+   }
+
+   /**
+    *  Sets the MethodClass used to display a node.
+    *
+    *  @param  node    The node.
+    *  @param  method  The MethodClass.
+    */
+   public void setMethod(int node,MethodClass method)
+   {
+      methods[node] = method;
+   }
+}
@@ -41,6 +41,10 @@ public class ClassPanel extends JPanel
     *  about the classes.
     */
    private JTextField info;
+   /**
+    *  The number of classes when the panel was last repainted.
+    */
+   private int numClasses;
 
    /**
     *  Constructor: initializes the panel and sets
@@ -58,6 +62,7 @@ public class ClassPanel extends JPanel
       manager = new ThreadManager();
       width = 0;
       height = 0;
+      numClasses = 0;
    }
 
    /**
@@ -134,7 +139,11 @@ public class ClassPanel extends JPanel
    public void writeMethod(ThreadManager manager)
    {
       this.manager = manager;
-      repaint();
+      if(manager.getClassList().size()!=numClasses) // the list only changes when a class is first called
+      {
+         numClasses = manager.getClassList().size();
+         RepaintScheduler.repaint(this);
+      }
    }
 
    /**
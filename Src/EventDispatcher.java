@@ -0,0 +1,89 @@
+package ObjectTracker;
+
+/**
+ *  This class takes the events written to an EventRing
+ *  by the ObjectTracker and sends them to the ObjectDisplayer.
+ *  It runs in its own thread so that the target program does
+ *  not wait while the displays are updated.
+ *
+ *  @author  Eoin O'Connor
+ *  @see EventRing
+ *  @see ObjectTracker
+ *  @see ObjectDisplayer
+ */
+public class EventDispatcher implements Runnable
+{
+   /**
+    *  The ring that events are read from.
+    */
+   private EventRing ring;
+   /**
+    *  Manages and displays the information about the
+    *  target program.
+    */
+   private ObjectDisplayer displayer;
+
+   /**
+    *  Constructor: sets the ring and the displayer.
+    *
+    *  @param  ring        The ring to read events from.
+    *  @param  displayer   The displayer to send events to.
+    */
+   public EventDispatcher(EventRing ring,ObjectDisplayer displayer)
+   {
+      this.ring = ring;
+      this.displayer = displayer;
+   }
+
+   /**
+    *  Reads events from the ring in the order they
+    *  arrived and sends each one to the displayer.
+    */
+   public void run()
+   {
+      try
+      {
+         while(true)
+         {
+            ring.waitForEvent();
+
+            switch(ring.getKind())
+            {
+               case EventRing.THREAD_START:
+                  displayer.startThread(ring.getThreadName(),ring.getThreadID());
+                  break;
+               case EventRing.METHOD_ENTRY:
+                  displayer.startMethod(ring.getMethodID(),ring.getThreadID(),ring.getTime());
+                  break;
+               case EventRing.METHOD_EXIT:
+                  displayer.endMethod(ring.getMethodID(),ring.getThreadID(),ring.getTime());
+                  break;
+               case EventRing.FIELD_MODIFIED:
+                  displayer.addInstanceClass(ring.getInstance(),ring.getField());
+                  break;
+               case EventRing.INSTANCE_REFERENCED:
+                  displayer.addInstanceClass(ring.getInstance());
+                  break;
+               case EventRing.METHOD_THROTTLED:
+                  displayer.throttleMethod(ring.getMethodID(),ring.getTime());
+                  break;
+               case EventRing.CLASS_THROTTLED:
+                  displayer.throttleClass(ring.getMethodID(),ring.getTime());
+                  break;
+               case EventRing.THREAD_DEATH:
+                  displayer.endThread(ring.getThreadID(),ring.getTime());
+                  break;
+               case EventRing.TRACE_STOPPED:
+                  displayer.stopTrace(ring.getTime());
+                  break;
+            }
+
+            ring.remove();
+         }
+      }
+      catch(InterruptedException e)
+      {
+         e.printStackTrace();
+      }
+   }
+}
@@ -0,0 +1,335 @@
+package ObjectTracker;
+
+/**
+ *  This class implements a bounded ring buffer of events
+ *  from the running target program. The ObjectTracker
+ *  writes the details of each event into a preallocated
+ *  slot so that the target program can be resumed at once,
+ *  and the EventDispatcher reads them back and updates the
+ *  ObjectDisplayer. Methods are given by their ID numbers
+ *  in the MethodTable. There must be only one writer and
+ *  one reader.
+ *
+ *  @author  Eoin O'Connor
+ *  @see ObjectTracker
+ *  @see EventDispatcher
+ *  @see MethodTable
+ */
+public class EventRing
+{
+   /**
+    *  A thread has started.
+    */
+   public static final int THREAD_START = 0;
+   /**
+    *  A method has been entered.
+    */
+   public static final int METHOD_ENTRY = 1;
+   /**
+    *  A method has been exited.
+    */
+   public static final int METHOD_EXIT = 2;
+   /**
+    *  A field of an instance has been modified.
+    */
+   public static final int FIELD_MODIFIED = 3;
+   /**
+    *  An instance has been referenced by a field.
+    */
+   public static final int INSTANCE_REFERENCED = 4;
+   /**
+    *  A method has been throttled.
+    */
+   public static final int METHOD_THROTTLED = 5;
+   /**
+    *  The method events of a class are no longer requested.
+    */
+   public static final int CLASS_THROTTLED = 6;
+   /**
+    *  A thread has died.
+    */
+   public static final int THREAD_DEATH = 7;
+   /**
+    *  Tracing has been stopped, so the calls still open will
+    *  not have their exits traced.
+    */
+   public static final int TRACE_STOPPED = 8;
+
+   /**
+    *  The number of slots in the ring. Always a power of two.
+    */
+   private int capacity;
+   /**
+    *  Used to turn a sequence number into a slot index.
+    */
+   private int mask;
+   /**
+    *  The kind of each event.
+    */
+   private int [] kinds;
+   /**
+    *  The unique ID number of the thread of each event.
+    */
+   private long [] threadIDs;
+   /**
+    *  The time at which each event arrived.
+    */
+   private long [] times;
+   /**
+    *  The name of the thread of each event.
+    */
+   private String [] threadNames;
+   /**
+    *  The ID number of the method of each event.
+    */
+   private int [] methodIDs;
+   /**
+    *  The instance of each watchpoint event.
+    */
+   private InstanceClass [] instances;
+   /**
+    *  The field of each watchpoint event.
+    */
+   private FieldClass [] fields;
+   /**
+    *  The sequence number of the next slot to be written.
+    */
+   private volatile long writeIndex;
+   /**
+    *  The sequence number of the next slot to be read.
+    */
+   private volatile long readIndex;
+   /**
+    *  True if the writer is waiting for a free slot.
+    */
+   private volatile boolean writerWaiting;
+   /**
+    *  True if the reader is waiting for an event.
+    */
+   private volatile boolean readerWaiting;
+
+   /**
+    *  Constructor: creates a new ring. The size is
+    *  rounded up to the next power of two.
+    *
+    *  @param  size  The minimum number of events the
+    *                ring can hold.
+    */
+   public EventRing(int size)
+   {
+      capacity = 1;
+      while(capacity < size)
+         capacity = capacity << 1;
+      mask = capacity - 1;
+
+      kinds = new int[capacity];
+      threadIDs = new long[capacity];
+      times = new long[capacity];
+      threadNames = new String[capacity];
+      methodIDs = new int[capacity];
+      instances = new InstanceClass[capacity];
+      fields = new FieldClass[capacity];
+      writeIndex = 0;
+      readIndex = 0;
+      writerWaiting = false;
+      readerWaiting = false;
+   }
+
+   /**
+    *  Adds a thread or method event to the ring. Blocks
+    *  while the ring is full.
+    *
+    *  @param  kind        The kind of event.
+    *  @param  threadName  The name of the thread, or null.
+    *  @param  threadID    The ID number of the thread.
+    *  @param  methodID    The ID number of the method, or -1.
+    *  @param  time        The time at which the event arrived.
+    *  @throws InterruptedException If the writer is interrupted while waiting.
+    */
+   public void put(int kind,String threadName,long threadID,int methodID,long time) throws InterruptedException
+   {
+      int slot = claim();
+      kinds[slot] = kind;
+      threadNames[slot] = threadName;
+      threadIDs[slot] = threadID;
+      methodIDs[slot] = methodID;
+      times[slot] = time;
+      publish();
+   }
+
+   /**
+    *  Adds a watchpoint event to the ring. Blocks while
+    *  the ring is full.
+    *
+    *  @param  kind      The kind of event.
+    *  @param  instance  The instance.
+    *  @param  field     The field modified, or null.
+    *  @param  time      The time at which the event arrived.
+    *  @throws InterruptedException If the writer is interrupted while waiting.
+    */
+   public void put(int kind,InstanceClass instance,FieldClass field,long time) throws InterruptedException
+   {
+      int slot = claim();
+      kinds[slot] = kind;
+      instances[slot] = instance;
+      fields[slot] = field;
+      times[slot] = time;
+      publish();
+   }
+
+   /**
+    *  Waits for a free slot and returns its index.
+    *
+    *  @return The index of the slot to write.
+    *  @throws InterruptedException If the writer is interrupted while waiting.
+    */
+   private int claim() throws InterruptedException
+   {
+      while(writeIndex - readIndex == capacity)
+      {
+         synchronized(this)
+         {
+            writerWaiting = true;
+            if(writeIndex - readIndex == capacity)
+               wait();
+            writerWaiting = false;
+         }
+      }
+      return (int)(writeIndex & mask);
+   }
+
+   /**
+    *  Makes the slot just written visible to the reader
+    *  and wakes the reader if it is waiting.
+    */
+   private void publish()
+   {
+      writeIndex = writeIndex + 1;
+      if(readerWaiting)
+      {
+         synchronized(this)
+         {
+            notifyAll();
+         }
+      }
+   }
+
+   /**
+    *  Blocks until there is an event to be read.
+    *
+    *  @throws InterruptedException If the reader is interrupted while waiting.
+    */
+   public void waitForEvent() throws InterruptedException
+   {
+      while(readIndex == writeIndex)
+      {
+         synchronized(this)
+         {
+            readerWaiting = true;
+            if(readIndex == writeIndex)
+               wait();
+            readerWaiting = false;
+         }
+      }
+   }
+
+   /**
+    *  Removes the oldest event from the ring and wakes
+    *  the writer if it is waiting for a free slot.
+    */
+   public void remove()
+   {
+      int slot = (int)(readIndex & mask);
+      threadNames[slot] = null;
+      instances[slot] = null;
+      fields[slot] = null;
+      readIndex = readIndex + 1;
+      if(writerWaiting)
+      {
+         synchronized(this)
+         {
+            notifyAll();
+         }
+      }
+   }
+
+   /**
+    *  Returns the index of the oldest slot.
+    *
+    *  @return The index of the oldest slot.
+    */
+   private int head()
+   {
+      return (int)(readIndex & mask);
+   }
+
+   /**
+    *  Returns the kind of the oldest event.
+    *
+    *  @return The kind of the oldest event.
+    */
+   public int getKind()
+   {
+      return kinds[head()];
+   }
+
+   /**
+    *  Returns the thread ID number of the oldest event.
+    *
+    *  @return The thread ID number of the oldest event.
+    */
+   public long getThreadID()
+   {
+      return threadIDs[head()];
+   }
+
+   /**
+    *  Returns the arrival time of the oldest event.
+    *
+    *  @return The arrival time of the oldest event.
+    */
+   public long getTime()
+   {
+      return times[head()];
+   }
+
+   /**
+    *  Returns the thread name of the oldest event.
+    *
+    *  @return The thread name of the oldest event.
+    */
+   public String getThreadName()
+   {
+      return threadNames[head()];
+   }
+
+   /**
+    *  Returns the method ID number of the oldest event.
+    *
+    *  @return The method ID number of the oldest event.
+    */
+   public int getMethodID()
+   {
+      return methodIDs[head()];
+   }
+
+   /**
+    *  Returns the instance of the oldest event.
+    *
+    *  @return The instance of the oldest event.
+    */
+   public InstanceClass getInstance()
+   {
+      return instances[head()];
+   }
+
+   /**
+    *  Returns the field of the oldest event.
+    *
+    *  @return The field of the oldest event.
+    */
+   public FieldClass getField()
+   {
+      return fields[head()];
+   }
+}
@@ -0,0 +1,669 @@
+package ObjectTracker;
+
+import java.awt.*;
+import java.io.*;
+import java.lang.invoke.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+/**
+ *  This class keeps the calls made by a thread of the target
+ *  program outside the Java heap, so that millions of calls do
+ *  not become millions of objects for the garbage collector to
+ *  trace. Each call is a record of fixed width, numbered in the
+ *  order the calls started, and each field of the records is kept
+ *  in its own column. Methods are known by their MethodTable ID
+ *  numbers.
+ *  <p>
+ *  The records are kept in chunks, each a direct ByteBuffer
+ *  holding the columns of CHUNK_SIZE records. A new chunk is added
+ *  when the last one is full, so the records already stored are
+ *  never copied. The records are read by number, or one after
+ *  another through a Cursor.
+ *  <p>
+ *  If the store has a TraceSpiller, it may ask for old chunks to be
+ *  spilled. A spilled chunk is written to the end of the store's
+ *  segment file and replaced by a memory mapping of the file, so its
+ *  records are still read and changed in the same way, but are only
+ *  in memory while the operating system keeps them paged in. When
+ *  the thread dies the store is closed, and its segment file is
+ *  closed and deleted.
+ *  <p>
+ *  Only the EventDispatcher thread adds and changes records. The
+ *  panels may read them while it does: a record is complete before
+ *  it is counted, and a chunk is complete before it is added to the
+ *  list of chunks.
+ *
+ *  @author  Eoin O'Connor
+ *  @see ThreadManager
+ *  @see SequencePanel
+ *  @see RunTimePanel
+ *  @see TraceSpiller
+ */
+public class EventStore
+{
+   /**
+    *  The number of records in each chunk.
+    */
+   public static final int CHUNK_SIZE = 8192;
+   /**
+    *  The number of int columns.
+    */
+   private static final int NUM_INT_COLUMNS = 7;
+   /**
+    *  The number of long columns.
+    */
+   private static final int NUM_LONG_COLUMNS = 3;
+   /**
+    *  The number of bytes in each record.
+    */
+   public static final int RECORD_BYTES = NUM_INT_COLUMNS*4 + NUM_LONG_COLUMNS*8;
+
+   // the offsets of the columns in a chunk
+   private static final int METHOD_ID = 0;
+   private static final int DEPTH = METHOD_ID + CHUNK_SIZE*4;
+   private static final int PARENT = DEPTH + CHUNK_SIZE*4;
+   private static final int HEIGHT = PARENT + CHUNK_SIZE*4;
+   private static final int BAR_LENGTH = HEIGHT + CHUNK_SIZE*4;
+   private static final int NUM_CALLED = BAR_LENGTH + CHUNK_SIZE*4;
+   private static final int COLOUR = NUM_CALLED + CHUNK_SIZE*4;
+   private static final int START_TIME = COLOUR + CHUNK_SIZE*4;
+   private static final int END_TIME = START_TIME + CHUNK_SIZE*8;
+   private static final int RUN_TIME = END_TIME + CHUNK_SIZE*8;
+
+   /**
+    *  Used to publish a chunk to the readers once it is complete.
+    */
+   private static final VarHandle CHUNK = MethodHandles.arrayElementVarHandle(ByteBuffer [].class);
+
+   /**
+    *  The chunks of records. The array is replaced when it grows,
+    *  and its elements are written with CHUNK.setRelease() and read
+    *  with CHUNK.getAcquire().
+    */
+   private volatile ByteBuffer [] chunks;
+   /**
+    *  The number of chunks.
+    */
+   private int numChunks;
+   /**
+    *  The number of records.
+    */
+   private volatile int size;
+   /**
+    *  Told when a chunk is added, or null if the
+    *  chunks are never spilled.
+    */
+   private TraceSpiller spiller;
+   /**
+    *  The segment file the spilled chunks are written to,
+    *  or null if none have been spilled.
+    */
+   private FileChannel segmentFile;
+   /**
+    *  The path of the segment file, or null if it is not open.
+    */
+   private File segmentPath;
+   /**
+    *  The number of bytes written to the segment file.
+    */
+   private long segmentSize;
+   /**
+    *  The number of bytes of records spilled to segment files.
+    */
+   private long spilledBytes;
+   /**
+    *  True once the thread has died and no more calls will be added.
+    */
+   private boolean isClosed;
+
+   /**
+    *  Constructor: creates an empty store whose chunks
+    *  are never spilled.
+    */
+   public EventStore()
+   {
+      this(null);
+   }
+
+   /**
+    *  Constructor: creates an empty store.
+    *
+    *  @param  spiller  Told when a chunk is added, or null if
+    *                   the chunks are never spilled.
+    */
+   public EventStore(TraceSpiller spiller)
+   {
+      this.spiller = spiller;
+      chunks = new ByteBuffer[16];
+      numChunks = 0;
+      size = 0;
+      segmentFile = null;
+      segmentPath = null;
+      segmentSize = 0;
+      spilledBytes = 0;
+      isClosed = false;
+   }
+
+   /**
+    *  Adds the record of a call that has started.
+    *
+    *  @param  methodID    The MethodTable ID number of the method.
+    *  @param  depth       The stack depth of the call, starting at 1.
+    *  @param  parent      The record number of the calling call, or -1.
+    *  @param  height      The y-coordinate of the call in the SequencePanel.
+    *  @param  startTime   The time at which the call started.
+    *  @return The record number of the call.
+    */
+   public int add(int methodID,int depth,int parent,int height,long startTime)
+   {
+      int n = size;
+      if(n==numChunks*CHUNK_SIZE)
+         addChunk();
+      ByteBuffer chunk = getChunk(n);
+      int i = n%CHUNK_SIZE;
+      chunk.putInt(METHOD_ID + i*4,methodID);
+      chunk.putInt(DEPTH + i*4,depth);
+      chunk.putInt(PARENT + i*4,parent);
+      chunk.putInt(HEIGHT + i*4,height);
+      chunk.putInt(BAR_LENGTH + i*4,20);
+      chunk.putInt(NUM_CALLED + i*4,0);
+      chunk.putInt(COLOUR + i*4,0);
+      chunk.putLong(START_TIME + i*8,startTime);
+      chunk.putLong(END_TIME + i*8,0);
+      chunk.putLong(RUN_TIME + i*8,0);
+      size = n + 1;
+      return n;
+   }
+
+   /**
+    *  Adds an empty chunk.
+    */
+   private void addChunk()
+   {
+      ByteBuffer chunk;
+      if(spiller!=null)
+         chunk = spiller.allocateChunk(CHUNK_SIZE*RECORD_BYTES);
+      else
+      {
+         chunk = ByteBuffer.allocateDirect(CHUNK_SIZE*RECORD_BYTES);
+         chunk.order(ByteOrder.nativeOrder());
+      }
+      if(numChunks==chunks.length)
+         chunks = Arrays.copyOf(chunks,chunks.length*2);
+      CHUNK.setRelease(chunks,numChunks,chunk);
+      numChunks++;
+      if(spiller!=null)
+         spiller.chunkAdded(this,numChunks-1);
+   }
+
+   /**
+    *  Writes a chunk to the end of the segment file, and replaces
+    *  it with a memory mapping of the part of the file written.
+    *  Once the store is closed, each chunk spilled is written to a
+    *  segment file of its own that is closed and deleted straight
+    *  away; the mapping keeps the records readable.
+    *  <p>
+    *  The panels may still be reading the buffer the chunk was in,
+    *  so it must not be written to again until they have finished
+    *  the work they were doing when it was replaced.
+    *
+    *  @param  c  The chunk number.
+    *  @return The buffer the chunk was in, or null if the
+    *          segment file could not be written.
+    */
+   public ByteBuffer spill(int c)
+   {
+      try
+      {
+         if(segmentFile==null)
+         {
+            segmentPath = spiller.createSegmentFile();
+            segmentFile = new RandomAccessFile(segmentPath,"rw").getChannel();
+            segmentSize = 0;
+         }
+
+         ByteBuffer replaced = getChunk(c*CHUNK_SIZE);
+         ByteBuffer chunk = replaced.duplicate();
+         chunk.clear();
+         while(chunk.hasRemaining())
+            segmentFile.write(chunk,segmentSize + chunk.position());
+         MappedByteBuffer mapped = segmentFile.map(FileChannel.MapMode.READ_WRITE,segmentSize,chunk.capacity());
+         mapped.order(ByteOrder.nativeOrder());
+         segmentSize += chunk.capacity();
+         spilledBytes += chunk.capacity();
+         CHUNK.setRelease(chunks,c,mapped); // the records are the same, so readers may use either until the buffer is used again
+         if(isClosed)
+            closeSegmentFile();
+         return replaced;
+      }
+      catch(IOException e)
+      {
+         e.printStackTrace();
+         return null;
+      }
+   }
+
+   /**
+    *  Closes the store once its thread has died. The segment file
+    *  is closed and deleted; the chunks already spilled stay mapped.
+    */
+   public void close()
+   {
+      isClosed = true;
+      closeSegmentFile();
+   }
+
+   /**
+    *  Returns true if the store has been closed.
+    *
+    *  @return True if the thread has died.
+    */
+   public boolean isClosed()
+   {
+      return isClosed;
+   }
+
+   /**
+    *  Closes and deletes the segment file, if there is one.
+    */
+   private void closeSegmentFile()
+   {
+      if(segmentFile==null)
+         return;
+
+      try
+      {
+         segmentFile.close();
+      }
+      catch(IOException e)
+      {
+         e.printStackTrace();
+      }
+      segmentFile = null;
+      segmentPath.delete(); // if it is still in use it is deleted when the ObjectTracker exits
+      segmentPath = null;
+   }
+
+   /**
+    *  Returns the number of chunks.
+    *
+    *  @return The number of chunks.
+    */
+   public int getNumChunks()
+   {
+      return numChunks;
+   }
+
+   /**
+    *  Returns the number of records.
+    *
+    *  @return The number of records.
+    */
+   public int size()
+   {
+      return size;
+   }
+
+   /**
+    *  Returns the number of bytes of memory taken by the records
+    *  that have not been spilled.
+    *
+    *  @return The number of bytes.
+    */
+   public long getFootprint()
+   {
+      return (long)numChunks*CHUNK_SIZE*RECORD_BYTES - spilledBytes;
+   }
+
+   /**
+    *  Returns the number of bytes of records spilled to segment files.
+    *
+    *  @return The number of bytes.
+    */
+   public long getSpilledBytes()
+   {
+      return spilledBytes;
+   }
+
+   /**
+    *  Returns a Cursor that reads the records one after another.
+    *
+    *  @param  first The number of the first record to read.
+    *  @return The Cursor, placed before the first record.
+    */
+   public Cursor cursor(int first)
+   {
+      return new Cursor(first);
+   }
+
+   /**
+    *  Returns the chunk holding a record.
+    *
+    *  @param  n  The record number.
+    *  @return The chunk.
+    */
+   private ByteBuffer getChunk(int n)
+   {
+      return (ByteBuffer)CHUNK.getAcquire(chunks,n/CHUNK_SIZE);
+   }
+
+   /**
+    *  Returns the MethodTable ID number of the method of a call.
+    *
+    *  @param  n  The record number.
+    *  @return The method ID number.
+    */
+   public int getMethodID(int n)
+   {
+      return getChunk(n).getInt(METHOD_ID + (n%CHUNK_SIZE)*4);
+   }
+
+   /**
+    *  Returns the stack depth of a call.
+    *
+    *  @param  n  The record number.
+    *  @return The stack depth, starting at 1.
+    */
+   public int getDepth(int n)
+   {
+      return getChunk(n).getInt(DEPTH + (n%CHUNK_SIZE)*4);
+   }
+
+   /**
+    *  Returns the call that made a call.
+    *
+    *  @param  n  The record number.
+    *  @return The record number of the calling call, or -1 if
+    *          the call was first on the stack.
+    */
+   public int getParent(int n)
+   {
+      return getChunk(n).getInt(PARENT + (n%CHUNK_SIZE)*4);
+   }
+
+   /**
+    *  Returns the y-coordinate of a call in the SequencePanel.
+    *
+    *  @param  n  The record number.
+    *  @return The y-coordinate.
+    */
+   public int getHeight(int n)
+   {
+      return getChunk(n).getInt(HEIGHT + (n%CHUNK_SIZE)*4);
+   }
+
+   /**
+    *  Finds the first call drawn at or below a y-coordinate in the
+    *  SequencePanel. Each call is drawn lower than the calls added
+    *  before it, so the calls are searched by halving.
+    *
+    *  @param  height   The y-coordinate.
+    *  @return The record number, or the number of calls if every
+    *          call is drawn above the y-coordinate.
+    */
+   public int findHeight(int height)
+   {
+      int low = 0;
+      int high = size;
+      while(low < high)
+      {
+         int mid = (low + high) >>> 1;
+         if(getHeight(mid) < height)
+            low = mid + 1;
+         else
+            high = mid;
+      }
+      return low;
+   }
+
+   /**
+    *  Returns the length of the bar of a call in the SequencePanel.
+    *
+    *  @param  n  The record number.
+    *  @return The bar length.
+    */
+   public int getBarLength(int n)
+   {
+      return getChunk(n).getInt(BAR_LENGTH + (n%CHUNK_SIZE)*4);
+   }
+
+   /**
+    *  Sets the length of the bar of a call in the SequencePanel.
+    *
+    *  @param  n          The record number.
+    *  @param  barLength  The bar length.
+    */
+   public void setBarLength(int n,int barLength)
+   {
+      getChunk(n).putInt(BAR_LENGTH + (n%CHUNK_SIZE)*4,barLength);
+   }
+
+   /**
+    *  Returns the number of calls traced while a call ran,
+    *  counting itself.
+    *
+    *  @param  n  The record number.
+    *  @return The number of calls, or 0 if it has not ended.
+    */
+   public int getNumMethodsCalled(int n)
+   {
+      return getChunk(n).getInt(NUM_CALLED + (n%CHUNK_SIZE)*4);
+   }
+
+   /**
+    *  Returns the colour of the method of a call.
+    *
+    *  @param  n  The record number.
+    *  @return The colour, or null if it has not been given one.
+    */
+   public Color getColour(int n)
+   {
+      int rgb = getChunk(n).getInt(COLOUR + (n%CHUNK_SIZE)*4);
+      return rgb==0 ? null : new Color(rgb,true);
+   }
+
+   /**
+    *  Sets the colour of the method of a call.
+    *
+    *  @param  n       The record number.
+    *  @param  colour  The colour.
+    */
+   public void setColour(int n,Color colour)
+   {
+      getChunk(n).putInt(COLOUR + (n%CHUNK_SIZE)*4,colour==null ? 0 : colour.getRGB());
+   }
+
+   /**
+    *  Returns the start time of a call.
+    *
+    *  @param  n  The record number.
+    *  @return The start time.
+    */
+   public long getStartTime(int n)
+   {
+      return getChunk(n).getLong(START_TIME + (n%CHUNK_SIZE)*8);
+   }
+
+   /**
+    *  Returns the end time of a call.
+    *
+    *  @param  n  The record number.
+    *  @return The end time. It is only meaningful if the call has ended.
+    */
+   public long getEndTime(int n)
+   {
+      return getChunk(n).getLong(END_TIME + (n%CHUNK_SIZE)*8);
+   }
+
+   /**
+    *  Returns true if a call has ended. Any value of System.nanoTime()
+    *  can be an end time, so this is not told from the end time but
+    *  from the number of calls traced while it ran, which counts the
+    *  call itself once it has ended.
+    *
+    *  @param  n  The record number.
+    *  @return True if the call has ended.
+    */
+   public boolean isEnded(int n)
+   {
+      return getChunk(n).getInt(NUM_CALLED + (n%CHUNK_SIZE)*4) > 0;
+   }
+
+   /**
+    *  A call has ended.
+    *
+    *  @param  n           The record number.
+    *  @param  endTime     The time at which it ended.
+    *  @param  numCalled   The number of calls traced while it ran,
+    *                      counting itself.
+    */
+   public void end(int n,long endTime,int numCalled)
+   {
+      ByteBuffer chunk = getChunk(n);
+      int i = n%CHUNK_SIZE;
+      chunk.putInt(NUM_CALLED + i*4,numCalled);
+      chunk.putLong(END_TIME + i*8,endTime);
+   }
+
+   /**
+    *  Returns the runtime of a call. The times for which the
+    *  program was paused are not counted.
+    *
+    *  @param  n  The record number.
+    *  @return The runtime in nanoseconds, or -1 if it has not ended.
+    */
+   public long getExecutionTime(int n)
+   {
+      ByteBuffer chunk = getChunk(n);
+      int i = n%CHUNK_SIZE;
+      if(chunk.getInt(NUM_CALLED + i*4)==0) // it has not ended
+         return -1;
+      return (chunk.getLong(END_TIME + i*8) - chunk.getLong(START_TIME + i*8)) + chunk.getLong(RUN_TIME + i*8);
+   }
+
+   /**
+    *  Pauses the runtime of a call that has not ended.
+    *
+    *  @param  n         The record number.
+    *  @param  stopTime  The time at which the program was paused.
+    */
+   public void pauseExecutionTime(int n,long stopTime)
+   {
+      ByteBuffer chunk = getChunk(n);
+      int i = n%CHUNK_SIZE;
+      chunk.putLong(RUN_TIME + i*8,chunk.getLong(RUN_TIME + i*8) + (stopTime - chunk.getLong(START_TIME + i*8)));
+   }
+
+   /**
+    *  Restarts the runtime of a call that has not ended.
+    *
+    *  @param  n            The record number.
+    *  @param  restartTime  The time at which the program was restarted.
+    */
+   public void restartExecutionTime(int n,long restartTime)
+   {
+      getChunk(n).putLong(START_TIME + (n%CHUNK_SIZE)*8,restartTime);
+   }
+
+   /**
+    *  This class reads the records of the store one after another.
+    *  It keeps the chunk of the current record, so that moving on
+    *  to the next record does not look the chunk up again.
+    */
+   public class Cursor
+   {
+      /**
+       *  The number of the current record.
+       */
+      private int n;
+      /**
+       *  The chunk of the current record.
+       */
+      private ByteBuffer chunk;
+      /**
+       *  The index of the current record in its chunk.
+       */
+      private int i;
+
+      /**
+       *  Constructor: creates a Cursor placed before a record.
+       *
+       *  @param  first The number of the first record to read.
+       */
+      private Cursor(int first)
+      {
+         n = Math.max(0,first) - 1;
+         chunk = null;
+         i = -1;
+      }
+
+      /**
+       *  Moves on to the next record.
+       *
+       *  @return True if there is a next record, false if the
+       *          cursor has passed the last record.
+       */
+      public boolean next()
+      {
+         if(n+1 >= size)
+            return false;
+         n++;
+         i = n%CHUNK_SIZE;
+         if(chunk==null || i==0)
+            chunk = getChunk(n);
+         return true;
+      }
+
+      /**
+       *  Returns the number of the current record.
+       *
+       *  @return The record number.
+       */
+      public int getIndex()
+      {
+         return n;
+      }
+
+      /**
+       *  Returns the MethodTable ID number of the method of the current call.
+       *
+       *  @return The method ID number.
+       */
+      public int getMethodID()
+      {
+         return chunk.getInt(METHOD_ID + i*4);
+      }
+
+      /**
+       *  Returns the stack depth of the current call.
+       *
+       *  @return The stack depth, starting at 1.
+       */
+      public int getDepth()
+      {
+         return chunk.getInt(DEPTH + i*4);
+      }
+
+      /**
+       *  Returns the y-coordinate of the current call in the SequencePanel.
+       *
+       *  @return The y-coordinate.
+       */
+      public int getHeight()
+      {
+         return chunk.getInt(HEIGHT + i*4);
+      }
+
+      /**
+       *  Returns the length of the bar of the current call in the SequencePanel.
+       *
+       *  @return The bar length.
+       */
+      public int getBarLength()
+      {
+         return chunk.getInt(BAR_LENGTH + i*4);
+      }
+   }
+}
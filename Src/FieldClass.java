@@ -17,6 +17,11 @@ public class FieldClass
     *  The identifier name of the field.
     */
    private String name;
+   /**
+    *  The MethodTable field ID number of the field,
+    *  or -1 if it is not known.
+    */
+   private int fieldID;
    /**
     *  The type nameo of the field.
     */
@@ -37,6 +42,19 @@ public class FieldClass
     *  a instance.
     */
    private boolean isInstance;
+   /**
+    *  The unique ID number of the object that the field
+    *  refers to, or -1 if it does not refer to an object.
+    */
+   private long refID;
+   /**
+    *  The next field that refers to the same object.
+    */
+   private FieldClass nextRef;
+   /**
+    *  The previous field that refers to the same object.
+    */
+   private FieldClass prevRef;
    /**
     *  The field's x-coordinate in the InstanceTrackerPanel.
     */
@@ -45,6 +63,11 @@ public class FieldClass
     *  The field's y-coordinate in the InstanceTrackerPanel.
     */
    private int height;
+   /**
+    *  The number of the field's connection line in the
+    *  InstanceTrackerPanel, or -1 if it has none.
+    */
+   private int lineIndex;
 
    /**
     *  Constructor: initializes a field with name n,
@@ -56,12 +79,51 @@ public class FieldClass
     */
    public FieldClass(String n,String t,Object v)
    {
+      this(n,t,v,-1);
+   }
+
+   /**
+    *  Constructor: initializes a field with name n,
+    *  type t and value v, that refers to the object
+    *  with unique ID number id.
+    *
+    *  @param  n  The identifier name of the field.
+    *  @param  t  The type name of the field.
+    *  @param  v  The value of the field.
+    *  @param  id The unique ID number of the object the field
+    *             refers to, or -1 if it does not refer to one.
+    */
+   public FieldClass(String n,String t,Object v,long id)
+   {
+      this(n,t,v,id,-1);
+   }
+
+   /**
+    *  Constructor: initializes a field with name n,
+    *  type t and value v, that refers to the object
+    *  with unique ID number id and has a field ID
+    *  number in the MethodTable.
+    *
+    *  @param  n  The identifier name of the field.
+    *  @param  t  The type name of the field.
+    *  @param  v  The value of the field.
+    *  @param  id The unique ID number of the object the field
+    *             refers to, or -1 if it does not refer to one.
+    *  @param  fieldID  The MethodTable field ID number of the field.
+    */
+   public FieldClass(String n,String t,Object v,long id,int fieldID)
+   {
+      this.fieldID = fieldID;
       name = n;
       type = t;
       value = v;
+      refID = id;
       isInstance = false;
+      nextRef = null;
+      prevRef = null;
       width = 0;
       height = 0;
+      lineIndex = -1;
    }
 
    /**
@@ -74,6 +136,16 @@ public class FieldClass
       return name;
    }
 
+   /**
+    *  Returns the MethodTable field ID number of the field.
+    *
+    *  @return The field ID number, or -1 if it is not known.
+    */
+   public int getFieldID()
+   {
+      return fieldID;
+   }
+
    /**
     *  Returns the type name of the field.
     *
@@ -127,6 +199,68 @@ public class FieldClass
       return isInstance;
    }
 
+   /**
+    *  Sets the unique ID number of the object that the
+    *  field refers to.
+    *
+    *  @param  id The ID number, or -1 if it does not refer to an object.
+    */
+   public void setRefID(long id)
+   {
+      refID = id;
+   }
+
+   /**
+    *  Returns the unique ID number of the object that
+    *  the field refers to.
+    *
+    *  @return The ID number, or -1 if it does not refer to an object.
+    */
+   public long getRefID()
+   {
+      return refID;
+   }
+
+   /**
+    *  Sets the next field that refers to the same object.
+    *
+    *  @param  field The next field, or null if this is the last.
+    */
+   public void setNextRef(FieldClass field)
+   {
+      nextRef = field;
+   }
+
+   /**
+    *  Returns the next field that refers to the same object.
+    *
+    *  @return The next field, or null if this is the last.
+    */
+   public FieldClass getNextRef()
+   {
+      return nextRef;
+   }
+
+   /**
+    *  Sets the previous field that refers to the same object.
+    *
+    *  @param  field The previous field, or null if this is the first.
+    */
+   public void setPrevRef(FieldClass field)
+   {
+      prevRef = field;
+   }
+
+   /**
+    *  Returns the previous field that refers to the same object.
+    *
+    *  @return The previous field, or null if this is the first.
+    */
+   public FieldClass getPrevRef()
+   {
+      return prevRef;
+   }
+
    /**
     *  Returns a string representation of the field.
     *
@@ -149,6 +283,8 @@ public class FieldClass
     */
    public boolean equals(FieldClass obj)
    {
+      if(fieldID>=0 && obj.getFieldID()>=0)
+         return fieldID==obj.getFieldID();
       return name.equals(obj.getName());
    }
 
@@ -210,4 +346,24 @@ public class FieldClass
    {
       return height;
    }
-}
\ No newline at end of file
+
+   /**
+    *  Sets the number of the field's connection line.
+    *
+    *  @param  n  The new line number.
+    */
+   public void setLineIndex(int n)
+   {
+      lineIndex = n;
+   }
+
+   /**
+    *  Returns the number of the field's connection line.
+    *
+    *  @return The line number, or -1 if it has none.
+    */
+   public int getLineIndex()
+   {
+      return lineIndex;
+   }
+}
@@ -0,0 +1,830 @@
+package ObjectTracker;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ *  This class works out the positions of the instances in the graph
+ *  view of the InstanceTrackerPanel on a thread of its own. Instances
+ *  push each other apart, and each reference pulls the two instances
+ *  it joins together, so instances that refer to each other end up
+ *  near each other. The pushes are added up with a quadtree, in which
+ *  a group of instances far enough away pushes as one, so each step
+ *  takes time in proportion to n log n rather than n squared. The
+ *  pushes on different instances are worked out at the same time on
+ *  a fork-join pool.
+ *  <p>
+ *  Each instance has a temperature that limits how far it can move
+ *  in a step, and cools after each step. A new instance, and the
+ *  instances joined by a new reference, are heated, so the layout
+ *  only changes where the program has changed it. When every
+ *  instance has cooled, the thread waits until something changes.
+ *  <p>
+ *  The positions are published as snapshots at most
+ *  1000/PUBLISH_INTERVAL times a second, and the panel is asked to
+ *  lay them out in the next frame. Instances that the user has moved are pinned, and do not
+ *  move until they are unpinned.
+ *
+ *  @author  Eoin O'Connor
+ *  @see InstanceTrackerPanel
+ *  @see RepaintScheduler
+ */
+public class ForceLayout implements Runnable
+{
+   /**
+    *  A group of instances pushes as one if its width divided by its
+    *  distance is less than this.
+    */
+   private static final double THETA = 0.8;
+   /**
+    *  How much the temperature of each instance falls after a step.
+    */
+   private static final double COOLING = 0.98;
+   /**
+    *  The temperature below which an instance is not moved.
+    */
+   private static final double MIN_TEMPERATURE = 0.5;
+   /**
+    *  The pull of each instance towards the centre, which keeps
+    *  instances that are not joined to any others from drifting away.
+    */
+   private static final double GRAVITY = 2.0;
+   /**
+    *  The number of instances whose pushes are worked out by one
+    *  task of the fork-join pool.
+    */
+   private static final int GRAIN = 512;
+   /**
+    *  The deepest the quadtree goes. Instances at the same position
+    *  share a cell at this depth.
+    */
+   private static final int MAX_DEPTH = 32;
+   /**
+    *  The fewest milliseconds between two snapshots.
+    */
+   private static final int PUBLISH_INTERVAL = 100;
+
+   /**
+    *  Lays the panel out in the next frame when a snapshot is published.
+    */
+   private Runnable layout;
+   /**
+    *  Works out the pushes on the instances.
+    */
+   private ForkJoinPool pool;
+   /**
+    *  Runs the layout, or null if it has not been started.
+    */
+   private Thread thread;
+
+   /**
+    *  The number of instances.
+    */
+   private int numNodes;
+   /**
+    *  The x-coordinate of each instance.
+    */
+   private double [] x;
+   /**
+    *  The y-coordinate of each instance.
+    */
+   private double [] y;
+   /**
+    *  The temperature of each instance.
+    */
+   private double [] heat;
+   /**
+    *  True for each instance that the user has moved.
+    */
+   private boolean [] pinned;
+   /**
+    *  True for each instance that has not been moved by a step yet.
+    */
+   private boolean [] isNew;
+   /**
+    *  The first instance joined by each reference, or -1 if the
+    *  reference does not join two instances.
+    */
+   private int [] edgeFrom;
+   /**
+    *  The second instance joined by each reference.
+    */
+   private int [] edgeTo;
+   /**
+    *  The number of references.
+    */
+   private int numEdges;
+   /**
+    *  The length that a reference pulls towards.
+    */
+   private double spacing;
+   /**
+    *  The highest temperature of any instance.
+    */
+   private double maxHeat;
+   /**
+    *  True if the layout is being worked out.
+    */
+   private boolean isRunning;
+   /**
+    *  The positions most recently published.
+    */
+   private volatile Snapshot snapshot;
+
+   /**
+    *  The x-coordinates used by the current step.
+    */
+   private double [] stepX;
+   /**
+    *  The y-coordinates used by the current step.
+    */
+   private double [] stepY;
+   /**
+    *  The push on each instance along the x-axis in the current step.
+    */
+   private double [] forceX;
+   /**
+    *  The push on each instance along the y-axis in the current step.
+    */
+   private double [] forceY;
+   /**
+    *  The four children of each cell of the quadtree, or -1.
+    */
+   private int [] cellChildren;
+   /**
+    *  The instance in each leaf cell, or -1 for a cell that has children.
+    */
+   private int [] cellBody;
+   /**
+    *  The number of instances in each cell.
+    */
+   private double [] cellMass;
+   /**
+    *  The sum of the x-coordinates of the instances in each cell.
+    */
+   private double [] cellSumX;
+   /**
+    *  The sum of the y-coordinates of the instances in each cell.
+    */
+   private double [] cellSumY;
+   /**
+    *  Half the width of each cell.
+    */
+   private double [] cellHalf;
+   /**
+    *  The number of cells in the quadtree.
+    */
+   private int numCells;
+
+   /**
+    *  Constructor: creates an empty layout.
+    *
+    *  @param  layout  Lays the panel out when positions are published.
+    *  @param  spacing The length that a reference pulls towards.
+    */
+   public ForceLayout(Runnable layout,int spacing)
+   {
+      this.layout = layout;
+      this.spacing = spacing;
+      numNodes = 0;
+      x = new double[64];
+      y = new double[64];
+      heat = new double[64];
+      pinned = new boolean[64];
+      isNew = new boolean[64];
+      edgeFrom = new int[64];
+      edgeTo = new int[64];
+      numEdges = 0;
+      maxHeat = 0;
+      isRunning = false;
+      snapshot = null;
+      cellChildren = new int[256*4];
+      cellBody = new int[256];
+      cellMass = new double[256];
+      cellSumX = new double[256];
+      cellSumY = new double[256];
+      cellHalf = new double[256];
+      pool = new ForkJoinPool(Math.max(1,Runtime.getRuntime().availableProcessors()-1));
+   }
+
+   /**
+    *  Adds an instance. It starts on a spiral around the centre, so
+    *  instances that are not joined to others are spread evenly. If
+    *  a reference joins it to another instance before the next step,
+    *  it is moved next to that instance instead.
+    *
+    *  @return The number of the instance.
+    */
+   public synchronized int addNode()
+   {
+      if(numNodes==x.length)
+      {
+         x = Arrays.copyOf(x,numNodes*2);
+         y = Arrays.copyOf(y,numNodes*2);
+         heat = Arrays.copyOf(heat,numNodes*2);
+         pinned = Arrays.copyOf(pinned,numNodes*2);
+         isNew = Arrays.copyOf(isNew,numNodes*2);
+      }
+      double radius = spacing*Math.sqrt(numNodes);
+      double angle = numNodes*2.39996; // the golden angle
+      x[numNodes] = radius*Math.cos(angle);
+      y[numNodes] = radius*Math.sin(angle);
+      heat[numNodes] = spacing*2;
+      pinned[numNodes] = false;
+      isNew[numNodes] = true;
+      numNodes++;
+      wake(spacing*2);
+      return numNodes-1;
+   }
+
+   /**
+    *  Returns the number of instances.
+    *
+    *  @return The number of instances.
+    */
+   public synchronized int getNumNodes()
+   {
+      return numNodes;
+   }
+
+   /**
+    *  Sets the two instances joined by a reference.
+    *
+    *  @param  edge  The number of the reference.
+    *  @param  from  The instance that refers, or -1 if the
+    *                reference does not join two instances.
+    *  @param  to    The instance referred to.
+    */
+   public synchronized void setEdge(int edge,int from,int to)
+   {
+      if(edge>=edgeFrom.length)
+      {
+         int size = Math.max(edgeFrom.length*2,edge+1);
+         edgeFrom = Arrays.copyOf(edgeFrom,size);
+         edgeTo = Arrays.copyOf(edgeTo,size);
+      }
+      for(;numEdges<=edge;numEdges++)
+         edgeFrom[numEdges] = -1;
+      if(edgeFrom[edge]==from && edgeTo[edge]==to)
+         return;
+
+      edgeFrom[edge] = from;
+      edgeTo[edge] = to;
+      if(from>=0 && from<numNodes && to>=0 && to<numNodes) // heat the instances it joins
+      {
+         if(isNew[to])
+            placeNear(to,from);
+         else if(isNew[from])
+            placeNear(from,to);
+         heat[from] = Math.max(heat[from],spacing);
+         heat[to] = Math.max(heat[to],spacing);
+         wake(spacing);
+      }
+   }
+
+   /**
+    *  Moves a new instance next to another instance, in a
+    *  direction that depends on its number.
+    *  The caller holds the lock on the layout.
+    *
+    *  @param  node   The new instance.
+    *  @param  other  The other instance.
+    */
+   private void placeNear(int node,int other)
+   {
+      double angle = node*2.39996;
+      x[node] = x[other] + spacing*Math.cos(angle);
+      y[node] = y[other] + spacing*Math.sin(angle);
+      isNew[node] = false;
+   }
+
+   /**
+    *  Pins an instance to a position in a snapshot.
+    *
+    *  @param  node  The instance.
+    *  @param  px    The x-coordinate in the snapshot.
+    *  @param  py    The y-coordinate in the snapshot.
+    *  @param  from  The snapshot.
+    */
+   public synchronized void pin(int node,int px,int py,Snapshot from)
+   {
+      if(node>=numNodes)
+         return;
+      x[node] = px - from.originX;
+      y[node] = py - from.originY;
+      pinned[node] = true;
+      wake(spacing);
+   }
+
+   /**
+    *  Unpins every instance.
+    */
+   public synchronized void unpinAll()
+   {
+      for(int i=0;i<numNodes;i++)
+      {
+         if(pinned[i])
+         {
+            pinned[i] = false;
+            heat[i] = spacing;
+         }
+      }
+      wake(spacing);
+   }
+
+   /**
+    *  Sets the length that a reference pulls towards, and heats
+    *  every instance so that the layout spreads out or closes up.
+    *
+    *  @param  spacing  The new length.
+    */
+   public synchronized void setSpacing(int spacing)
+   {
+      this.spacing = spacing;
+      for(int i=0;i<numNodes;i++)
+         heat[i] = Math.max(heat[i],spacing);
+      wake(spacing);
+   }
+
+   /**
+    *  Starts or stops working out the layout. The positions
+    *  are kept while it is stopped.
+    *
+    *  @param  running  True to start, false to stop.
+    */
+   public synchronized void setRunning(boolean running)
+   {
+      isRunning = running;
+      if(running && thread==null)
+      {
+         thread = new Thread(this,"Instance layout");
+         thread.setDaemon(true);
+         thread.setPriority(Thread.MIN_PRIORITY);
+         thread.start();
+      }
+      notifyAll();
+   }
+
+   /**
+    *  Returns the positions most recently published.
+    *
+    *  @return The snapshot, or null if none has been published.
+    */
+   public Snapshot getSnapshot()
+   {
+      return snapshot;
+   }
+
+   /**
+    *  Starts the thread working if an instance is warm.
+    *  The caller holds the lock on the layout.
+    *
+    *  @param  temperature The temperature of the warmest changed instance.
+    */
+   private void wake(double temperature)
+   {
+      maxHeat = Math.max(maxHeat,temperature);
+      notifyAll();
+   }
+
+   /**
+    *  Takes steps while an instance is warm, publishing
+    *  snapshots as it goes, and waits when none are.
+    */
+   public void run()
+   {
+      long lastPublished = 0;
+      boolean isPublished = true;
+      try
+      {
+         while(true)
+         {
+            int n;
+            boolean isWarm;
+            synchronized(this)
+            {
+               while(!isRunning || (maxHeat<MIN_TEMPERATURE && isPublished))
+                  wait();
+               isWarm = maxHeat>=MIN_TEMPERATURE;
+               n = numNodes;
+               stepX = Arrays.copyOf(x,n);
+               stepY = Arrays.copyOf(y,n);
+            }
+
+            if(isWarm)
+            {
+               step(n);
+               isPublished = false;
+            }
+
+            boolean isCool;
+            synchronized(this)
+            {
+               isCool = maxHeat<MIN_TEMPERATURE;
+            }
+            long now = System.currentTimeMillis();
+            if(now - lastPublished >= PUBLISH_INTERVAL || isCool)
+            {
+               publish();
+               lastPublished = now;
+               isPublished = true;
+               RepaintScheduler.layOut(layout);
+            }
+         }
+      }
+      catch(InterruptedException e)
+      {
+         e.printStackTrace();
+      }
+   }
+
+   /**
+    *  Takes one step: works out the push and pull on each instance,
+    *  and moves each instance that is not pinned by them, no further
+    *  than its temperature.
+    *
+    *  @param  n  The number of instances in the step.
+    */
+   private void step(int n)
+   {
+      if(forceX==null || forceX.length<n)
+      {
+         forceX = new double[Math.max(n,64)*2];
+         forceY = new double[Math.max(n,64)*2];
+      }
+      buildTree(n);
+      pool.invoke(new PushTask(0,n));
+
+      int [] from;
+      int [] to;
+      int m;
+      double k;
+      synchronized(this)
+      {
+         from = edgeFrom;
+         to = edgeTo;
+         m = numEdges;
+         k = spacing;
+      }
+
+      // each reference pulls the instances it joins together
+      for(int e=0;e<m;e++)
+      {
+         int a = from[e];
+         int b = to[e];
+         if(a<0 || b<0 || a>=n || b>=n || a==b)
+            continue;
+         double dx = stepX[b] - stepX[a];
+         double dy = stepY[b] - stepY[a];
+         double d = Math.sqrt(dx*dx + dy*dy);
+         if(d==0)
+            continue;
+         double pull = d/k; // d*d/k along the unit vector dx/d
+         forceX[a] += dx*pull;
+         forceY[a] += dy*pull;
+         forceX[b] -= dx*pull;
+         forceY[b] -= dy*pull;
+      }
+
+      synchronized(this)
+      {
+         double hottest = 0;
+         for(int i=0;i<n;i++)
+         {
+            isNew[i] = false;
+            if(pinned[i] || heat[i]<MIN_TEMPERATURE)
+               continue;
+            double fx = forceX[i];
+            double fy = forceY[i];
+            double f = Math.sqrt(fx*fx + fy*fy);
+            if(f>0)
+            {
+               double move = Math.min(f,heat[i]);
+               x[i] += fx/f*move;
+               y[i] += fy/f*move;
+            }
+            heat[i] *= COOLING;
+            hottest = Math.max(hottest,heat[i]);
+         }
+         // instances added while the forces were worked out have not moved yet
+         for(int i=n;i<numNodes;i++)
+         {
+            if(!pinned[i])
+               hottest = Math.max(hottest,heat[i]);
+         }
+         maxHeat = hottest;
+      }
+   }
+
+   /**
+    *  Builds the quadtree of the positions in the current step.
+    *
+    *  @param  n  The number of instances.
+    */
+   private void buildTree(int n)
+   {
+      double minX = Double.MAX_VALUE;
+      double minY = Double.MAX_VALUE;
+      double maxX = -Double.MAX_VALUE;
+      double maxY = -Double.MAX_VALUE;
+      for(int i=0;i<n;i++)
+      {
+         minX = Math.min(minX,stepX[i]);
+         minY = Math.min(minY,stepY[i]);
+         maxX = Math.max(maxX,stepX[i]);
+         maxY = Math.max(maxY,stepY[i]);
+      }
+
+      numCells = 0;
+      if(n==0)
+         return;
+      double half = Math.max(maxX-minX,maxY-minY)/2 + 1;
+      newCell(0,half);
+      double rootX = (minX+maxX)/2;
+      double rootY = (minY+maxY)/2;
+
+      for(int i=1;i<n;i++)
+      {
+         int cell = 0;
+         double cx = rootX;
+         double cy = rootY;
+         for(int depth=0;;depth++)
+         {
+            int body = cellBody[cell];
+            if(body>=0) // a leaf
+            {
+               if(depth>=MAX_DEPTH || (stepX[body]==stepX[i] && stepY[body]==stepY[i]))
+               {
+                  addMass(cell,i); // they share the leaf
+                  break;
+               }
+               // the leaf has children, and its instance moves down to one of them
+               cellBody[cell] = -1;
+               int q = getQuadrant(body,cx,cy);
+               cellChildren[cell*4+q] = newCell(body,cellHalf[cell]/2);
+            }
+
+            addMass(cell,i);
+            int q = getQuadrant(i,cx,cy);
+            int child = cellChildren[cell*4+q];
+            double childHalf = cellHalf[cell]/2;
+            if(child<0)
+            {
+               cellChildren[cell*4+q] = newCell(i,childHalf);
+               break;
+            }
+            cell = child;
+            cx += (q&1)==0 ? -childHalf : childHalf;
+            cy += (q&2)==0 ? -childHalf : childHalf;
+         }
+      }
+   }
+
+   /**
+    *  Adds a cell to the quadtree.
+    *
+    *  @param  body  The instance in the cell.
+    *  @param  half  Half the width of the cell.
+    *  @return The number of the cell.
+    */
+   private int newCell(int body,double half)
+   {
+      if(numCells==cellBody.length)
+      {
+         int size = numCells*2;
+         cellChildren = Arrays.copyOf(cellChildren,size*4);
+         cellBody = Arrays.copyOf(cellBody,size);
+         cellMass = Arrays.copyOf(cellMass,size);
+         cellSumX = Arrays.copyOf(cellSumX,size);
+         cellSumY = Arrays.copyOf(cellSumY,size);
+         cellHalf = Arrays.copyOf(cellHalf,size);
+      }
+      int cell = numCells++;
+      Arrays.fill(cellChildren,cell*4,cell*4+4,-1);
+      cellHalf[cell] = half;
+      cellBody[cell] = body;
+      cellMass[cell] = 1;
+      cellSumX[cell] = stepX[body];
+      cellSumY[cell] = stepY[body];
+      return cell;
+   }
+
+   /**
+    *  Adds an instance to the mass of a cell.
+    *
+    *  @param  cell  The cell.
+    *  @param  i     The instance.
+    */
+   private void addMass(int cell,int i)
+   {
+      cellMass[cell]++;
+      cellSumX[cell] += stepX[i];
+      cellSumY[cell] += stepY[i];
+   }
+
+   /**
+    *  Returns the quadrant of a cell that an instance is in.
+    *
+    *  @param  i   The instance.
+    *  @param  cx  The x-coordinate of the centre of the cell.
+    *  @param  cy  The y-coordinate of the centre of the cell.
+    *  @return The quadrant, from 0 to 3.
+    */
+   private int getQuadrant(int i,double cx,double cy)
+   {
+      return (stepX[i]<cx ? 0 : 1) + (stepY[i]<cy ? 0 : 2);
+   }
+
+   /**
+    *  Publishes the current positions, moved so that the
+    *  top left instance is 10 pixels from the corner.
+    */
+   private synchronized void publish()
+   {
+      double minX = 0;
+      double minY = 0;
+      if(numNodes>0)
+      {
+         minX = Double.MAX_VALUE;
+         minY = Double.MAX_VALUE;
+      }
+      for(int i=0;i<numNodes;i++)
+      {
+         minX = Math.min(minX,x[i]);
+         minY = Math.min(minY,y[i]);
+      }
+
+      Snapshot next = new Snapshot();
+      next.originX = 10 - (int)Math.floor(minX);
+      next.originY = 10 - (int)Math.floor(minY);
+      next.x = new int[numNodes];
+      next.y = new int[numNodes];
+      for(int i=0;i<numNodes;i++)
+      {
+         next.x[i] = (int)Math.round(x[i]) + next.originX;
+         next.y[i] = (int)Math.round(y[i]) + next.originY;
+      }
+      Snapshot last = snapshot;
+      next.version = last==null ? 1 : last.version+1;
+      snapshot = next;
+   }
+
+   /**
+    *  This class holds the positions of the instances at one time.
+    */
+   public static class Snapshot
+   {
+      /**
+       *  The number of the snapshot. Each is one more than the last.
+       */
+      private int version;
+      /**
+       *  The x-coordinate of each instance.
+       */
+      private int [] x;
+      /**
+       *  The y-coordinate of each instance.
+       */
+      private int [] y;
+      /**
+       *  Added to the layout's x-coordinates to give the snapshot's.
+       */
+      private int originX;
+      /**
+       *  Added to the layout's y-coordinates to give the snapshot's.
+       */
+      private int originY;
+
+      /**
+       *  Returns the number of the snapshot.
+       *
+       *  @return The number.
+       */
+      public int getVersion()
+      {
+         return version;
+      }
+
+      /**
+       *  Returns the number of instances in the snapshot.
+       *
+       *  @return The number of instances.
+       */
+      public int getNumNodes()
+      {
+         return x.length;
+      }
+
+      /**
+       *  Returns the x-coordinate of an instance.
+       *
+       *  @param  i  The instance.
+       *  @return The x-coordinate.
+       */
+      public int getX(int i)
+      {
+         return x[i];
+      }
+
+      /**
+       *  Returns the y-coordinate of an instance.
+       *
+       *  @param  i  The instance.
+       *  @return The y-coordinate.
+       */
+      public int getY(int i)
+      {
+         return y[i];
+      }
+   }
+
+   /**
+    *  This class works out the pushes on a range of instances,
+    *  splitting the range between tasks if it is large.
+    */
+   private class PushTask extends RecursiveAction
+   {
+      /**
+       *  The first instance in the range.
+       */
+      private int first;
+      /**
+       *  One past the last instance in the range.
+       */
+      private int last;
+
+      /**
+       *  Constructor: creates a task for a range of instances.
+       *
+       *  @param  first The first instance.
+       *  @param  last  One past the last instance.
+       */
+      public PushTask(int first,int last)
+      {
+         this.first = first;
+         this.last = last;
+      }
+
+      /**
+       *  Works out the pushes on the instances in the range.
+       */
+      protected void compute()
+      {
+         if(last - first > GRAIN)
+         {
+            int mid = (first + last) >>> 1;
+            invokeAll(new PushTask(first,mid),new PushTask(mid,last));
+            return;
+         }
+
+         double k2 = spacing*spacing;
+         int [] stack = new int[4*MAX_DEPTH+4];
+         for(int i=first;i<last;i++)
+         {
+            double px = stepX[i];
+            double py = stepY[i];
+            double fx = -GRAVITY*px;
+            double fy = -GRAVITY*py;
+
+            int top = 0;
+            if(numCells>0)
+               stack[top++] = 0;
+            while(top>0)
+            {
+               int cell = stack[--top];
+               double mass = cellMass[cell];
+               if(cellBody[cell]==i && mass==1)
+                  continue;
+               double dx = px - cellSumX[cell]/mass;
+               double dy = py - cellSumY[cell]/mass;
+               double d2 = dx*dx + dy*dy;
+               boolean isLeaf = cellBody[cell]>=0;
+               if(isLeaf || 4*cellHalf[cell]*cellHalf[cell] < THETA*THETA*d2)
+               {
+                  if(d2==0) // instances at the same position are pushed apart in different directions
+                  {
+                     mass--; // it shares the leaf, so is pushed only by the others
+                     dx = Math.cos(i*2.39996);
+                     dy = Math.sin(i*2.39996);
+                     d2 = 1;
+                  }
+                  double push = k2*mass/d2; // k*k/d along the unit vector dx/d
+                  fx += dx*push;
+                  fy += dy*push;
+               }
+               else
+               {
+                  for(int q=0;q<4;q++)
+                  {
+                     int child = cellChildren[cell*4+q];
+                     if(child>=0)
+                        stack[top++] = child;
+                  }
+               }
+            }
+            forceX[i] = fx;
+            forceY[i] = fy;
+         }
+      }
+   }
+}
@@ -0,0 +1,274 @@
+package ObjectTracker;
+
+import java.util.*;
+
+/**
+ *  This class finds the items drawn in a part of a panel without
+ *  looking at every item. The panel is divided into square cells,
+ *  and each item is listed in the cells that its bounding rectangle
+ *  covers, so a rectangle is searched by looking only at the items
+ *  listed in the cells it covers. Items are numbered from 0, and the
+ *  index keeps the rectangle each item was put in with so it can be
+ *  moved or removed.
+ *  <p>
+ *  An item that covers very many cells, such as a long connection
+ *  line, is kept in a separate list that every search looks at,
+ *  rather than being listed in each of its cells.
+ *
+ *  @author  Eoin O'Connor
+ *  @see InstanceTrackerPanel
+ *  @see LongMap
+ */
+public class GridIndex
+{
+   /**
+    *  The most cells an item is listed in.
+    */
+   private static final int MAX_CELLS = 64;
+
+   /**
+    *  The size of a cell is 2 to the power of this.
+    */
+   private int shift;
+   /**
+    *  The items in each cell, keyed by the cell's column and row.
+    *  The first element of each array is the number of items.
+    */
+   private LongMap cells;
+   /**
+    *  The x, y, width and height of the rectangle of each item.
+    */
+   private int [] rects;
+   /**
+    *  True for each item that is in the index.
+    */
+   private boolean [] isIndexed;
+   /**
+    *  The items that cover more than MAX_CELLS cells.
+    */
+   private int [] largeItems;
+   /**
+    *  The number of items that cover more than MAX_CELLS cells.
+    */
+   private int numLargeItems;
+   /**
+    *  The number of the last search that found each item, so
+    *  an item listed in several cells is only found once.
+    */
+   private int [] marks;
+   /**
+    *  The number of the current search.
+    */
+   private int mark;
+
+   /**
+    *  Constructor: creates an empty index.
+    *
+    *  @param  shift The size of a cell is 2 to the power of this.
+    */
+   public GridIndex(int shift)
+   {
+      this.shift = shift;
+      cells = new LongMap();
+      rects = new int[64*4];
+      isIndexed = new boolean[64];
+      largeItems = new int[16];
+      numLargeItems = 0;
+      marks = new int[64];
+      mark = 0;
+   }
+
+   /**
+    *  Puts an item in the index, or moves it if it is already in it.
+    *
+    *  @param  item   The item number.
+    *  @param  x      The x-coordinate of the item's rectangle.
+    *  @param  y      The y-coordinate of the item's rectangle.
+    *  @param  width  The width of the item's rectangle.
+    *  @param  height The height of the item's rectangle.
+    */
+   public void put(int item,int x,int y,int width,int height)
+   {
+      if(item>=isIndexed.length)
+      {
+         int size = Math.max(isIndexed.length*2,item+1);
+         rects = Arrays.copyOf(rects,size*4);
+         isIndexed = Arrays.copyOf(isIndexed,size);
+         marks = Arrays.copyOf(marks,size);
+      }
+      if(isIndexed[item])
+         remove(item);
+
+      rects[item*4] = x;
+      rects[item*4+1] = y;
+      rects[item*4+2] = width;
+      rects[item*4+3] = height;
+      isIndexed[item] = true;
+
+      int col0 = x >> shift;
+      int row0 = y >> shift;
+      int col1 = (x + Math.max(width,1) - 1) >> shift;
+      int row1 = (y + Math.max(height,1) - 1) >> shift;
+      if((long)(col1-col0+1)*(row1-row0+1) > MAX_CELLS)
+      {
+         if(numLargeItems==largeItems.length)
+            largeItems = Arrays.copyOf(largeItems,largeItems.length*2);
+         largeItems[numLargeItems++] = item;
+         return;
+      }
+
+      for(int col=col0;col<=col1;col++)
+      {
+         for(int row=row0;row<=row1;row++)
+         {
+            long key = getKey(col,row);
+            int [] cell = (int [])cells.get(key);
+            if(cell==null)
+               cell = new int[4];
+            else if(cell[0]+1==cell.length)
+               cell = Arrays.copyOf(cell,cell.length*2);
+            cell[0]++;
+            cell[cell[0]] = item;
+            cells.put(key,cell);
+         }
+      }
+   }
+
+   /**
+    *  Removes an item from the index.
+    *
+    *  @param  item   The item number.
+    */
+   public void remove(int item)
+   {
+      if(item>=isIndexed.length || !isIndexed[item])
+         return;
+      isIndexed[item] = false;
+
+      int x = rects[item*4];
+      int y = rects[item*4+1];
+      int col0 = x >> shift;
+      int row0 = y >> shift;
+      int col1 = (x + Math.max(rects[item*4+2],1) - 1) >> shift;
+      int row1 = (y + Math.max(rects[item*4+3],1) - 1) >> shift;
+      if((long)(col1-col0+1)*(row1-row0+1) > MAX_CELLS)
+      {
+         for(int i=0;i<numLargeItems;i++)
+         {
+            if(largeItems[i]==item)
+            {
+               largeItems[i] = largeItems[--numLargeItems];
+               return;
+            }
+         }
+         return;
+      }
+
+      for(int col=col0;col<=col1;col++)
+      {
+         for(int row=row0;row<=row1;row++)
+         {
+            long key = getKey(col,row);
+            int [] cell = (int [])cells.get(key);
+            if(cell==null)
+               continue;
+            for(int i=1;i<=cell[0];i++)
+            {
+               if(cell[i]==item)
+               {
+                  cell[i] = cell[cell[0]];
+                  cell[0]--;
+                  break;
+               }
+            }
+            if(cell[0]==0)
+               cells.remove(key);
+         }
+      }
+   }
+
+   /**
+    *  Returns the items whose cells overlap a rectangle, in order of
+    *  their numbers. Some of them may lie just outside the rectangle.
+    *
+    *  @param  x      The x-coordinate of the rectangle.
+    *  @param  y      The y-coordinate of the rectangle.
+    *  @param  width  The width of the rectangle.
+    *  @param  height The height of the rectangle.
+    *  @return The item numbers.
+    */
+   public int [] find(int x,int y,int width,int height)
+   {
+      mark++;
+      if(mark==0) // the search numbers have wrapped around
+      {
+         Arrays.fill(marks,0);
+         mark = 1;
+      }
+
+      int [] found = new int[16];
+      int numFound = 0;
+      int col0 = x >> shift;
+      int row0 = y >> shift;
+      int col1 = (x + Math.max(width,1) - 1) >> shift;
+      int row1 = (y + Math.max(height,1) - 1) >> shift;
+      for(int col=col0;col<=col1;col++)
+      {
+         for(int row=row0;row<=row1;row++)
+         {
+            int [] cell = (int [])cells.get(getKey(col,row));
+            if(cell==null)
+               continue;
+            for(int i=1;i<=cell[0];i++)
+            {
+               int item = cell[i];
+               if(marks[item]!=mark)
+               {
+                  marks[item] = mark;
+                  if(numFound==found.length)
+                     found = Arrays.copyOf(found,found.length*2);
+                  found[numFound++] = item;
+               }
+            }
+         }
+      }
+
+      for(int i=0;i<numLargeItems;i++)
+      {
+         int item = largeItems[i];
+         if(x < rects[item*4]+rects[item*4+2] && rects[item*4] < x+width
+            && y < rects[item*4+1]+rects[item*4+3] && rects[item*4+1] < y+height)
+         {
+            if(numFound==found.length)
+               found = Arrays.copyOf(found,found.length*2);
+            found[numFound++] = item;
+         }
+      }
+
+      found = Arrays.copyOf(found,numFound);
+      Arrays.sort(found);
+      return found;
+   }
+
+   /**
+    *  Removes every item from the index.
+    */
+   public void clear()
+   {
+      cells.clear();
+      Arrays.fill(isIndexed,false);
+      numLargeItems = 0;
+   }
+
+   /**
+    *  Returns the key of a cell.
+    *
+    *  @param  col   The column of the cell.
+    *  @param  row   The row of the cell.
+    *  @return The key.
+    */
+   private static long getKey(int col,int row)
+   {
+      return ((long)col << 32) | (row & 0xFFFFFFFFL);
+   }
+}
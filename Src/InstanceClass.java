@@ -54,6 +54,11 @@ public class InstanceClass implements Comparable
     *  True if the user has moved this instance.
     */
    private boolean wasMoved;
+   /**
+    *  The position of the instance in the
+    *  InstanceTrackerPanel's list.
+    */
+   private int index;
 
    /**
     *  Constructor: Creates a new InstanceClass.
@@ -73,6 +78,7 @@ public class InstanceClass implements Comparable
       height = 0;
       showLines = true;
       wasMoved = false;
+      index = -1;
    }
 
    /**
@@ -138,6 +144,24 @@ public class InstanceClass implements Comparable
       return (FieldClass)fields.get(n);
    }
 
+   /**
+    *  Returns the field with the same name as another field.
+    *
+    *  @param  field The other field.
+    *  @return The field, or null if the instance has no
+    *          field with that name.
+    */
+   public FieldClass getField(FieldClass field)
+   {
+      for(int i=0;i<numFields;i++)
+      {
+         FieldClass current = (FieldClass)fields.get(i);
+         if(current.equals(field))
+            return current;
+      }
+      return null;
+   }
+
    /**
     *  Returns true if the instance equals obj.
     *
@@ -357,4 +381,26 @@ public class InstanceClass implements Comparable
    {
       return wasMoved;
    }
-}
\ No newline at end of file
+
+   /**
+    *  Sets the position of the instance in the
+    *  InstanceTrackerPanel's list.
+    *
+    *  @param  n  The new position.
+    */
+   public void setIndex(int n)
+   {
+      index = n;
+   }
+
+   /**
+    *  Returns the position of the instance in the
+    *  InstanceTrackerPanel's list.
+    *
+    *  @return The position, or -1 if it is not in the list.
+    */
+   public int getIndex()
+   {
+      return index;
+   }
+}
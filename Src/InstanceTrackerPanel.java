@@ -61,6 +61,16 @@ public class InstanceTrackerPanel extends JPanel
     *  The number of instances.
     */
    private int numInstances;
+   /**
+    *  The instances, keyed by their unique ID numbers.
+    */
+   private LongMap instanceMap;
+   /**
+    *  The first of the fields that refer to each object,
+    *  keyed by the object's unique ID number. The rest are
+    *  linked from it through the fields.
+    */
+   private LongMap referenceMap;
    /**
     *  The list of colours to use.
     */
@@ -90,6 +100,81 @@ public class InstanceTrackerPanel extends JPanel
     *  Used to reduce the distance between instances.
     */
    private JMenuItem reduceMenuItem;
+   /**
+    *  True if the layout of every instance has to be worked out again.
+    */
+   private boolean isLayoutInvalid;
+   /**
+    *  The number of instances at the front of the list that
+    *  have been placed by the layout.
+    */
+   private int numPlaced;
+   /**
+    *  The positions in the list of the placed instances whose
+    *  fields have changed since the layout was worked out.
+    */
+   private int [] changed;
+   /**
+    *  The number of placed instances whose fields have changed.
+    */
+   private int numChanged;
+   /**
+    *  True for each placed instance whose fields have changed.
+    */
+   private boolean [] isChanged;
+   /**
+    *  The width of the column of each instance in the linear view.
+    */
+   private int [] columnWidths;
+   /**
+    *  The most fields that an instance has.
+    */
+   private int maxNumFields;
+   /**
+    *  Works out the positions of the instances in the graph
+    *  view on a thread of its own.
+    */
+   private ForceLayout forceLayout;
+   /**
+    *  Works out the layout and sizes the panel at the start of
+    *  a frame, after the instances or the view have changed.
+    */
+   private Runnable layoutTask;
+   /**
+    *  The snapshot of the force layout that the graph view
+    *  shows, or null if it shows none.
+    */
+   private ForceLayout.Snapshot layoutSnapshot;
+   /**
+    *  The number of instances at the front of the list that
+    *  have a position in the graph view.
+    */
+   private int numPositioned;
+   /**
+    *  The rectangles of the instances in the graph view,
+    *  numbered by their positions in the list.
+    */
+   private GridIndex instanceGrid;
+   /**
+    *  The connection lines that are drawn.
+    */
+   private GridIndex lineGrid;
+   /**
+    *  The field of each connection line.
+    */
+   private FieldClass [] lineFields;
+   /**
+    *  The instance that has the field of each connection line.
+    */
+   private InstanceClass [] lineOwners;
+   /**
+    *  The x and y-coordinates of the two ends of each connection line.
+    */
+   private int [] lineCoords;
+   /**
+    *  The number of connection lines.
+    */
+   private int numLines;
 
    /**
     *  Constructor: initializes the panel and sets
@@ -109,6 +194,8 @@ public class InstanceTrackerPanel extends JPanel
       infoField = info;
       infoField.setText("Number of instances: " + numInstances);
       instances = new ArrayList();
+      instanceMap = new LongMap();
+      referenceMap = new LongMap();
       numInstances = 0;
       showLines = true;
       MouseClickListener listener = new MouseClickListener();
@@ -116,6 +203,32 @@ public class InstanceTrackerPanel extends JPanel
       showLinear = true;
       spaceWidth = 30;
       spaceHeight = 60;
+      isLayoutInvalid = true;
+      numPlaced = 0;
+      changed = new int[64];
+      numChanged = 0;
+      isChanged = new boolean[64];
+      columnWidths = new int[64];
+      instanceGrid = new GridIndex(8);
+      lineGrid = new GridIndex(8);
+      lineFields = new FieldClass[64];
+      lineOwners = new InstanceClass[64];
+      lineCoords = new int[64*4];
+      numLines = 0;
+      layoutTask = new Runnable()
+      {
+         public void run()
+         {
+            synchronized(instances)
+            {
+               layoutInstances();
+            }
+            RepaintScheduler.repaint(InstanceTrackerPanel.this);
+         }
+      };
+      forceLayout = new ForceLayout(layoutTask,spaceHeight);
+      layoutSnapshot = null;
+      numPositioned = 0;
 
       renderHints =  new RenderingHints(RenderingHints.KEY_COLOR_RENDERING,RenderingHints.VALUE_COLOR_RENDER_SPEED);
       renderHints.put(RenderingHints.KEY_TEXT_ANTIALIASING,RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
@@ -127,11 +240,13 @@ public class InstanceTrackerPanel extends JPanel
    }
 
    /**
-    *  Paints the panel. Draws the list of instances.
-    *  Draws the fields belonging to each instance.
-    *  Draws connection lines between references and
-    *  instances. Uses the linear view if showLinear
-    *  is true. Otherwise it uses the graph view.
+    *  Paints the panel. Draws the instances, the fields belonging
+    *  to each instance, and the connection lines between references
+    *  and instances. Uses the linear view if showLinear is true.
+    *  Otherwise it uses the graph view. The layout is only read
+    *  here; it is worked out by the layout task at the start of the
+    *  frame. Only the instances, fields and lines that lie in the
+    *  part of the panel being painted are looked at.
     *
     *  @param  g  Used to draw the graphics.
     */
@@ -142,328 +257,524 @@ public class InstanceTrackerPanel extends JPanel
       g2.setRenderingHints(renderHints);
       g2.setFont(new Font("Courier new",0,12)); // the Courier New chars are about 7 pixels wide
 
-      if(showLinear) // display the instance information linearly
+      Rectangle rect = g.getClipBounds(); // the part of the panel being painted
+      if(rect==null)
+         rect = getVisibleRect();
+
+      synchronized(instances)
       {
-         try
+         if(showLinear) // display the instance information linearly
          {
-            int width = 10;
-            InstanceClass instance;
-            ListIterator fieldIt;
-            FieldClass field;
-            Rectangle rect; // visible part of the panel
-            InstanceClass fieldInstance;
-            int instanceWidth,instanceHeight;
-
-            // for each instance
-            ListIterator instanceIt = instances.listIterator();
-            while(instanceIt.hasNext())
+            int right = rect.x + rect.width;
+            int bottom = rect.y + rect.height;
+            int step = spaceHeight + 15; // the distance between fields
+            for(int i=getFirstColumn(rect.x);i<numPlaced;i++)
             {
-               rect = getVisibleRect(); // visible part of the panel
+               InstanceClass instance = (InstanceClass)instances.get(i);
+               int width = instance.getWidth();
+               if(width >= right)
+                  break;
 
                // draw the instance
-               int height = 10;
-               instance = (InstanceClass)instanceIt.next();
-               String instanceName = instance.getName() + " " + instance.getIDNum();
-               int biggestWidth = width + (instanceName.length()*7)+10;
-               instance.setWidth(width);
-               instance.setHeight(height);
-
-               // only display the instance if it is visible
-               if(width>rect.getX()-(instanceName.length()*7)-50 && width<rect.getWidth()+rect.getX()+50)
+               if(rect.y < instance.getHeight()+16)
+                  drawBox(instance.toString(),width,instance.getHeight(),instance.getColour());
+
+               // draw the type, name and value of each field that is visible
+               ArrayList fieldList = instance.getFields();
+               int numFields = fieldList.size();
+               for(int k=Math.max(0,(rect.y-30-(20+2*spaceHeight))/step);k<numFields;k++)
                {
-                  g2.draw(new Rectangle(width,height,(instanceName.length()*7)+10,15));
-                  g2.setPaint(instance.getColour());
-                  g2.fill(new Rectangle(width+1,height+1,(instanceName.length()*7)+9,14));
-                  if(isDark(instance.getColour()))
-                     g2.setPaint(Color.white);
+                  FieldClass field = (FieldClass)fieldList.get(k);
+                  int height = field.getHeight();
+                  if(height >= bottom)
+                     break;
+                  if(height+31 <= rect.y)
+                     continue;
+
+                  drawBox(field.getType() + " " + field.getName(),width,height,field.getColour());
+                  if(field.getIsInstance()) // if the value is an instance
+                     drawBox(field.getValue().toString(),width,height+15,((InstanceClass)field.getValue()).getColour());
                   else
-                     g2.setPaint(Color.black);
-                  g2.drawString(instanceName,width+5,height+12);
-                  g2.setPaint(Color.black);
+                     drawBox(field.getValue().toString(),width,height+15,null);
                }
+            }
+         }
+         else // display the instance information as a graph
+         {
+            int [] found = instanceGrid.find(rect.x,rect.y,rect.width,rect.height);
+            for(int i=0;i<found.length;i++)
+            {
+               InstanceClass instance = (InstanceClass)instances.get(found[i]);
+               drawBox(instance.toString(),instance.getWidth(),instance.getHeight(),instance.getColour());
+            }
+         }
 
-               height = 20 + spaceHeight;
-
-               // for each field in the instance
-               ArrayList fieldList = instance.getFields();
-               fieldIt = fieldList.listIterator();
-               while(fieldIt.hasNext())
-               {
-                  // draw the field type and name
-                  field = (FieldClass)fieldIt.next();
-                  height += spaceHeight;
-                  String fieldString = field.getType() + " " + field.getName();
-                  if(biggestWidth < width + (fieldString.length()*7)+10)
-                     biggestWidth = width + (fieldString.length()*7)+10;
-                  field.setWidth(width);
-                  field.setHeight(height);
-
-                  // only display the field if it is visible
-                  if(width>rect.getX()-(fieldString.length()*7)-50 && width<rect.getWidth()+rect.getX()+50)
-                  {
-                     g2.draw(new Rectangle(width,height,(fieldString.length()*7)+10,15));
-                     g2.setPaint(field.getColour());
-                     g2.fill(new Rectangle(width+1,height+1,(fieldString.length()*7)+9,14));
-                     if(isDark(field.getColour()))
-                        g2.setPaint(Color.white);
-                     else
-                        g2.setPaint(Color.black);
-                     g2.drawString(fieldString,width+5,height+12);
-                     g2.setPaint(Color.black);
-                  }
+         // draw the connection lines that cross the part being painted
+         int [] found = lineGrid.find(rect.x,rect.y,rect.width,rect.height);
+         for(int i=0;i<found.length;i++)
+         {
+            int line = found[i];
+            InstanceClass shownBy;
+            if(showLinear) // lines are shown by the instance referred to
+               shownBy = (InstanceClass)lineFields[line].getValue();
+            else // lines are shown by the instance that refers
+               shownBy = lineOwners[line];
+            if(shownBy.getShowLines())
+               g2.drawLine(lineCoords[line*4],lineCoords[line*4+1],lineCoords[line*4+2],lineCoords[line*4+3]);
+         }
+      }
+   }
 
-                  // draw the field value
-                  height += 15;
-                  String fieldValue = field.getValue().toString();
-                  if(biggestWidth < width + (fieldValue.length()*7)+10)
-                     biggestWidth = width + (fieldValue.length()*7)+10;
+   /**
+    *  Draws a box with some text in it.
+    *
+    *  @param  text   The text.
+    *  @param  x      The x-coordinate of the box.
+    *  @param  y      The y-coordinate of the box.
+    *  @param  colour The colour to fill the box with, or null to
+    *                 leave it empty.
+    */
+   private void drawBox(String text,int x,int y,Color colour)
+   {
+      g2.draw(new Rectangle(x,y,(text.length()*7)+10,15));
+      if(colour!=null)
+      {
+         g2.setPaint(colour);
+         g2.fill(new Rectangle(x+1,y+1,(text.length()*7)+9,14));
+         if(isDark(colour))
+            g2.setPaint(Color.white);
+         else
+            g2.setPaint(Color.black);
+      }
+      g2.drawString(text,x+5,y+12);
+      g2.setPaint(Color.black);
+   }
 
-                  if(field.getIsInstance() && !fieldValue.equals("null")) // if the value is an instance
-                  {
-                     Color instanceColour = ((InstanceClass)(field.getValue())).getColour();
+   /**
+    *  Works out the positions of the instances and fields that
+    *  have been added or changed since it was last called, and
+    *  of the instances that they move. If the panel's size
+    *  changes, it is laid out again in the next frame. The
+    *  caller holds the lock on the list of instances.
+    */
+   private void layoutInstances()
+   {
+      int n = instances.size();
+      if(isLayoutInvalid) // place every instance again
+      {
+         isLayoutInvalid = false;
+         for(int c=0;c<numChanged;c++)
+            isChanged[changed[c]] = false;
+         numChanged = 0;
+         numPlaced = 0;
+         maxNumFields = 0;
+         instanceGrid.clear();
+         lineGrid.clear();
+         panelWidth = 0;
+         panelHeight = 0;
+         layoutSnapshot = null;
+         numPositioned = 0;
+      }
 
-                     // only display the field value if it is visible
-                     if(width>rect.getX()-(fieldValue.length()*7)-50 && width<rect.getWidth()+rect.getX()+50)
-                     {
-                        g2.draw(new Rectangle(width,height,(fieldValue.length()*7)+10,15));
-                        g2.setPaint(instanceColour);
-                        g2.fill(new Rectangle(width+1,height+1,(fieldValue.length()*7)+9,14));
-                        if(isDark(instanceColour))
-                           g2.setPaint(Color.white);
-                        else
-                           g2.setPaint(Color.black);
-                        g2.drawString(fieldValue,width+5,height+12);
-                        g2.setPaint(Color.black);
-                     }
+      if(n > columnWidths.length)
+      {
+         int size = Math.max(columnWidths.length*2,n);
+         columnWidths = Arrays.copyOf(columnWidths,size);
+         isChanged = Arrays.copyOf(isChanged,size);
+      }
 
-                     // draw a line from this field value to its instance
-                     fieldInstance = (InstanceClass)(field.getValue());
-                     if(fieldInstance.getShowLines())
-                     {
-                        instanceWidth = fieldInstance.getWidth()+(int)(fieldInstance.toString().length()*3.5)+5;
-                        instanceHeight = fieldInstance.getHeight()+15;
-                        if(instanceWidth!=0 && instanceHeight!=0)
-                           g2.drawLine(width+(int)(fieldValue.length()*3.5)+5,height,instanceWidth,instanceHeight);
-                     }
+      if(showLinear)
+         layoutLinear(n);
+      else
+      {
+         // new instances are given to the force layout first, so one
+         // referred to by a changed instance starts next to it
+         for(int i=forceLayout.getNumNodes();i<n;i++)
+            forceLayout.addNode();
+         // only the lines from a changed instance move
+         for(int c=0;c<numChanged;c++)
+         {
+            isChanged[changed[c]] = false;
+            placeFieldLines((InstanceClass)instances.get(changed[c]));
+         }
+         numChanged = 0;
+         for(int i=numPlaced;i<n;i++)
+            placeFieldLines((InstanceClass)instances.get(i));
+         numPlaced = n;
+         applySnapshot();
+      }
 
-                  }
-                  else // if the value is a primitive type
-                  {
-                     // only display the field value if it is visible
-                     if(width>rect.getX()-(fieldValue.length()*7)-50 && width<rect.getWidth()+rect.getX()+50)
-                     {
-                        g2.draw(new Rectangle(width,height,(fieldValue.length()*7)+10,15));
-                        g2.drawString(fieldValue,width+5,height+12);
-                     }
-                  }
+      Dimension size = getPreferredSize();
+      if(size.width!=panelWidth || size.height!=panelHeight)
+      {
+         setPreferredSize(new Dimension(panelWidth,panelHeight));
+         RepaintScheduler.revalidate(this);
+      }
+   }
 
-                  // adjust the height of the panel if out of bounds
-                  if(panelHeight < height)
-                  {
-                     panelHeight = height+30;
-                     setPreferredSize(new Dimension(panelWidth,panelHeight));
-                     revalidate();
-                  }
-               }
+   /**
+    *  Works out the positions of the instances in the linear view.
+    *  Each instance has a column as wide as its widest field, so
+    *  the columns after an instance only move when its width changes.
+    *
+    *  @param  n  The number of instances.
+    */
+   private void layoutLinear(int n)
+   {
+      int firstMoved = numPlaced; // the first column that may have moved
+      for(int c=0;c<numChanged;c++)
+      {
+         int i = changed[c];
+         isChanged[i] = false;
+         InstanceClass instance = (InstanceClass)instances.get(i);
+         if(measureColumn(instance))
+            firstMoved = Math.min(firstMoved,i+1);
+         placeFields(instance);
+      }
+      numChanged = 0;
 
-               width = biggestWidth + spaceWidth;
+      int oldNumPlaced = numPlaced;
+      numPlaced = n;
+      for(int i=oldNumPlaced;i<n;i++)
+         measureColumn((InstanceClass)instances.get(i));
 
-               // adjust the width of the panel if out of bounds
-               if(panelWidth < width)
-               {
-                  panelWidth = width+10;
-                  setPreferredSize(new Dimension(panelWidth,panelHeight));
-                  revalidate();
-               }
-            }
-         }
-         catch(ConcurrentModificationException e)
+      for(int i=firstMoved;i<n;i++)
+      {
+         InstanceClass instance = (InstanceClass)instances.get(i);
+         int width = 10;
+         if(i>0)
+            width = ((InstanceClass)instances.get(i-1)).getWidth() + columnWidths[i-1] + spaceWidth;
+         if(i>=oldNumPlaced || width!=instance.getWidth())
          {
-            e.printStackTrace();
-            return;
+            instance.setWidth(width);
+            instance.setHeight(10);
+            placeFields(instance);
+            placeLinesTo(instance);
          }
       }
-      else // display the instance information as a graph
+
+      if(n>0)
+         panelWidth = ((InstanceClass)instances.get(n-1)).getWidth() + columnWidths[n-1] + spaceWidth + 10;
+      if(maxNumFields>0)
+         panelHeight = 20 + spaceHeight + maxNumFields*(spaceHeight+15) + 30;
+   }
+
+   /**
+    *  Works out the width of an instance's column in the linear view.
+    *
+    *  @param  instance The instance.
+    *  @return True if the width has changed.
+    */
+   private boolean measureColumn(InstanceClass instance)
+   {
+      int biggestWidth = (instance.toString().length()*7)+10;
+      ArrayList fieldList = instance.getFields();
+      int numFields = fieldList.size();
+      for(int k=0;k<numFields;k++)
       {
-         try
-         {
-            int width = 10;
-            int height = 10;
-            int numRows = (int)Math.sqrt((double)numInstances);
-            int rowCount = 0;
-            int biggestWidth = 0;
-            int colCount = 0;
-            InstanceClass instance,fieldInstance;
-            ListIterator fieldIt;
-            FieldClass field;
-            String fieldValue;
-            int instanceWidth,instanceHeight;
-            Rectangle rect; // visible part of the panel
-
-            // for each instance
-            ListIterator instanceIt = instances.listIterator();
-            while(instanceIt.hasNext())
-            {
-               rect = getVisibleRect(); // visible part of the panel
-               // store original width and height
-               int tempWidth = width;
-               int tempHeight = height;
+         FieldClass field = (FieldClass)fieldList.get(k);
+         int fieldWidth = ((field.getType().length()+field.getName().length()+1)*7)+10;
+         int valueWidth = (field.getValue().toString().length()*7)+10;
+         biggestWidth = Math.max(biggestWidth,Math.max(fieldWidth,valueWidth));
+      }
+      maxNumFields = Math.max(maxNumFields,numFields);
 
-               // draw the instance
-               instance = (InstanceClass)instanceIt.next();
+      int i = instance.getIndex();
+      boolean hasChanged = biggestWidth!=columnWidths[i];
+      columnWidths[i] = biggestWidth;
+      return hasChanged;
+   }
 
-               // if the instance moved use its new width and height
-               if(instance.getWasMoved())
-               {
-                  width = instance.getWidth();
-                  height = instance.getHeight();
-               }
+   /**
+    *  Places the fields of an instance below it in the linear view,
+    *  and their connection lines.
+    *
+    *  @param  instance The instance.
+    */
+   private void placeFields(InstanceClass instance)
+   {
+      int height = 20 + spaceHeight;
+      ArrayList fieldList = instance.getFields();
+      int numFields = fieldList.size();
+      for(int k=0;k<numFields;k++)
+      {
+         FieldClass field = (FieldClass)fieldList.get(k);
+         height += spaceHeight;
+         field.setWidth(instance.getWidth());
+         field.setHeight(height);
+         height += 15;
+         placeLine(field,instance);
+      }
+   }
 
-               String instanceName = instance.getName() + " " + instance.getIDNum();
-               instance.setWidth(width);
-               instance.setHeight(height);
+   /**
+    *  Moves the instances in the graph view to the positions in
+    *  the latest snapshot of the force layout, if it has published
+    *  one since the last call. Only the instances that have moved,
+    *  and their connection lines, are placed again. The caller
+    *  holds the lock on the list of instances.
+    */
+   private void applySnapshot()
+   {
+      ForceLayout.Snapshot snapshot = forceLayout.getSnapshot();
+      if(snapshot==null || snapshot==layoutSnapshot)
+         return;
+      layoutSnapshot = snapshot;
 
-               // only display the instance if it is visible
-               if(width>rect.getX()-(instanceName.length()*7)-50 && width<rect.getWidth()+rect.getX()+50)
-               {
-                  if(height>rect.getY()-50 && height<rect.getHeight()+rect.getY()+50)
-                  {
-                     g2.draw(new Rectangle(width,height,(instanceName.length()*7)+10,15));
-                     g2.setPaint(instance.getColour());
-                     g2.fill(new Rectangle(width+1,height+1,(instanceName.length()*7)+9,14));
-                     if(isDark(instance.getColour()))
-                        g2.setPaint(Color.white);
-                     else
-                        g2.setPaint(Color.black);
-                     g2.drawString(instanceName,width+5,height+12);
-                     g2.setPaint(Color.black);
-                  }
-               }
+      int oldNumPositioned = numPositioned;
+      numPositioned = Math.min(snapshot.getNumNodes(),numPlaced);
+      panelWidth = 0;
+      panelHeight = 0;
+      for(int i=0;i<numPositioned;i++)
+      {
+         InstanceClass instance = (InstanceClass)instances.get(i);
+         int x = snapshot.getX(i);
+         int y = snapshot.getY(i);
+         int nameWidth = (instance.toString().length()*7)+10;
+         panelWidth = Math.max(panelWidth,x+nameWidth+10);
+         panelHeight = Math.max(panelHeight,y+15+10);
+         if(i>=oldNumPositioned || x!=instance.getWidth() || y!=instance.getHeight())
+         {
+            instance.setWidth(x);
+            instance.setHeight(y);
+            instanceGrid.put(i,x,y,nameWidth,15);
+            placeFieldLines(instance);
+            placeLinesTo(instance);
+         }
+      }
+   }
 
-               if(biggestWidth < (instanceName.length()*7)+10)
-               {
-                  biggestWidth = (instanceName.length()*7)+10;
+   /**
+    *  Places the connection lines of the fields of an instance.
+    *
+    *  @param  instance The instance.
+    */
+   private void placeFieldLines(InstanceClass instance)
+   {
+      ArrayList fieldList = instance.getFields();
+      int numFields = fieldList.size();
+      for(int k=0;k<numFields;k++)
+         placeLine((FieldClass)fieldList.get(k),instance);
+   }
 
-                  // adjust the width of the panel if out of bounds
-                  if(panelWidth < tempWidth+biggestWidth)
-                  {
-                     panelWidth = tempWidth+biggestWidth+10;
-                     setPreferredSize(new Dimension(panelWidth,panelHeight));
-                     revalidate();
-                  }
-               }
+   /**
+    *  Places the connection lines of the fields that refer to an
+    *  instance. The fields of instances that have not been placed
+    *  yet get their lines when they are placed.
+    *
+    *  @param  instance The instance.
+    */
+   private void placeLinesTo(InstanceClass instance)
+   {
+      FieldClass field = (FieldClass)referenceMap.get(instance.getIDNum());
+      while(field!=null)
+      {
+         if(field.getLineIndex()>=0)
+            placeLine(field,lineOwners[field.getLineIndex()]);
+         field = field.getNextRef();
+      }
+   }
 
-               // for each field of the instance
-               fieldIt = instance.getFields().listIterator();
-               while(fieldIt.hasNext())
-               {
-                  field = (FieldClass)fieldIt.next();
-                  if(field.getIsInstance()) // if the field is an instance
-                  {
-                     fieldValue = field.getValue().toString();
-                     if(!fieldValue.equals("null"))
-                     {
-                        // draw a line from this instance to the field's instance
-                        if(instance.getShowLines())
-                        {
-                           fieldInstance = (InstanceClass)field.getValue();
-                           instanceWidth = fieldInstance.getWidth()+(fieldInstance.toString().length()*7)+10;
-                           instanceHeight = fieldInstance.getHeight()+7;
-                           if(instanceWidth!=0 && instanceHeight!=0)
-                              g2.drawLine(width,height+7,instanceWidth,instanceHeight);
-                        }
-                     }
-                  }
-               }
+   /**
+    *  Works out where a field's connection line is drawn. A field
+    *  is given a line number the first time it refers to an object,
+    *  and keeps it. The line is only drawn while the field's value
+    *  is an instance.
+    *
+    *  @param  field The field.
+    *  @param  owner The instance that has the field.
+    */
+   private void placeLine(FieldClass field,InstanceClass owner)
+   {
+      int line = field.getLineIndex();
+      if(line<0)
+      {
+         if(field.getRefID()<0)
+            return; // it has never referred to an object
+         if(numLines==lineFields.length)
+         {
+            lineFields = (FieldClass [])Arrays.copyOf(lineFields,numLines*2);
+            lineOwners = (InstanceClass [])Arrays.copyOf(lineOwners,numLines*2);
+            lineCoords = Arrays.copyOf(lineCoords,numLines*2*4);
+         }
+         line = numLines++;
+         field.setLineIndex(line);
+         lineFields[line] = field;
+         lineOwners[line] = owner;
+      }
 
-               // there may be a need restore the width and height (if the instance was moved)
-               width = tempWidth;
-               height = tempHeight;
+      lineGrid.remove(line);
+      if(!field.getIsInstance())
+      {
+         forceLayout.setEdge(line,-1,-1);
+         return;
+      }
 
-               height += spaceHeight;
-               rowCount++;
+      InstanceClass fieldInstance = (InstanceClass)field.getValue();
+      forceLayout.setEdge(line,owner.getIndex(),fieldInstance.getIndex());
+      if(!showLinear && (owner.getIndex()>=numPositioned || fieldInstance.getIndex()>=numPositioned))
+         return; // it is placed when both instances have a position
+      int length = fieldInstance.toString().length();
+      int x1,y1,x2,y2;
+      if(showLinear) // from the field value to the instance
+      {
+         x1 = owner.getWidth()+(int)(length*3.5)+5;
+         y1 = field.getHeight()+15;
+         x2 = fieldInstance.getWidth()+(int)(length*3.5)+5;
+         y2 = fieldInstance.getHeight()+15;
+      }
+      else // from the instance to the field's instance
+      {
+         x1 = owner.getWidth();
+         y1 = owner.getHeight()+7;
+         x2 = fieldInstance.getWidth()+(length*7)+10;
+         y2 = fieldInstance.getHeight()+7;
+      }
+      lineCoords[line*4] = x1;
+      lineCoords[line*4+1] = y1;
+      lineCoords[line*4+2] = x2;
+      lineCoords[line*4+3] = y2;
+      lineGrid.put(line,Math.min(x1,x2),Math.min(y1,y2),Math.abs(x2-x1)+1,Math.abs(y2-y1)+1);
+   }
 
-               // adjust the height of the panel if out of bounds
-               if(panelHeight < height)
-               {
-                  panelHeight = height;
-                  setPreferredSize(new Dimension(panelWidth,panelHeight));
-                  revalidate();
-               }
+   /**
+    *  Returns the first column of the linear view that reaches
+    *  past an x-coordinate. The columns are in order of their
+    *  x-coordinates, so they are searched by halving. The caller
+    *  holds the lock on the list of instances.
+    *
+    *  @param  x  The x-coordinate.
+    *  @return The position of the column's instance in the list.
+    */
+   private int getFirstColumn(int x)
+   {
+      int low = 0;
+      int high = numPlaced;
+      while(low < high)
+      {
+         int mid = (low + high) >>> 1;
+         if(((InstanceClass)instances.get(mid)).getWidth() + columnWidths[mid] <= x)
+            low = mid + 1;
+         else
+            high = mid;
+      }
+      return low;
+   }
 
-               //check if the end of the column has been reached
-               if(rowCount==numRows)
-               {
-                  colCount++;
-                  width += biggestWidth+spaceWidth;
-                  biggestWidth = 0;
-                  rowCount = 0;
-                  height = 10+(30*(colCount%2));
-               }
-            }
-         }
-         catch(ConcurrentModificationException e)
+   /**
+    *  Returns the instance whose name is drawn at a point.
+    *  The caller holds the lock on the list of instances.
+    *
+    *  @param  point The point.
+    *  @return The instance, or null if there is none.
+    */
+   private InstanceClass getInstanceAt(Point point)
+   {
+      if(showLinear)
+      {
+         int i = getFirstColumn(point.x);
+         if(i<numPlaced)
          {
-            e.printStackTrace();
-            return;
+            InstanceClass instance = (InstanceClass)instances.get(i);
+            Rectangle rect = new Rectangle(instance.getWidth(),instance.getHeight(),(instance.toString().length()*7)+10,15);
+            if(rect.contains(point))
+               return instance;
          }
+         return null;
+      }
+
+      int [] found = instanceGrid.find(point.x,point.y,1,1);
+      for(int i=0;i<found.length;i++)
+      {
+         InstanceClass instance = (InstanceClass)instances.get(found[i]);
+         Rectangle rect = new Rectangle(instance.getWidth(),instance.getHeight(),(instance.toString().length()*7)+10,15);
+         if(rect.contains(point))
+            return instance;
+      }
+      return null;
+   }
+
+   /**
+    *  Marks the layout of every instance as having to be
+    *  worked out again.
+    */
+   private void invalidateLayout()
+   {
+      synchronized(instances)
+      {
+         isLayoutInvalid = true;
+      }
+   }
+
+   /**
+    *  Marks an instance as having changed fields, so that
+    *  they are placed again by the next layout. The caller
+    *  holds the lock on the list of instances.
+    *
+    *  @param  instance The instance.
+    */
+   private void markChanged(InstanceClass instance)
+   {
+      int i = instance.getIndex();
+      if(i<numPlaced && !isChanged[i]) // instances that have not been placed will be
+      {
+         isChanged[i] = true;
+         if(numChanged==changed.length)
+            changed = Arrays.copyOf(changed,numChanged*2);
+         changed[numChanged++] = i;
       }
    }
 
    /**
     *  Adds an instance to the list. Adds a field to the
-    *  instance's list of fields. Updates the panel.
+    *  instance's list of fields, or updates the value of the
+    *  field if it already has one with the same name. Updates
+    *  the panel.
     *
     *  @param  instanceClass  The new instance.
     *  @param  field The new field.
     */
    public void addInstanceClass(InstanceClass instanceClass,FieldClass field)
    {
-      ListIterator it;
-      InstanceClass temp;
-      // check if the field is an instance
-      it = instances.listIterator();
-      while(it.hasNext())
+      synchronized(instances)
       {
-         temp = (InstanceClass)it.next();
-         if(temp.toString().equals(field.getValue().toString()))
+         // check if the instance already exists
+         InstanceClass instance = (InstanceClass)instanceMap.get(instanceClass.getIDNum());
+         if(instance==null) // new instance
          {
-            field.setValue(temp);
-            field.setIsInstance(true);
-            break;
+            instance = instanceClass;
+            addInstance(instance);
          }
-      }
 
-      // check if the instance already exists
-      boolean foundInstance = false;
-      it = instances.listIterator();
-      while(it.hasNext())
-      {
-         temp = (InstanceClass)it.next();
-         if(instanceClass.equals(temp))
+         FieldClass current = instance.getField(field);
+         if(current==null) // new field
          {
-            foundInstance = true;
-            field.setColour(temp.getColour()); // set colour of field
-            temp.addField(field);
-            break;
+            current = field;
+            current.setColour(instance.getColour()); // set colour of field
+            instance.addField(current);
          }
+         else // update the field's value
+         {
+            removeReference(current);
+            current.setIsInstance(false); // before the value, which may no longer be an instance
+            current.setValue(field.getValue());
+            current.setRefID(field.getRefID());
+         }
+
+         // check if the field refers to an instance
+         if(current.getRefID()>=0)
+         {
+            InstanceClass refInstance = (InstanceClass)instanceMap.get(current.getRefID());
+            if(refInstance!=null)
+            {
+               current.setValue(refInstance);
+               current.setIsInstance(true);
+            }
+            addReference(current);
+         }
+         markChanged(instance);
       }
-      if(!foundInstance) // new instance
-      {
-         // set colour of instance and field
-         instanceClass.setColour(colours[currColour]);
-         field.setColour(colours[currColour]);
-         currColour++;
-         if(currColour==colours.length) 
-            currColour = 0;
-         instanceClass.setShowLines(showLines); // set whether or not to show the instance's connection lines
-         instanceClass.addField(field);
-
-         instances.add(instanceClass);
-         numInstances++;
-         infoField.setText("Number of instances: " + numInstances);
-      }
-      repaint();
+      RepaintScheduler.layOut(layoutTask);
    }
 
    /**
@@ -473,49 +784,84 @@ public class InstanceTrackerPanel extends JPanel
     */
    public void addInstanceClass(InstanceClass instanceClass)
    {
-      ListIterator it;
-      InstanceClass temp;
-      // check if the instance already exists
-      boolean foundInstance = false;
-      it = instances.listIterator();
-      while(it.hasNext())
-      {
-         temp = (InstanceClass)it.next();
-         if(instanceClass.equals(temp))
-         {
-            foundInstance = true;
-            break;
-         }
-      }
-      if(!foundInstance) // new instance
+      synchronized(instances)
       {
-         // set colour of instance
-         instanceClass.setColour(colours[currColour++]);
-         if(currColour==colours.length) 
-            currColour = 0;
-         instanceClass.setShowLines(showLines); // set whether or not to show the instance's connection lines
-
-         instances.add(instanceClass);
-         numInstances++;
-         infoField.setText("Number of instances: " + numInstances);
-
-         // check if this instance is being referenced by another instance
-         it = instances.listIterator();
-         while(it.hasNext())
+         // check if the instance already exists
+         if(instanceMap.get(instanceClass.getIDNum())==null) // new instance
          {
-            temp = (InstanceClass)it.next();
-            for(int i=0;i<temp.getNumFields();i++)
+            addInstance(instanceClass);
+
+            // make the fields that refer to this instance point to it
+            FieldClass field = (FieldClass)referenceMap.get(instanceClass.getIDNum());
+            while(field!=null)
             {
-               if(temp.getField(i).getValue().toString().equals(instanceClass.toString()))
-               {
-                  // make the value of temp point to instanceClass
-                  temp.setField(instanceClass,i);
-                  break;
-               }
+               field.setValue(instanceClass);
+               field.setIsInstance(true);
+               if(field.getLineIndex()>=0) // its value is shown differently
+                  markChanged(lineOwners[field.getLineIndex()]);
+               field = field.getNextRef();
             }
          }
       }
-      repaint();
+      RepaintScheduler.layOut(layoutTask);
+   }
+
+   /**
+    *  Adds a new instance to the list and gives it a colour.
+    *
+    *  @param  instance The new instance.
+    */
+   private void addInstance(InstanceClass instance)
+   {
+      // set colour of instance
+      instance.setColour(colours[currColour++]);
+      if(currColour==colours.length)
+         currColour = 0;
+      instance.setShowLines(showLines); // set whether or not to show the instance's connection lines
+
+      instanceMap.put(instance.getIDNum(),instance);
+      instance.setIndex(instances.size());
+      instances.add(instance);
+      numInstances++;
+      RepaintScheduler.setText(infoField,"Number of instances: " + numInstances);
+   }
+
+   /**
+    *  Adds a field to the front of the list of fields that
+    *  refer to its object.
+    *
+    *  @param  field The field.
+    */
+   private void addReference(FieldClass field)
+   {
+      FieldClass first = (FieldClass)referenceMap.get(field.getRefID());
+      field.setPrevRef(null);
+      field.setNextRef(first);
+      if(first!=null)
+         first.setPrevRef(field);
+      referenceMap.put(field.getRefID(),field);
+   }
+
+   /**
+    *  Removes a field from the list of fields that refer
+    *  to its object.
+    *
+    *  @param  field The field.
+    */
+   private void removeReference(FieldClass field)
+   {
+      if(field.getRefID()<0)
+         return;
+      FieldClass prev = field.getPrevRef();
+      FieldClass next = field.getNextRef();
+      if(prev!=null)
+         prev.setNextRef(next);
+      else
+         referenceMap.put(field.getRefID(),next); // it was the first, or the only one
+      if(next!=null)
+         next.setPrevRef(prev);
+      field.setPrevRef(null);
+      field.setNextRef(null);
    }
 
    /**
@@ -606,8 +952,9 @@ public class InstanceTrackerPanel extends JPanel
     */
    public boolean findInstance(String searchString)
    {
-      try
+      synchronized(instances)
       {
+         layoutInstances();
          ListIterator instanceIt = instances.listIterator();
          InstanceClass instance;
          ListIterator fieldIt;
@@ -656,91 +1003,57 @@ public class InstanceTrackerPanel extends JPanel
             }
          }
       }
-      catch(ConcurrentModificationException e)
-      {
-         e.printStackTrace();
-         return false;
-      }
       return false;
    }
 
    /**
-    *  Searches the instances' names and fields' names for a point.
-    *  If it finds one, it shows or hides the lines going and coming
-    *  from that instance.
+    *  Looks for an instance's name, or in the linear view a field's
+    *  name or value, at a point. If it finds one, it shows or hides
+    *  the lines going and coming from that instance. Only the
+    *  instance or field drawn at the point is looked at.
     *
     *  @param  point The point to search for.
     */
    public void setShowLines(Point point)
    {
-      try
+      synchronized(instances)
       {
-         ListIterator instanceIt = instances.listIterator();
-         InstanceClass instance,fieldInstance;
-         ListIterator fieldIt;
-         FieldClass field;
-         Rectangle rect;
-
-         // search each instance for a match
-         while(instanceIt.hasNext())
+         layoutInstances();
+         InstanceClass instance = getInstanceAt(point);
+         if(instance==null && showLinear) // if linear view - check the field drawn at the point
          {
-            // check the instance
-            instance = (InstanceClass)instanceIt.next();
-            rect = new Rectangle(instance.getWidth(),instance.getHeight(),(instance.toString().length()*7)+10,15);
-            if(rect.contains(point)) // if the instance name was click on
+            int i = getFirstColumn(point.x);
+            int step = spaceHeight + 15; // the distance between fields
+            int top = 20 + 2*spaceHeight; // the y-coordinate of the first field
+            if(i<numPlaced && point.y>=top)
             {
-               // show or hide all lines from this instance
-               if(instance.getShowLines())
-                  instance.setShowLines(false);
-               else
-                  instance.setShowLines(true);
-               repaint();
-               return;
-            }
-
-            if(showLinear) // if linear view - check fields
-            {
-               // for each field belonging to the instance
-               ArrayList fieldList = instance.getFields();
-               fieldIt = fieldList.listIterator();
-               while(fieldIt.hasNext())
+               ArrayList fieldList = ((InstanceClass)instances.get(i)).getFields();
+               int k = (point.y - top)/step;
+               if(k<fieldList.size())
                {
-                  // check the instance's fields
-                  field = (FieldClass)fieldIt.next();
+                  // check the instance's field
+                  FieldClass field = (FieldClass)fieldList.get(k);
                   if(field.getIsInstance())
                   {
-                     rect = new Rectangle(field.getWidth(),field.getHeight(),(field.toString().length()*7)+10,15);
-                     fieldInstance = (InstanceClass)field.getValue();
-                     if(rect.contains(point)) // if the field name was clicked on
-                     {
-                        if(fieldInstance.getShowLines())
-                           fieldInstance.setShowLines(false);
-                        else
-                           fieldInstance.setShowLines(true);
-                        repaint();
-                        return;
-                     }
-
-                     rect = new Rectangle(field.getWidth(),field.getHeight()+15,(fieldInstance.toString().length()*7)+10,15);
-                     if(rect.contains(point)) // if the field value was click on
-                     {
-                        if(fieldInstance.getShowLines())
-                           fieldInstance.setShowLines(false);
-                        else
-                           fieldInstance.setShowLines(true);
-                        repaint();
-                        return;
-                     }
+                     InstanceClass fieldInstance = (InstanceClass)field.getValue();
+                     Rectangle rect = new Rectangle(field.getWidth(),field.getHeight(),((field.getType().length()+field.getName().length()+1)*7)+10,15);
+                     Rectangle valueRect = new Rectangle(field.getWidth(),field.getHeight()+15,(fieldInstance.toString().length()*7)+10,15);
+                     if(rect.contains(point) || valueRect.contains(point)) // if the field name or value was clicked on
+                        instance = fieldInstance;
                   }
                }
             }
          }
+         if(instance==null)
+            return;
+
+         // show or hide all lines from this instance
+         if(instance.getShowLines())
+            instance.setShowLines(false);
+         else
+            instance.setShowLines(true);
       }
-      catch(ConcurrentModificationException e)
-      {
-         e.printStackTrace();
-         return;
-      }
+      repaint();
    }
 
    /**
@@ -751,7 +1064,7 @@ public class InstanceTrackerPanel extends JPanel
     */
    public void setAllShowLines(boolean show)
    {
-      try
+      synchronized(instances)
       {
          ListIterator instanceIt = instances.listIterator();
          InstanceClass instance;
@@ -764,11 +1077,6 @@ public class InstanceTrackerPanel extends JPanel
             instance.setShowLines(show);
          }
       }
-      catch(ConcurrentModificationException e)
-      {
-         e.printStackTrace();
-         return;
-      }
    }
 
    /**
@@ -777,7 +1085,7 @@ public class InstanceTrackerPanel extends JPanel
     */
    public void resetAllMoves()
    {
-      try
+      synchronized(instances)
       {
          ListIterator instanceIt = instances.listIterator();
          InstanceClass instance;
@@ -789,11 +1097,8 @@ public class InstanceTrackerPanel extends JPanel
             instance = (InstanceClass)instanceIt.next();
             instance.setWasMoved(false);
          }
-      }
-      catch(ConcurrentModificationException e)
-      {
-         e.printStackTrace();
-         return;
+         forceLayout.unpinAll();
+         isLayoutInvalid = true;
       }
    }
 
@@ -802,7 +1107,7 @@ public class InstanceTrackerPanel extends JPanel
     */
    public void increaseAllInstanceSizes()
    {
-      try
+      synchronized(instances)
       {
          ListIterator instanceIt = instances.listIterator();
          InstanceClass instance;
@@ -816,13 +1121,11 @@ public class InstanceTrackerPanel extends JPanel
             {
                instance.setWidth(instance.getWidth()+10);
                instance.setHeight(instance.getHeight()+10);
+               if(instance.getIndex()<numPositioned)
+                  forceLayout.pin(instance.getIndex(),instance.getWidth(),instance.getHeight(),layoutSnapshot);
             }
          }
-      }
-      catch(ConcurrentModificationException e)
-      {
-         e.printStackTrace();
-         return;
+         isLayoutInvalid = true;
       }
    }
 
@@ -831,7 +1134,7 @@ public class InstanceTrackerPanel extends JPanel
     */
    public void reduceAllInstanceSizes()
    {
-      try
+      synchronized(instances)
       {
          ListIterator instanceIt = instances.listIterator();
          InstanceClass instance;
@@ -845,53 +1148,44 @@ public class InstanceTrackerPanel extends JPanel
             {
                instance.setWidth(instance.getWidth()-10);
                instance.setHeight(instance.getHeight()-10);
+               if(instance.getIndex()<numPositioned)
+                  forceLayout.pin(instance.getIndex(),instance.getWidth(),instance.getHeight(),layoutSnapshot);
             }
          }
-      }
-      catch(ConcurrentModificationException e)
-      {
-         e.printStackTrace();
-         return;
+         isLayoutInvalid = true;
       }
    }
 
    /**
-    *  Searches the instances' names for a point. If it finds
-    *  one, it moves the instance to the new point.
+    *  Looks for an instance's name at a point. If it finds
+    *  one, it moves the instance to the new point. Only the
+    *  lines going and coming from the instance are placed again.
     *
     *  @param  oldPoint The point to search for.
     *  @param  newPoint The point to move to.
     */
    public void moveInstance(Point oldPoint,Point newPoint)
    {
-      try
+      synchronized(instances)
       {
-         ListIterator instanceIt = instances.listIterator();
-         InstanceClass instance;
-         Rectangle rect;
+         layoutInstances();
+         InstanceClass instance = getInstanceAt(oldPoint);
+         if(instance==null)
+            return;
 
-         // search each instance for a match
-         while(instanceIt.hasNext())
+         // move this instance to a new point
+         instance.setWidth((int)newPoint.getX());
+         instance.setHeight((int)newPoint.getY());
+         instance.setWasMoved(true);
+         if(!showLinear) // the force layout keeps it where the user put it
          {
-            // check the instance
-            instance = (InstanceClass)instanceIt.next();
-            rect = new Rectangle(instance.getWidth(),instance.getHeight(),(instance.toString().length()*7)+10,15);
-            if(rect.contains(oldPoint)) // if the instance name was click on
-            {
-               // move this instance to a new point
-               instance.setWidth((int)newPoint.getX());
-               instance.setHeight((int)newPoint.getY());
-               instance.setWasMoved(true);
-               repaint();
-               return;
-            }
+            forceLayout.pin(instance.getIndex(),instance.getWidth(),instance.getHeight(),layoutSnapshot);
+            instanceGrid.put(instance.getIndex(),instance.getWidth(),instance.getHeight(),(instance.toString().length()*7)+10,15);
+            placeFieldLines(instance);
+            placeLinesTo(instance);
          }
       }
-      catch(ConcurrentModificationException e)
-      {
-         e.printStackTrace();
-         return;
-      }
+      repaint();
    }
 
    /**
@@ -949,11 +1243,9 @@ public class InstanceTrackerPanel extends JPanel
             else
                setAllShowLines(false);
 
-            panelWidth = 0;
-            panelHeight = 0;
-            setPreferredSize(new Dimension(panelWidth,panelHeight));
-            revalidate();
-            update(g2);
+            forceLayout.setRunning(!showLinear);
+            invalidateLayout();
+            RepaintScheduler.layOut(layoutTask);
          }
          else if(source==reduceMenuItem)
          {
@@ -961,24 +1253,22 @@ public class InstanceTrackerPanel extends JPanel
             {
                spaceWidth -= 10;
                spaceHeight -= 10;
-               panelWidth = 0;
-               panelHeight = 0;
-               setPreferredSize(new Dimension(panelWidth,panelHeight));
+               forceLayout.setSpacing(spaceHeight);
                if(!showLinear)
                   reduceAllInstanceSizes();
-               update(g2);
-               repaint();
-               revalidate();
+               invalidateLayout();
+               RepaintScheduler.layOut(layoutTask);
             }
          }
          else if(source==increaseMenuItem)
          {
             spaceWidth += 10;
             spaceHeight += 10;
+            forceLayout.setSpacing(spaceHeight);
             if(!showLinear)
                increaseAllInstanceSizes();
-            repaint();
-            revalidate();
+            invalidateLayout();
+            RepaintScheduler.layOut(layoutTask);
          }
       }
    }
@@ -0,0 +1,491 @@
+package ObjectTracker;
+
+import java.util.*;
+
+/**
+ *  This class records which classes and methods of the target
+ *  program call each other, and how many times. It is shared by
+ *  the ObjectInteractionPanel and the MethodInteractionPanel.
+ *  <p>
+ *  Methods and classes are known by their MethodTable ID numbers.
+ *  There are three kinds of edge: a class calling a
+ *  class, a class calling a method and a method calling a method.
+ *  The edges of each kind are found through an open addressing
+ *  table keyed by the caller and the called ID numbers, and their
+ *  counts are kept in a long array, so recording a call does not
+ *  search a list or create any objects once the edge exists.
+ *  <p>
+ *  Only the EventDispatcher thread records calls. The panels may
+ *  read the graph while it grows: an edge is complete before it
+ *  is linked to its caller, and a node is complete before it is
+ *  counted.
+ *
+ *  @author  Eoin O'Connor
+ *  @see ObjectInteractionPanel
+ *  @see MethodInteractionPanel
+ *  @see MethodTable
+ */
+public class InteractionGraph
+{
+   /**
+    *  The edges from a calling class to a called class.
+    */
+   public static final int CLASS_CALLS_CLASS = 0;
+   /**
+    *  The edges from a calling class to a called method.
+    */
+   public static final int CLASS_CALLS_METHOD = 1;
+   /**
+    *  The edges from a calling method to a called method.
+    */
+   public static final int METHOD_CALLS_METHOD = 2;
+
+   /**
+    *  Gives the names and class names of the methods.
+    */
+   private MethodTable methodTable;
+   /**
+    *  The class ID numbers of the classes that have taken part
+    *  in a call, in the order they were first seen.
+    */
+   private int [] knownClasses;
+   /**
+    *  The number of classes that have taken part in a call.
+    */
+   private volatile int numKnownClasses;
+   /**
+    *  True for each class that has taken part in a call,
+    *  indexed by class ID number.
+    */
+   private boolean [] isKnownClass;
+   /**
+    *  The method ID numbers of the methods that have taken part
+    *  in a call, in the order they were first seen.
+    */
+   private int [] knownMethods;
+   /**
+    *  The number of methods that have taken part in a call.
+    */
+   private volatile int numKnownMethods;
+   /**
+    *  True for each method that has taken part in a call,
+    *  indexed by method ID number.
+    */
+   private boolean [] isKnownMethod;
+   /**
+    *  The edges of each kind.
+    */
+   private EdgeMap [] edgeMaps;
+
+   /**
+    *  Constructor: creates an empty graph.
+    *
+    *  @param  methodTable The table giving the names of the methods.
+    */
+   public InteractionGraph(MethodTable methodTable)
+   {
+      this.methodTable = methodTable;
+      knownClasses = new int[64];
+      numKnownClasses = 0;
+      isKnownClass = new boolean[64];
+      knownMethods = new int[256];
+      numKnownMethods = 0;
+      isKnownMethod = new boolean[256];
+      edgeMaps = new EdgeMap[3];
+      for(int i=0;i<edgeMaps.length;i++)
+         edgeMaps[i] = new EdgeMap();
+   }
+
+   /**
+    *  A method has called a method. Adds one to the count of each
+    *  of the edges between them and between their classes.
+    *
+    *  @param  callerID The ID number of the calling method.
+    *  @param  calledID The ID number of the called method.
+    */
+   public void addCall(int callerID,int calledID)
+   {
+      int callerClass = getClassID(callerID);
+      int calledClass = getClassID(calledID);
+
+      // the callers are seen before the methods they call
+      addKnownClass(callerClass);
+      addKnownClass(calledClass);
+      addKnownMethod(callerID);
+      addKnownMethod(calledID);
+
+      edgeMaps[CLASS_CALLS_CLASS].add(callerClass,calledClass);
+      edgeMaps[CLASS_CALLS_METHOD].add(callerClass,calledID);
+      edgeMaps[METHOD_CALLS_METHOD].add(callerID,calledID);
+   }
+
+   /**
+    *  Returns the class ID number of a method.
+    *
+    *  @param  methodID The ID number of the method.
+    *  @return The class ID number.
+    */
+   public int getClassID(int methodID)
+   {
+      return methodTable.getMethodClass(methodID);
+   }
+
+   /**
+    *  Adds a class to the list of known classes if it is new.
+    *
+    *  @param  classID  The class ID number.
+    */
+   private void addKnownClass(int classID)
+   {
+      if(classID<isKnownClass.length && isKnownClass[classID])
+         return;
+      if(classID>=isKnownClass.length)
+         isKnownClass = Arrays.copyOf(isKnownClass,Math.max(isKnownClass.length*2,classID+1));
+      if(numKnownClasses==knownClasses.length)
+         knownClasses = Arrays.copyOf(knownClasses,knownClasses.length*2);
+      isKnownClass[classID] = true;
+      knownClasses[numKnownClasses] = classID;
+      numKnownClasses++;
+   }
+
+   /**
+    *  Adds a method to the list of known methods if it is new.
+    *
+    *  @param  methodID The method ID number.
+    */
+   private void addKnownMethod(int methodID)
+   {
+      if(methodID<isKnownMethod.length && isKnownMethod[methodID])
+         return;
+      if(methodID>=isKnownMethod.length)
+         isKnownMethod = Arrays.copyOf(isKnownMethod,Math.max(isKnownMethod.length*2,methodID+1));
+      if(numKnownMethods==knownMethods.length)
+         knownMethods = Arrays.copyOf(knownMethods,knownMethods.length*2);
+      isKnownMethod[methodID] = true;
+      knownMethods[numKnownMethods] = methodID;
+      numKnownMethods++;
+   }
+
+   /**
+    *  Returns the number of classes that have taken part in a call.
+    *
+    *  @return The number of classes.
+    */
+   public int getNumKnownClasses()
+   {
+      return numKnownClasses;
+   }
+
+   /**
+    *  Returns a class that has taken part in a call.
+    *
+    *  @param  n  The index of the class, in the order they were first seen.
+    *  @return The class ID number.
+    */
+   public int getKnownClass(int n)
+   {
+      return knownClasses[n];
+   }
+
+   /**
+    *  Returns the number of methods that have taken part in a call.
+    *
+    *  @return The number of methods.
+    */
+   public int getNumKnownMethods()
+   {
+      return numKnownMethods;
+   }
+
+   /**
+    *  Returns a method that has taken part in a call.
+    *
+    *  @param  n  The index of the method, in the order they were first seen.
+    *  @return The method ID number.
+    */
+   public int getKnownMethod(int n)
+   {
+      return knownMethods[n];
+   }
+
+   /**
+    *  Returns the class ID number of a method that has been seen.
+    *
+    *  @param  methodID The method ID number.
+    *  @return The class ID number.
+    */
+   public int getMethodClass(int methodID)
+   {
+      return methodTable.getMethodClass(methodID);
+   }
+
+   /**
+    *  Returns the name of a class.
+    *
+    *  @param  classID  The class ID number.
+    *  @return The name of the class.
+    */
+   public String getClassName(int classID)
+   {
+      return methodTable.getNameOfClass(classID);
+   }
+
+   /**
+    *  Returns the name of a method.
+    *
+    *  @param  methodID The method ID number.
+    *  @return The name of the method.
+    */
+   public String getMethodName(int methodID)
+   {
+      return methodTable.getName(methodID);
+   }
+
+   /**
+    *  Returns the first edge from a caller.
+    *
+    *  @param  kind     The kind of edge.
+    *  @param  caller   The ID number of the caller.
+    *  @return The edge, or -1 if the caller has none.
+    */
+   public int getFirstEdge(int kind,int caller)
+   {
+      return edgeMaps[kind].getFirstEdge(caller);
+   }
+
+   /**
+    *  Returns the next edge from the same caller, in the order
+    *  they were first seen.
+    *
+    *  @param  kind  The kind of edge.
+    *  @param  edge  The edge.
+    *  @return The next edge, or -1 if it is the last.
+    */
+   public int getNextEdge(int kind,int edge)
+   {
+      return edgeMaps[kind].nextEdges[edge];
+   }
+
+   /**
+    *  Returns the ID number of the class or method called
+    *  along an edge.
+    *
+    *  @param  kind  The kind of edge.
+    *  @param  edge  The edge.
+    *  @return The ID number of the called class or method.
+    */
+   public int getCalled(int kind,int edge)
+   {
+      return edgeMaps[kind].calleds[edge];
+   }
+
+   /**
+    *  Returns the number of calls made along an edge.
+    *
+    *  @param  kind  The kind of edge.
+    *  @param  edge  The edge.
+    *  @return The number of calls.
+    */
+   public long getCount(int kind,int edge)
+   {
+      return edgeMaps[kind].counts[edge];
+   }
+
+   /**
+    *  Returns the number of edges of a kind.
+    *
+    *  @param  kind  The kind of edge.
+    *  @return The number of edges.
+    */
+   public int getNumEdges(int kind)
+   {
+      return edgeMaps[kind].numEdges;
+   }
+
+   /**
+    *  The edges of one kind. Each edge has a called ID number
+    *  and a count, and the edges from each caller are
+    *  linked in the order they were first seen.
+    */
+   private static class EdgeMap
+   {
+      /**
+       *  The ID number of the called class or method of each edge.
+       */
+      private int [] calleds;
+      /**
+       *  The number of calls made along each edge.
+       */
+      private long [] counts;
+      /**
+       *  The next edge from the same caller, or -1 if it is the last.
+       */
+      private int [] nextEdges;
+      /**
+       *  The number of edges.
+       */
+      private volatile int numEdges;
+      /**
+       *  The first edge from each caller, indexed by the caller's
+       *  ID number, or -1 if it has none.
+       */
+      private int [] firstEdges;
+      /**
+       *  The last edge from each caller, indexed by the caller's
+       *  ID number, or -1 if it has none.
+       */
+      private int [] lastEdges;
+      /**
+       *  The keys of the edge table. Each key holds a caller and a
+       *  called ID number, or -1 if the entry is empty.
+       */
+      private long [] keys;
+      /**
+       *  The edge of each entry in the edge table.
+       */
+      private int [] edges;
+
+      /**
+       *  Constructor: creates an empty set of edges.
+       */
+      public EdgeMap()
+      {
+         calleds = new int[256];
+         counts = new long[256];
+         nextEdges = new int[256];
+         numEdges = 0;
+         firstEdges = new int[64];
+         Arrays.fill(firstEdges,-1);
+         lastEdges = new int[64];
+         Arrays.fill(lastEdges,-1);
+         keys = new long[512];
+         Arrays.fill(keys,-1);
+         edges = new int[512];
+      }
+
+      /**
+       *  Adds one to the count of an edge, adding the edge if it is new.
+       *
+       *  @param  caller   The ID number of the caller.
+       *  @param  called   The ID number of the called class or method.
+       */
+      public void add(int caller,int called)
+      {
+         long key = ((long)caller << 32) | (called & 0xffffffffL);
+         int mask = keys.length - 1;
+         int i = hash(key) & mask;
+         while(keys[i]!=-1)
+         {
+            if(keys[i]==key)
+            {
+               counts[edges[i]]++;
+               return;
+            }
+            i = (i + 1) & mask;
+         }
+         addEdge(caller,called,key);
+      }
+
+      /**
+       *  Adds a new edge with a count of one.
+       *
+       *  @param  caller   The ID number of the caller.
+       *  @param  called   The ID number of the called class or method.
+       *  @param  key      The key of the edge.
+       */
+      private void addEdge(int caller,int called,long key)
+      {
+         int edge = numEdges;
+         if(edge==calleds.length)
+         {
+            int size = calleds.length*2;
+            calleds = Arrays.copyOf(calleds,size);
+            counts = Arrays.copyOf(counts,size);
+            nextEdges = Arrays.copyOf(nextEdges,size);
+         }
+         if(caller>=firstEdges.length)
+         {
+            int oldSize = firstEdges.length;
+            int size = Math.max(oldSize*2,caller+1);
+            firstEdges = Arrays.copyOf(firstEdges,size);
+            Arrays.fill(firstEdges,oldSize,size,-1);
+            lastEdges = Arrays.copyOf(lastEdges,size);
+            Arrays.fill(lastEdges,oldSize,size,-1);
+         }
+         calleds[edge] = called;
+         counts[edge] = 1;
+         nextEdges[edge] = -1;
+         numEdges = edge + 1; // the edge is complete before it is linked
+
+         // add the edge to the end of its caller's edges
+         if(lastEdges[caller]<0)
+            firstEdges[caller] = edge;
+         else
+            nextEdges[lastEdges[caller]] = edge;
+         lastEdges[caller] = edge;
+
+         if(numEdges*2 > keys.length)
+            growTable();
+         put(key,edge);
+      }
+
+      /**
+       *  Returns the first edge from a caller.
+       *
+       *  @param  caller   The ID number of the caller.
+       *  @return The edge, or -1 if the caller has none.
+       */
+      public int getFirstEdge(int caller)
+      {
+         int [] first = firstEdges;
+         if(caller>=first.length)
+            return -1;
+         return first[caller];
+      }
+
+      /**
+       *  Adds an entry to the edge table.
+       *
+       *  @param  key   The caller and called ID numbers.
+       *  @param  edge  The edge.
+       */
+      private void put(long key,int edge)
+      {
+         int mask = keys.length - 1;
+         int i = hash(key) & mask;
+         while(keys[i]!=-1)
+            i = (i + 1) & mask;
+         keys[i] = key;
+         edges[i] = edge;
+      }
+
+      /**
+       *  Doubles the size of the edge table.
+       */
+      private void growTable()
+      {
+         long [] oldKeys = keys;
+         int [] oldEdges = edges;
+         keys = new long[oldKeys.length*2];
+         Arrays.fill(keys,-1);
+         edges = new int[oldEdges.length*2];
+         for(int i=0;i<oldKeys.length;i++)
+         {
+            if(oldKeys[i]!=-1)
+               put(oldKeys[i],oldEdges[i]);
+         }
+      }
+
+      /**
+       *  Spreads the bits of a key for the edge table.
+       *
+       *  @param  key   The key.
+       *  @return The hash of the key.
+       */
+      private static int hash(long key)
+      {
+         key = key * 0x9E3779B97F4A7C15L;
+         return (int)(key ^ (key >>> 32));
+      }
+   }
+}
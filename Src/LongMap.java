@@ -0,0 +1,181 @@
+package ObjectTracker;
+
+import java.util.*;
+
+/**
+ *  This class implements a map from long keys, such as the unique
+ *  ID numbers of objects in the target program, to objects. It uses
+ *  open addressing on parallel arrays, so looking up a key does not
+ *  create a Long or walk a chain of entries.
+ *  <p>
+ *  Null values cannot be stored: putting null removes the key.
+ *
+ *  @author  Eoin O'Connor
+ *  @see InstanceTrackerPanel
+ */
+public class LongMap
+{
+   /**
+    *  The key of each entry.
+    */
+   private long [] keys;
+   /**
+    *  The value of each entry, or null if the entry is empty.
+    */
+   private Object [] values;
+   /**
+    *  The number of keys in the map.
+    */
+   private int size;
+
+   /**
+    *  Constructor: creates an empty map.
+    */
+   public LongMap()
+   {
+      keys = new long[64];
+      values = new Object[64];
+      size = 0;
+   }
+
+   /**
+    *  Returns the value of a key.
+    *
+    *  @param  key   The key.
+    *  @return The value, or null if the key is not in the map.
+    */
+   public Object get(long key)
+   {
+      int mask = keys.length - 1;
+      int i = hash(key) & mask;
+      while(values[i]!=null)
+      {
+         if(keys[i]==key)
+            return values[i];
+         i = (i + 1) & mask;
+      }
+      return null;
+   }
+
+   /**
+    *  Sets the value of a key.
+    *
+    *  @param  key   The key.
+    *  @param  value The value, or null to remove the key.
+    */
+   public void put(long key,Object value)
+   {
+      if(value==null)
+      {
+         remove(key);
+         return;
+      }
+
+      int mask = keys.length - 1;
+      int i = hash(key) & mask;
+      while(values[i]!=null)
+      {
+         if(keys[i]==key)
+         {
+            values[i] = value;
+            return;
+         }
+         i = (i + 1) & mask;
+      }
+      keys[i] = key;
+      values[i] = value;
+      size++;
+      if(size*2 > keys.length)
+         grow();
+   }
+
+   /**
+    *  Removes a key from the map. The entries after it that
+    *  were moved along by collisions are moved back, so that
+    *  no marker is needed for removed entries.
+    *
+    *  @param  key   The key.
+    */
+   public void remove(long key)
+   {
+      int mask = keys.length - 1;
+      int i = hash(key) & mask;
+      while(values[i]!=null && keys[i]!=key)
+         i = (i + 1) & mask;
+      if(values[i]==null)
+         return; // not in the map
+
+      values[i] = null;
+      size--;
+
+      // move back any entries that can no longer be found
+      int j = (i + 1) & mask;
+      while(values[j]!=null)
+      {
+         int home = hash(keys[j]) & mask;
+         // the entry at j must stay if its home lies in (i,j]
+         if(((j - home) & mask) >= ((j - i) & mask))
+         {
+            keys[i] = keys[j];
+            values[i] = values[j];
+            values[j] = null;
+            i = j;
+         }
+         j = (j + 1) & mask;
+      }
+   }
+
+   /**
+    *  Returns the number of keys in the map.
+    *
+    *  @return The number of keys.
+    */
+   public int size()
+   {
+      return size;
+   }
+
+   /**
+    *  Removes every key from the map.
+    */
+   public void clear()
+   {
+      Arrays.fill(values,null);
+      size = 0;
+   }
+
+   /**
+    *  Doubles the size of the map.
+    */
+   private void grow()
+   {
+      long [] oldKeys = keys;
+      Object [] oldValues = values;
+      keys = new long[oldKeys.length*2];
+      values = new Object[oldValues.length*2];
+      int mask = keys.length - 1;
+      for(int n=0;n<oldKeys.length;n++)
+      {
+         if(oldValues[n]!=null)
+         {
+            int i = hash(oldKeys[n]) & mask;
+            while(values[i]!=null)
+               i = (i + 1) & mask;
+            keys[i] = oldKeys[n];
+            values[i] = oldValues[n];
+         }
+      }
+   }
+
+   /**
+    *  Spreads the bits of a key.
+    *
+    *  @param  key   The key.
+    *  @return The hash of the key.
+    */
+   private static int hash(long key)
+   {
+      key = key * 0x9E3779B97F4A7C15L;
+      return (int)(key ^ (key >>> 32));
+   }
+}
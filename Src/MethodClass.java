@@ -17,6 +17,11 @@ public class MethodClass implements Comparable
     *  The name of the method.
     */
    private String name;
+   /**
+    *  The MethodTable ID number of the method,
+    *  or -1 if it is not known.
+    */
+   private int methodID;
    /**
     *  The x-coordinate of the method.
     */
@@ -42,30 +47,21 @@ public class MethodClass implements Comparable
     */
    private boolean isFirstMethod;
    /**
-    *  The start time of the method.
+    *  The start time of the method, in nanoseconds.
     */
    private long startTime;
    /**
-    *  The end time of the method.
+    *  The end time of the method, in nanoseconds.
     */
    private long endTime;
    /**
-    *  The total runtime of the method.
-    */
-   private long runTime;
-   /**
-    *  The list of methods called by the method.
-    */
-   private ArrayList calledMethods;
-   /**
-    *  The number of methods called by the method.
+    *  True once the method has ended.
     */
-   private int numCalledMethods;
+   private boolean isEnded;
    /**
-    *  A list of the number of times the method
-    *  calls each method.
+    *  The total runtime of the method, in nanoseconds.
     */
-   private ArrayList calledMethodCount;
+   private long runTime;
    /**
     *  The colour associated with the method.
     */
@@ -78,9 +74,27 @@ public class MethodClass implements Comparable
     *  @param  oc The class of the method.
     *  @param  w  The x-coordinate of the method.
     *  @param  h  The y-coordinate of the method.
+    *  @param  t  The start time of the method, from System.nanoTime().
+    */
+   public MethodClass(String n,ObjectClass oc,int w,int h,long t)
+   {
+      this(n,oc,w,h,t,-1);
+   }
+
+   /**
+    *  Constructor: creates a new method that has an
+    *  ID number in the MethodTable.
+    *
+    *  @param  n  The name of the method.
+    *  @param  oc The class of the method.
+    *  @param  w  The x-coordinate of the method.
+    *  @param  h  The y-coordinate of the method.
+    *  @param  t  The start time of the method, from System.nanoTime().
+    *  @param  id The MethodTable ID number of the method.
     */
-   public MethodClass(String n,ObjectClass oc,int w,int h)
+   public MethodClass(String n,ObjectClass oc,int w,int h,long t,int id)
    {
+      methodID = id;
       name = n;
       objectClass = oc;
       width = w*30;
@@ -88,12 +102,10 @@ public class MethodClass implements Comparable
       numMethodsCalled = 0;
       barLength = 20;
       isFirstMethod = false;
-      startTime = System.currentTimeMillis();
+      startTime = t;
       endTime = 0;
+      isEnded = false;
       runTime = 0;
-      calledMethods = new ArrayList();
-      calledMethodCount = new ArrayList();
-      numCalledMethods = 0;
    }
 
    /**
@@ -106,6 +118,16 @@ public class MethodClass implements Comparable
       return name;
    }
 
+   /**
+    *  Returns the MethodTable ID number of the method.
+    *
+    *  @return The ID number, or -1 if it is not known.
+    */
+   public int getMethodID()
+   {
+      return methodID;
+   }
+
    /**
     *  Returns the x-coordinate of the method.
     *
@@ -127,12 +149,14 @@ public class MethodClass implements Comparable
    }
 
    /**
-    *  Increments the number of methods called by
-    *  the method.
+    *  Sets the number of methods called by the method,
+    *  counting the method itself.
+    *
+    *  @param  n  The number of methods called.
     */
-   public void incNumMethodsCalled()
+   public void setNumMethodsCalled(int n)
    {
-      numMethodsCalled++;
+      numMethodsCalled = n;
    }
 
    /**
@@ -207,116 +231,105 @@ public class MethodClass implements Comparable
 
    /**
     *  Sets the end time of the method.
+    *
+    *  @param  t  The end time of the method, from System.nanoTime().
     */
-   public void setEndTime()
+   public void setEndTime(long t)
    {
-      endTime = System.currentTimeMillis();
+      endTime = t;
+      isEnded = true;
    }
 
    /**
     *  Returns the run time of the method.
     *
-    *  @return The run time of the method.
+    *  @return The run time of the method in nanoseconds,
+    *          or -1 if it has not ended.
     */
    public long getExecutionTime()
    {
+      if(!isEnded)
+         return -1;
       return (endTime - startTime) + runTime;
    }
 
    /**
-    *  Pauses the execution time of the method.
+    *  Returns the run time of the method without the time
+    *  taken to trace the methods it called.
     *
-    *  @param  stopTime The time that the execution is paused.
-    */
-   public void pauseExecutionTime(long stopTime)
-   {
-      if(endTime==0)
-         runTime = runTime + (stopTime - startTime);
-   }
-
-   /**
-    *  Restarts the execution time of the method.
+    *  @param  callCost The time in nanoseconds that tracing a call
+    *                   adds to the call it is made from.
+    *  @return The run time of the method in nanoseconds.
     */
-   public void restartExecutionTime()
+   public long getExecutionTime(long callCost)
    {
-      if(endTime==0)
-         startTime = System.currentTimeMillis();
+      return removeCallCost(getExecutionTime(),numMethodsCalled,1,callCost);
    }
 
    /**
-    *  Returns true if the method is equal to meth.
+    *  Takes the time taken to trace the calls made while some calls
+    *  ran off their time. The time of a call includes the tracing of
+    *  every call traced while it ran, but not its own, so the call
+    *  cost is taken off once for each of those calls, not counting
+    *  the calls themselves.
     *
-    *  @param  meth  The method to be compared to.
-    *  @return True if the method is equal to meth.
-    */
-   public boolean equals(MethodClass meth)
+    *  @param  time        The time of the calls in nanoseconds.
+    *  @param  tracedCalls The number of calls traced while they ran,
+    *                      counting the calls themselves.
+    *  @param  numCalls    The number of calls.
+    *  @param  callCost    The time in nanoseconds that tracing a call
+    *                      adds to the call it is made from.
+    *  @return The time without the cost of tracing, in nanoseconds.
+    */
+   public static long removeCallCost(long time,long tracedCalls,long numCalls,long callCost)
    {
-      return name.equals(meth.getName());
+      return Math.max(0,time - callCost*(tracedCalls - numCalls));
    }
 
    /**
-    *  Adds a method to the list of called methods.
-    *  If the method is alread in the list, then the
-    *  number of times that it is called is incremented.
+    *  Returns a time as a string in microseconds.
     *
-    *  @param  meth  The called method.
+    *  @param  time  The time in nanoseconds.
+    *  @return The time in microseconds.
     */
-   public void callsMethod(MethodClass meth)
+   public static String formatTime(long time)
    {
-      // check if the method has already been called
-      int count = 0;
-      ListIterator it = calledMethods.listIterator();
-      while(it.hasNext())
-      {
-         if(((MethodClass)it.next()).equals(meth))
-            break;
-         count++;
-      }
-
-      if(count==numCalledMethods) // the method is being called for the first time
-      {
-         calledMethods.add(meth);
-         calledMethodCount.add(new Integer(1));
-         numCalledMethods++;
-      }
-      else // the method has been called before - increment the number of times it has been called
-      {
-         int num = Integer.parseInt(calledMethodCount.get(count).toString()) + 1;
-         calledMethodCount.set(count,new Integer(num));
-      }
+      return (time/1000) + " us";
    }
 
    /**
-    *  Returns the number of methods called by this method.
+    *  Pauses the execution time of the method.
     *
-    *  @return The number of methods called by this method.
+    *  @param  stopTime The time that the execution is paused.
     */
-   public int getNumCalledMethods()
+   public void pauseExecutionTime(long stopTime)
    {
-      return numCalledMethods;
+      if(!isEnded)
+         runTime = runTime + (stopTime - startTime);
    }
 
    /**
-    *  Returns the list of methods called by this method.
+    *  Restarts the execution time of the method.
     *
-    *  @return The list of methods called by this method.
+    *  @param  restartTime The time that the execution is restarted.
     */
-   public ArrayList getCalledMethods()
+   public void restartExecutionTime(long restartTime)
    {
-      return calledMethods;
+      if(!isEnded)
+         startTime = restartTime;
    }
 
    /**
-    *  Returns the number of times, that a method in the
-    *  list of called methods, is called.
+    *  Returns true if the method is equal to meth.
     *
-    *  @param  n  The index of the called method in the list.
-    *  @return The number of times, that a method in the
-    *          list of called method, is called.
+    *  @param  meth  The method to be compared to.
+    *  @return True if the method is equal to meth.
     */
-   public int getCalledMethodCount(int n)
+   public boolean equals(MethodClass meth)
    {
-      return Integer.parseInt(calledMethodCount.get(n).toString());
+      if(methodID>=0 && meth.getMethodID()>=0)
+         return methodID==meth.getMethodID();
+      return name.equals(meth.getName());
    }
 
    /**
@@ -351,7 +364,7 @@ public class MethodClass implements Comparable
    {
       if(getExecutionTime() > ((MethodClass)obj).getExecutionTime())
          return 1;
-      else if(getExecutionTime() > ((MethodClass)obj).getExecutionTime())
+      else if(getExecutionTime() < ((MethodClass)obj).getExecutionTime())
          return -1;
       else
          return 0;
@@ -364,6 +377,6 @@ public class MethodClass implements Comparable
     */
    public String toString()
    {
-      return name + " " + getExecutionTime();
+      return name + " " + formatTime(getExecutionTime());
    }
 }
\ No newline at end of file
@@ -7,9 +7,11 @@ import java.util.*;
 /**
  *  This class represents a panel that displays the
  *  methods executed during the execution of the
- *  target program.
+ *  target program. The calls between them are read
+ *  from the InteractionGraph.
  *
  *  @author  Eoin O'Connor
+ *  @see InteractionGraph
  *  @see MethodClass
  *  @see PatternDisplayer
  *  @see ObjectDisplayer
@@ -41,11 +43,15 @@ public class MethodInteractionPanel extends JPanel
     */
    private JScrollPane scroller;
    /**
-    *  The list of known methods.
+    *  The calls between the methods.
     */
-   private ArrayList knownMethods;
+   private InteractionGraph graph;
    /**
-    *  The number of known methods.
+    *  The colour of each method, indexed by method ID number.
+    */
+   private Color [] methodColours;
+   /**
+    *  The number of known methods that have been given a colour.
     */
    private int numKnownMethods;
    /**
@@ -71,7 +77,7 @@ public class MethodInteractionPanel extends JPanel
     */
    public MethodInteractionPanel(JTextField field)
    {
-      knownMethods = new ArrayList();
+      methodColours = new Color[256];
       numKnownMethods = 0;
       currColour = 0;
       rightWidth = 0;
@@ -104,102 +110,96 @@ public class MethodInteractionPanel extends JPanel
       g2.setRenderingHints(renderHints);
       g2.setFont(new Font("Courier new",0,12)); // the Courier New chars are about 7 pixels wide
 
+      if(graph==null)
+         return;
+
       int width = 10;
       int height = 10;
       int callerHeight;
 
-      MethodClass caller,called;
-      String countString;
-      ArrayList calledList;
-      ListIterator callerIt,calledIt;
+      int caller,called;
+      String callerName,calledName,countString;
+      Color callerColour,calledColour;
       Rectangle rect; // visible part of the panel
 
-      try
+      // for each method, draw the method and the methods it calls
+      int numMethods = graph.getNumKnownMethods();
+      for(int i=0;i<numMethods;i++)
       {
-         // for each method, draw the method and the methods it calls
-         callerIt = knownMethods.listIterator();
-         while(callerIt.hasNext())
-         {
-            rect = getVisibleRect(); // visible part of the panel
-            boolean displayedCaller = false; // indicates if the caller method was displayed
+         rect = getVisibleRect(); // visible part of the panel
+         boolean displayedCaller = false; // indicates if the caller method was displayed
 
-            // draw the caller method
-            caller = (MethodClass)callerIt.next();
+         // draw the caller method
+         caller = graph.getKnownMethod(i);
+         callerName = graph.getMethodName(caller);
+         callerColour = getMethodColour(caller);
 
-            // only display the method if it is visible
-            if(height>rect.getY()-50 && height<rect.getHeight()+rect.getY()+50)
-            {
-               g2.draw(new Rectangle(width,height,(caller.getName().length()*7)+10,15));
-               g2.setPaint(caller.getColour());
-               g2.fill(new Rectangle(width+1,height+1,(caller.getName().length()*7)+9,14));
-               if(isDark(caller.getColour()))
-                  g2.setPaint(Color.white);
-               else
-                  g2.setPaint(Color.black);
-               g2.drawString(caller.getName(),width+5,height+12);
+         // only display the method if it is visible
+         if(height>rect.getY()-50 && height<rect.getHeight()+rect.getY()+50)
+         {
+            g2.draw(new Rectangle(width,height,(callerName.length()*7)+10,15));
+            g2.setPaint(callerColour);
+            g2.fill(new Rectangle(width+1,height+1,(callerName.length()*7)+9,14));
+            if(isDark(callerColour))
+               g2.setPaint(Color.white);
+            else
                g2.setPaint(Color.black);
-               displayedCaller = true;
-            }
+            g2.drawString(callerName,width+5,height+12);
+            g2.setPaint(Color.black);
+            displayedCaller = true;
+         }
 
-            // @rightWidth aligns the called methods
-            if((caller.getName().length()*7)+60 > rightWidth)
-               rightWidth = (caller.getName().length()*7)+60;
+         // @rightWidth aligns the called methods
+         if((callerName.length()*7)+60 > rightWidth)
+            rightWidth = (callerName.length()*7)+60;
 
-            callerHeight = height; // keeps track of the height
+         callerHeight = height; // keeps track of the height
 
-            int count = 0;
-            calledList = caller.getCalledMethods();
-            calledIt = calledList.listIterator();
+         // draw the methods called by this method
+         int edge = graph.getFirstEdge(InteractionGraph.METHOD_CALLS_METHOD,caller);
+         if(edge<0)
+            height += 30;
+         for(;edge>=0;edge=graph.getNextEdge(InteractionGraph.METHOD_CALLS_METHOD,edge))
+         {
+            called = graph.getCalled(InteractionGraph.METHOD_CALLS_METHOD,edge);
+            calledName = graph.getMethodName(called);
+            calledColour = getMethodColour(called);
+            countString = Long.toString(graph.getCount(InteractionGraph.METHOD_CALLS_METHOD,edge));
 
-            // draw the methods called by this method
-            while(calledIt.hasNext())
+            // only display the method if it is visible or its caller method is visible
+            if(displayedCaller || (height>rect.getY()-50 && height<rect.getHeight()+rect.getY()+50))
             {
-               called = (MethodClass)calledIt.next();
-               countString = (new Integer(caller.getCalledMethodCount(count))).toString();
-
-               // only display the method if it is visible or its caller method is visible
-               if(displayedCaller || (height>rect.getY()-50 && height<rect.getHeight()+rect.getY()+50))
-               {
-                  g2.draw(new Rectangle(rightWidth,height,(called.getName().length()*7)+10,15));
-                  g2.setPaint(called.getColour());
-                  g2.fill(new Rectangle(rightWidth+1,height+1,(called.getName().length()*7)+9,14));
-                  if(isDark(called.getColour()))
-                     g2.setPaint(Color.white);
-                  else
-                     g2.setPaint(Color.black);
-                  g2.drawString(called.getName(),rightWidth+5,height+12);
+               g2.draw(new Rectangle(rightWidth,height,(calledName.length()*7)+10,15));
+               g2.setPaint(calledColour);
+               g2.fill(new Rectangle(rightWidth+1,height+1,(calledName.length()*7)+9,14));
+               if(isDark(calledColour))
+                  g2.setPaint(Color.white);
+               else
                   g2.setPaint(Color.black);
-                  g2.drawString(countString,rightWidth+(called.getName().length()*7)+15,height+12);
-                  g2.drawLine((caller.getName().length()*7)+20,callerHeight+7,rightWidth,height+7);
-                  displayedCaller = true; // at least one of the called methods was displayed
-               }
-               height += 30;
-
-               //  adjust the width of the panel if out of bounds
-               if(panelWidth < rightWidth+(called.getName().length()*7)+15+(countString.length()*7))
-               {
-                  panelWidth = rightWidth+(called.getName().length()*7)+15+(countString.length()*7)+10;
-                  setPreferredSize(new Dimension(panelWidth,panelHeight));
-                  revalidate();
-               }
-               count++;
+               g2.drawString(calledName,rightWidth+5,height+12);
+               g2.setPaint(Color.black);
+               g2.drawString(countString,rightWidth+(calledName.length()*7)+15,height+12);
+               g2.drawLine((callerName.length()*7)+20,callerHeight+7,rightWidth,height+7);
+               displayedCaller = true; // at least one of the called methods was displayed
             }
-            if(caller.getNumCalledMethods()==0)
-               height += 30;
+            height += 30;
 
-            //  adjust the height of the panel if out of bounds
-            if(panelHeight < height)
+            //  adjust the width of the panel if out of bounds
+            if(panelWidth < rightWidth+(calledName.length()*7)+15+(countString.length()*7))
             {
-               panelHeight = height+10;
+               panelWidth = rightWidth+(calledName.length()*7)+15+(countString.length()*7)+10;
                setPreferredSize(new Dimension(panelWidth,panelHeight));
                revalidate();
             }
          }
-      }
-      catch(ConcurrentModificationException e)
-      {
-         e.printStackTrace();
-         return;
+
+         //  adjust the height of the panel if out of bounds
+         if(panelHeight < height)
+         {
+            panelHeight = height+10;
+            setPreferredSize(new Dimension(panelWidth,panelHeight));
+            revalidate();
+         }
       }
    }
 
@@ -217,83 +217,59 @@ public class MethodInteractionPanel extends JPanel
    }
 
    /**
-    *  Indicates that a method calls a method. Adjusts the lists
-    *  accordingly and updates the panel.
+    *  Sets the InteractionGraph that the calls between
+    *  the methods are read from.
     *
-    *  @param  caller  The caller method.
-    *  @param  called  The called method.
+    *  @param  graph The InteractionGraph.
     */
-   public void methodStart(MethodClass caller,MethodClass called)
+   public void setInteractionGraph(InteractionGraph graph)
    {
-      MethodClass meth;
-      ListIterator it;
-      boolean foundMethod;
+      this.graph = graph;
+      numKnownMethods = 0;
+      RepaintScheduler.setText(infoField,"Number of methods: " + numKnownMethods);
+      RepaintScheduler.repaint(this);
+   }
 
-      try
+   /**
+    *  Indicates that a method calls a method. The call has
+    *  been added to the InteractionGraph. Gives any new methods
+    *  a colour and updates the panel.
+    *
+    *  @param  callerID The ID number of the caller method.
+    *  @param  calledID The ID number of the called method.
+    */
+   public void methodStart(int callerID,int calledID)
+   {
+      int numMethods = graph.getNumKnownMethods();
+      if(numMethods > numKnownMethods)
       {
-         // check if the caller method has been encountered before
-         foundMethod = false;
-         it = knownMethods.listIterator();
-         while(it.hasNext())
-         {
-            if(caller.equals((MethodClass)it.next()))
-            {
-               foundMethod = true;
-               break;
-            }
-         }
-         if(!foundMethod) // it is a new method, so add it to knownMethods
+         for(;numKnownMethods<numMethods;numKnownMethods++) // new methods
          {
-            caller.setColour(colours[currColour++]);
-            if(currColour==colours.length) 
+            int methodID = graph.getKnownMethod(numKnownMethods);
+            if(methodID>=methodColours.length)
+               methodColours = (Color [])Arrays.copyOf(methodColours,Math.max(methodColours.length*2,methodID+1));
+            methodColours[methodID] = colours[currColour++];
+            if(currColour==colours.length)
                currColour = 0;
-            knownMethods.add(caller);
-            numKnownMethods++;
-         }
-
-         // check if the called method has been encountered before
-         foundMethod = false;
-         it = knownMethods.listIterator();
-         while(it.hasNext())
-         {
-            meth = (MethodClass)it.next();
-            if(called.equals(meth))
-            {
-               foundMethod = true;
-               called.setColour(meth.getColour());
-               break;
-            }
-         }
-         if(!foundMethod) // it is a new method, so add it to knownMethods
-         { 
-            called.setColour(colours[currColour++]);
-            if(currColour==colours.length) 
-               currColour = 0;
-            knownMethods.add(called);
-            numKnownMethods++;
-         }
-
-         // add the called method to the caller method's list of called methods
-         it = knownMethods.listIterator();
-         while(it.hasNext())
-         {
-            meth = (MethodClass)it.next();
-            if(caller.equals(meth))
-            {
-               meth.callsMethod(called);
-               break;
-            }
          }
+         RepaintScheduler.setText(infoField,"Number of methods: " + numKnownMethods);
+      }
 
-         infoField.setText("Number of methods: " + numKnownMethods);
+      RepaintScheduler.repaint(this);
+   }
 
-         repaint();
-      }
-      catch(ConcurrentModificationException e)
-      {
-         e.printStackTrace();
-         return;
-      }
+   /**
+    *  Returns the colour of a method.
+    *
+    *  @param  methodID The method ID number.
+    *  @return The colour of the method.
+    */
+   public Color getMethodColour(int methodID)
+   {
+      Color [] known = methodColours;
+      if(methodID>=known.length || known[methodID]==null)
+         return Color.white; // not given a colour yet
+      return known[methodID];
    }
 
    /**
@@ -319,65 +295,55 @@ public class MethodInteractionPanel extends JPanel
     */
    public boolean findMethod(String searchString)
    {
+      if(graph==null)
+         return false;
+
       searchString = searchString.toLowerCase();
       String methodName;
 
       int width = 10;
       int height = 10;
-      int callerHeight;
 
-      MethodClass caller,called;
-      ArrayList calledList;
-      ListIterator callerIt,calledIt;
+      int caller,called;
+      String callerName;
 
-      try
+      // check each caller method
+      int numMethods = graph.getNumKnownMethods();
+      for(int i=0;i<numMethods;i++)
       {
-         // check each caller method
-         callerIt = knownMethods.listIterator();
-         while(callerIt.hasNext())
+         // check the caller method
+         caller = graph.getKnownMethod(i);
+         callerName = graph.getMethodName(caller);
+         methodName = callerName.toLowerCase();
+         if(scroller.getVerticalScrollBar().getValue()<height && methodName.indexOf(searchString)>-1)
+         {
+            scroller.getVerticalScrollBar().setValue(height);
+            scroller.getHorizontalScrollBar().setValue(width);
+            return true;
+         }
+
+         // @rightWidth aligns the called methods
+         if((callerName.length()*7)+60 > rightWidth)
+            rightWidth = (callerName.length()*7)+60;
+
+         // check the methods called by this method
+         int edge = graph.getFirstEdge(InteractionGraph.METHOD_CALLS_METHOD,caller);
+         if(edge<0)
+            height += 30;
+         for(;edge>=0;edge=graph.getNextEdge(InteractionGraph.METHOD_CALLS_METHOD,edge))
          {
-            // check the caller method
-            caller = (MethodClass)callerIt.next();
-            methodName = caller.getName().toLowerCase();
+            called = graph.getCalled(InteractionGraph.METHOD_CALLS_METHOD,edge);
+            methodName = graph.getMethodName(called).toLowerCase();
             if(scroller.getVerticalScrollBar().getValue()<height && methodName.indexOf(searchString)>-1)
             {
                scroller.getVerticalScrollBar().setValue(height);
-               scroller.getHorizontalScrollBar().setValue(width);
+               scroller.getHorizontalScrollBar().setValue(rightWidth);
                return true;
             }
 
-            // @rightWidth aligns the called methods
-            if((caller.getName().length()*7)+60 > rightWidth)
-               rightWidth = (caller.getName().length()*7)+60;
-
-            callerHeight = height; // keeps track of the height
-
-            calledList = caller.getCalledMethods();
-            calledIt = calledList.listIterator();
-
-            // check the methods called by this object
-            while(calledIt.hasNext())
-            {
-               called = (MethodClass)calledIt.next();
-               methodName = called.getName().toLowerCase();
-               if(scroller.getVerticalScrollBar().getValue()<height && methodName.indexOf(searchString)>-1)
-               {
-                  scroller.getVerticalScrollBar().setValue(height);
-                  scroller.getHorizontalScrollBar().setValue(rightWidth);
-                  return true;
-               }
-
-               height += 30;
-            }
-            if(caller.getNumCalledMethods()==0)
-               height += 30;
+            height += 30;
          }
       }
-      catch(ConcurrentModificationException e)
-      {
-         e.printStackTrace();
-         return false;
-      }
 
       return false;
    }
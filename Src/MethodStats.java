@@ -0,0 +1,279 @@
+package ObjectTracker;
+
+import java.util.*;
+
+/**
+ *  This class keeps the runtimes of each method of the target
+ *  program: the number of calls, their total, shortest and longest
+ *  times, and a histogram from which percentiles are worked out.
+ *  Adding a call takes the same time however many calls there have
+ *  been, and the memory used does not grow with the number of calls.
+ *  <p>
+ *  The histogram of each method has a fixed number of buckets. Times
+ *  under 16 nanoseconds have a bucket each. Above that, each power of
+ *  two is split into 8 buckets of equal width, so no bucket is wider
+ *  than an eighth of its shortest time, whether the times are
+ *  measured in microseconds or in seconds.
+ *  <p>
+ *  The time taken to trace the calls made while a method ran is
+ *  taken from its runtime before it is added.
+ *  <p>
+ *  The EventDispatcher adds the calls while the event dispatch
+ *  thread reads the runtimes, so every method that reads or changes
+ *  them holds the lock on the MethodStats. A reader that needs the
+ *  runtimes of several methods to agree holds the lock while it
+ *  reads them all.
+ *
+ *  @author  Eoin O'Connor
+ *  @see RunTimeFrame
+ *  @see ObjectDisplayer
+ */
+public class MethodStats
+{
+   /**
+    *  The number of buckets split from each power of two.
+    */
+   private static final int SUB_BUCKETS = 8;
+   /**
+    *  The number of buckets in each histogram.
+    */
+   public static final int NUM_BUCKETS = 61*SUB_BUCKETS;
+
+   /**
+    *  The number of calls to each method, indexed by method ID number.
+    */
+   private long [] counts;
+   /**
+    *  The total time of the calls to each method.
+    */
+   private long [] totalTimes;
+   /**
+    *  The time of the shortest call to each method.
+    */
+   private long [] minTimes;
+   /**
+    *  The time of the longest call to each method.
+    */
+   private long [] maxTimes;
+   /**
+    *  The histogram of each method's times, or null if
+    *  it has not been called.
+    */
+   private long [][] buckets;
+   /**
+    *  The method ID numbers of the methods that have been called,
+    *  in the order they were first called.
+    */
+   private int [] calledMethods;
+   /**
+    *  The number of methods that have been called.
+    */
+   private int numCalledMethods;
+   /**
+    *  The time in nanoseconds taken to trace one call.
+    */
+   private long callCost;
+
+   /**
+    *  Constructor: creates an empty set of runtimes.
+    */
+   public MethodStats()
+   {
+      counts = new long[256];
+      totalTimes = new long[256];
+      minTimes = new long[256];
+      maxTimes = new long[256];
+      buckets = new long[256][];
+      calledMethods = new int[256];
+      numCalledMethods = 0;
+      callCost = 0;
+   }
+
+   /**
+    *  Sets the time that tracing a call adds to the call it is made from.
+    *
+    *  @param  callCost The time in nanoseconds.
+    */
+   public synchronized void setCallCost(long callCost)
+   {
+      this.callCost = callCost;
+   }
+
+   /**
+    *  A call to a method has ended. Adds its time.
+    *
+    *  @param  methodID    The ID number of the method.
+    *  @param  time        The runtime of the call in nanoseconds.
+    *  @param  tracedCalls The number of calls traced while it ran,
+    *                      counting itself.
+    */
+   public synchronized void add(int methodID,long time,long tracedCalls)
+   {
+      time = MethodClass.removeCallCost(time,tracedCalls,1,callCost);
+
+      if(methodID>=counts.length)
+      {
+         int size = Math.max(counts.length*2,methodID+1);
+         counts = Arrays.copyOf(counts,size);
+         totalTimes = Arrays.copyOf(totalTimes,size);
+         minTimes = Arrays.copyOf(minTimes,size);
+         maxTimes = Arrays.copyOf(maxTimes,size);
+         buckets = Arrays.copyOf(buckets,size);
+      }
+      if(buckets[methodID]==null) // the first call to the method
+      {
+         buckets[methodID] = new long[NUM_BUCKETS];
+         minTimes[methodID] = time;
+         if(numCalledMethods==calledMethods.length)
+            calledMethods = Arrays.copyOf(calledMethods,calledMethods.length*2);
+         calledMethods[numCalledMethods] = methodID;
+         numCalledMethods++;
+      }
+
+      buckets[methodID][getBucket(time)]++;
+      counts[methodID]++;
+      totalTimes[methodID] += time;
+      if(time < minTimes[methodID])
+         minTimes[methodID] = time;
+      if(time > maxTimes[methodID])
+         maxTimes[methodID] = time;
+   }
+
+   /**
+    *  Returns the bucket that a time is counted in.
+    *
+    *  @param  time  The time in nanoseconds.
+    *  @return The index of the bucket.
+    */
+   public static int getBucket(long time)
+   {
+      if(time < 2*SUB_BUCKETS)
+         return (int)time;
+      int shift = 63 - Long.numberOfLeadingZeros(time) - 3; // keep the top 4 bits
+      return (shift+1)*SUB_BUCKETS + (int)((time >>> shift) & (SUB_BUCKETS-1));
+   }
+
+   /**
+    *  Returns the shortest time counted in a bucket.
+    *
+    *  @param  bucket   The index of the bucket.
+    *  @return The time in nanoseconds.
+    */
+   public static long getBucketStart(int bucket)
+   {
+      if(bucket < 2*SUB_BUCKETS)
+         return bucket;
+      int shift = bucket/SUB_BUCKETS - 1;
+      return (long)(SUB_BUCKETS + bucket%SUB_BUCKETS) << shift;
+   }
+
+   /**
+    *  Returns the number of methods that have been called.
+    *
+    *  @return The number of methods.
+    */
+   public synchronized int getNumCalledMethods()
+   {
+      return numCalledMethods;
+   }
+
+   /**
+    *  Returns a method that has been called.
+    *
+    *  @param  n  The index of the method, in the order they were first called.
+    *  @return The method ID number.
+    */
+   public synchronized int getCalledMethod(int n)
+   {
+      return calledMethods[n];
+   }
+
+   /**
+    *  Returns the number of calls to a method.
+    *
+    *  @param  methodID The ID number of the method.
+    *  @return The number of calls.
+    */
+   public synchronized long getCount(int methodID)
+   {
+      return counts[methodID];
+   }
+
+   /**
+    *  Returns the total time of the calls to a method.
+    *
+    *  @param  methodID The ID number of the method.
+    *  @return The time in nanoseconds.
+    */
+   public synchronized long getTotalTime(int methodID)
+   {
+      return totalTimes[methodID];
+   }
+
+   /**
+    *  Returns the mean time of the calls to a method.
+    *
+    *  @param  methodID The ID number of the method.
+    *  @return The time in nanoseconds.
+    */
+   public synchronized long getMeanTime(int methodID)
+   {
+      long count = counts[methodID];
+      return count==0 ? 0 : totalTimes[methodID]/count;
+   }
+
+   /**
+    *  Returns the time of the shortest call to a method.
+    *
+    *  @param  methodID The ID number of the method.
+    *  @return The time in nanoseconds.
+    */
+   public synchronized long getMinTime(int methodID)
+   {
+      return minTimes[methodID];
+   }
+
+   /**
+    *  Returns the time of the longest call to a method.
+    *
+    *  @param  methodID The ID number of the method.
+    *  @return The time in nanoseconds.
+    */
+   public synchronized long getMaxTime(int methodID)
+   {
+      return maxTimes[methodID];
+   }
+
+   /**
+    *  Returns the time that a given percentage of the calls
+    *  to a method took no longer than. The time is the middle
+    *  of the bucket it falls in, kept within the shortest and
+    *  longest times.
+    *
+    *  @param  methodID    The ID number of the method.
+    *  @param  percentile  The percentage, from 0 to 100.
+    *  @return The time in nanoseconds.
+    */
+   public synchronized long getPercentile(int methodID,double percentile)
+   {
+      long [] histogram = buckets[methodID];
+      long count = counts[methodID];
+      if(histogram==null || count==0)
+         return 0;
+
+      long rank = Math.max(1,(long)Math.ceil(count*percentile/100.0));
+      long seen = 0;
+      for(int i=0;i<NUM_BUCKETS;i++)
+      {
+         seen += histogram[i];
+         if(seen >= rank)
+         {
+            long start = getBucketStart(i);
+            long end = i+1<NUM_BUCKETS ? getBucketStart(i+1) : Long.MAX_VALUE;
+            long time = start + (end-start)/2;
+            return Math.max(minTimes[methodID],Math.min(maxTimes[methodID],time));
+         }
+      }
+      return maxTimes[methodID];
+   }
+}
@@ -0,0 +1,307 @@
+package ObjectTracker;
+
+import com.sun.jdi.*;
+import java.util.*;
+
+/**
+ *  This class is the symbol table of the target program. It gives
+ *  each class, method and field a small ID number, so that events
+ *  can refer to them without their names being built again each
+ *  time, and so that they can be compared and looked up as ints.
+ *  Each name is kept once, however many events refer to it.
+ *  <p>
+ *  Classes are added when they are prepared, and their fields when
+ *  watchpoints are requested for them. Methods are added when they
+ *  are first seen, and know the ID number of their class.
+ *  <p>
+ *  Only the ObjectTracker adds symbols. Other threads may look
+ *  up the names of ID numbers that have been passed to them
+ *  through the EventRing.
+ *
+ *  @author  Eoin O'Connor
+ *  @see ObjectTracker
+ *  @see EventRing
+ */
+public class MethodTable
+{
+   /**
+    *  The ID number of each method, keyed by the JDI Method
+    *  or by the method name.
+    */
+   private HashMap ids;
+   /**
+    *  The name of each method, indexed by ID number.
+    */
+   private String [] names;
+   /**
+    *  The class ID number of each method, indexed by ID number.
+    */
+   private int [] methodClasses;
+   /**
+    *  The number of methods in the table.
+    */
+   private int numMethods;
+   /**
+    *  The class ID number of each class name.
+    */
+   private HashMap classIDs;
+   /**
+    *  The name of each class, indexed by class ID number.
+    */
+   private String [] classNames;
+   /**
+    *  The number of classes in the table.
+    */
+   private int numClasses;
+   /**
+    *  The field ID number of each JDI field.
+    */
+   private HashMap fieldIDs;
+   /**
+    *  The field ID number of each field name.
+    */
+   private HashMap fieldNameIDs;
+   /**
+    *  The name of each field, indexed by field ID number.
+    */
+   private String [] fieldNames;
+   /**
+    *  The number of field names in the table.
+    */
+   private int numFields;
+
+   /**
+    *  Constructor: creates an empty table.
+    */
+   public MethodTable()
+   {
+      ids = new HashMap();
+      names = new String[256];
+      methodClasses = new int[256];
+      numMethods = 0;
+      classIDs = new HashMap();
+      classNames = new String[256];
+      numClasses = 0;
+      fieldIDs = new HashMap();
+      fieldNameIDs = new HashMap();
+      fieldNames = new String[256];
+      numFields = 0;
+   }
+
+   /**
+    *  Returns the ID number of a JDI method, adding it to
+    *  the table if it is new.
+    *
+    *  @param  method   The method.
+    *  @return The ID number of the method.
+    */
+   public int getID(Method method)
+   {
+      Integer id = (Integer)ids.get(method);
+      if(id==null)
+      {
+         id = new Integer(add(method.toString(),method.declaringType().name()));
+         ids.put(method,id);
+      }
+      return id.intValue();
+   }
+
+   /**
+    *  Returns the ID number of a method given by name, adding
+    *  it to the table if it is new.
+    *
+    *  @param  methodName  The name of the method.
+    *  @param  className   The name of the method's class.
+    *  @return The ID number of the method.
+    */
+   public int getID(String methodName,String className)
+   {
+      Integer id = (Integer)ids.get(methodName);
+      if(id==null)
+      {
+         id = new Integer(add(methodName,className));
+         ids.put(methodName,id);
+      }
+      return id.intValue();
+   }
+
+   /**
+    *  Returns true if a JDI method is already in the table.
+    *
+    *  @param  method   The method.
+    *  @return True if the method is in the table.
+    */
+   public boolean contains(Method method)
+   {
+      return ids.containsKey(method);
+   }
+
+   /**
+    *  Adds a new method to the table.
+    *
+    *  @param  methodName  The name of the method.
+    *  @param  className   The name of the method's class.
+    *  @return The ID number of the new method.
+    */
+   private int add(String methodName,String className)
+   {
+      int classID = getClassID(className);
+      if(numMethods==names.length)
+      {
+         String [] newNames = new String[names.length*2];
+         int [] newMethodClasses = new int[names.length*2];
+         System.arraycopy(names,0,newNames,0,numMethods);
+         System.arraycopy(methodClasses,0,newMethodClasses,0,numMethods);
+         names = newNames;
+         methodClasses = newMethodClasses;
+      }
+      names[numMethods] = methodName;
+      methodClasses[numMethods] = classID;
+      numMethods++;
+      return numMethods-1;
+   }
+
+   /**
+    *  Returns the class ID number of a class, adding it to
+    *  the table if it is new.
+    *
+    *  @param  className   The name of the class.
+    *  @return The class ID number.
+    */
+   public int getClassID(String className)
+   {
+      Integer id = (Integer)classIDs.get(className);
+      if(id==null)
+      {
+         if(numClasses==classNames.length)
+         {
+            String [] newClassNames = new String[classNames.length*2];
+            System.arraycopy(classNames,0,newClassNames,0,numClasses);
+            classNames = newClassNames;
+         }
+         classNames[numClasses] = className;
+         id = new Integer(numClasses);
+         classIDs.put(className,id);
+         numClasses++;
+      }
+      return id.intValue();
+   }
+
+   /**
+    *  Returns the field ID number of a JDI field, adding it to
+    *  the table if it is new. Fields of different classes that
+    *  have the same name share a field ID number.
+    *
+    *  @param  field The field.
+    *  @return The field ID number.
+    */
+   public int getFieldID(Field field)
+   {
+      Integer id = (Integer)fieldIDs.get(field);
+      if(id==null)
+      {
+         String fieldName = field.name();
+         id = (Integer)fieldNameIDs.get(fieldName);
+         if(id==null)
+         {
+            if(numFields==fieldNames.length)
+            {
+               String [] newFieldNames = new String[fieldNames.length*2];
+               System.arraycopy(fieldNames,0,newFieldNames,0,numFields);
+               fieldNames = newFieldNames;
+            }
+            fieldNames[numFields] = fieldName;
+            id = new Integer(numFields);
+            fieldNameIDs.put(fieldName,id);
+            numFields++;
+         }
+         fieldIDs.put(field,id);
+      }
+      return id.intValue();
+   }
+
+   /**
+    *  Returns the name of a method.
+    *
+    *  @param  id The ID number of the method.
+    *  @return The name of the method.
+    */
+   public String getName(int id)
+   {
+      return names[id];
+   }
+
+   /**
+    *  Returns the class name of a method.
+    *
+    *  @param  id The ID number of the method.
+    *  @return The name of the method's class.
+    */
+   public String getClassName(int id)
+   {
+      return classNames[methodClasses[id]];
+   }
+
+   /**
+    *  Returns the class ID number of a method.
+    *
+    *  @param  id The ID number of the method.
+    *  @return The class ID number of the method's class.
+    */
+   public int getMethodClass(int id)
+   {
+      return methodClasses[id];
+   }
+
+   /**
+    *  Returns the name of a class.
+    *
+    *  @param  classID  The class ID number.
+    *  @return The name of the class.
+    */
+   public String getNameOfClass(int classID)
+   {
+      return classNames[classID];
+   }
+
+   /**
+    *  Returns the name of a field.
+    *
+    *  @param  fieldID  The field ID number.
+    *  @return The name of the field.
+    */
+   public String getFieldName(int fieldID)
+   {
+      return fieldNames[fieldID];
+   }
+
+   /**
+    *  Returns the number of classes in the table.
+    *
+    *  @return The number of classes in the table.
+    */
+   public int getNumClasses()
+   {
+      return numClasses;
+   }
+
+   /**
+    *  Returns the number of field names in the table.
+    *
+    *  @return The number of field names in the table.
+    */
+   public int getNumFields()
+   {
+      return numFields;
+   }
+
+   /**
+    *  Returns the number of methods in the table.
+    *
+    *  @return The number of methods in the table.
+    */
+   public int getNumMethods()
+   {
+      return numMethods;
+   }
+}
@@ -3,7 +3,9 @@ package ObjectTracker;
 import java.util.*;
 
 /**
- *  This class represents the node of a tree.
+ *  This class represents the node of a tree. Each node
+ *  knows the number of nodes below it, so that the tree
+ *  can find the node at a given position in its order.
  *
  *  @author  Eoin O'Connor
  *  @see Tree
@@ -22,43 +24,50 @@ public class Node
     *  The node to the right.
     */
    public Node right;
+   /**
+    *  The number of nodes in the subtree of this node,
+    *  counting this node.
+    */
+   public int size;
+   /**
+    *  The random priority of the node. A node's priority is
+    *  never less than the priorities of the nodes below it,
+    *  which keeps the tree balanced whatever order the objects
+    *  are inserted in.
+    */
+   public int priority;
 
    /**
-    *  Inserts a node to the left or right of this node.
+    *  Constructor: creates a node with no children.
     *
-    *  @param  newNode  The node to insert.
+    *  @param  obj      The object contained in the node.
+    *  @param  priority The random priority of the node.
+    */
+   public Node(Comparable obj,int priority)
+   {
+      data = obj;
+      left = null;
+      right = null;
+      size = 1;
+      this.priority = priority;
+   }
+
+   /**
+    *  Works out the size of the node from the sizes of its children.
     */
-   public void insertNode(Node newNode)
+   public void updateSize()
    {
-      if(newNode.data.compareTo(data) > 0)
-      {
-         if(left==null)
-            left = newNode;
-         else
-            left.insertNode(newNode);
-      }
-      else
-      {
-         if(right==null)
-            right = newNode;
-         else
-            right.insertNode(newNode);
-      }
+      size = 1 + size(left) + size(right);
    }
 
    /**
-    *  Returns the list of nodes.
+    *  Returns the size of a node.
     *
-    *  @param  list  The list to append to.
-    *  @return The list of nodes.
+    *  @param  node  The node, or null.
+    *  @return The number of nodes in its subtree, or 0 if it is null.
     */
-   public ArrayList get(ArrayList list)
+   public static int size(Node node)
    {
-      if(left!=null)
-         list = left.get(list);
-      list.add(data);
-      if(right!=null)
-         list = right.get(list);
-      return list;
+      return node==null ? 0 : node.size;
    }
-}
\ No newline at end of file
+}
@@ -33,6 +33,11 @@ public class ObjectDisplayer extends JDesktopPane
     *  The list of threads in the program.
     */
    private ArrayList threads;
+   /**
+    *  The ThreadManager of each thread that is alive, keyed by
+    *  the ID number of the thread.
+    */
+   private LongMap threadMap;
    /**
     *  The number of threads in the program.
     */
@@ -49,10 +54,37 @@ public class ObjectDisplayer extends JDesktopPane
     *  Displays the instances modified in the program.
     */
    private InstanceTrackerPanel instanceTrackerPanel;
+   /**
+    *  Gives the names of the methods from their ID numbers.
+    */
+   private MethodTable methodTable;
+   /**
+    *  The calls between the classes and methods, shown by the
+    *  ObjectInteractionPanel and the MethodInteractionPanel.
+    */
+   private InteractionGraph interactionGraph;
    /**
     *  Displays methods and their runtimes.
     */
    private RunTimeFrame runTimeFrame;
+   /**
+    *  Lists the methods that have been throttled.
+    */
+   private ThrottledFrame throttledFrame;
+   /**
+    *  The number of calls after which a method is throttled.
+    */
+   private int callBudget;
+   /**
+    *  True if each thread's calls are merged into a CallTree.
+    */
+   private boolean isAggregated;
+   /**
+    *  Spills the oldest calls of the threads when they take
+    *  more memory than the budget, or null if they are all
+    *  kept in memory.
+    */
+   private TraceSpiller spiller;
    /**
     *  The find button in the Search Execution Tracker
     *  frame.
@@ -143,6 +175,7 @@ public class ObjectDisplayer extends JDesktopPane
       findMethodName = null;
       findThreadName = null;
       threads = new ArrayList();
+      threadMap = new LongMap();
       numThreads = 0;
       this.findMenuItem = findMenuItem;
       findMenuItem.addActionListener(new FindButtonListener());
@@ -159,39 +192,44 @@ public class ObjectDisplayer extends JDesktopPane
          e.printStackTrace();
          return;
       }
+
+      throttledFrame = new ThrottledFrame();
+      add(throttledFrame,new Integer(1));
+      throttledFrame.show();
+      try
+      {
+         throttledFrame.setIcon(true);
+      }
+      catch(java.beans.PropertyVetoException e)
+      {
+         e.printStackTrace();
+         return;
+      }
    }
 
    /**
     *  A new method has been executed. Update the Execution Tracker
     *  and the Pattern Tracker to take account of this.
     *
-    *  @param  methodName  The name of the method.
-    *  @param  className   The name of the class of the method.
-    *  @param  threadName  The thread name that executed the method.
+    *  @param  methodID    The ID number of the method in the MethodTable.
     *  @param  threadID    The ID number of the thread.
+    *  @param  time        The time at which the method started.
     */
-   public void startMethod(String methodName,String className,String threadName,long threadID)
+   public void startMethod(int methodID,long threadID,long time)
    {
-      ListIterator iterator = threads.listIterator();
-      while(iterator.hasNext())
-      {
-         manager = (ThreadManager)iterator.next();
-         if(threadName.equals(manager.getThreadName()) && threadID==manager.getThreadID())
-         {
-            manager.startMethod(methodName,className);
-            break;
-         }
-      }
+      ThreadManager manager = (ThreadManager)threadMap.get(threadID);
+      if(manager==null)
+         return; // the thread has not been started or has died
+      manager.startMethod(methodID,methodTable.getName(methodID),methodTable.getMethodClass(methodID),methodTable.getClassName(methodID),time);
 
       // Update the pattern displayer
-      MethodClass called = manager.getLastMethodOnStack();
-      if(called!=null && !called.getIsFirstMethod())
+      int callerID = manager.getCallerMethodID();
+      if(callerID>=0)
       {
-         MethodClass caller = manager.getSecondLastMethodOnStack();
-         ObjectClass callerClass = new ObjectClass(caller.getObjectClass().getName(),null);
-         ObjectClass calledClass = new ObjectClass(called.getObjectClass().getName(),null);
-         objectInteractionPanel.methodStart(callerClass,calledClass,called);
-         methodInteractionPanel.methodStart(caller,called);
+         interactionGraph.addCall(callerID,methodID);
+         objectInteractionPanel.methodStart();
+         methodInteractionPanel.methodStart(callerID,methodID);
+         manager.setStackColours(methodInteractionPanel.getMethodColour(callerID),methodInteractionPanel.getMethodColour(methodID));
       }
    }
 
@@ -199,29 +237,54 @@ public class ObjectDisplayer extends JDesktopPane
     *  A method has been exited. Update the Execution Tracker
     *  to take account of this.
     *
-    *  @param  methodName  The name of the method.
-    *  @param  threadName  The thread name that executed the method.
+    *  @param  methodID    The ID number of the method in the MethodTable.
     *  @param  threadID    The ID number of the thread.
+    *  @param  time        The time at which the method ended.
+    */
+   public void endMethod(int methodID,long threadID,long time)
+   {
+      ThreadManager manager = (ThreadManager)threadMap.get(threadID);
+      if(manager==null)
+         return;
+
+      // check that the ending method is the same as the one at the top of the stack
+      if(manager.getStackCount()>0 && methodID==manager.getLastMethodID())
+         endLastMethod(manager,time);
+   }
+
+   /**
+    *  Ends the method at the top of a thread's stack.
+    *
+    *  @param  manager     The ThreadManager of the thread.
+    *  @param  time        The time at which the method ended.
+    */
+   private void endLastMethod(ThreadManager manager,long time)
+   {
+      int methodID = manager.getLastMethodID();
+      int index = manager.endMethod(time); // indicate that the method has ended
+      runTimeFrame.addTime(methodID,manager.getLastExecutionTime(),manager.getLastNumMethodsCalled());
+      if(isAggregated)
+         runTimeFrame.update();
+      else
+         runTimeFrame.addCall(manager.getEventStore(),index);
+   }
+
+   /**
+    *  Tracing has been stopped. The methods still on the stack of
+    *  each thread will not have their exits traced, so they are
+    *  ended now, innermost first. Calls made after tracing is
+    *  started again then begin on empty stacks.
+    *
+    *  @param  time        The time at which tracing was stopped.
     */
-   public void endMethod(String methodName,String threadName,long threadID)
+   public void stopTrace(long time)
    {
-      ListIterator iterator = threads.listIterator();
-      while(iterator.hasNext())
+      ListIterator it = threads.listIterator();
+      while(it.hasNext())
       {
-         manager = (ThreadManager)iterator.next();
-         if(threadName.equals(manager.getThreadName()) && threadID==manager.getThreadID())
-         {
-            // check that the ending method is the same as the one at the top of the stack
-            if(manager.getStackCount()>0)
-            {
-               if(methodName.equals(manager.getLastMethodOnStack().getName()))
-               {
-                  MethodClass method = manager.endMethod(); // indicate that the method has ended
-                  runTimeFrame.addMethod(method);
-               }
-            }
-            break;
-         }
+         ThreadManager manager = (ThreadManager)it.next();
+         while(manager.getStackCount()>0)
+            endLastMethod(manager,time);
       }
    }
 
@@ -234,8 +297,12 @@ public class ObjectDisplayer extends JDesktopPane
     */
    public void startThread(String threadName,long threadID)
    {
-      threads.add(new ThreadManager(threadName,threadID));
-      ThreadFrame threadFrame = ((ThreadManager)threads.get(numThreads)).getThreadFrame();
+      ThreadManager newManager = new ThreadManager(threadName,threadID,isAggregated,spiller);
+      threads.add(newManager);
+      threadMap.put(threadID,newManager);
+      if(isAggregated)
+         runTimeFrame.addCallTree(newManager.getCallTree());
+      ThreadFrame threadFrame = newManager.getThreadFrame();
       add(threadFrame,new Integer(1));
       try
       {
@@ -249,6 +316,42 @@ public class ObjectDisplayer extends JDesktopPane
       numThreads++;
    }
 
+   /**
+    *  A thread has died. Its ThreadManager is no longer looked up
+    *  by its ID number, but it is kept so that its execution can
+    *  still be viewed. The methods still on its stack will not have
+    *  their exits traced, so they are ended at the time it died, as
+    *  when tracing is stopped. Its EventStore is then closed.
+    *
+    *  @param  threadID    The ID number of the thread.
+    *  @param  time        The time at which the thread died.
+    */
+   public void endThread(long threadID,long time)
+   {
+      ThreadManager manager = (ThreadManager)threadMap.get(threadID);
+      if(manager!=null)
+      {
+         while(manager.getStackCount()>0)
+            endLastMethod(manager,time);
+         manager.closeEventStore();
+      }
+      threadMap.remove(threadID);
+   }
+
+   /**
+    *  Sets the MethodTable used to look up method names.
+    *
+    *  @param  methodTable  The new MethodTable.
+    */
+   public void setMethodTable(MethodTable methodTable)
+   {
+      this.methodTable = methodTable;
+      runTimeFrame.setMethodTable(methodTable);
+      interactionGraph = new InteractionGraph(methodTable);
+      objectInteractionPanel.setInteractionGraph(interactionGraph);
+      methodInteractionPanel.setInteractionGraph(interactionGraph);
+   }
+
    /**
     *  Sets the ObjectInteractionPanel.
     *
@@ -318,15 +421,134 @@ public class ObjectDisplayer extends JDesktopPane
 
    /**
     *  Restarts the execution time of each method in each thread.
+    *
+    *  @param  restartTime The time that the execution was restarted.
     */
-   public void restartExecutionTime()
+   public void restartExecutionTime(long restartTime)
    {
       // for each thread restart the execution time
       ListIterator it = threads.listIterator();
       while(it.hasNext())
       {
-         ((ThreadManager)(it.next())).restartExecutionTime();
+         ((ThreadManager)(it.next())).restartExecutionTime(restartTime);
+      }
+   }
+
+   /**
+    *  Returns the number of calls kept in the EventStores of the threads.
+    *
+    *  @return The number of calls.
+    */
+   public long getNumStoredCalls()
+   {
+      long numCalls = 0;
+      for(int i=0;i<numThreads;i++)
+      {
+         EventStore store = ((ThreadManager)threads.get(i)).getEventStore();
+         if(store!=null)
+            numCalls += store.size();
       }
+      return numCalls;
+   }
+
+   /**
+    *  Returns the number of bytes of memory taken by the EventStores
+    *  of the threads.
+    *
+    *  @return The number of bytes.
+    */
+   public long getStoreFootprint()
+   {
+      long footprint = 0;
+      for(int i=0;i<numThreads;i++)
+      {
+         EventStore store = ((ThreadManager)threads.get(i)).getEventStore();
+         if(store!=null)
+            footprint += store.getFootprint();
+      }
+      return footprint;
+   }
+
+   /**
+    *  Sets the number of calls after which a method is throttled.
+    *
+    *  @param  callBudget  The number of calls.
+    */
+   public void setCallBudget(int callBudget)
+   {
+      this.callBudget = callBudget;
+   }
+
+   /**
+    *  Sets whether each thread's calls are merged into a
+    *  CallTree, so that the memory used grows with the number
+    *  of distinct call paths instead of the number of calls.
+    *
+    *  @param  isAggregated  True if the calls are to be merged.
+    */
+   public void setAggregated(boolean isAggregated)
+   {
+      this.isAggregated = isAggregated;
+   }
+
+   /**
+    *  Sets the memory that the calls kept by the threads may take
+    *  before the oldest are spilled to segment files.
+    *
+    *  @param  budgetMB The number of megabytes, or 0 if the calls
+    *                   are all kept in memory.
+    */
+   public void setMemoryBudget(int budgetMB)
+   {
+      spiller = new TraceSpiller(budgetMB);
+   }
+
+   /**
+    *  Returns the number of bytes of calls spilled to segment files.
+    *
+    *  @return The number of bytes.
+    */
+   public long getSpilledBytes()
+   {
+      if(spiller==null)
+         return 0;
+      return spiller.getSpilledBytes();
+   }
+
+   /**
+    *  A method has been throttled. Adds it to the
+    *  list of throttled methods.
+    *
+    *  @param  methodID    The ID number of the method in the MethodTable.
+    *  @param  time        The time at which it was throttled.
+    */
+   public void throttleMethod(int methodID,long time)
+   {
+      throttledFrame.addMethod(methodTable.getName(methodID),callBudget,time);
+   }
+
+   /**
+    *  The method events of a class are no longer requested. Adds
+    *  it to the list of throttled methods.
+    *
+    *  @param  methodID    The ID number of a method of the class.
+    *  @param  time        The time at which its events stopped.
+    */
+   public void throttleClass(int methodID,long time)
+   {
+      throttledFrame.addClass(methodTable.getClassName(methodID),callBudget,time);
+   }
+
+   /**
+    *  Sets the time that tracing a call adds to the call it is
+    *  made from, which is taken from the method times that are
+    *  displayed once for each call they made.
+    *
+    *  @param  callCost The time in nanoseconds.
+    */
+   public void setCallCost(long callCost)
+   {
+      runTimeFrame.setCallCost(callCost);
    }
 
    /**
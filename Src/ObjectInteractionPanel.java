@@ -8,10 +8,11 @@ import java.awt.event.*;
 /**
  *  This class represents a panel that displays the
  *  objects used during the execution of the
- *  target program.
+ *  target program. The calls between them are read
+ *  from the InteractionGraph.
  *
  *  @author  Eoin O'Connor
- *  @see ObjectClass
+ *  @see InteractionGraph
  *  @see PatternDisplayer
  *  @see ObjectDisplayer
  */
@@ -42,13 +43,22 @@ public class ObjectInteractionPanel extends JPanel
     */
    private JScrollPane scroller;
    /**
-    *  The list of known classes.
+    *  The calls between the classes.
     */
-   private ArrayList knownObjects;
+   private InteractionGraph graph;
    /**
-    *  The number of known classes.
+    *  The colour of each class, indexed by class ID number.
+    */
+   private Color [] classColours;
+   /**
+    *  The number of known classes that have been given a colour.
     */
    private int numKnownObjects;
+   /**
+    *  True for each class whose called methods are to be
+    *  displayed, indexed by class ID number.
+    */
+   private boolean [] showMethods;
    /**
     *  The list of colours to use.
     */
@@ -83,12 +93,13 @@ public class ObjectInteractionPanel extends JPanel
       methodWidth = 0;
       setPreferredSize(new Dimension(panelWidth,panelHeight));
       setBackground(Color.white);
+      classColours = new Color[64];
+      showMethods = new boolean[64];
+      numKnownObjects = 0;
       infoField = field;
       infoField.setText("Number of classes: " + numKnownObjects);
       MouseClickListener listener = new MouseClickListener();
       addMouseListener(listener);
-      knownObjects = new ArrayList();
-      numKnownObjects = 0;
 
       renderHints =  new RenderingHints(RenderingHints.KEY_COLOR_RENDERING,RenderingHints.VALUE_COLOR_RENDER_SPEED);
       renderHints.put(RenderingHints.KEY_TEXT_ANTIALIASING,RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
@@ -114,153 +125,143 @@ public class ObjectInteractionPanel extends JPanel
       g2.setRenderingHints(renderHints);
       g2.setFont(new Font("Courier new",0,12)); // the Courier New chars are about 7 pixels wide
 
+      if(graph==null)
+         return;
+
       int width = 10;
       int height = 10;
       int callerHeight,calledHeight;
 
-      ObjectClass caller,called;
-      MethodClass method;
-      String countString,methodCountString;
-      ArrayList calledList,methodList;
-      ListIterator callerIt,calledIt,methodIt;
+      int caller,called,method;
+      String callerName,calledName,methodName,countString,methodCountString;
+      Color callerColour,calledColour;
       Rectangle rect; // visible part of the panel
 
-      try
+      // for each object, draw the object and the objects it calls
+      int numClasses = graph.getNumKnownClasses();
+      for(int i=0;i<numClasses;i++)
       {
-         // for each object, draw the object and the objects it calls
-         callerIt = knownObjects.listIterator();
-         while(callerIt.hasNext())
+         rect = getVisibleRect(); // visible part of the panel
+         boolean displayedCaller = false; // indicates if the caller object was displayed
+
+         // draw the caller object
+         caller = graph.getKnownClass(i);
+         callerName = graph.getClassName(caller);
+         callerColour = getClassColour(caller);
+
+         // only display the object if it is visible
+         if(height>rect.getY()-50 && height<rect.getHeight()+rect.getY()+50)
          {
-            rect = getVisibleRect(); // visible part of the panel
-            boolean displayedCaller = false; // indicates if the caller object was displayed
+            g2.draw(new Rectangle(width,height,(callerName.length()*7)+10,15));
+            g2.setPaint(callerColour);
+            g2.fill(new Rectangle(width+1,height+1,(callerName.length()*7)+9,14));
+            if(isDark(callerColour))
+               g2.setPaint(Color.white);
+            else
+               g2.setPaint(Color.black);
+            g2.drawString(callerName,width+5,height+12);
+            g2.setPaint(Color.black);
+            displayedCaller = true;
+         }
 
-            // draw the caller object
-            caller = (ObjectClass)callerIt.next();
+         // @rightWidth aligns the called objects
+         if((callerName.length()*7)+60 > rightWidth)
+            rightWidth = (callerName.length()*7)+60;
+
+         callerHeight = height; // keeps track of the height
+
+         // draw the objects called by this object
+         int edge = graph.getFirstEdge(InteractionGraph.CLASS_CALLS_CLASS,caller);
+         if(edge<0)
+            height += 30;
+         for(;edge>=0;edge=graph.getNextEdge(InteractionGraph.CLASS_CALLS_CLASS,edge))
+         {
+            called = graph.getCalled(InteractionGraph.CLASS_CALLS_CLASS,edge);
+            calledName = graph.getClassName(called);
+            calledColour = getClassColour(called);
+            countString = Long.toString(graph.getCount(InteractionGraph.CLASS_CALLS_CLASS,edge));
 
-            // only display the object if it is visible
-            if(height>rect.getY()-50 && height<rect.getHeight()+rect.getY()+50)
+            // only display the object if it is visible or its caller object is visible
+            if(displayedCaller || (height>rect.getY()-50 && height<rect.getHeight()+rect.getY()+50))
             {
-               g2.draw(new Rectangle(width,height,(caller.getName().length()*7)+10,15));
-               g2.setPaint(caller.getColour());
-               g2.fill(new Rectangle(width+1,height+1,(caller.getName().length()*7)+9,14));
-               if(isDark(caller.getColour()))
+               g2.draw(new Rectangle(rightWidth,height,(calledName.length()*7)+10,15));
+               g2.setPaint(calledColour);
+               g2.fill(new Rectangle(rightWidth+1,height+1,(calledName.length()*7)+9,14));
+               if(isDark(calledColour))
                   g2.setPaint(Color.white);
                else
                   g2.setPaint(Color.black);
-               g2.drawString(caller.getName(),width+5,height+12);
+               g2.drawString(calledName,rightWidth+5,height+12);
                g2.setPaint(Color.black);
-               displayedCaller = true;
+               g2.drawString(countString,rightWidth+(calledName.length()*7)+15,height+12);
+               g2.drawLine((callerName.length()*7)+20,callerHeight+7,rightWidth,height+7);
+               displayedCaller = true; // at least one of the called methods was displayed
             }
 
-            // @rightWidth aligns the called objects
-            if((caller.getName().length()*7)+60 > rightWidth)
-               rightWidth = (caller.getName().length()*7)+60;
+            calledHeight = height;
 
-            callerHeight = height; // keeps track of the height
-
-            int count = 0;
-            calledList = caller.getCalledObjects();
-            calledIt = calledList.listIterator();
-
-            // draw the objects called by this object
-            while(calledIt.hasNext())
+            // methods called by the caller:
+            if(methodWidth < rightWidth+(calledName.length()*7)+15+(countString.length()*7)+30)
+               methodWidth = rightWidth+(calledName.length()*7)+15+(countString.length()*7)+30;
+            // if the user clicks on a class - display the methods called by the caller
+            if(getShowMethods(caller))
             {
-               called = (ObjectClass)calledIt.next();
-               countString = (new Integer(caller.getCalledObjectCount(count))).toString();
-
-               // only display the object if it is visible or its caller object is visible
-               if(displayedCaller || (height>rect.getY()-50 && height<rect.getHeight()+rect.getY()+50))
-               {
-                  g2.draw(new Rectangle(rightWidth,height,(called.getName().length()*7)+10,15));
-                  g2.setPaint(called.getColour());
-                  g2.fill(new Rectangle(rightWidth+1,height+1,(called.getName().length()*7)+9,14));
-                  if(isDark(called.getColour()))
-                     g2.setPaint(Color.white);
-                  else
-                     g2.setPaint(Color.black);
-                  g2.drawString(called.getName(),rightWidth+5,height+12);
-                  g2.setPaint(Color.black);
-                  g2.drawString(countString,rightWidth+(called.getName().length()*7)+15,height+12);
-                  g2.drawLine((caller.getName().length()*7)+20,callerHeight+7,rightWidth,height+7);
-                  displayedCaller = true; // at least one of the called methods was displayed
-               }
-
-               calledHeight = height;
-
-               // methods called by the caller:
-               if(methodWidth < rightWidth+(called.getName().length()*7)+15+(countString.length()*7)+30)
-                  methodWidth = rightWidth+(called.getName().length()*7)+15+(countString.length()*7)+30;
-               // if the user clicks on a class - display the methods called by the caller
-               if(caller.getShowMethods())
+               int methodEdge = graph.getFirstEdge(InteractionGraph.CLASS_CALLS_METHOD,caller);
+               for(;methodEdge>=0;methodEdge=graph.getNextEdge(InteractionGraph.CLASS_CALLS_METHOD,methodEdge))
                {
-                  methodList = caller.getCalledMethods();
-                  methodIt = methodList.listIterator();
-                  int methodCount = 0;
-                  while(methodIt.hasNext())
+                  // if the method belongs to the called class - display it and the number of times it is called
+                  method = graph.getCalled(InteractionGraph.CLASS_CALLS_METHOD,methodEdge);
+                  if(graph.getMethodClass(method)==called)
                   {
-                     // if the method belongs to the called class - display it and the number of times it is called
-                     method = (MethodClass)methodIt.next();
-                     if(method.getObjectClass().getName().equals(called.getName()))
+                     methodName = graph.getMethodName(method);
+                     methodCountString = Long.toString(graph.getCount(InteractionGraph.CLASS_CALLS_METHOD,methodEdge));
+                     // only display the method if it is visible or its caller object is visible
+                     if(displayedCaller || (height>rect.getY()-50 && height<rect.getHeight()+rect.getY()+50))
                      {
-                        methodCountString = (new Integer(caller.getMethodCount(methodCount))).toString();
-                        // only display the method if it is visible or its caller object is visible
-                        if(displayedCaller || (height>rect.getY()-50 && height<rect.getHeight()+rect.getY()+50))
-                        {
-                           g2.draw(new Rectangle(methodWidth,height,(method.getName().length()*7)+10,15));
-                           g2.setPaint(called.getColour());
-                           g2.fill(new Rectangle(methodWidth+1,height+1,(method.getName().length()*7)+9,14));
-                           if(isDark(called.getColour()))
-                              g2.setPaint(Color.white);
-                           else
-                              g2.setPaint(Color.black);
-                           g2.drawString(method.getName(),methodWidth+5,height+12);
+                        g2.draw(new Rectangle(methodWidth,height,(methodName.length()*7)+10,15));
+                        g2.setPaint(calledColour);
+                        g2.fill(new Rectangle(methodWidth+1,height+1,(methodName.length()*7)+9,14));
+                        if(isDark(calledColour))
+                           g2.setPaint(Color.white);
+                        else
                            g2.setPaint(Color.black);
-                           g2.drawLine(rightWidth+(called.getName().length()*7)+15+(countString.length()*7),calledHeight+7,methodWidth,height+7);
-                           g2.drawString(methodCountString,methodWidth+(method.getName().length()*7)+15,height+12);
-                           displayedCaller = true; // at least one of the called methods was displayed
-                        }
-                        height += 30;
-
-                        //  adjust the width of the panel if out of bounds
-                        if(panelWidth < methodWidth+(method.getName().length()*7)+15+(methodCountString.length()*7))
-                        {
-                           panelWidth = methodWidth+(method.getName().length()*7)+15+(methodCountString.length()*7)+10;
-                           setPreferredSize(new Dimension(panelWidth,panelHeight));
-                           revalidate();
-                        }
+                        g2.drawString(methodName,methodWidth+5,height+12);
+                        g2.setPaint(Color.black);
+                        g2.drawLine(rightWidth+(calledName.length()*7)+15+(countString.length()*7),calledHeight+7,methodWidth,height+7);
+                        g2.drawString(methodCountString,methodWidth+(methodName.length()*7)+15,height+12);
+                        displayedCaller = true; // at least one of the called methods was displayed
                      }
-                     methodCount++;
-                  }
-               }
-               else
-                  height += 30;
+                     height += 30;
 
-               //  adjust the width of the panel if out of bounds
-               if(panelWidth < rightWidth+(called.getName().length()*7)+15+(countString.length()*7))
-               {
-                  panelWidth = rightWidth+(called.getName().length()*7)+15+(countString.length()*7)+10;
-                  setPreferredSize(new Dimension(panelWidth,panelHeight));
-                  revalidate();
+                     //  adjust the width of the panel if out of bounds
+                     if(panelWidth < methodWidth+(methodName.length()*7)+15+(methodCountString.length()*7))
+                     {
+                        panelWidth = methodWidth+(methodName.length()*7)+15+(methodCountString.length()*7)+10;
+                        setPreferredSize(new Dimension(panelWidth,panelHeight));
+                        revalidate();
+                     }
+                  }
                }
-
-               count++;
             }
-            if(caller.getNumCalledObjects()==0)
+            else
                height += 30;
 
             //  adjust the width of the panel if out of bounds
-            if(panelHeight < height)
+            if(panelWidth < rightWidth+(calledName.length()*7)+15+(countString.length()*7))
             {
-               panelHeight = height+10;
+               panelWidth = rightWidth+(calledName.length()*7)+15+(countString.length()*7)+10;
                setPreferredSize(new Dimension(panelWidth,panelHeight));
                revalidate();
             }
          }
-      }
-      catch(ConcurrentModificationException e)
-      {
-         e.printStackTrace();
-         return;
+
+         //  adjust the width of the panel if out of bounds
+         if(panelHeight < height)
+         {
+            panelHeight = height+10;
+            setPreferredSize(new Dimension(panelWidth,panelHeight));
+            revalidate();
+         }
       }
    }
 
@@ -278,85 +279,86 @@ public class ObjectInteractionPanel extends JPanel
    }
 
    /**
-    *  Indicates that a method calls a method. Adjusts the lists
-    *  accordingly and updates the panel.
+    *  Sets the InteractionGraph that the calls between
+    *  the classes are read from.
     *
-    *  @param  caller  The caller class.
-    *  @param  called  The called class.
-    *  @param  method  The called method.
+    *  @param  graph The InteractionGraph.
     */
-   public void methodStart(ObjectClass caller,ObjectClass called,MethodClass method)
+   public void setInteractionGraph(InteractionGraph graph)
    {
-      ObjectClass obj;
-      ListIterator it;
-      boolean foundObject;
+      this.graph = graph;
+      numKnownObjects = 0;
+      RepaintScheduler.setText(infoField,"Number of classes: " + numKnownObjects);
+      RepaintScheduler.repaint(this);
+   }
 
-      try
+   /**
+    *  Indicates that a method calls a method. The call has
+    *  been added to the InteractionGraph. Gives any new classes
+    *  a colour and updates the panel.
+    */
+   public void methodStart()
+   {
+      int numClasses = graph.getNumKnownClasses();
+      if(numClasses==numKnownObjects)
       {
-         // check if the caller object has been encountered before
-         foundObject = false;
-         it = knownObjects.listIterator();
-         while(it.hasNext())
-         {
-            if(caller.equals((ObjectClass)it.next()))
-            {
-               foundObject = true;
-               break;
-            }
-         }
-         if(!foundObject) // if it is a new object add it to knownObjects
-         {
-            caller.setColour(colours[currColour++]);
-            if(currColour==colours.length) 
-               currColour = 0;
-            knownObjects.add(caller);
-            numKnownObjects++;
-         }
+         RepaintScheduler.repaint(this);
+         return;
+      }
 
-         // check if the called object has been encountered before
-         foundObject = false;
-         it = knownObjects.listIterator();
-         while(it.hasNext())
-         {
-            obj = (ObjectClass)it.next();
-            if(called.equals(obj))
-            {
-               foundObject = true;
-               called.setColour(obj.getColour());
-               break;
-            }
-         }
-         if(!foundObject) // if it is a new object add it to knownObjects
-         { 
-            called.setColour(colours[currColour++]);
-            if(currColour==colours.length) 
-               currColour = 0;
-            knownObjects.add(called);
-            numKnownObjects++;
-         }
+      for(;numKnownObjects<numClasses;numKnownObjects++) // new classes
+      {
+         int classID = graph.getKnownClass(numKnownObjects);
+         if(classID>=classColours.length)
+            classColours = (Color [])Arrays.copyOf(classColours,Math.max(classColours.length*2,classID+1));
+         classColours[classID] = colours[currColour++];
+         if(currColour==colours.length)
+            currColour = 0;
+      }
 
-         // add the called object to the caller object's list of called objects
-         it = knownObjects.listIterator();
-         while(it.hasNext())
-         {
-            obj = (ObjectClass)it.next();
-            if(caller.equals(obj))
-            {
-               obj.callsObject(called);
-               obj.callsMethod(method); // indicate that the caller calls the method
-               break;
-            }
-         }
+      RepaintScheduler.setText(infoField,"Number of classes: " + numKnownObjects);
 
-         infoField.setText("Number of classes: " + numKnownObjects);
+      RepaintScheduler.repaint(this);
+   }
 
-         repaint();
-      }
-      catch(ConcurrentModificationException e)
-      {
-         e.printStackTrace();
-         return;
-      }
+   /**
+    *  Returns the colour of a class.
+    *
+    *  @param  classID  The class ID number.
+    *  @return The colour of the class.
+    */
+   private Color getClassColour(int classID)
+   {
+      Color [] known = classColours;
+      if(classID>=known.length || known[classID]==null)
+         return Color.white; // not given a colour yet
+      return known[classID];
+   }
+
+   /**
+    *  Toggles between showing and hiding the methods
+    *  called by a class.
+    *
+    *  @param  classID  The class ID number.
+    */
+   private void setShowMethods(int classID)
+   {
+      if(classID>=showMethods.length)
+         showMethods = Arrays.copyOf(showMethods,Math.max(showMethods.length*2,classID+1));
+      showMethods[classID] = !showMethods[classID];
+   }
+
+   /**
+    *  Returns whether or not to show the methods
+    *  called by a class.
+    *
+    *  @param  classID  The class ID number.
+    *  @return Whether or not to show the methods
+    *          called by the class.
+    */
+   private boolean getShowMethods(int classID)
+   {
+      return classID<showMethods.length && showMethods[classID];
    }
 
    /**
@@ -382,92 +384,80 @@ public class ObjectInteractionPanel extends JPanel
     */
    public boolean findObject(String searchString)
    {
+      if(graph==null)
+         return false;
+
       searchString = searchString.toLowerCase();
       String objectName;
 
       int width = 10;
       int height = 10;
-      int callerHeight;
 
-      ObjectClass caller,called;
-      MethodClass method;
-      ArrayList calledList,methodList;
-      ListIterator callerIt,calledIt,methodIt;
-      String countString,methodName;
+      int caller,called,method;
+      String callerName,calledName,countString,methodName;
 
-      try
+      // check each caller object
+      int numClasses = graph.getNumKnownClasses();
+      for(int i=0;i<numClasses;i++)
       {
-         // check each caller object
-         callerIt = knownObjects.listIterator();
-         while(callerIt.hasNext())
+         // check the caller object
+         caller = graph.getKnownClass(i);
+         callerName = graph.getClassName(caller);
+         objectName = callerName.toLowerCase();
+         if(scroller.getVerticalScrollBar().getValue()<height && objectName.indexOf(searchString)>-1)
          {
-            // check the caller object
-            caller = (ObjectClass)callerIt.next();
-            objectName = caller.getName().toLowerCase();
+            scroller.getVerticalScrollBar().setValue(height);
+            scroller.getHorizontalScrollBar().setValue(width);
+            return true;
+         }
+
+         // @rightWidth aligns the called objects
+         if((callerName.length()*7)+60 > rightWidth)
+            rightWidth = (callerName.length()*7)+60;
+
+         // check the objects called by this object
+         int edge = graph.getFirstEdge(InteractionGraph.CLASS_CALLS_CLASS,caller);
+         if(edge<0)
+            height += 30;
+         for(;edge>=0;edge=graph.getNextEdge(InteractionGraph.CLASS_CALLS_CLASS,edge))
+         {
+            called = graph.getCalled(InteractionGraph.CLASS_CALLS_CLASS,edge);
+            calledName = graph.getClassName(called);
+            objectName = calledName.toLowerCase();
+            countString = Long.toString(graph.getCount(InteractionGraph.CLASS_CALLS_CLASS,edge));
             if(scroller.getVerticalScrollBar().getValue()<height && objectName.indexOf(searchString)>-1)
             {
                scroller.getVerticalScrollBar().setValue(height);
-               scroller.getHorizontalScrollBar().setValue(width);
+               scroller.getHorizontalScrollBar().setValue(rightWidth);
                return true;
             }
 
-            // @rightWidth aligns the called objects
-            if((caller.getName().length()*7)+60 > rightWidth)
-               rightWidth = (caller.getName().length()*7)+60;
-
-            callerHeight = height; // keeps track of the height
-
-            // check the objects called by this object
-            calledList = caller.getCalledObjects();
-            calledIt = calledList.listIterator();
-            int count = 0;
-            while(calledIt.hasNext())
+            // check the methods called by the caller
+            if(methodWidth < rightWidth+(calledName.length()*7)+15+(countString.length()*7)+30)
+               methodWidth = rightWidth+(calledName.length()*7)+15+(countString.length()*7)+30;
+            if(getShowMethods(caller))
             {
-               called = (ObjectClass)calledIt.next();
-               objectName = called.getName().toLowerCase();
-               countString = (new Integer(caller.getCalledObjectCount(count))).toString();
-               if(scroller.getVerticalScrollBar().getValue()<height && objectName.indexOf(searchString)>-1)
+               int methodEdge = graph.getFirstEdge(InteractionGraph.CLASS_CALLS_METHOD,caller);
+               for(;methodEdge>=0;methodEdge=graph.getNextEdge(InteractionGraph.CLASS_CALLS_METHOD,methodEdge))
                {
-                  scroller.getVerticalScrollBar().setValue(height);
-                  scroller.getHorizontalScrollBar().setValue(rightWidth);
-                  return true;
-               }
-
-               // check the methods called by the caller
-               if(methodWidth < rightWidth+(called.getName().length()*7)+15+(countString.length()*7)+30)
-                  methodWidth = rightWidth+(called.getName().length()*7)+15+(countString.length()*7)+30;
-               if(caller.getShowMethods())
-               {
-                  methodList = caller.getCalledMethods();
-                  methodIt = methodList.listIterator();
-                  while(methodIt.hasNext())
+                  method = graph.getCalled(InteractionGraph.CLASS_CALLS_METHOD,methodEdge);
+                  if(graph.getMethodClass(method)==called)
                   {
-                     method = (MethodClass)methodIt.next();
-                     if(method.getObjectClass().getName().equals(called.getName()))
+                     methodName = graph.getMethodName(method);
+                     if(scroller.getVerticalScrollBar().getValue()<height && methodName.indexOf(searchString)>-1)
                      {
-                        methodName = method.getName();
-                        if(scroller.getVerticalScrollBar().getValue()<height && methodName.indexOf(searchString)>-1)
-                        {
-                           scroller.getVerticalScrollBar().setValue(height);
-                           scroller.getHorizontalScrollBar().setValue(methodWidth);
-                           return true;
-                        }
-                        height += 30;
+                        scroller.getVerticalScrollBar().setValue(height);
+                        scroller.getHorizontalScrollBar().setValue(methodWidth);
+                        return true;
                      }
+                     height += 30;
                   }
                }
-               else
-                  height += 30;
             }
-            if(caller.getNumCalledObjects()==0)
+            else
                height += 30;
          }
       }
-      catch(ConcurrentModificationException e)
-      {
-         e.printStackTrace();
-         return false;
-      }
 
       return false;
    }
@@ -481,28 +471,49 @@ public class ObjectInteractionPanel extends JPanel
     */
    public void findObject(Point point)
    {
-      ObjectClass caller,called;
-      MethodClass method;
-      ArrayList calledList,methodList;
-      ListIterator callerIt,calledIt,methodIt;
+      if(graph==null)
+         return;
+
+      int caller,called,method;
+      String callerName;
       Rectangle rect;
 
       int width = 10;
       int height = 10;
-      int callerHeight;
 
-      try
+      // check each caller object
+      int numClasses = graph.getNumKnownClasses();
+      for(int i=0;i<numClasses;i++)
       {
-         // check each caller object
-         callerIt = knownObjects.listIterator();
-         while(callerIt.hasNext())
+         // check the caller object
+         caller = graph.getKnownClass(i);
+         callerName = graph.getClassName(caller);
+         rect = new Rectangle(width,height,(callerName.length()*7)+10,15);
+         if(rect.contains(point))
+         {
+            setShowMethods(caller);
+            panelWidth = 0;
+            panelHeight = 0;
+            setPreferredSize(new Dimension(panelWidth,panelHeight));
+            repaint();
+            return;
+         }
+
+         // @rightWidth aligns the called objects
+         if((callerName.length()*7)+60 > rightWidth)
+            rightWidth = (callerName.length()*7)+60;
+
+         // check the objects called by this object
+         int edge = graph.getFirstEdge(InteractionGraph.CLASS_CALLS_CLASS,caller);
+         if(edge<0)
+            height += 30;
+         for(;edge>=0;edge=graph.getNextEdge(InteractionGraph.CLASS_CALLS_CLASS,edge))
          {
-            // check the caller object
-            caller = (ObjectClass)callerIt.next();
-            rect = new Rectangle(width,height,(caller.getName().length()*7)+10,15);
+            called = graph.getCalled(InteractionGraph.CLASS_CALLS_CLASS,edge);
+            rect = new Rectangle(rightWidth,height,(graph.getClassName(called).length()*7)+10,15);
             if(rect.contains(point))
             {
-               caller.setShowMethods();
+               setShowMethods(caller);
                panelWidth = 0;
                panelHeight = 0;
                setPreferredSize(new Dimension(panelWidth,panelHeight));
@@ -510,54 +521,21 @@ public class ObjectInteractionPanel extends JPanel
                return;
             }
 
-            // @rightWidth aligns the called objects
-            if((caller.getName().length()*7)+60 > rightWidth)
-               rightWidth = (caller.getName().length()*7)+60;
-
-            callerHeight = height; // keeps track of the height
-
-            calledList = caller.getCalledObjects();
-            calledIt = calledList.listIterator();
-
-            // check the objects called by this object
-            while(calledIt.hasNext())
+            // methods called by the caller:
+            if(getShowMethods(caller))
             {
-               called = (ObjectClass)calledIt.next();
-               rect = new Rectangle(rightWidth,height,(called.getName().length()*7)+10,15);
-               if(rect.contains(point))
-               {
-                  caller.setShowMethods();
-                  panelWidth = 0;
-                  panelHeight = 0;
-                  setPreferredSize(new Dimension(panelWidth,panelHeight));
-                  repaint();
-                  return;
-               }
-
-               // methods called by the caller:
-               if(caller.getShowMethods())
+               int methodEdge = graph.getFirstEdge(InteractionGraph.CLASS_CALLS_METHOD,caller);
+               for(;methodEdge>=0;methodEdge=graph.getNextEdge(InteractionGraph.CLASS_CALLS_METHOD,methodEdge))
                {
-                  methodList = caller.getCalledMethods();
-                  methodIt = methodList.listIterator();
-                  while(methodIt.hasNext())
-                  {
-                     method = (MethodClass)methodIt.next();
-                     if(method.getObjectClass().getName().equals(called.getName()))
-                        height += 30;
-                  }
+                  method = graph.getCalled(InteractionGraph.CLASS_CALLS_METHOD,methodEdge);
+                  if(graph.getMethodClass(method)==called)
+                     height += 30;
                }
-               else
-                  height += 30;
             }
-            if(caller.getNumCalledObjects()==0)
+            else
                height += 30;
          }
       }
-      catch(ConcurrentModificationException e)
-      {
-         e.printStackTrace();
-         return;
-      }
    }
 
    /**
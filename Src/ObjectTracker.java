@@ -99,6 +99,14 @@ public class ObjectTracker extends Thread
     *  The Pause Program menu item.
     */
    private JMenuItem pauseMenuItem;
+   /**
+    *  The Start Trace menu item.
+    */
+   private JMenuItem startTraceMenuItem;
+   /**
+    *  The Stop Trace menu item.
+    */
+   private JMenuItem stopTraceMenuItem;
    /**
     *  Contains options for the user in a menubar.
     */
@@ -151,6 +159,10 @@ public class ObjectTracker extends Thread
     *  True if the program execution is paused.
     */
    private boolean isPause;
+   /**
+    *  Used to block the event loop while the program is paused.
+    */
+   private Object pauseLock;
    /**
     *  True if the program has been started.
     */
@@ -178,9 +190,135 @@ public class ObjectTracker extends Thread
     */
    private ArrayList filterList;
    /**
-    *  A list of methods at which breakpoints are set.
+    *  The breakpoints set by the user, as BreakpointClass objects.
+    */
+   private ArrayList breakpointList;
+   /**
+    *  The BreakpointRequests made for the breakpoints.
+    */
+   private ArrayList breakpointRequests;
+   /**
+    *  Holds the events waiting to be sent to the ObjectDisplayer.
+    */
+   private EventRing eventRing;
+   /**
+    *  The number of events the EventRing can hold.
+    */
+   private static final int EVENT_RING_SIZE = 8192;
+   /**
+    *  The class patterns of the JDK classes.
+    */
+   private static final String [] JDK_CLASS_FILTERS = {"java.*","javax.*","org.*","sun.*","com.*"};
+   /**
+    *  True if method entry and exit events have been requested.
+    */
+   private boolean isMethodRequested;
+   /**
+    *  True if the call stacks are sampled instead of tracing
+    *  every method entry and exit.
+    */
+   private boolean isSampling;
+   /**
+    *  The time in milliseconds between samples.
+    */
+   private int samplingInterval;
+   /**
+    *  The time that the last sample was taken.
+    */
+   private long lastSampleTime;
+   /**
+    *  The number of samples taken.
+    */
+   private long numSamples;
+   /**
+    *  The total time in nanoseconds that the target program
+    *  was suspended while samples were taken.
+    */
+   private long totalSampleTime;
+   /**
+    *  The call stack of each thread at the last sample, keyed
+    *  by the thread's unique ID number. Each stack is a list of
+    *  methods with the outermost method first.
+    */
+   private HashMap sampledStacks;
+   /**
+    *  The unique ID numbers of the threads sent to the ObjectDisplayer.
+    */
+   private HashSet knownThreads;
+   /**
+    *  Reads the trace written by the TraceAgent in the target
+    *  program, or null if the agent is not used.
     */
-   private ArrayList breakpointMethodList;
+   private AgentTraceReader agentReader;
+   /**
+    *  The size in bytes of the trace file shared with the TraceAgent.
+    */
+   private static final int AGENT_TRACE_SIZE = 16*1024*1024;
+   /**
+    *  True if the ObjectTracker attached to a JVM that was
+    *  already running, rather than launching the program.
+    */
+   private boolean isAttached;
+   /**
+    *  True if method calls and field modifications are being
+    *  traced. Set by the Start Trace and Stop Trace menu items.
+    */
+   private volatile boolean isTracing;
+   /**
+    *  True if tracing has been stopped and the calls still
+    *  open have not been closed yet.
+    */
+   private volatile boolean isTraceStopped;
+   /**
+    *  The method entry, method exit and watchpoint requests, which
+    *  are enabled while tracing and disabled otherwise.
+    */
+   private ArrayList traceRequests;
+   /**
+    *  The classes whose fields have watchpoint requests.
+    */
+   private HashSet watchedClasses;
+   /**
+    *  Gives each method a small ID number to be sent through the EventRing.
+    */
+   private MethodTable methodTable;
+   /**
+    *  Decides which method calls are traced and which are only counted.
+    */
+   private ThrottlePolicy throttlePolicy;
+   /**
+    *  The method entry and exit requests made for tracing. They
+    *  are replaced when a class is throttled.
+    */
+   private ArrayList methodRequests;
+   /**
+    *  The names of the classes whose method events are no longer
+    *  requested because all of their methods have been throttled.
+    */
+   private HashSet throttledClasses;
+   /**
+    *  The number of methods with code in each class that has had
+    *  a method throttled, keyed by class name.
+    */
+   private HashMap classMethodCounts;
+   /**
+    *  The name of each live thread, keyed by the thread's unique ID
+    *  number, so that it is only asked of the JVM once.
+    */
+   private HashMap threadNameCache;
+   /**
+    *  The time from System.nanoTime() at which the current
+    *  event set was removed from the event queue.
+    */
+   private long eventTime;
+   /**
+    *  The number of method entry and exit events handled.
+    */
+   private long numTracedEvents;
+   /**
+    *  The number of calls made to the JVM while handling events.
+    */
+   private long numRemoteCalls;
 
    /**
     *  Constructor: Creates a new ObjectTracker. Sets up the GUI.
@@ -192,10 +330,12 @@ public class ObjectTracker extends Thread
       height = 700;
       numThreadsAlive = 0;
       isPause = true;
+      pauseLock = new Object();
       isStarted = false;
       startTime = 0;
       endTime = 0;
       isFiltered = false;
+      isMethodRequested = false;
       vm = null;
 
       setUpGUI();
@@ -224,12 +364,16 @@ public class ObjectTracker extends Thread
       breakpointsMenuItem = userOptionsPanel.getBreakpointsMenuItem();
       runMenuItem = userOptionsPanel.getRunMenuItem();
       pauseMenuItem = userOptionsPanel.getPauseMenuItem();
+      startTraceMenuItem = userOptionsPanel.getStartTraceMenuItem();
+      stopTraceMenuItem = userOptionsPanel.getStopTraceMenuItem();
       runMenuItem.setEnabled(true);
       pauseMenuItem.setEnabled(false);
       filterMenuItem.addActionListener(listener);
       breakpointsMenuItem.addActionListener(listener);
       runMenuItem.addActionListener(listener);
       pauseMenuItem.addActionListener(listener);
+      startTraceMenuItem.addActionListener(listener);
+      stopTraceMenuItem.addActionListener(listener);
 
       displayer = new ObjectDisplayer(userOptionsPanel.getExecMenuItem()); // displays objects, methods and threads
       ioPanel = new IOPanel(); // handles the I/O
@@ -289,29 +433,82 @@ public class ObjectTracker extends Thread
       cmdLineArgs = userOptionsPanel.getCmdLineArgs();
       cmdLineArgs = programName + " " + cmdLineArgs;
       includeJDKClasses = userOptionsPanel.getFullExec();
-
-      // prepare the program for running on the JVM
+      isSampling = userOptionsPanel.getSampling();
+      samplingInterval = userOptionsPanel.getSamplingInterval();
+      lastSampleTime = System.nanoTime() - samplingInterval*1000000L;
+      numSamples = 0;
+      totalSampleTime = 0;
+      sampledStacks = new HashMap();
+      knownThreads = new HashSet();
+      traceRequests = new ArrayList();
+      watchedClasses = new HashSet();
+      methodTable = new MethodTable();
+      displayer.setMethodTable(methodTable);
+      throttlePolicy = new ThrottlePolicy(methodTable,userOptionsPanel.getCallBudget());
+      displayer.setCallBudget(throttlePolicy.getCallBudget());
+      displayer.setAggregated(userOptionsPanel.getAggregate());
+      displayer.setMemoryBudget(userOptionsPanel.getMemoryBudget());
+      methodRequests = new ArrayList();
+      throttledClasses = new HashSet();
+      classMethodCounts = new HashMap();
+      threadNameCache = new HashMap();
+      numTracedEvents = 0;
+      numRemoteCalls = 0;
       manager = Bootstrap.virtualMachineManager();
-      connector = manager.defaultConnector();
-      arguments = connector.defaultArguments();
-      setMain();
 
-      try
+      String attachAddress = userOptionsPanel.getAttachAddress();
+      if(attachAddress.length()>0) // attach to a running JVM
       {
-         vm = connector.launch(arguments);
+         isAttached = true;
+         frame.setTitle("Graphical Java Displayer - " + attachAddress);
+         if(!attachProgram(attachAddress))
+            return;
       }
-      catch(Exception e)
+      else // prepare the program for running on the JVM
       {
-         e.printStackTrace();
+         isAttached = false;
+         connector = manager.defaultConnector();
+         arguments = connector.defaultArguments();
+         setMain();
+         setAgent(userOptionsPanel.getAgentJar());
+
+         try
+         {
+            vm = connector.launch(arguments);
+         }
+         catch(Exception e)
+         {
+            e.printStackTrace();
+         }
+      }
+
+      // measure the time tracing a call adds to its caller, so that it can be taken from the method times
+      long callCost = 0;
+      if(userOptionsPanel.getCalibrate() && !isSampling && agentReader==null && !isAttached)
+      {
+         callCost = TraceCalibrator.getCallCost();
+         System.out.println("Time a traced call adds to its caller: " + MethodClass.formatTime(callCost));
       }
+      displayer.setCallCost(callCost);
+
+      // a launched program is traced from the start, an attached one when the user chooses
+      setTracing(!isAttached);
 
       requestClassPrepare(vm.eventRequestManager());
       requestThreadStart(vm.eventRequestManager());
       requestThreadDeath(vm.eventRequestManager());
 
-      ioPanel.set(vm.process()); // handles the I/O streams
+      if(vm.process()!=null)
+         ioPanel.set(vm.process()); // handles the I/O streams
+
+      breakpointList = new ArrayList(); // contains the breakpoints at which the program should halt
+      breakpointRequests = new ArrayList();
 
-      breakpointMethodList = new ArrayList(); // contains the names of methods at which the program should halt
+      // events are passed to the displayer by a separate thread
+      eventRing = new EventRing(EVENT_RING_SIZE);
+      Thread dispatcher = new Thread(new EventDispatcher(eventRing,displayer));
+      dispatcher.setDaemon(true);
+      dispatcher.start();
    }
 
    /**
@@ -319,10 +516,33 @@ public class ObjectTracker extends Thread
     */
    public void run()
    {
+      if(vm==null) // the program could not be attached to
+         return;
       vm.resume();
       eventLoop();
       endTime = System.currentTimeMillis();
       System.out.println("Run time: " + (endTime - startTime));
+      if(numTracedEvents>0)
+         System.out.println("Traced events: " + numTracedEvents + " | JDWP calls per traced event: " + ((double)numRemoteCalls/numTracedEvents));
+      if(isSampling && numSamples>0)
+      {
+         long sampleMillis = totalSampleTime/1000000;
+         System.out.println("Samples: " + numSamples + " | Average sample time (ms): " + ((double)sampleMillis/numSamples)
+            + " | Sampling overhead: " + (100*sampleMillis/Math.max(1,endTime - startTime)) + "%");
+      }
+      long numStoredCalls = displayer.getNumStoredCalls();
+      if(numStoredCalls>0)
+      {
+         long footprint = displayer.getStoreFootprint();
+         System.out.println("Stored calls: " + numStoredCalls + " | Bytes per call: " + EventStore.RECORD_BYTES
+            + " (" + (footprint/numStoredCalls) + " with unused space) | Event store footprint (KB): " + (footprint/1024)
+            + " | Spilled to segment files (KB): " + (displayer.getSpilledBytes()/1024));
+      }
+      for(int i=0;i<methodTable.getNumMethods();i++)
+      {
+         if(throttlePolicy.isThrottled(i))
+            System.out.println("Throttled: " + methodTable.getName(i) + " | Calls: " + throttlePolicy.getCount(i));
+      }
    }
 
    /**
@@ -336,6 +556,104 @@ public class ObjectTracker extends Thread
       arg.setValue(cmdLineArgs);
    }
 
+   /**
+    *  If a trace agent jar has been given, creates the trace file
+    *  and adds the agent to the JVM options. Method calls are then
+    *  read from the trace file instead of being requested from the JVM.
+    *
+    *  @param  agentJar The path of the trace agent jar, or an empty string.
+    */
+   private void setAgent(String agentJar)
+   {
+      if(agentJar.length()==0)
+         return;
+
+      try
+      {
+         agentReader = new AgentTraceReader(AGENT_TRACE_SIZE);
+      }
+      catch(IOException e)
+      {
+         e.printStackTrace();
+         return;
+      }
+
+      isSampling = false; // the agent records every call inside the target program
+      Connector.Argument arg;
+      arg = (Connector.Argument)arguments.get("options");
+      arg.setValue(arg.value() + " -javaagent:" + agentJar + "=file=" + agentReader.getFile().getPath()
+         + ",jdk=" + includeJDKClasses);
+   }
+
+   /**
+    *  Attaches to a JVM that is already running and was started with
+    *  -agentlib:jdwp=transport=dt_socket,server=y. The program is
+    *  treated as already started and running. The user is told
+    *  if it cannot be attached to.
+    *
+    *  @param  address  The host:port address of the JVM.
+    *  @return True if the JVM was attached to.
+    */
+   private boolean attachProgram(String address)
+   {
+      String host = "localhost";
+      String port = address;
+      int colon = address.lastIndexOf(':');
+      if(colon>=0)
+      {
+         if(colon>0)
+            host = address.substring(0,colon);
+         port = address.substring(colon+1);
+      }
+
+      AttachingConnector attacher = null;
+      Iterator it = manager.attachingConnectors().iterator();
+      while(it.hasNext())
+      {
+         AttachingConnector temp = (AttachingConnector)it.next();
+         if(temp.transport().name().equals("dt_socket"))
+         {
+            attacher = temp;
+            break;
+         }
+      }
+
+      String error = null;
+      if(attacher==null)
+         error = "This JVM has no dt_socket connector to attach with.";
+      else
+      {
+         try
+         {
+            Map attachArguments = attacher.defaultArguments();
+            ((Connector.Argument)attachArguments.get("hostname")).setValue(host);
+            ((Connector.Argument)attachArguments.get("port")).setValue(port);
+            vm = attacher.attach(attachArguments);
+         }
+         catch(Exception e)
+         {
+            e.printStackTrace();
+            error = e.toString();
+         }
+      }
+      if(vm==null)
+      {
+         JOptionPane.showMessageDialog(frame,
+            "Could not attach to the JVM at " + address + ":\n" + error,
+            "Attach Failed",
+            JOptionPane.ERROR_MESSAGE);
+         return false;
+      }
+
+      numThreadsAlive = vm.allThreads().size();
+      isPause = false;
+      isStarted = true;
+      startTime = System.currentTimeMillis();
+      runMenuItem.setEnabled(false);
+      pauseMenuItem.setEnabled(true);
+      return true;
+   }
+
    /**
     *  Sets the class filter list.
     *
@@ -345,6 +663,8 @@ public class ObjectTracker extends Thread
    {
       isFiltered = true;
       filterList = list;
+      if(agentReader!=null) // classes loaded from now on are only instrumented if they are in the filter
+         agentReader.setClassFilter(list);
    }
 
    /**
@@ -397,8 +717,29 @@ public class ObjectTracker extends Thread
       MethodEntryRequest request;
       request = manager.createMethodEntryRequest();
       request.addClassFilter(className);
+      excludeThrottledClasses(request);
       request.setSuspendPolicy(MethodEntryRequest.SUSPEND_EVENT_THREAD);
-      request.enable();
+      methodRequests.add(request);
+      addTraceRequest(request);
+   }
+
+   /**
+    *  Requests notification of method entry events for all classes
+    *  except those matching the exclusion filters.
+    *
+    *  @param  manager  The request manager.
+    *  @param  exclusionFilters  The class patterns to exclude.
+    */
+   private void requestMethodEntry(EventRequestManager manager,String [] exclusionFilters)
+   {
+      MethodEntryRequest request;
+      request = manager.createMethodEntryRequest();
+      for(int i=0;i<exclusionFilters.length;i++)
+         request.addClassExclusionFilter(exclusionFilters[i]);
+      excludeThrottledClasses(request);
+      request.setSuspendPolicy(MethodEntryRequest.SUSPEND_EVENT_THREAD);
+      methodRequests.add(request);
+      addTraceRequest(request);
    }
 
    /**
@@ -412,8 +753,143 @@ public class ObjectTracker extends Thread
       MethodExitRequest request;
       request = manager.createMethodExitRequest();
       request.addClassFilter(className);
+      excludeThrottledClasses(request);
       request.setSuspendPolicy(MethodExitRequest.SUSPEND_EVENT_THREAD);
-      request.enable();
+      methodRequests.add(request);
+      addTraceRequest(request);
+   }
+
+   /**
+    *  Requests notification of method exit events for all classes
+    *  except those matching the exclusion filters.
+    *
+    *  @param  manager  The request manager.
+    *  @param  exclusionFilters  The class patterns to exclude.
+    */
+   private void requestMethodExit(EventRequestManager manager,String [] exclusionFilters)
+   {
+      MethodExitRequest request;
+      request = manager.createMethodExitRequest();
+      for(int i=0;i<exclusionFilters.length;i++)
+         request.addClassExclusionFilter(exclusionFilters[i]);
+      excludeThrottledClasses(request);
+      request.setSuspendPolicy(MethodExitRequest.SUSPEND_EVENT_THREAD);
+      methodRequests.add(request);
+      addTraceRequest(request);
+   }
+
+   /**
+    *  Adds an exclusion filter to a method request for each
+    *  throttled class.
+    *
+    *  @param  request  The new request.
+    */
+   private void excludeThrottledClasses(EventRequest request)
+   {
+      Iterator it = throttledClasses.iterator();
+      while(it.hasNext())
+      {
+         String className = (String)it.next();
+         if(request instanceof MethodEntryRequest)
+            ((MethodEntryRequest)request).addClassExclusionFilter(className);
+         else
+            ((MethodExitRequest)request).addClassExclusionFilter(className);
+      }
+   }
+
+   /**
+    *  Stops requesting the method events of a class. The method
+    *  entry and exit requests are replaced by ones that exclude the
+    *  class, while the target program is suspended so that no event
+    *  is missed or reported twice. A request is then made for every
+    *  callBudget-th call to the class, so that its calls are still
+    *  counted.
+    *
+    *  @param  className   The name of the class.
+    */
+   private void throttleClass(String className)
+   {
+      EventRequestManager manager = vm.eventRequestManager();
+      throttledClasses.add(className);
+      vm.suspend();
+      try
+      {
+         synchronized(traceRequests)
+         {
+            manager.deleteEventRequests(methodRequests);
+            traceRequests.removeAll(methodRequests);
+            methodRequests.clear();
+         }
+         requestMethodEvents(manager);
+      }
+      finally
+      {
+         vm.resume();
+      }
+      requestCallCount(manager,className);
+   }
+
+   /**
+    *  Requests notification of the next callBudget-th method entry
+    *  of a throttled class. The request is used once and then
+    *  replaced.
+    *
+    *  @param  manager     The request manager.
+    *  @param  className   The name of the class.
+    */
+   private void requestCallCount(EventRequestManager manager,String className)
+   {
+      MethodEntryRequest request;
+      request = manager.createMethodEntryRequest();
+      request.addClassFilter(className);
+      request.addCountFilter(throttlePolicy.getCallBudget());
+      request.putProperty(ThrottlePolicy.class,className);
+      request.setSuspendPolicy(MethodEntryRequest.SUSPEND_EVENT_THREAD);
+      addTraceRequest(request);
+   }
+
+   /**
+    *  Adds a method or watchpoint request to the list of trace
+    *  requests. It is enabled if tracing has been started.
+    *
+    *  @param  request  The new request.
+    */
+   private void addTraceRequest(EventRequest request)
+   {
+      synchronized(traceRequests)
+      {
+         traceRequests.add(request);
+         request.setEnabled(isTracing);
+      }
+   }
+
+   /**
+    *  Starts or stops tracing. Enables or disables all of the
+    *  method and watchpoint requests, so that the target program
+    *  runs at full speed while tracing is stopped.
+    *
+    *  @param  enable   True to start tracing, false to stop it.
+    */
+   private void setTracing(boolean enable)
+   {
+      synchronized(traceRequests)
+      {
+         isTracing = enable;
+         if(!enable)
+            isTraceStopped = true; // closed by the event loop, which owns the EventRing
+         try
+         {
+            Iterator it = traceRequests.iterator();
+            while(it.hasNext())
+               ((EventRequest)it.next()).setEnabled(enable);
+         }
+         catch(VMDisconnectedException e)
+         {
+            e.printStackTrace();
+         }
+      }
+      startTraceMenuItem.setEnabled(!enable);
+      stopTraceMenuItem.setEnabled(enable);
    }
 
    /**
@@ -427,12 +903,15 @@ public class ObjectTracker extends Thread
       ModificationWatchpointRequest request;
       request = manager.createModificationWatchpointRequest(field);
       request.setSuspendPolicy(ModificationWatchpointRequest.SUSPEND_EVENT_THREAD);
-      request.enable();
+      addTraceRequest(request);
    }
 
    /**
     *  Loops through the event stack as the target program executes.
-    *  Depending on the event, it sends it to the appropriate hander.
+    *  Each set of events is handled as a unit: every event in the set
+    *  is sent to the appropriate handler and the set is then resumed
+    *  once. If the program is paused, the loop blocks until the user
+    *  restarts it.
     */
    private void eventLoop()
    {
@@ -440,19 +919,41 @@ public class ObjectTracker extends Thread
       {
          while(true)
          {
-            es = vm.eventQueue().remove();
-            it = es.eventIterator(); 
+            if(isSampling || agentReader!=null || isAttached)
+            {
+               es = vm.eventQueue().remove(samplingInterval);
+               if(es==null) // no events - the program is running freely
+               {
+                  if(isPause)
+                  {
+                     vm.suspend();
+                     waitWhilePaused();
+                     vm.resume();
+                  }
+                  pollTrace();
+                  continue;
+               }
+            }
+            else
+            {
+               es = vm.eventQueue().remove(samplingInterval);
+               if(es==null) // wake up in case tracing has been stopped
+               {
+                  closeStoppedTrace();
+                  continue;
+               }
+            }
+            closeStoppedTrace();
+            eventTime = System.nanoTime(); // the one timestamp for every event in the set
 
+            // check if the pause button has been pressed
+            waitWhilePaused();
+
+            it = es.eventIterator();
             while(it.hasNext())
             {
                event = it.nextEvent();
 
-               // check if the pause button has been pressed
-               while(isPause)
-               {
-                  sleep(1000);
-               }
-
                // the program has finished
                if(event instanceof VMDeathEvent)
                {
@@ -491,6 +992,21 @@ public class ObjectTracker extends Thread
                // a thread has ended
                else if(event instanceof ThreadDeathEvent)
                {
+                  ThreadReference deadThread = ((ThreadDeathEvent)event).thread();
+                  if(isSampling)
+                     endSampledStack(deadThread,eventTime);
+                  long deadThreadID = deadThread.uniqueID();
+                  threadNameCache.remove(new Long(deadThreadID));
+                  if(agentReader!=null) // the agent numbers its threads with Thread.getId()
+                  {
+                     readAgentTrace(); // the thread's last calls were written before it died
+                     deadThreadID = getAgentThreadID(deadThread);
+                  }
+                  if(deadThreadID>=0)
+                  {
+                     throttlePolicy.endThread(deadThreadID);
+                     eventRing.put(EventRing.THREAD_DEATH,null,deadThreadID,-1,eventTime);
+                  }
                   numThreadsAlive--;
                }
 
@@ -500,14 +1016,19 @@ public class ObjectTracker extends Thread
                   modificationWatchpointHandler();
                }
 
-               // check if there is a pause
-               while(isPause)
+               // a breakpoint has been reached
+               else if(event instanceof BreakpointEvent)
                {
-                  sleep(1000);
+                  breakpointHandler();
                }
-
-               resumeProgram();
             }
+
+            // check if a breakpoint or the user has paused the program
+            waitWhilePaused();
+
+            resumeProgram();
+
+            pollTrace();
          }
       }
       catch(InterruptedException e)
@@ -518,85 +1039,389 @@ public class ObjectTracker extends Thread
    }
 
    /**
-    *  A class has been prepared. Requests notification of method
-    *  and watchpoint events for that class, unless the user has
-    *  chosen to exclude this class from being displayed.
+    *  Closes the calls still open when tracing was stopped, once.
+    *  Their exits will not be seen, so the throttle and sampling
+    *  stacks are emptied and the ObjectDisplayer is told to end
+    *  them. Calls made after tracing is started again are then
+    *  traced from empty stacks.
+    *
+    *  @throws InterruptedException If interrupted while the EventRing is full.
+    */
+   private void closeStoppedTrace() throws InterruptedException
+   {
+      if(!isTraceStopped)
+         return;
+      isTraceStopped = false;
+      throttlePolicy.closeAll();
+      sampledStacks.clear();
+      eventRing.put(EventRing.TRACE_STOPPED,null,0,-1,System.nanoTime());
+   }
+
+   /**
+    *  Reads the method calls made since the last poll, either
+    *  from the TraceAgent or by sampling the call stacks.
+    *
+    *  @throws InterruptedException If interrupted while the EventRing is full.
     */
-   private void classPrepareHandler()
+   private void pollTrace() throws InterruptedException
+   {
+      closeStoppedTrace();
+      if(isTracing && !isMethodRequested)
+         requestTrace();
+
+      if(agentReader!=null)
+         readAgentTrace();
+      else if(isSampling && isTracing)
+         sampleIfDue();
+   }
+
+   /**
+    *  Sends the records written by the TraceAgent since the
+    *  last read to the ObjectDisplayer through the EventRing.
+    *  The method records are read but not sent while tracing
+    *  is stopped.
+    *
+    *  @throws InterruptedException If interrupted while the EventRing is full.
+    */
+   private void readAgentTrace() throws InterruptedException
+   {
+      while(agentReader.next())
+      {
+         int kind = agentReader.getKind();
+         if(kind==TraceAgent.THREAD_RECORD)
+         {
+            eventRing.put(EventRing.THREAD_START,agentReader.getThreadName(),agentReader.getThreadID(),-1,System.nanoTime());
+         }
+         else if(isTracing && isDisplayedClass(agentReader.getClassName()))
+         {
+            int methodID = methodTable.getID(agentReader.getMethodName(),agentReader.getClassName());
+            if(kind==TraceAgent.ENTRY_RECORD)
+               traceEntry(agentReader.getThreadID(),methodID,agentReader.getTime());
+            else
+               traceExit(agentReader.getThreadID(),methodID,agentReader.getTime());
+         }
+      }
+   }
+
+   /**
+    *  Returns the ID number that the TraceAgent gives a thread,
+    *  which is its Thread.getId() rather than its JDI ID number.
+    *
+    *  @param  thread   The thread.
+    *  @return The ID number, or -1 if it cannot be read.
+    */
+   private long getAgentThreadID(ThreadReference thread)
    {
       try
       {
-         className = ((ClassPrepareEvent)event).referenceType().name();
+         Field field = thread.referenceType().fieldByName("tid");
+         Value value = field==null ? null : thread.getValue(field);
+         if(value instanceof LongValue)
+            return ((LongValue)value).value();
+      }
+      catch(ObjectCollectedException e)
+      {
+      }
+      return -1;
+   }
+
+   /**
+    *  Takes a sample of the call stacks if the sampling
+    *  interval has passed since the last sample.
+    *
+    *  @throws InterruptedException If interrupted while the EventRing is full.
+    */
+   private void sampleIfDue() throws InterruptedException
+   {
+      long now = System.nanoTime();
+      if(now - lastSampleTime >= samplingInterval*1000000L)
+      {
+         lastSampleTime = now;
+         sampleThreads(now);
+      }
+   }
 
-         if(includeJDKClasses) // include JDK classes
+   /**
+    *  Suspends the target program and reads the call stack of
+    *  each of its threads. The changes since the last sample are
+    *  sent to the ObjectDisplayer as method entries and exits,
+    *  so the start and end times of methods are estimates
+    *  accurate to the sampling interval.
+    *
+    *  @param  time  The time of the sample.
+    *  @throws InterruptedException If interrupted while the EventRing is full.
+    */
+   private void sampleThreads(long time) throws InterruptedException
+   {
+      long sampleStart = System.nanoTime();
+      try
+      {
+         vm.suspend();
+         try
          {
-            if(isFiltered) // only display filtered classes
+            Iterator threadIterator = vm.allThreads().iterator();
+            while(threadIterator.hasNext())
             {
-               if(filterList.contains(className))
+               ThreadReference thread = (ThreadReference)threadIterator.next();
+               List frames;
+               try
                {
-                  requestMethodEntry(vm.eventRequestManager(),className);
-                  requestMethodExit(vm.eventRequestManager(),className);
-
-                  // request Modification Watchpoints for the class' fields
-                  List fieldList = ((ClassPrepareEvent)event).referenceType().fields();
-                  Iterator it = fieldList.iterator();
-                  while(it.hasNext())
-                  {
-                     Field field = (Field)it.next();
-                     requestModificationWatchpoint(vm.eventRequestManager(),field);
-                  }
+                  frames = thread.frames();
+               }
+               catch(IncompatibleThreadStateException e)
+               {
+                  continue; // the thread has not started or has ended
                }
-            }
-            else // there is no filter
-            {
-               requestMethodEntry(vm.eventRequestManager(),className);
-               requestMethodExit(vm.eventRequestManager(),className);
 
-               // request Modification Watchpoints for the class' fields
-               List fieldList = ((ClassPrepareEvent)event).referenceType().fields();
-               Iterator it = fieldList.iterator();
-               while(it.hasNext())
+               // the displayed methods on the stack, outermost first
+               ArrayList stack = new ArrayList();
+               for(int i=frames.size()-1;i>=0;i--)
                {
-                  Field field = (Field)it.next();
-                  requestModificationWatchpoint(vm.eventRequestManager(),field);
+                  Method method = ((StackFrame)frames.get(i)).location().method();
+                  if(isDisplayedClass(method.declaringType().name()))
+                     stack.add(method);
                }
+               updateSampledStack(thread,stack,time);
             }
          }
-         else // only display non-JDK classes
+         finally
+         {
+            vm.resume();
+         }
+      }
+      catch(VMDisconnectedException e)
+      {
+         e.printStackTrace();
+         return;
+      }
+      numSamples++;
+      totalSampleTime += System.nanoTime() - sampleStart;
+   }
+
+   /**
+    *  Compares a thread's call stack to the one from its last sample.
+    *  Methods no longer on the stack are ended and methods new to the
+    *  stack are started.
+    *
+    *  @param  thread   The thread that was sampled.
+    *  @param  stack    The methods on the thread's stack, outermost first.
+    *  @param  time     The time of the sample.
+    *  @throws InterruptedException If interrupted while the EventRing is full.
+    */
+   private void updateSampledStack(ThreadReference thread,ArrayList stack,long time) throws InterruptedException
+   {
+      Long key = new Long(thread.uniqueID());
+      ArrayList previous = (ArrayList)sampledStacks.get(key);
+      if(previous==null)
+      {
+         if(stack.isEmpty())
+            return;
+         previous = new ArrayList();
+         sampledStacks.put(key,previous);
+      }
+
+      // find the methods that are still running
+      int common = 0;
+      while(common<previous.size() && common<stack.size() && previous.get(common).equals(stack.get(common)))
+         common++;
+      if(common==previous.size() && common==stack.size())
+         return; // no change
+
+      threadName = getThreadName(thread);
+      threadID = thread.uniqueID();
+      if(!knownThreads.contains(key)) // the thread started before it could be reported
+      {
+         eventRing.put(EventRing.THREAD_START,threadName,threadID,-1,time);
+         knownThreads.add(key);
+      }
+
+      // end the methods that have returned, innermost first
+      while(previous.size()>common)
+      {
+         Method method = (Method)previous.remove(previous.size()-1);
+         traceExit(threadID,getMethodID(method),time);
+      }
+
+      // start the methods that have been called, outermost first
+      for(int i=common;i<stack.size();i++)
+      {
+         Method method = (Method)stack.get(i);
+         traceEntry(threadID,getMethodID(method),time);
+         previous.add(method);
+      }
+   }
+
+   /**
+    *  A sampled thread has ended. Ends the methods remaining
+    *  on its call stack from the last sample.
+    *
+    *  @param  thread   The thread that has ended.
+    *  @param  time     The time the thread ended.
+    *  @throws InterruptedException If interrupted while the EventRing is full.
+    */
+   private void endSampledStack(ThreadReference thread,long time) throws InterruptedException
+   {
+      ArrayList previous = (ArrayList)sampledStacks.remove(new Long(thread.uniqueID()));
+      if(previous!=null)
+      {
+         threadID = thread.uniqueID();
+         while(!previous.isEmpty())
          {
-            if(className.indexOf("java.")!=0 && className.indexOf("javax.")!=0 && className.indexOf("org.")!=0 && className.indexOf("sun.")!=0 && className.indexOf("com.")!=0)
+            Method method = (Method)previous.remove(previous.size()-1);
+            traceExit(threadID,getMethodID(method),time);
+         }
+      }
+   }
+
+   /**
+    *  Blocks the calling thread until the program is no longer
+    *  paused. Returns at once if the program is running.
+    *
+    *  @throws InterruptedException If the thread is interrupted while waiting.
+    */
+   private void waitWhilePaused() throws InterruptedException
+   {
+      synchronized(pauseLock)
+      {
+         while(isPause)
+            pauseLock.wait();
+      }
+   }
+
+   /**
+    *  Pauses or restarts the execution of the target program.
+    *  Restarting wakes the event loop immediately.
+    *
+    *  @param  pause True to pause the program, false to restart it.
+    */
+   private void setPause(boolean pause)
+   {
+      synchronized(pauseLock)
+      {
+         isPause = pause;
+         pauseLock.notifyAll();
+      }
+   }
+
+   /**
+    *  A class has been prepared. Adds it to the MethodTable, so that
+    *  it has a class ID number before any of its events are traced.
+    *  The first time this happens while
+    *  tracing, the method and watchpoint events are requested. Once
+    *  they have been, requests notification of watchpoint events for
+    *  the class, unless the user has chosen to exclude this class from
+    *  being displayed.
+    *
+    *  @throws InterruptedException If interrupted while the EventRing is full.
+    */
+   private void classPrepareHandler() throws InterruptedException
+   {
+      try
+      {
+         methodTable.getClassID(((ClassPrepareEvent)event).referenceType().name());
+
+         if(isTracing && !isMethodRequested)
+            requestTrace();
+
+         if(isMethodRequested)
+            requestWatchpoints(((ClassPrepareEvent)event).referenceType());
+
+         requestBreakpoints(((ClassPrepareEvent)event).referenceType());
+      }
+      catch(VMDisconnectedException e)
+      {
+         e.printStackTrace();
+         return;
+      }
+   }
+
+   /**
+    *  Requests the method entry and exit events, unless the call
+    *  stacks are being sampled or read from the TraceAgent. If the
+    *  ObjectTracker attached to a running JVM, also requests
+    *  watchpoint events for the classes that are already loaded and
+    *  sends the threads that are already running to the ObjectDisplayer.
+    *
+    *  @throws InterruptedException If interrupted while the EventRing is full.
+    */
+   private void requestTrace() throws InterruptedException
+   {
+      isMethodRequested = true;
+      if(!isSampling && agentReader==null)
+         requestMethodEvents(vm.eventRequestManager());
+
+      if(isAttached)
+      {
+         Iterator it = vm.allClasses().iterator();
+         while(it.hasNext())
+         {
+            ReferenceType type = (ReferenceType)it.next();
+            if(type.isPrepared())
+               requestWatchpoints(type);
+         }
+
+         it = vm.allThreads().iterator();
+         while(it.hasNext())
+         {
+            ThreadReference thread = (ThreadReference)it.next();
+            Long key = new Long(thread.uniqueID());
+            if(!knownThreads.contains(key))
             {
-               if(isFiltered) // only display filtered classes
-               {
-                  if(filterList.contains(className))
-                  {
-                     requestMethodEntry(vm.eventRequestManager(),className);
-                     requestMethodExit(vm.eventRequestManager(),className);
-
-                     // request Modification Watchpoints for the class' fields
-                     List fieldList = ((ClassPrepareEvent)event).referenceType().fields();
-                     Iterator it = fieldList.iterator();
-                     while(it.hasNext())
-                     {
-                        Field field = (Field)it.next();
-                        requestModificationWatchpoint(vm.eventRequestManager(),field);
-                     }
-                  }
-               }
-               else // there is no filter
-               {
-                  requestMethodEntry(vm.eventRequestManager(),className);
-                  requestMethodExit(vm.eventRequestManager(),className);
+               knownThreads.add(key);
+               eventRing.put(EventRing.THREAD_START,getThreadName(thread),thread.uniqueID(),-1,System.nanoTime());
+            }
+         }
+      }
+   }
 
-                  // request Modification Watchpoints for the class' fields
-                  List fieldList = ((ClassPrepareEvent)event).referenceType().fields();
-                  Iterator it = fieldList.iterator();
-                  while(it.hasNext())
-                  {
-                     Field field = (Field)it.next();
-                     requestModificationWatchpoint(vm.eventRequestManager(),field);
-                  }
-               }
+   /**
+    *  Requests notification of watchpoint modification events for
+    *  the fields of a class, if the class is to be displayed and
+    *  has not been requested already.
+    *
+    *  @param  type  The class.
+    */
+   private void requestWatchpoints(ReferenceType type)
+   {
+      if(!isDisplayedClass(type.name()) || !watchedClasses.add(type))
+         return;
+
+      // request Modification Watchpoints for the class' fields, and give them field ID numbers
+      List fieldList = type.fields();
+      Iterator it = fieldList.iterator();
+      while(it.hasNext())
+      {
+         Field field = (Field)it.next();
+         methodTable.getFieldID(field);
+         requestModificationWatchpoint(vm.eventRequestManager(),field);
+      }
+   }
+
+   /**
+    *  Replaces the breakpoints. The requests for the old breakpoints
+    *  are deleted and requests are made for the new ones in the
+    *  classes that are already loaded.
+    *
+    *  @param  list  The new breakpoints, as BreakpointClass objects.
+    */
+   private void setBreakpoints(ArrayList list)
+   {
+      try
+      {
+         synchronized(breakpointRequests)
+         {
+            vm.eventRequestManager().deleteEventRequests(breakpointRequests);
+            breakpointRequests.clear();
+            breakpointList = list;
+            if(breakpointList.isEmpty())
+               return;
+
+            Iterator it = vm.allClasses().iterator();
+            while(it.hasNext())
+            {
+               ReferenceType type = (ReferenceType)it.next();
+               if(type.isPrepared())
+                  requestBreakpoints(type);
             }
          }
       }
@@ -608,24 +1433,142 @@ public class ObjectTracker extends Thread
    }
 
    /**
-    *  A method entry event has occurred. Updates the ObjectDisplayer to
-    *  to take account of this. If the method is in the breakpoints list, the
-    *  breakpoint handler is called.
+    *  Requests a breakpoint at the first location of each method
+    *  of a class that has a breakpoint set on it. The JVM only
+    *  reports a breakpoint with a hit count on that call.
+    *
+    *  @param  type  The class.
+    */
+   private void requestBreakpoints(ReferenceType type)
+   {
+      synchronized(breakpointRequests)
+      {
+         if(breakpointList.isEmpty())
+            return;
+
+         Iterator it = type.methods().iterator();
+         while(it.hasNext())
+         {
+            Method method = (Method)it.next();
+            if(method.location()==null) // abstract or native
+               continue;
+
+            Iterator bpIt = breakpointList.iterator();
+            while(bpIt.hasNext())
+            {
+               BreakpointClass breakpoint = (BreakpointClass)bpIt.next();
+               if(breakpoint.matches(method))
+               {
+                  BreakpointRequest request;
+                  request = vm.eventRequestManager().createBreakpointRequest(method.location());
+                  if(breakpoint.getHitCount() > 0)
+                     request.addCountFilter(breakpoint.getHitCount());
+                  request.putProperty(BreakpointClass.class,breakpoint);
+                  request.setSuspendPolicy(BreakpointRequest.SUSPEND_EVENT_THREAD);
+                  request.enable();
+                  breakpointRequests.add(request);
+               }
+            }
+         }
+      }
+   }
+
+   /**
+    *  Requests notification of method entry and exit events for the
+    *  classes to be displayed. The filtering is done by the JVM. If
+    *  there is no class filter, a single entry request and a single
+    *  exit request are made, excluding the JDK classes unless they
+    *  are to be displayed. Otherwise a pair of requests is made for
+    *  each class in the filter list, as the JVM only reports an
+    *  event if it passes all of a request's class filters.
+    *
+    *  @param  manager  The request manager.
+    */
+   private void requestMethodEvents(EventRequestManager manager)
+   {
+      String [] exclusionFilters;
+      if(includeJDKClasses)
+         exclusionFilters = new String[0];
+      else
+         exclusionFilters = JDK_CLASS_FILTERS;
+
+      if(isFiltered) // only display filtered classes
+      {
+         Iterator it = filterList.iterator();
+         while(it.hasNext())
+         {
+            String filterName = (String)it.next();
+            if(isDisplayedClass(filterName))
+            {
+               requestMethodEntry(manager,filterName);
+               requestMethodExit(manager,filterName);
+            }
+         }
+      }
+      else // there is no filter
+      {
+         requestMethodEntry(manager,exclusionFilters);
+         requestMethodExit(manager,exclusionFilters);
+      }
+   }
+
+   /**
+    *  Returns true if a class is to be displayed. JDK classes are
+    *  only displayed if the user has chosen to include them, and
+    *  if the class filter list has been set only the classes in
+    *  it are displayed.
+    *
+    *  @param  name  The name of the class.
+    *  @return True if the class is to be displayed.
+    */
+   private boolean isDisplayedClass(String name)
+   {
+      if(!includeJDKClasses)
+      {
+         for(int i=0;i<JDK_CLASS_FILTERS.length;i++)
+         {
+            String prefix = JDK_CLASS_FILTERS[i].substring(0,JDK_CLASS_FILTERS[i].length()-1);
+            if(name.startsWith(prefix))
+               return false;
+         }
+      }
+
+      if(isFiltered)
+         return filterList.contains(name);
+      return true;
+   }
+
+   /**
+    *  A method entry event has occurred. Passes it on to the ObjectDisplayer
+    *  through the EventRing.
+    *
+    *  @throws InterruptedException If interrupted while the EventRing is full.
     */
-   private void methodEntryHandler()
+   private void methodEntryHandler() throws InterruptedException
    {
       try
       {
          if(numThreadsAlive>0)
          {
-            methodName = ((MethodEntryEvent)event).method().toString();
-            className = ((MethodEntryEvent)event).method().declaringType().name().toString();
-            threadName = ((MethodEntryEvent)event).thread().name();
-            threadID = ((MethodEntryEvent)event).thread().uniqueID();
-            displayer.startMethod(methodName,className,threadName,threadID);
+            int methodID = getMethodID(((MethodEntryEvent)event).method());
+            String countedClass = (String)event.request().getProperty(ThrottlePolicy.class);
+            if(countedClass!=null) // every callBudget-th call to a throttled class
+            {
+               throttlePolicy.addCalls(methodID,throttlePolicy.getCallBudget());
+               synchronized(traceRequests)
+               {
+                  vm.eventRequestManager().deleteEventRequest(event.request());
+                  traceRequests.remove(event.request());
+               }
+               requestCallCount(vm.eventRequestManager(),countedClass);
+               return;
+            }
 
-            if(breakpointMethodList.contains(methodName)) // breakpoint has been reached
-               breakpointHandler();
+            if(!isTracing) // the event was queued before tracing was stopped
+               return;
+            threadID = ((MethodEntryEvent)event).thread().uniqueID();
+            traceEntry(threadID,methodID,eventTime);
+            numTracedEvents++;
          }
       }
       catch(VMDisconnectedException e)
@@ -636,19 +1579,154 @@ public class ObjectTracker extends Thread
    }
 
    /**
-    *  A method exit event has occurred. Updates the ObjectDisplayer
-    *  to take account of this.
+    *  A method has been entered. Passes it on to the ObjectDisplayer
+    *  through the EventRing unless the method has been throttled, in
+    *  which case it is only counted.
+    *
+    *  @param  threadID    The ID number of the thread.
+    *  @param  methodID    The ID number of the method.
+    *  @param  time        The time of the entry.
+    *  @throws InterruptedException If interrupted while the EventRing is full.
     */
-   private void methodExitHandler()
+   private void traceEntry(long threadID,int methodID,long time) throws InterruptedException
+   {
+      int status = throttlePolicy.enter(threadID,methodID);
+      if(status==ThrottlePolicy.TRACE)
+         eventRing.put(EventRing.METHOD_ENTRY,null,threadID,methodID,time);
+      else
+      {
+         if(status==ThrottlePolicy.THROTTLE)
+            eventRing.put(EventRing.METHOD_THROTTLED,null,threadID,methodID,System.currentTimeMillis());
+         checkClassThrottled(methodID);
+      }
+   }
+
+   /**
+    *  A method has been exited. Passes it on to the ObjectDisplayer
+    *  through the EventRing if its entry was.
+    *
+    *  @param  threadID    The ID number of the thread.
+    *  @param  methodID    The ID number of the method.
+    *  @param  time        The time of the exit.
+    *  @throws InterruptedException If interrupted while the EventRing is full.
+    */
+   private void traceExit(long threadID,int methodID,long time) throws InterruptedException
+   {
+      if(throttlePolicy.exit(threadID,methodID))
+         eventRing.put(EventRing.METHOD_EXIT,null,threadID,methodID,time);
+      if(throttlePolicy.isThrottled(methodID))
+         checkClassThrottled(methodID);
+   }
+
+   /**
+    *  Stops requesting the method events of a method's class if all
+    *  of its methods have been throttled. This is only done when
+    *  method events are being traced through the JVM.
+    *
+    *  @param  methodID    The ID number of the method.
+    *  @throws InterruptedException If interrupted while the EventRing is full.
+    */
+   private void checkClassThrottled(int methodID) throws InterruptedException
+   {
+      if(!isMethodRequested || isSampling || agentReader!=null || !throttlePolicy.isClassThrottled(methodID))
+         return;
+
+      String className = methodTable.getClassName(methodID);
+      if(throttledClasses.contains(className))
+         return;
+
+      // methods that have not been called yet must not stop being traced
+      Integer numMethods = (Integer)classMethodCounts.get(className);
+      if(numMethods==null)
+      {
+         int count = 0;
+         Iterator typeIterator = vm.classesByName(className).iterator();
+         while(typeIterator.hasNext())
+         {
+            Iterator it = ((ReferenceType)typeIterator.next()).methods().iterator();
+            while(it.hasNext())
+            {
+               Method method = (Method)it.next();
+               if(method.location()!=null && !method.isStaticInitializer())
+                  count++;
+            }
+         }
+         numMethods = new Integer(count);
+         classMethodCounts.put(className,numMethods);
+         numRemoteCalls++;
+      }
+      if(throttlePolicy.getNumClassThrottled(methodID) < numMethods.intValue())
+         return;
+
+      throttleClass(className);
+      eventRing.put(EventRing.CLASS_THROTTLED,null,0,methodID,System.currentTimeMillis());
+   }
+
+   /**
+    *  Returns the ID number of a method in the MethodTable. The
+    *  first time a method is seen, its class name may have to be
+    *  asked of the JVM.
+    *
+    *  @param  method   The method.
+    *  @return The ID number of the method.
+    */
+   private int getMethodID(Method method)
+   {
+      if(!methodTable.contains(method))
+         numRemoteCalls++;
+      return methodTable.getID(method);
+   }
+
+   /**
+    *  Returns the copy of a class name kept in the MethodTable,
+    *  so that the instances of a class share one name.
+    *
+    *  @param  className   The name of the class.
+    *  @return The name kept in the MethodTable.
+    */
+   private String getClassName(String className)
+   {
+      return methodTable.getNameOfClass(methodTable.getClassID(className));
+   }
+
+   /**
+    *  Returns the name of a thread. The name is only asked of the
+    *  JVM the first time, and is kept until the thread ends.
+    *
+    *  @param  thread   The thread.
+    *  @return The name of the thread.
+    */
+   private String getThreadName(ThreadReference thread)
+   {
+      Long key = new Long(thread.uniqueID());
+      String name = (String)threadNameCache.get(key);
+      if(name==null)
+      {
+         name = thread.name();
+         threadNameCache.put(key,name);
+         numRemoteCalls++;
+      }
+      return name;
+   }
+
+   /**
+    *  A method exit event has occurred. Passes it on to the ObjectDisplayer
+    *  through the EventRing.
+    *
+    *  @throws InterruptedException If interrupted while the EventRing is full.
+    */
+   private void methodExitHandler() throws InterruptedException
    {
       try
       {
          if(numThreadsAlive>0)
          {
-            methodName = ((MethodExitEvent)event).method().toString();
-            threadName = ((MethodExitEvent)event).thread().name();
+            if(!isTracing) // the event was queued before tracing was stopped
+               return;
+            int methodID = getMethodID(((MethodExitEvent)event).method());
             threadID = ((MethodExitEvent)event).thread().uniqueID();
-            displayer.endMethod(methodName,threadName,threadID);
+            traceExit(threadID,methodID,eventTime);
+            numTracedEvents++;
          }
       }
       catch(VMDisconnectedException e)
@@ -659,16 +1737,20 @@ public class ObjectTracker extends Thread
    }
 
    /**
-    *  A thread creation event has occurred. Updates the ObjectDisplayr
-    *  to take account of this.
+    *  A thread creation event has occurred. Passes it on to the
+    *  ObjectDisplayer through the EventRing.
+    *
+    *  @throws InterruptedException If interrupted while the EventRing is full.
     */
-   private void threadStartHandler()
+   private void threadStartHandler() throws InterruptedException
    {
       try
       {
-         threadName = ((ThreadStartEvent)event).thread().name();
+         threadName = getThreadName(((ThreadStartEvent)event).thread());
          threadID = ((ThreadStartEvent)event).thread().uniqueID();
-         displayer.startThread(threadName,threadID);
+         knownThreads.add(new Long(threadID));
+         if(agentReader==null) // the agent reports its own threads
+            eventRing.put(EventRing.THREAD_START,threadName,threadID,-1,eventTime);
          numThreadsAlive++;
       }
       catch(VMDisconnectedException e)
@@ -680,27 +1762,38 @@ public class ObjectTracker extends Thread
 
    /**
     *  A breakpoint method has been reached by the target program.
-    *  Displays an appropriate message to the user and pauses
-    *  the execution of the targer program. Pauses the execution
-    *  times of methods in the ObjectDisplayer.
+    *  If the breakpoint has a condition that is not met, the program
+    *  carries on. Otherwise displays an appropriate message to the
+    *  user and pauses the execution of the targer program. Pauses
+    *  the execution times of methods in the ObjectDisplayer.
     */
    private void breakpointHandler()
    {
       try
       {
-         MethodEntryEvent bpEvent = (MethodEntryEvent)event;
+         BreakpointEvent bpEvent = (BreakpointEvent)event;
+         BreakpointClass breakpoint = (BreakpointClass)bpEvent.request().getProperty(BreakpointClass.class);
+         if(!breakpoint.isConditionMet(bpEvent.thread().frame(0)))
+            return;
+
          String bpMethod = bpEvent.location().method().toString();
-         String bpThread = bpEvent.thread().name();
+         String bpThread = getThreadName(bpEvent.thread());
          int bpLineNum = bpEvent.location().lineNumber();
-         isPause = true; // pause the execution
-         displayer.pauseExecutionTime(System.currentTimeMillis());
+         setPause(true); // pause the execution
+         displayer.pauseExecutionTime(eventTime);
          runMenuItem.setEnabled(true);
          pauseMenuItem.setEnabled(false);
          JOptionPane.showMessageDialog(frame,
-            "Breakpoint reached at:\nMethod: " + bpMethod + "\nLine number: " + bpLineNum + "\nThread: " + bpThread,
+            "Breakpoint reached at:\nMethod: " + bpMethod + "\nLine number: " + bpLineNum + "\nThread: " + bpThread
+               + "\nBreakpoint: " + breakpoint,
             "Breakpoint Reached",
             JOptionPane.PLAIN_MESSAGE);
       }
+      catch(IncompatibleThreadStateException e)
+      {
+         e.printStackTrace();
+         return;
+      }
       catch(VMDisconnectedException e)
       {
          e.printStackTrace();
@@ -711,30 +1804,34 @@ public class ObjectTracker extends Thread
    /**
     *  A watchpoint event has occurred. Gets the information
     *  about the field and it instance. Sends the information
-    *  to the ObjectDisplayer so that it can be displayed by
-    *  the InstanceTrackerPanel.
+    *  to the ObjectDisplayer through the EventRing so that it
+    *  can be displayed by the InstanceTrackerPanel.
+    *
+    *  @throws InterruptedException If interrupted while the EventRing is full.
     */
-   private void modificationWatchpointHandler()
+   private void modificationWatchpointHandler() throws InterruptedException
    {
       try
       {
          ModificationWatchpointEvent wpEvent = (ModificationWatchpointEvent)event;
 
-         // get the instance informaion
+         // get the instance informaion, using the class name kept in the MethodTable
          String objectName = null;
          long id = 0;
          if(wpEvent.object()!=null)
          {
-            objectName = wpEvent.object().referenceType().name();
+            objectName = getClassName(wpEvent.object().referenceType().name());
             id = wpEvent.object().uniqueID();
          }
          else
             objectName = "null";
 
          // get the field information
-         String fieldName = wpEvent.field().name();
+         int fieldID = methodTable.getFieldID(wpEvent.field());
+         String fieldName = methodTable.getFieldName(fieldID);
          String fieldType = wpEvent.field().typeName();
          String fieldValue = null;
+         long refID = -1;
          Value value = wpEvent.valueToBe();
 
          try
@@ -746,7 +1843,10 @@ public class ObjectTracker extends Thread
                else if(value instanceof ArrayReference)
                   fieldValue = value.type().name() + " (Length:" + ((ArrayReference)value).length() + ")";
                else
-                  fieldValue = value.type().name() + " " + ((ObjectReference)value).uniqueID();
+               {
+                  refID = ((ObjectReference)value).uniqueID();
+                  fieldValue = value.type().name() + " " + refID;
+               }
             }
             else
                fieldValue = value.toString();
@@ -759,16 +1859,16 @@ public class ObjectTracker extends Thread
 
          // add the instance and field information to the instance tracker
          InstanceClass instance = new InstanceClass(objectName,id);
-         FieldClass field = new FieldClass(fieldName,fieldType,fieldValue);
-         displayer.addInstanceClass(instance,field);
+         FieldClass field = new FieldClass(fieldName,fieldType,fieldValue,refID,fieldID);
+         eventRing.put(EventRing.FIELD_MODIFIED,instance,field,eventTime);
 
          // if the field value is an instance add it to the instance tracker
          if(value instanceof ObjectReference && !(value instanceof StringReference) && !(value instanceof ArrayReference))
          {
-            objectName = value.type().name();
+            objectName = getClassName(value.type().name());
             id = ((ObjectReference)value).uniqueID();
             instance = new InstanceClass(objectName,id);
-            displayer.addInstanceClass(instance);
+            eventRing.put(EventRing.INSTANCE_REFERENCED,instance,null,eventTime);
          }
       }
       catch(VMDisconnectedException e)
@@ -779,13 +1879,15 @@ public class ObjectTracker extends Thread
    }
 
    /**
-    *  Restarts the execution of the target program.
+    *  Restarts the execution of the threads suspended by the
+    *  current set of events.
     */
    private void resumeProgram()
    {
       try
       {
-         vm.resume(); // restart the program
+         es.resume(); // restart the program
+         numRemoteCalls++;
       }
       catch(VMDisconnectedException e)
       {
@@ -805,7 +1907,9 @@ public class ObjectTracker extends Thread
        *  is either started or restarted and the method runtimes.
        *  are restarted. If the Pause Program menu item is selected,
        *  the program execution is paused and the method runtimes are
-       *  paused. If the Set Class Filter is selected, the Set Class
+       *  paused. If the Start Trace or Stop Trace menu item is selected,
+       *  the method and watchpoint requests are enabled or disabled.
+       *  If the Set Class Filter is selected, the Set Class
        *  Filter dialog box is displayed and the class filter list
        *  can be set. If the Set Breakpoints menu item is selected,
        *  the Set Breakpoints dialog box is displayed and the list
@@ -826,18 +1930,27 @@ public class ObjectTracker extends Thread
                filterMenuItem.setEnabled(false);
             }
             if(isPause)
-               displayer.restartExecutionTime();
-            isPause = false;
+               displayer.restartExecutionTime(System.nanoTime());
+            setPause(false);
             runMenuItem.setEnabled(false);
             pauseMenuItem.setEnabled(true);
          }
          else if(source==pauseMenuItem)
          {
-            displayer.pauseExecutionTime(System.currentTimeMillis());
-            isPause = true;
+            displayer.pauseExecutionTime(System.nanoTime());
+            setPause(true);
             runMenuItem.setEnabled(true);
             pauseMenuItem.setEnabled(false);
          }
+         else if(source==startTraceMenuItem)
+         {
+            filterMenuItem.setEnabled(false);
+            setTracing(true);
+         }
+         else if(source==stopTraceMenuItem)
+         {
+            setTracing(false);
+         }
          else if(source==filterMenuItem)
          {
             boolean setFilter = userOptionsPanel.setClassFilter(frame);
@@ -851,7 +1964,7 @@ public class ObjectTracker extends Thread
          {
             boolean setFilter = userOptionsPanel.setBreakpoints(frame);
             if(setFilter)
-               breakpointMethodList = userOptionsPanel.getMethodList(); // new breakpoints
+               setBreakpoints(userOptionsPanel.getMethodList()); // new breakpoints
          }
       }
    }
@@ -0,0 +1,204 @@
+package ObjectTracker;
+
+import java.awt.event.*;
+import java.util.*;
+import javax.swing.*;
+import javax.swing.text.*;
+
+/**
+ *  This class repaints the panels that are updated by the events
+ *  of the target program at most FRAME_RATE times a second. The
+ *  EventDispatcher marks a panel as needing to be repainted or laid
+ *  out, or gives a text field its new text, and these are done
+ *  together on the event dispatch thread when the next frame is due.
+ *  A panel whose layout is worked out from the events gives a layout
+ *  task, which is run at the start of the frame, so that the panel
+ *  does not have to work it out while it is painted.
+ *  However many times a panel is marked between two frames, it is
+ *  only repainted once, and a text field only shows its last text,
+ *  so the time spent drawing does not grow with the rate of events.
+ *
+ *  @author  Eoin O'Connor
+ *  @see EventDispatcher
+ *  @see ObjectDisplayer
+ */
+public class RepaintScheduler implements ActionListener
+{
+   /**
+    *  The most frames drawn in a second.
+    */
+   public static final int FRAME_RATE = 25;
+
+   /**
+    *  The scheduler shared by every panel.
+    */
+   private static final RepaintScheduler scheduler = new RepaintScheduler();
+
+   /**
+    *  The components to repaint in the next frame.
+    */
+   private HashSet dirty;
+   /**
+    *  The components to lay out again in the next frame.
+    */
+   private HashSet invalid;
+   /**
+    *  The layout tasks to run in the next frame.
+    */
+   private HashSet layouts;
+   /**
+    *  The text to show in each text field in the next frame.
+    */
+   private HashMap texts;
+   /**
+    *  Starts the next frame.
+    */
+   private javax.swing.Timer timer;
+   /**
+    *  Whether the next frame has been started.
+    */
+   private boolean isScheduled;
+
+   /**
+    *  Constructor: creates a scheduler with nothing to draw.
+    */
+   private RepaintScheduler()
+   {
+      dirty = new HashSet();
+      invalid = new HashSet();
+      layouts = new HashSet();
+      texts = new HashMap();
+      timer = new javax.swing.Timer(1000/FRAME_RATE,this);
+      timer.setRepeats(false);
+      timer.setCoalesce(false); // the timer may be started again while the last frame is still being drawn
+      isScheduled = false;
+   }
+
+   /**
+    *  Marks a component as needing to be repainted.
+    *
+    *  @param  component   The component.
+    */
+   public static void repaint(JComponent component)
+   {
+      synchronized(scheduler)
+      {
+         scheduler.dirty.add(component);
+         scheduler.schedule();
+      }
+   }
+
+   /**
+    *  Marks a component as needing to be laid out again, for
+    *  example because its preferred size has changed. It is
+    *  also repainted.
+    *
+    *  @param  component   The component.
+    */
+   public static void revalidate(JComponent component)
+   {
+      synchronized(scheduler)
+      {
+         scheduler.invalid.add(component);
+         scheduler.dirty.add(component);
+         scheduler.schedule();
+      }
+   }
+
+   /**
+    *  Runs a layout task on the event dispatch thread at the start
+    *  of the next frame, before the components are laid out and
+    *  repainted. However many times it is given between two frames,
+    *  it is only run once. The task marks whatever it changes as
+    *  needing to be repainted or laid out again itself.
+    *
+    *  @param  layout   The layout task.
+    */
+   public static void layOut(Runnable layout)
+   {
+      synchronized(scheduler)
+      {
+         scheduler.layouts.add(layout);
+         scheduler.schedule();
+      }
+   }
+
+   /**
+    *  Sets the text of a text field in the next frame.
+    *
+    *  @param  field The text field.
+    *  @param  text  The new text.
+    */
+   public static void setText(JTextComponent field,String text)
+   {
+      synchronized(scheduler)
+      {
+         scheduler.texts.put(field,text);
+         scheduler.schedule();
+      }
+   }
+
+   /**
+    *  Starts the next frame if it has not been started.
+    *  The caller holds the lock on the scheduler.
+    */
+   private void schedule()
+   {
+      if(!isScheduled)
+      {
+         isScheduled = true;
+         timer.start();
+      }
+   }
+
+   /**
+    *  Draws a frame. Called on the event dispatch thread.
+    *
+    *  @param  event The timer event.
+    */
+   public void actionPerformed(ActionEvent event)
+   {
+      HashSet frameLayouts;
+      synchronized(this)
+      {
+         frameLayouts = layouts;
+         layouts = new HashSet();
+      }
+
+      // the layout tasks mark the components they change, so they are drawn in this frame
+      Iterator iterator = frameLayouts.iterator();
+      while(iterator.hasNext())
+         ((Runnable)iterator.next()).run();
+
+      HashSet frameDirty;
+      HashSet frameInvalid;
+      HashMap frameTexts;
+      synchronized(this)
+      {
+         frameDirty = dirty;
+         frameInvalid = invalid;
+         frameTexts = texts;
+         dirty = new HashSet();
+         invalid = new HashSet();
+         texts = new HashMap();
+         isScheduled = false;
+         if(!layouts.isEmpty()) // given while the layout tasks were running
+            schedule();
+      }
+
+      iterator = frameTexts.entrySet().iterator();
+      while(iterator.hasNext())
+      {
+         Map.Entry entry = (Map.Entry)iterator.next();
+         ((JTextComponent)entry.getKey()).setText((String)entry.getValue());
+      }
+
+      iterator = frameInvalid.iterator();
+      while(iterator.hasNext())
+         ((JComponent)iterator.next()).revalidate();
+
+      iterator = frameDirty.iterator();
+      while(iterator.hasNext())
+         ((JComponent)iterator.next()).repaint();
+   }
+}
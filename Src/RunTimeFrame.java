@@ -1,16 +1,23 @@
 package ObjectTracker;
 
 import javax.swing.*;
+import javax.swing.table.*;
 import java.awt.*;
+import java.awt.event.*;
 import java.util.*;
 
 /**
  *  This class implements an internal frame that
  *  displays the methods executed by a thread in
  *  the running target program and their runtimes.
+ *  A second tab shows a table of the methods with
+ *  the most time, with the number of calls and the
+ *  mean, shortest, longest and percentile times of
+ *  each, from their MethodStats.
  *
  *  @author  Eoin O'Connor
  *  @see RunTimePanel
+ *  @see MethodStats
  *  @see ObjectDisplayer
  */
 public class RunTimeFrame extends JInternalFrame
@@ -40,6 +47,34 @@ public class RunTimeFrame extends JInternalFrame
     *  of methods and their scale.
     */
    private JTextField scaleField;
+   /**
+    *  The runtimes of each method.
+    */
+   private MethodStats methodStats;
+   /**
+    *  Gives the names of the methods.
+    */
+   private MethodTable methodTable;
+   /**
+    *  The time in nanoseconds taken to trace one call.
+    */
+   private long callCost;
+   /**
+    *  The rows of the table of methods.
+    */
+   private StatsTableModel statsTableModel;
+   /**
+    *  Used to choose the order of the table of methods.
+    */
+   private JComboBox sortCombo;
+   /**
+    *  Used to enter the number of rows in the table of methods.
+    */
+   private JTextField topField;
+   /**
+    *  Updates the table of methods while it is showing.
+    */
+   private javax.swing.Timer statsTimer;
 
    /**
     *  Constructor: creates a new RunTimeFrame.
@@ -63,19 +98,108 @@ public class RunTimeFrame extends JInternalFrame
       runTimePanel.setScrollPane(scroller);
       scaleField = new JTextField();
       runTimePanel.setScaleField(scaleField);
-      contentPane.add(scaleField,"North");
-      contentPane.add(scroller,"Center");
+      JPanel callsPanel = new JPanel(new BorderLayout());
+      callsPanel.add(scaleField,"North");
+      callsPanel.add(scroller,"Center");
+
+      // the table of methods
+      callCost = 0;
+      methodStats = new MethodStats();
+      statsTableModel = new StatsTableModel();
+      JTable statsTable = new JTable(statsTableModel);
+      statsTable.getTableHeader().addMouseListener(new HeaderClickListener());
+      sortCombo = new JComboBox(new String[] {"Total","Mean","p99"});
+      topField = new JTextField("50",5);
+      StatsListener statsListener = new StatsListener();
+      sortCombo.addActionListener(statsListener);
+      topField.addActionListener(statsListener);
+      JPanel sortPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+      sortPanel.add(new JLabel("Sort by:"));
+      sortPanel.add(sortCombo);
+      sortPanel.add(new JLabel("Top:"));
+      sortPanel.add(topField);
+      JPanel methodsPanel = new JPanel(new BorderLayout());
+      methodsPanel.add(sortPanel,"North");
+      methodsPanel.add(new JScrollPane(statsTable),"Center");
+
+      JTabbedPane tabs = new JTabbedPane();
+      tabs.addTab("Calls",callsPanel);
+      tabs.addTab("Methods",methodsPanel);
+      contentPane.add(tabs,"Center");
+
+      // the table is sorted once a second rather than each time a method ends
+      statsTimer = new javax.swing.Timer(1000,statsListener);
+      statsTimer.start();
+   }
+
+   /**
+    *  Sets the MethodTable used to look up method names,
+    *  and starts a new set of runtimes for its methods.
+    *
+    *  @param  methodTable  The new MethodTable.
+    */
+   public void setMethodTable(MethodTable methodTable)
+   {
+      this.methodTable = methodTable;
+      runTimePanel.setMethodTable(methodTable);
+      methodStats = new MethodStats();
+      methodStats.setCallCost(callCost);
+   }
+
+   /**
+    *  A method has ended. Adds its runtime to the method's
+    *  MethodStats.
+    *
+    *  @param  methodID    The ID number of the method in the MethodTable.
+    *  @param  time        The runtime of the method in nanoseconds.
+    *  @param  tracedCalls The number of calls traced while it ran,
+    *                      counting itself.
+    */
+   public void addTime(int methodID,long time,long tracedCalls)
+   {
+      methodStats.add(methodID,time,tracedCalls);
    }
 
    /**
     *  A new method has been executed. Update the
     *  the RunTimePanel to take account of this.
     *
-    *  @param  method   The new method.
+    *  @param  store The EventStore of the method's thread.
+    *  @param  index The record number of the method in the store.
+    */
+   public void addCall(EventStore store,int index)
+   {
+      runTimePanel.addCall(store,index);
+   }
+
+   /**
+    *  Adds the CallTree of a thread whose calls are merged.
+    *
+    *  @param  tree  The CallTree.
     */
-   public void addMethod(MethodClass method)
+   public void addCallTree(CallTree tree)
    {
-      runTimePanel.addMethod(method);
+      runTimePanel.addCallTree(tree);
+   }
+
+   /**
+    *  A method has ended in a CallTree. Updates the panel.
+    */
+   public void update()
+   {
+      runTimePanel.update();
+   }
+
+   /**
+    *  Sets the time that tracing a call adds to the call it is made from.
+    *
+    *  @param  callCost The time in nanoseconds.
+    */
+   public void setCallCost(long callCost)
+   {
+      this.callCost = callCost;
+      runTimePanel.setCallCost(callCost);
+      methodStats.setCallCost(callCost);
    }
 
    /**
@@ -89,4 +213,192 @@ public class RunTimeFrame extends JInternalFrame
    {
       return runTimePanel.findMethod(searchString);
    }
-}
\ No newline at end of file
+
+   /**
+    *  This class holds the rows of the table of methods: the
+    *  methods with the most total time, mean time or 99th
+    *  percentile time, in that order.
+    */
+   private class StatsTableModel extends AbstractTableModel
+   {
+      /**
+       *  The names of the columns.
+       */
+      private String [] columnNames = {"Method","Calls","Total","Mean","Min","p50","p90","p99","Max"};
+      /**
+       *  The text of each cell, indexed by row and column. Read from
+       *  the MethodStats when the rows are sorted, so that the
+       *  EventDispatcher can go on adding calls while it is shown.
+       */
+      private String [][] cells = new String[0][];
+
+      /**
+       *  Sorts the methods and keeps the top ones as the rows.
+       *
+       *  @param  stats    The runtimes of the methods.
+       *  @param  sortBy   0 to sort by total time, 1 by mean time
+       *                   or 2 by 99th percentile time.
+       *  @param  top      The number of rows to keep.
+       */
+      public void update(MethodStats stats,int sortBy,int top)
+      {
+         synchronized(stats) // the calls added while the rows are read would make them disagree
+         {
+            cells = getCells(stats,sortBy,top);
+         }
+         fireTableDataChanged();
+      }
+
+      /**
+       *  Sorts the methods and returns the text of the top ones.
+       *  The caller holds the lock on the MethodStats.
+       *
+       *  @param  stats    The runtimes of the methods.
+       *  @param  sortBy   0 to sort by total time, 1 by mean time
+       *                   or 2 by 99th percentile time.
+       *  @param  top      The number of rows to keep.
+       *  @return The text of each cell, indexed by row and column.
+       */
+      private String [][] getCells(MethodStats stats,int sortBy,int top)
+      {
+         int numMethods = stats.getNumCalledMethods();
+         Integer [] ids = new Integer[numMethods];
+         final long [] keys = new long[numMethods];
+         for(int i=0;i<numMethods;i++)
+         {
+            int id = stats.getCalledMethod(i);
+            ids[i] = new Integer(i);
+            if(sortBy==0)
+               keys[i] = stats.getTotalTime(id);
+            else if(sortBy==1)
+               keys[i] = stats.getMeanTime(id);
+            else
+               keys[i] = stats.getPercentile(id,99);
+         }
+
+         // sort the methods in order of the biggest key first
+         Arrays.sort(ids,new Comparator()
+         {
+            public int compare(Object o1,Object o2)
+            {
+               long key1 = keys[((Integer)o1).intValue()];
+               long key2 = keys[((Integer)o2).intValue()];
+               return key1 > key2 ? -1 : (key1 < key2 ? 1 : 0);
+            }
+         });
+
+         int numRows = Math.min(top,numMethods);
+         String [][] newCells = new String[numRows][];
+         for(int i=0;i<numRows;i++)
+         {
+            int id = stats.getCalledMethod(ids[i].intValue());
+            newCells[i] = new String[] {methodTable.getName(id),Long.toString(stats.getCount(id)),
+               MethodClass.formatTime(stats.getTotalTime(id)),MethodClass.formatTime(stats.getMeanTime(id)),
+               MethodClass.formatTime(stats.getMinTime(id)),MethodClass.formatTime(stats.getPercentile(id,50)),
+               MethodClass.formatTime(stats.getPercentile(id,90)),MethodClass.formatTime(stats.getPercentile(id,99)),
+               MethodClass.formatTime(stats.getMaxTime(id))};
+         }
+         return newCells;
+      }
+
+      /**
+       *  Returns the number of rows.
+       *
+       *  @return The number of rows.
+       */
+      public int getRowCount()
+      {
+         return cells.length;
+      }
+
+      /**
+       *  Returns the number of columns.
+       *
+       *  @return The number of columns.
+       */
+      public int getColumnCount()
+      {
+         return columnNames.length;
+      }
+
+      /**
+       *  Returns the name of a column.
+       *
+       *  @param  column   The column.
+       *  @return The name of the column.
+       */
+      public String getColumnName(int column)
+      {
+         return columnNames[column];
+      }
+
+      /**
+       *  Returns the value shown in a cell.
+       *
+       *  @param  row      The row.
+       *  @param  column   The column.
+       *  @return The value.
+       */
+      public Object getValueAt(int row,int column)
+      {
+         return cells[row][column];
+      }
+   }
+
+   /**
+    *  Updates the table of methods when it is due, or when
+    *  its order or size is changed.
+    */
+   private class StatsListener implements ActionListener
+   {
+      /**
+       *  Sorts the methods again if the table is showing.
+       *
+       *  @param  event The ActionEvent that has occurred.
+       */
+      public void actionPerformed(ActionEvent event)
+      {
+         if(event.getSource()==statsTimer && (isIcon() || !isShowing() || statsTableModel==null))
+            return;
+
+         int top = 50;
+         try
+         {
+            top = Math.max(1,Integer.parseInt(topField.getText().trim()));
+         }
+         catch(NumberFormatException e)
+         {
+            topField.setText("" + top);
+         }
+         if(methodTable!=null)
+            statsTableModel.update(methodStats,sortCombo.getSelectedIndex(),top);
+      }
+   }
+
+   /**
+    *  This class listens for the mouse to click on the header
+    *  of the table of methods. Clicking on the Total, Mean or
+    *  p99 column sorts the table by that column.
+    */
+   private class HeaderClickListener extends MouseAdapter
+   {
+      /**
+       *  Sorts the table by the column that was clicked on.
+       *
+       *  @param  event The MouseEvent that has occurred.
+       */
+      public void mouseClicked(MouseEvent event)
+      {
+         JTableHeader header = (JTableHeader)event.getSource();
+         int column = header.columnAtPoint(event.getPoint());
+         if(column>=0)
+            column = header.getTable().convertColumnIndexToModel(column);
+         if(column==2)
+            sortCombo.setSelectedIndex(0);
+         else if(column==3)
+            sortCombo.setSelectedIndex(1);
+         else if(column==7)
+            sortCombo.setSelectedIndex(2);
+      }
+   }
+}
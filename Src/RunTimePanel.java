@@ -7,7 +7,8 @@ import java.util.*;
 /**
  *  This class implements a panel that displays the
  *  methods executed by the target program and their
- *  runtimes.
+ *  runtimes. The time taken to trace each call made
+ *  while a method ran is taken from its runtime.
  *
  *  @author  Eoin O'Connor
  *  @see ObjectDisplayer
@@ -45,13 +46,22 @@ public class RunTimePanel extends JPanel
     */
    private int panelHeight;
    /**
-    *  The list of methods executed by the program.
+    *  The methods executed by the program, sorted in order
+    *  of longest runtime. Only the rows that are visible are
+    *  taken from it when the panel is painted.
     */
    private Tree methodTree;
    /**
-    *  A sorted list of methods executed by the program.
+    *  Gives the names of the methods.
     */
-   private ArrayList methodList;
+   private MethodTable methodTable;
+   /**
+    *  The greatest number of calls kept in the list. Only the
+    *  longest calls are kept, so that the list does not grow for
+    *  as long as the program runs. The runtimes of every call are
+    *  still counted in the RunTimeFrame's method table.
+    */
+   private static final int MAX_CALLS = 100000;
    /**
     *  The scale that the runtime bars are measured by.
     */
@@ -60,6 +70,25 @@ public class RunTimePanel extends JPanel
     *  A text field used to display the number of methods.
     */
    private JTextField scaleField;
+   /**
+    *  The time in nanoseconds taken to trace one call.
+    */
+   private long callCost;
+   /**
+    *  The CallTrees of the threads whose calls are merged.
+    */
+   private ArrayList callTrees;
+   /**
+    *  The calling contexts of the CallTrees, sorted in order
+    *  of longest total runtime. Only made again when a CallTree
+    *  has changed, and only on the event dispatch thread.
+    */
+   private ArrayList callTreeRows;
+   /**
+    *  Sorts the calling contexts again and sizes the panel
+    *  for them, at the start of the next frame.
+    */
+   private Runnable callTreeLayout;
 
    /**
     *  Constructor: initializes the panel and sets the rendering
@@ -72,9 +101,18 @@ public class RunTimePanel extends JPanel
       panelHeight = 0;
       rightWidth = 0;
       methodTree = new Tree();
-      methodList = new ArrayList();
       numMethods = 0;
       scale = 1;
+      callCost = 0;
+      callTrees = new ArrayList();
+      callTreeRows = new ArrayList();
+      callTreeLayout = new Runnable()
+      {
+         public void run()
+         {
+            layOutCallTrees();
+         }
+      };
 
       renderHints =  new RenderingHints(RenderingHints.KEY_COLOR_RENDERING,RenderingHints.VALUE_COLOR_RENDER_SPEED);
       renderHints.put(RenderingHints.KEY_TEXT_ANTIALIASING,RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
@@ -85,19 +123,40 @@ public class RunTimePanel extends JPanel
       renderHints.put(RenderingHints.KEY_ALPHA_INTERPOLATION,RenderingHints.VALUE_ALPHA_INTERPOLATION_SPEED);
    }
 
+   /**
+    *  Sets the MethodTable used to look up method names.
+    *
+    *  @param  methodTable  The new MethodTable.
+    */
+   public void setMethodTable(MethodTable methodTable)
+   {
+      this.methodTable = methodTable;
+   }
+
    /**
     *  A new method has been executed. Update the
-    *  the panel to take account of this.
+    *  the panel to take account of this. The method is
+    *  read from its thread's EventStore when it is drawn.
     *
-    *  @param  method   The new method.
+    *  @param  store The EventStore of the method's thread.
+    *  @param  index The record number of the method in the store.
     */
-   public void addMethod(MethodClass method)
+   public void addCall(EventStore store,int index)
    {
-      methodTree.insert(method);
-      methodList = methodTree.get();
+      String name = methodTable.getName(store.getMethodID(index));
+      CallRow row = new CallRow(store,index);
+      methodTree.insert(row);
+      if(methodTree.size() > MAX_CALLS)
+         methodTree.removeLast();
+      if(rightWidth < name.length()*7) // rows that are not drawn still set the width
+         rightWidth = (name.length()*7)+10;
       numMethods++;
-      scaleField.setText("Number of methods: " + numMethods + " | Scale: 1 / " + (scale*500));
-      repaint();
+      RepaintScheduler.setText(scaleField,"Number of methods: " + numMethods + " | Scale: 1 / " + (scale*500));
+
+      // the longest runtime sets the scale, even when it is not visible
+      checkScale(((CallRow)methodTree.get(0)).getExecutionTime());
+      long time = row.getExecutionTime();
+      fitRows(getRowWidth(time,MethodClass.formatTime(time)),methodTree.size()*20 + 20);
    }
 
    /**
@@ -114,68 +173,231 @@ public class RunTimePanel extends JPanel
       g2.setRenderingHints(renderHints);
       g2.setFont(new Font("Courier new",0,12)); // the Courier New chars are about 7 pixels wide
 
-      MethodClass method;
-      String countString;
-      int width = 10;
       int height = 20;
-      Rectangle rect; // visible part of the panel
-      int barLength;
-
       try
       {
-         Iterator it = methodList.listIterator();
+         // only draw the rows that are visible
+         Rectangle rect = getVisibleRect();
+         int first = Math.max(0,((int)rect.getY()-50)/20 - 1);
+         int count = (int)rect.getHeight()/20 + 7;
+         height = 20 + first*20;
+
+         if(!callTrees.isEmpty()) // draw the calling contexts
+         {
+            ArrayList rows = callTreeRows;
+            int last = Math.min(rows.size(),first + count);
+            for(int i=first;i<last;i++)
+            {
+               CallTreeRow row = (CallTreeRow)rows.get(i);
+               MethodClass method = row.tree.getMethod(row.node);
+               drawMethod(method.getName(),method.getColour(),row.time,getCountString(row),height);
+               height += 20;
+            }
+            return;
+         }
+
+         Iterator it = methodTree.get(first,count).iterator();
          while(it.hasNext())
          {
-            method = (MethodClass)it.next();
-            countString = "" + method.getExecutionTime();
-            rect = getVisibleRect(); // visible part of the panel
+            CallRow row = (CallRow)it.next();
+            long time = row.getExecutionTime();
+            drawMethod(row.getName(),row.store.getColour(row.index),time,MethodClass.formatTime(time),height);
+            height += 20;
+         }
+      }
+      catch(ConcurrentModificationException e)
+      {
+         e.printStackTrace();
+         return;
+      }
+   }
 
-            if(rightWidth < method.getName().length()*7)
-               rightWidth = (method.getName().length()*7)+10;
+   /**
+    *  Draws a method's name and its runtime bar on a row.
+    *
+    *  @param  name        The name of the method.
+    *  @param  colour      The colour of the bar.
+    *  @param  runTime     The runtime of the method in nanoseconds.
+    *  @param  countString The runtime to write after the bar.
+    *  @param  height      The y-coordinate of the row.
+    */
+   private void drawMethod(String name,Color colour,long runTime,String countString,int height)
+   {
+      int width = 10;
+      long time = runTime/1000; // runtime in microseconds
+      Rectangle rect = getVisibleRect(); // visible part of the panel
+      int barLength = (int)(time/scale);
 
-            if((int)method.getExecutionTime()/scale > 500)
-            {
-               scale = scale + ((int)method.getExecutionTime()/500);
-               scaleField.setText("Number of methods: " + numMethods + " | Scale: 1 / " + (scale*500));
-            }
-            barLength = (int)method.getExecutionTime()/scale;
+      // only diplay methods that are visible
+      if(height>rect.getY()-50 && height<rect.getHeight()+rect.getY()+50)
+      {
+         g2.draw(new Rectangle(rightWidth,height-10,barLength,10));
+         g2.drawString(name,width,height);
+         g2.setPaint(colour);
+         g2.fill(new Rectangle(rightWidth+1,height-9,barLength-1,9));
+         g2.drawLine(width+(name.length()*7),height-5,rightWidth-1,height-5);
+         g2.setPaint(Color.black);
+         g2.drawString(countString,rightWidth+barLength+5,height);
+      }
+   }
 
-            // only diplay methods that are visible
-            if(height>rect.getY()-50 && height<rect.getHeight()+rect.getY()+50)
-            {
-               g2.draw(new Rectangle(rightWidth,height-10,barLength,10));
-               g2.drawString(method.getName(),width,height);
-               g2.setPaint(method.getColour());
-               g2.fill(new Rectangle(rightWidth+1,height-9,barLength-1,9));
-               g2.drawLine(width+(method.getName().length()*7),height-5,rightWidth-1,height-5);
-               g2.setPaint(Color.black);
-               g2.drawString(countString,rightWidth+barLength+5,height);
-            }
+   /**
+    *  Returns the width a row needs at the current scale.
+    *
+    *  @param  runTime     The runtime of the method in nanoseconds.
+    *  @param  countString The runtime written after the bar.
+    *  @return The width in pixels.
+    */
+   private int getRowWidth(long runTime,String countString)
+   {
+      return rightWidth + (int)((runTime/1000)/scale) + (countString.length()*7) + 15;
+   }
 
-            height += 20;
+   /**
+    *  Makes the panel bigger if its rows do not fit, and
+    *  marks it as needing to be repainted.
+    *
+    *  @param  width    The width the rows need.
+    *  @param  height   The height the rows need.
+    */
+   private void fitRows(int width,int height)
+   {
+      if(width > panelWidth || height > panelHeight)
+      {
+         panelWidth = Math.max(panelWidth,width);
+         panelHeight = Math.max(panelHeight,height);
+         setPreferredSize(new Dimension(panelWidth,panelHeight));
+         RepaintScheduler.revalidate(this);
+      }
+      else
+         RepaintScheduler.repaint(this);
+   }
 
-            //  adjust the width of the panel if out of bounds
-            if(panelWidth < rightWidth + barLength + (countString.length()*7) + 5)
-            {
-               panelWidth = rightWidth + barLength + (countString.length()*7) + 15;
-               setPreferredSize(new Dimension(panelWidth,panelHeight));
-               revalidate();
-            }
+   /**
+    *  Makes the scale bigger if a runtime bar would be
+    *  longer than 500 pixels.
+    *
+    *  @param  runTime  The runtime in nanoseconds.
+    */
+   private void checkScale(long runTime)
+   {
+      long time = runTime/1000; // runtime in microseconds
+      if(time/scale > 500)
+      {
+         scale = scale + (int)(time/500);
+         RepaintScheduler.setText(scaleField,"Number of methods: " + numMethods + " | Scale: 1 / " + (scale*500));
+      }
+   }
 
-            //  adjust the height of the panel if out of bounds
-            if(panelHeight < height)
-            {
-               panelHeight = height+20;
-               setPreferredSize(new Dimension(panelWidth,panelHeight));
-               revalidate();
-            }
+   /**
+    *  Makes the list of calling contexts from the CallTrees,
+    *  sorted in order of longest total runtime.
+    */
+   private void sortCallTrees()
+   {
+      ArrayList rows = new ArrayList();
+      Iterator it = callTrees.iterator();
+      while(it.hasNext())
+      {
+         CallTree tree = (CallTree)it.next();
+         int numNodes = tree.getNumNodes();
+         for(int node=1;node<numNodes;node++)
+         {
+            if(tree.getMethod(node)!=null && tree.getCount(node)>0)
+               rows.add(new CallTreeRow(tree,node,MethodClass.removeCallCost(tree.getTotalTime(node),tree.getTracedCalls(node),tree.getCount(node),callCost)));
          }
       }
-      catch(ConcurrentModificationException e)
+      Collections.sort(rows);
+      callTreeRows = rows;
+      numMethods = rows.size();
+   }
+
+   /**
+    *  Sorts the calling contexts again, and sets the scale and the
+    *  size of the panel for them. Run on the event dispatch thread
+    *  at the start of a frame when a CallTree has changed.
+    */
+   private void layOutCallTrees()
+   {
+      try
       {
-         e.printStackTrace();
+         sortCallTrees();
+      }
+      catch(ConcurrentModificationException e) // a CallTree was added while sorting
+      {
+         RepaintScheduler.layOut(callTreeLayout);
          return;
       }
+
+      ArrayList rows = callTreeRows;
+      if(!rows.isEmpty())
+         checkScale(((CallTreeRow)rows.get(0)).time);
+      int width = 0;
+      for(int i=0;i<rows.size();i++)
+      {
+         CallTreeRow row = (CallTreeRow)rows.get(i);
+         String name = row.tree.getMethod(row.node).getName();
+         if(rightWidth < name.length()*7)
+            rightWidth = (name.length()*7)+10;
+         width = Math.max(width,getRowWidth(row.time,getCountString(row)));
+      }
+      RepaintScheduler.setText(scaleField,"Number of methods: " + numMethods + " | Scale: 1 / " + (scale*500));
+      fitRows(width,rows.size()*20 + 20);
+   }
+
+   /**
+    *  Returns the runtimes written after the bar of a calling context.
+    *
+    *  @param  row   The calling context.
+    *  @return The runtimes.
+    */
+   private String getCountString(CallTreeRow row)
+   {
+      CallTree tree = row.tree;
+      long selfTime = Math.max(0,tree.getSelfTime(row.node) - callCost*getChildCalls(tree,row.node));
+      return MethodClass.formatTime(row.time) + " | calls: " + tree.getCount(row.node)
+         + " | self: " + MethodClass.formatTime(selfTime)
+         + " | min: " + MethodClass.formatTime(tree.getMinTime(row.node))
+         + " | max: " + MethodClass.formatTime(tree.getMaxTime(row.node));
+   }
+
+   /**
+    *  Returns the number of calls made directly from a
+    *  calling context's calls.
+    *
+    *  @param  tree  The CallTree.
+    *  @param  node  The calling context.
+    *  @return The number of calls.
+    */
+   private long getChildCalls(CallTree tree,int node)
+   {
+      long numCalls = 0;
+      for(int child=tree.getFirstChild(node);child!=-1;child=tree.getNextSibling(child))
+         numCalls += tree.getCount(child);
+      return numCalls;
+   }
+
+   /**
+    *  Adds the CallTree of a thread whose calls are merged.
+    *  The panel then shows each calling context instead of
+    *  each call.
+    *
+    *  @param  tree  The CallTree.
+    */
+   public void addCallTree(CallTree tree)
+   {
+      callTrees.add(tree);
+      RepaintScheduler.layOut(callTreeLayout);
+   }
+
+   /**
+    *  A method has ended in a CallTree. Update the
+    *  the panel to take account of this. The calling
+    *  contexts are sorted again in the next frame.
+    */
+   public void update()
+   {
+      RepaintScheduler.layOut(callTreeLayout);
    }
 
    /**
@@ -203,6 +425,32 @@ public class RunTimePanel extends JPanel
       scaleField.setText("Number of methods: " + numMethods + " | Scale: 1 / " + (scale*500));
    }
 
+   /**
+    *  Sets the time that tracing a call adds to the call it is made from.
+    *
+    *  @param  cost  The time in nanoseconds.
+    */
+   public void setCallCost(long cost)
+   {
+      callCost = cost;
+
+      // the calls are ranked by their runtimes without the call cost, so rank them again
+      if(methodTree.size()>0)
+      {
+         Tree rows = new Tree();
+         Iterator it = methodTree.get(0,methodTree.size()).iterator();
+         while(it.hasNext())
+         {
+            CallRow row = (CallRow)it.next();
+            rows.insert(new CallRow(row.store,row.index));
+         }
+         methodTree = rows;
+      }
+      if(!callTrees.isEmpty())
+         RepaintScheduler.layOut(callTreeLayout);
+      repaint();
+   }
+
    /**
     *  Returns true if colour is dark.
     *
@@ -227,29 +475,34 @@ public class RunTimePanel extends JPanel
    public boolean findMethod(String searchString)
    {
       searchString = searchString.toLowerCase();
-      MethodClass method;
-      String name;
       int width = 10;
       int height = 20;
 
       try
       {
-         Iterator it = methodList.listIterator();
-         while(it.hasNext())
+         if(!callTrees.isEmpty())
          {
-            method = (MethodClass)it.next();
-            name = method.toString().toLowerCase();
-            if(name.indexOf(searchString)>-1)
+            ArrayList names = new ArrayList();
+            Iterator rowIterator = callTreeRows.iterator();
+            while(rowIterator.hasNext())
             {
-               // check if the scrollbar is above the method found
-               if(scroller.getVerticalScrollBar().getValue() < height-15)
-               {
-                  scroller.getVerticalScrollBar().setValue(height-15);
-                  scroller.getHorizontalScrollBar().setValue(width);
-                  return true;
-               }
+               CallTreeRow row = (CallTreeRow)rowIterator.next();
+               names.add(row.tree.getMethod(row.node));
             }
-            height += 20;
+            return findMethod(names,searchString,height,width);
+         }
+
+         // search the tree a page at a time, starting below the scrollbar
+         int first = Math.max(0,(scroller.getVerticalScrollBar().getValue()+15-height)/20);
+         height += first*20;
+         ArrayList page = methodTree.get(first,256);
+         while(!page.isEmpty())
+         {
+            if(findMethod(page,searchString,height,width))
+               return true;
+            first += page.size();
+            height += page.size()*20;
+            page = methodTree.get(first,256);
          }
       }
       catch(ConcurrentModificationException e)
@@ -259,4 +512,159 @@ public class RunTimePanel extends JPanel
       }
       return false;
    }
-}
\ No newline at end of file
+
+   /**
+    *  Searches a list of the methods drawn by the panel.
+    *  If a match is found below the scrollbar, scrolls to it.
+    *
+    *  @param  methods        The methods or calls, in the order they are drawn.
+    *  @param  searchString   The lower case string to search for.
+    *  @param  height         The y-coordinate of the first method's row.
+    *  @param  width          The x-coordinate to scroll to.
+    *  @return True if a match is found.
+    */
+   private boolean findMethod(ArrayList methods,String searchString,int height,int width)
+   {
+      Iterator it = methods.iterator();
+      while(it.hasNext())
+      {
+         String name = it.next().toString().toLowerCase();
+         if(name.indexOf(searchString)>-1)
+         {
+            // check if the scrollbar is above the method found
+            if(scroller.getVerticalScrollBar().getValue() < height-15)
+            {
+               scroller.getVerticalScrollBar().setValue(height-15);
+               scroller.getHorizontalScrollBar().setValue(width);
+               return true;
+            }
+         }
+         height += 20;
+      }
+      return false;
+   }
+
+   /**
+    *  A calling context in the list drawn by the panel.
+    */
+   private class CallTreeRow implements Comparable
+   {
+      /**
+       *  The CallTree holding the calling context.
+       */
+      private CallTree tree;
+      /**
+       *  The node of the calling context.
+       */
+      private int node;
+      /**
+       *  The total runtime of the calling context.
+       */
+      private long time;
+
+      /**
+       *  Constructor: creates a row.
+       *
+       *  @param  tree  The CallTree.
+       *  @param  node  The node.
+       *  @param  time  The total runtime.
+       */
+      public CallTreeRow(CallTree tree,int node,long time)
+      {
+         this.tree = tree;
+         this.node = node;
+         this.time = time;
+      }
+
+      /**
+       *  Orders the rows by longest total runtime first.
+       *
+       *  @param  obj  The row to compare to.
+       *  @return A negative number if this row comes first.
+       */
+      public int compareTo(Object obj)
+      {
+         long other = ((CallTreeRow)obj).time;
+         return time > other ? -1 : (time < other ? 1 : 0);
+      }
+   }
+
+   /**
+    *  A call in the list drawn by the panel, kept as its
+    *  record number in its thread's EventStore.
+    */
+   private class CallRow implements Comparable
+   {
+      /**
+       *  The EventStore of the call's thread.
+       */
+      private EventStore store;
+      /**
+       *  The record number of the call.
+       */
+      private int index;
+      /**
+       *  The runtime of the call without the time taken
+       *  to trace the methods it called.
+       */
+      private long time;
+
+      /**
+       *  Constructor: creates a row, taking the call cost
+       *  from the runtime of the call.
+       *
+       *  @param  store The EventStore.
+       *  @param  index The record number.
+       */
+      public CallRow(EventStore store,int index)
+      {
+         this.store = store;
+         this.index = index;
+         time = MethodClass.removeCallCost(store.getExecutionTime(index),store.getNumMethodsCalled(index),1,callCost);
+      }
+
+      /**
+       *  Returns the name of the call's method.
+       *
+       *  @return The name of the method.
+       */
+      public String getName()
+      {
+         return methodTable.getName(store.getMethodID(index));
+      }
+
+      /**
+       *  Returns the runtime of the call without the time
+       *  taken to trace the methods it called.
+       *
+       *  @return The runtime in nanoseconds.
+       */
+      public long getExecutionTime()
+      {
+         return time;
+      }
+
+      /**
+       *  Orders the rows by longest runtime first, without
+       *  the time taken to trace the methods they called.
+       *
+       *  @param  obj  The row to compare to.
+       *  @return 1 if this row's runtime is longer than obj's.
+       */
+      public int compareTo(Object obj)
+      {
+         long other = ((CallRow)obj).time;
+         return time > other ? 1 : (time < other ? -1 : 0);
+      }
+
+      /**
+       *  Returns a string representation of the call.
+       *
+       *  @return The name of the method and the runtime.
+       */
+      public String toString()
+      {
+         return getName() + " " + MethodClass.formatTime(time);
+      }
+   }
+}
@@ -4,20 +4,35 @@ import javax.swing.*;
 import java.awt.*;
 import java.util.*;
 import java.awt.event.*;
+import java.awt.image.*;
 
 /**
  *  This class implements a panel that displays the
  *  methods executed by a thread in the running
- *  target program.
+ *  target program. If the thread's calls are merged
+ *  into a CallTree, each calling context is shown once
+ *  with its number of calls and total time. Otherwise the
+ *  calls are read from the thread's EventStore.
  *
  *  @author  Eoin O'Connor
  *  @see ThreadManager
  *  @see ThreadFrame
  *  @see MethodClass
  *  @see ObjectClass
+ *  @see CallTree
+ *  @see EventStore
  */
 public class SequencePanel extends JPanel
 {
+   /**
+    *  The height of a strip of the panel kept as a tile.
+    */
+   private static final int TILE_HEIGHT = 256;
+   /**
+    *  The number of tiles kept.
+    */
+   private static final int MAX_TILES = 16;
+
    /**
     *  Used to draw the 2D shapes.
     */
@@ -47,6 +62,11 @@ public class SequencePanel extends JPanel
     *  Used to render the graphics.
     */
    private RenderingHints renderHints;
+   /**
+    *  The drawn strips of the panel, keyed by their number from
+    *  the top. Only the strips used most recently are kept.
+    */
+   private LinkedHashMap tiles;
 
    /**
     *  Constructor: initializes the panel and sets
@@ -69,6 +89,13 @@ public class SequencePanel extends JPanel
       this.threadName = threadName;
       this.info = info;
       setBackground(Color.white);
+      tiles = new LinkedHashMap(MAX_TILES,0.75f,true)
+      {
+         protected boolean removeEldestEntry(Map.Entry eldest)
+         {
+            return size() > MAX_TILES;
+         }
+      };
 
       renderHints =  new RenderingHints(RenderingHints.KEY_COLOR_RENDERING,RenderingHints.VALUE_COLOR_RENDER_SPEED);
       renderHints.put(RenderingHints.KEY_TEXT_ANTIALIASING,RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
@@ -92,42 +119,242 @@ public class SequencePanel extends JPanel
       g2.setRenderingHints(renderHints);
       g2.setFont(new Font("Courier new",0,12)); // the Courier New chars are about 7 pixels wide
 
+      if(manager.getCallTree()!=null)
+      {
+         paintCallTree(manager.getCallTree());
+         return;
+      }
+
       // displays a method's name and its sequence bar
-      Rectangle rect = getVisibleRect(); // visible part of the panel
-      ListIterator iterator = manager.getMethodList().listIterator();
-      MethodClass meth;
-      while(iterator.hasNext())
+      Rectangle rect = g.getClipBounds(); // the part of the panel being painted
+      if(rect==null)
+         rect = getVisibleRect();
+      EventStore store = manager.getEventStore();
+      int bottom = rect.y + rect.height;
+
+      // the finished strips are copied from their tiles
+      int liveTop = rect.y;
+      for(int t=rect.y/TILE_HEIGHT;t*TILE_HEIGHT<bottom;t++)
+      {
+         Tile tile = getTile(store,t);
+         if(tile==null)
+            break; // calls may still be drawn in this strip
+         g2.drawImage(tile.image,0,t*TILE_HEIGHT,null);
+         for(int i=0;i<tile.liveCalls.length;i++)
+            drawCall(g2,store,tile.liveCalls[i]);
+         liveTop = (t+1)*TILE_HEIGHT;
+      }
+
+      // the rest is drawn from the EventStore
+      if(liveTop < bottom)
+      {
+         int [] calls = getCalls(store,liveTop,bottom);
+         for(int i=0;i<calls.length;i++)
+            drawCall(g2,store,calls[i]);
+      }
+   }
+
+   /**
+    *  Draws a call's name and its sequence bar.
+    *
+    *  @param  g      Used to draw the graphics.
+    *  @param  store  The EventStore of the thread.
+    *  @param  n      The record number of the call.
+    */
+   private void drawCall(Graphics2D g,EventStore store,int n)
+   {
+      int methodID = store.getMethodID(n);
+      int depth = store.getDepth(n);
+      int methHeight = store.getHeight(n);
+      int barLength = store.getBarLength(n);
+      int methWidth = depth*30;
+      g.drawString(manager.getMethodName(methodID),methWidth,methHeight);
+      g.draw(new Rectangle(methWidth-7,methHeight-8,5,barLength));
+      g.setPaint(manager.getMethodClass(methodID).getColour());
+      g.fill(new Rectangle(methWidth-6,methHeight-7,4,barLength-1));
+      g.setPaint(Color.black);
+      if(depth>1)
       {
-         try
+         g.drawLine(methWidth-8,methHeight-3,methWidth-31,methHeight-3);
+         g.drawLine(methWidth-8,methHeight-3,methWidth-13,methHeight-6);
+         g.drawLine(methWidth-8,methHeight-3,methWidth-13,methHeight);
+      }
+   }
+
+   /**
+    *  Returns the tile of a strip of the panel, drawing it if it is
+    *  not in the cache. A strip can only be drawn once calls are
+    *  being added below it. The calls in it that have ended are drawn
+    *  into the tile's image. The calls that were still running when
+    *  the tile was drawn have bars that are still growing, so they
+    *  are kept in the tile to be drawn over the image each time.
+    *  The colours of the classes do not change once they are given,
+    *  so a tile never has to be drawn again.
+    *
+    *  @param  store  The EventStore of the thread.
+    *  @param  t      The number of the strip, from the top.
+    *  @return The tile, or null if calls may still be drawn in the strip.
+    */
+   private Tile getTile(EventStore store,int t)
+   {
+      Integer key = new Integer(t);
+      Tile tile = (Tile)tiles.get(key);
+      if(tile!=null)
+         return tile;
+
+      int top = t*TILE_HEIGHT;
+      int bottom = top + TILE_HEIGHT;
+      int size = store.size();
+      if(size==0 || store.getHeight(size-1) < bottom + 10 || width<=0)
+         return null;
+
+      tile = new Tile();
+      tile.image = new BufferedImage(width,TILE_HEIGHT,BufferedImage.TYPE_INT_RGB);
+      Graphics2D g = tile.image.createGraphics();
+      g.setRenderingHints(renderHints);
+      g.setPaint(Color.white);
+      g.fillRect(0,0,width,TILE_HEIGHT);
+      g.setPaint(Color.black);
+      g.setFont(g2.getFont());
+      g.translate(0,-top);
+
+      int [] calls = getCalls(store,top,bottom);
+      int [] liveCalls = new int[calls.length];
+      int numLiveCalls = 0;
+      for(int i=0;i<calls.length;i++)
+      {
+         if(!store.isEnded(calls[i])) // still running
+            liveCalls[numLiveCalls++] = calls[i];
+         else
+            drawCall(g,store,calls[i]);
+      }
+      g.dispose();
+      tile.liveCalls = Arrays.copyOf(liveCalls,numLiveCalls);
+
+      tiles.put(key,tile);
+      return tile;
+   }
+
+   /**
+    *  Returns the calls whose names or bars are drawn between two
+    *  y-coordinates, in the order they were made. The calls drawn
+    *  below the top are found by searching the EventStore by height,
+    *  so the time taken depends on the number of calls in the range
+    *  rather than on the number of calls made. A call drawn above the
+    *  top ends before the next call starts unless it is one of its
+    *  callers, so only the callers of the last call above the top
+    *  can reach down into the range.
+    *
+    *  @param  store  The EventStore of the thread.
+    *  @param  top    The top of the range.
+    *  @param  bottom The bottom of the range.
+    *  @return The record numbers of the calls.
+    */
+   private int [] getCalls(EventStore store,int top,int bottom)
+   {
+      int first = store.findHeight(top);
+      int [] calls = new int[64];
+      int numCalls = 0;
+
+      // the callers drawn above the top whose bars reach into the range, innermost first
+      for(int n=first-1;n>=0;n=store.getParent(n))
+      {
+         if(top < store.getHeight(n) + store.getBarLength(n))
          {
-            meth = (MethodClass)iterator.next();
-            // only show the methods that are visible
-            if(meth.getHeight() < rect.getY() + rect.getHeight() + 10)
-            {
-               if(rect.getY() < meth.getHeight() + meth.getBarLength())
-               {
-                  g2.drawString(meth.getName(),meth.getWidth(),meth.getHeight());
-                  g2.draw(new Rectangle(meth.getWidth()-7,meth.getHeight()-8,5,meth.getBarLength()));
-                  g2.setPaint(meth.getObjectClass().getColour());
-                  g2.fill(new Rectangle(meth.getWidth()-6,meth.getHeight()-7,4,meth.getBarLength()-1));
-                  g2.setPaint(Color.black);
-                  if(!meth.getIsFirstMethod())
-                  {
-                     g2.drawLine(meth.getWidth()-8,meth.getHeight()-3,meth.getWidth()-31,meth.getHeight()-3);
-                     g2.drawLine(meth.getWidth()-8,meth.getHeight()-3,meth.getWidth()-13,meth.getHeight()-6);
-                     g2.drawLine(meth.getWidth()-8,meth.getHeight()-3,meth.getWidth()-13,meth.getHeight());
-                  }
-               }
-            }
+            if(numCalls==calls.length)
+               calls = Arrays.copyOf(calls,calls.length*2);
+            calls[numCalls++] = n;
          }
-         catch(ConcurrentModificationException e)
+      }
+      for(int i=0,j=numCalls-1;i<j;i++,j--) // outermost first
+      {
+         int n = calls[i];
+         calls[i] = calls[j];
+         calls[j] = n;
+      }
+
+      int size = store.size();
+      for(int n=first;n<size && store.getHeight(n) < bottom + 10;n++)
+      {
+         if(numCalls==calls.length)
+            calls = Arrays.copyOf(calls,calls.length*2);
+         calls[numCalls++] = n;
+      }
+      return Arrays.copyOf(calls,numCalls);
+   }
+
+   /**
+    *  Draws each calling context of a CallTree on its own row,
+    *  indented by its depth, with its number of calls and total time.
+    *
+    *  @param  tree  The tree to draw.
+    */
+   private void paintCallTree(CallTree tree)
+   {
+      Rectangle rect = getVisibleRect(); // visible part of the panel
+      int row = 0;
+      for(int node=tree.getNextNode(0);node>=0;node=tree.getNextNode(node))
+      {
+         row++;
+         int y = row*20;
+         MethodClass meth = tree.getMethod(node);
+         if(meth==null || y < rect.getY() || y > rect.getY() + rect.getHeight() + 20)
+            continue; // not visible
+
+         int x = tree.getDepth(node)*30;
+         g2.drawString(meth.getName() + "  x" + tree.getCount(node) + "  " + MethodClass.formatTime(tree.getTotalTime(node)),x,y);
+         g2.draw(new Rectangle(x-7,y-8,5,10));
+         g2.setPaint(meth.getObjectClass().getColour());
+         g2.fill(new Rectangle(x-6,y-7,4,9));
+         g2.setPaint(Color.black);
+         if(tree.getDepth(node)>1)
          {
-            e.printStackTrace();
-            return;
+            g2.drawLine(x-8,y-3,x-31,y-3);
+            g2.drawLine(x-8,y-3,x-13,y-6);
+            g2.drawLine(x-8,y-3,x-13,y);
          }
       }
    }
 
+   /**
+    *  Returns the calling context drawn on a row.
+    *
+    *  @param  tree  The tree that is drawn.
+    *  @param  row   The row, starting at 1.
+    *  @return The node, or -1 if there is none.
+    */
+   private int getNode(CallTree tree,int row)
+   {
+      int node = 0;
+      for(int i=0;i<row && node>=0;i++)
+         node = tree.getNextNode(node);
+      return node;
+   }
+
+   /**
+    *  Makes the panel big enough for the calling contexts
+    *  of a CallTree.
+    *
+    *  @param  tree  The tree that is drawn.
+    */
+   private void resizeCallTree(CallTree tree)
+   {
+      MethodClass meth = manager.getLastMethodOnStack();
+      int newWidth = width;
+      if(meth!=null && (tree.getMaxDepth()*30)+(meth.getName().length()*7)+200 > width)
+         newWidth = (tree.getMaxDepth()*30)+(meth.getName().length()*7)+210;
+      int newHeight = Math.max(height,(tree.getNumNodes()*20)+20);
+      if(newWidth!=width || newHeight!=height)
+      {
+         width = newWidth;
+         height = newHeight;
+         setPreferredSize(new Dimension(width,height));
+         RepaintScheduler.revalidate(this);
+      }
+      else
+         RepaintScheduler.repaint(this);
+   }
+
    /**
     *  A new method has been executed. Update the
     *  the panel to take account of this.
@@ -139,12 +366,21 @@ public class SequencePanel extends JPanel
    {
       this.manager = manager;
 
-      if((manager.getStackCount()*30)+(manager.getMethod(manager.getNumMethods()-1).getName().length()*7) > width)
+      if(manager.getCallTree()!=null)
+      {
+         resizeCallTree(manager.getCallTree());
+         return;
+      }
+
+      String name = manager.getMethodName(manager.getLastMethodID());
+      if((manager.getStackCount()*30)+(name.length()*7) > width)
       {
-         width = ((manager.getStackCount()*30)+(manager.getMethod(manager.getNumMethods()-1).getName().length()*7))+10;
+         width = ((manager.getStackCount()*30)+(name.length()*7))+10;
          setPreferredSize(new Dimension(width,height));
-         revalidate();
+         RepaintScheduler.revalidate(this);
       }
+      else
+         RepaintScheduler.repaint(this);
    }
 
    /**
@@ -158,12 +394,36 @@ public class SequencePanel extends JPanel
    {
       this.manager = manager;
 
+      if(manager.getCallTree()!=null)
+      {
+         RepaintScheduler.repaint(this);
+         return;
+      }
+
       if(manager.getBiggestBarLength()+20 > height)
       {
          height = manager.getBiggestBarLength() + 40;
          setPreferredSize(new Dimension(width,height));
-         revalidate();
+         RepaintScheduler.revalidate(this);
       }
+      else
+         RepaintScheduler.repaint(this);
+   }
+
+   /**
+    *  A strip of the panel drawn into an image.
+    */
+   private class Tile
+   {
+      /**
+       *  The calls in the strip that had ended when it was drawn.
+       */
+      private BufferedImage image;
+      /**
+       *  The record numbers of the calls in the strip that were
+       *  still running when it was drawn.
+       */
+      private int [] liveCalls;
    }
 
    /**
@@ -185,30 +445,41 @@ public class SequencePanel extends JPanel
       {
          Point point = new Point(event.getX(),event.getY());
 
-         // searches for the method that has been clicked on
-         ListIterator iterator = manager.getMethodList().listIterator();
-         MethodClass meth;
-         Rectangle rect1,rect2;
-         while(iterator.hasNext())
+         CallTree tree = manager.getCallTree();
+         if(tree!=null)
          {
-            try
+            int node = getNode(tree,(event.getY()+10)/20);
+            if(node>=0 && tree.getMethod(node)!=null)
             {
-               meth = (MethodClass)iterator.next();
-               rect1 = new Rectangle(meth.getWidth()-7,meth.getHeight()-8,5,meth.getBarLength());
-               rect2 = new Rectangle(meth.getWidth(),meth.getHeight()-10,(meth.getName().length()*7),12);
-               if(rect1.contains(point) || rect2.contains(point))
-               {
-                  if(meth.getExecutionTime()>=0)
-                     info.setText(meth.getName() + " | Start time: " + meth.getStartTime() + " | Execution time: " + meth.getExecutionTime());
-                  else
-                     info.setText(meth.getName() + " | Start time: " + meth.getStartTime());
-                  break;
-               }
+               info.setText(tree.getMethod(node).getName() + " | Calls: " + tree.getCount(node)
+                  + " | Total: " + MethodClass.formatTime(tree.getTotalTime(node))
+                  + " | Self: " + MethodClass.formatTime(tree.getSelfTime(node))
+                  + " | Min: " + MethodClass.formatTime(tree.getMinTime(node))
+                  + " | Max: " + MethodClass.formatTime(tree.getMaxTime(node)));
             }
-            catch(ConcurrentModificationException e)
+            return;
+         }
+
+         // searches the calls drawn near the point for the method that has been clicked on
+         EventStore store = manager.getEventStore();
+         int [] calls = getCalls(store,event.getY(),event.getY() + 1);
+         Rectangle rect1,rect2;
+         for(int i=0;i<calls.length;i++)
+         {
+            int n = calls[i];
+            String name = manager.getMethodName(store.getMethodID(n));
+            int methWidth = store.getDepth(n)*30;
+            rect1 = new Rectangle(methWidth-7,store.getHeight(n)-8,5,store.getBarLength(n));
+            rect2 = new Rectangle(methWidth,store.getHeight(n)-10,(name.length()*7),12);
+            if(rect1.contains(point) || rect2.contains(point))
             {
-               e.printStackTrace();
-               return;
+               // start times are shown from the start of the thread's first method
+               String startTime = MethodClass.formatTime(store.getStartTime(n) - store.getStartTime(0));
+               if(store.getExecutionTime(n)>=0)
+                  info.setText(name + " | Start time: " + startTime + " | Execution time: " + MethodClass.formatTime(store.getExecutionTime(n)));
+               else
+                  info.setText(name + " | Start time: " + startTime);
+               break;
             }
          }
       }
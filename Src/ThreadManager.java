@@ -8,27 +8,38 @@ import java.awt.*;
 /**
  *  This class manages the class and method information
  *  for a thread from the running target program and displays it in
- *  a ThreadFrame.
+ *  a ThreadFrame. Each call is kept as a record in an EventStore,
+ *  outside the Java heap. In aggregation mode each call is merged
+ *  into a CallTree instead of being kept, so that long runs do not
+ *  use memory for every call.
  *
  *  @author  Eoin O'Connor
  *  @see ObjectClass
  *  @see MethodClass
  *  @see ThreadFrame
+ *  @see CallTree
+ *  @see EventStore
  */
 public class ThreadManager
 {
    /**
-    *  The list of methods encountered so far.
+    *  The calls encountered so far, or null if the calls
+    *  are merged into a CallTree.
     */
-   private ArrayList methodList;
+   private EventStore store;
    /**
-    *  The number of methods encountered so far.
+    *  A stack of currently executing methods, given by
+    *  their record numbers in the EventStore.
     */
-   private int numMethods;
+   private int [] stack;
    /**
-    *  A stack of currently executing method.
+    *  The name of each method, indexed by MethodTable ID number.
     */
-   private LinkedList stackList;
+   private String [] methodNames;
+   /**
+    *  The class of each method, indexed by MethodTable ID number.
+    */
+   private ObjectClass [] methodClasses;
    /**
     *  The graphical height of the last method encountered.
     */
@@ -45,6 +56,11 @@ public class ThreadManager
     *  The list of classes encountered so far.
     */
    private ArrayList classes;
+   /**
+    *  The classes encountered so far, indexed by their
+    *  MethodTable class ID numbers.
+    */
+   private ObjectClass [] classMap;
    /**
     *  The number of classes encountered so far.
     */
@@ -70,23 +86,31 @@ public class ThreadManager
     *  Used to display the method and class data.
     */
    private ThreadFrame threadFrame;
+   /**
+    *  The calls merged by calling context, or null if
+    *  every call is kept in the method list.
+    */
+   private CallTree callTree;
+   /**
+    *  The time at which the program was last paused.
+    */
+   private long pauseTime;
+   /**
+    *  The runtime of the method that ended last.
+    */
+   private long lastExecutionTime;
+   /**
+    *  The number of methods traced while the method that
+    *  ended last ran, counting itself.
+    */
+   private long lastNumMethodsCalled;
 
    /**
     *  Constructor: creates a default ThreadManager.
     */
    public ThreadManager()
    {
-      methodList = new ArrayList();
-      numMethods = 0;
-      stackList = new LinkedList();
-      stackCount = 0;
-      classes = new ArrayList();
-      numClasses = 0;
-      height = 20;
-      threadName = null;
-      threadID = 0;
-      biggestBarLength = 0;
-      currentColour = 0;
+      this(null,0,false,false,null);
    }
 
    /**
@@ -98,19 +122,71 @@ public class ThreadManager
     */
    public ThreadManager(String t,long id)
    {
-      methodList = new ArrayList();
-      numMethods = 0;
-      stackList = new LinkedList();
+      this(t,id,true,false,null);
+   }
+
+   /**
+    *  Constructor: creates a new ThreadManager for
+    *  a thread, which may merge its calls into a CallTree.
+    *
+    *  @param  t  The name of the thread.
+    *  @param  id The unique ID number of the thread.
+    *  @param  isAggregated True if calls are to be merged into a CallTree.
+    */
+   public ThreadManager(String t,long id,boolean isAggregated)
+   {
+      this(t,id,true,isAggregated,null);
+   }
+
+   /**
+    *  Constructor: creates a new ThreadManager for a thread,
+    *  whose calls may be spilled from memory.
+    *
+    *  @param  t  The name of the thread.
+    *  @param  id The unique ID number of the thread.
+    *  @param  isAggregated True if calls are to be merged into a CallTree.
+    *  @param  spiller  Spills the oldest calls when memory is short,
+    *                   or null if every call is kept in memory.
+    */
+   public ThreadManager(String t,long id,boolean isAggregated,TraceSpiller spiller)
+   {
+      this(t,id,true,isAggregated,spiller);
+   }
+
+   /**
+    *  Constructor: creates a new ThreadManager.
+    *
+    *  @param  t  The name of the thread.
+    *  @param  id The unique ID number of the thread.
+    *  @param  isDisplayed True if a ThreadFrame is to display the thread.
+    *  @param  isAggregated True if calls are to be merged into a CallTree.
+    *  @param  spiller  Spills the oldest calls when memory is short,
+    *                   or null if every call is kept in memory.
+    */
+   private ThreadManager(String t,long id,boolean isDisplayed,boolean isAggregated,TraceSpiller spiller)
+   {
+      stack = new int[64];
+      methodNames = new String[256];
+      methodClasses = new ObjectClass[256];
       stackCount = 0;
       classes = new ArrayList();
+      classMap = new ObjectClass[64];
       numClasses = 0;
       height = 20;
       threadName = t;
       threadID = id;
       currentColour = 0;
       biggestBarLength = 0;
-      threadFrame = new ThreadFrame(threadName);
-      threadFrame.show();
+      pauseTime = 0;
+      if(isAggregated)
+         callTree = new CallTree();
+      else
+         store = new EventStore(spiller);
+      if(isDisplayed)
+      {
+         threadFrame = new ThreadFrame(threadName);
+         threadFrame.show();
+      }
    }
 
    /**
@@ -129,115 +205,205 @@ public class ThreadManager
     *  methods and to the method stack. Update the ThreadFrame
     *  to take account of this.
     *
+    *  @param  methodID    The ID number of the method in the MethodTable.
     *  @param  methodName  The name of the new method.
+    *  @param  classID     The MethodTable class ID number of the method's class.
     *  @param  className   The class that the method belongs to.
+    *  @param  time        The time at which the method started.
     */
-   public void startMethod(String methodName,String className)
+   public void startMethod(int methodID,String methodName,int classID,String className,long time)
    {
-      Color classColour = null;
-      ObjectClass tempClass;
-      boolean foundClass = false;
+      // find the class, or if it is new add it to the class list and assign it a colour
+      if(classID>=classMap.length)
+         classMap = (ObjectClass [])Arrays.copyOf(classMap,Math.max(classMap.length*2,classID+1));
+      ObjectClass objectClass = classMap[classID];
+      if(objectClass==null)
+      {
+         objectClass = new ObjectClass(className,colours[currentColour],classID);
+         classes.add(objectClass);
+         classMap[classID] = objectClass;
+         numClasses++;
+         currentColour++;
+         if(currentColour == colours.length)
+            currentColour = 0;
+      }
 
-      // search for the class in the class list
-      ListIterator classIterator = classes.listIterator();
-      while(classIterator.hasNext())
+      if(callTree!=null)
       {
-         tempClass = (ObjectClass)classIterator.next();
-         if(tempClass.getName().equals(className))
+         int node = callTree.enter(methodID,time);
+         if(callTree.getMethod(node)==null) // a new calling context
          {
-            foundClass = true;
-            classColour = tempClass.getColour();
-            break;
+            MethodClass method = new MethodClass(methodName,objectClass,callTree.getDepth(node),0,time,methodID);
+            if(callTree.getDepth(node)==1)
+               method.setIsFirstMethod();
+            callTree.setMethod(node,method);
          }
+         if(threadFrame!=null)
+            threadFrame.writeMethod(this);
+         return;
       }
 
-      // if the class is new, add it to the class list and assign it a colour
-      if(!foundClass)
+      // keep the name and class of the method once, not with each call
+      if(methodID>=methodNames.length)
       {
-         classes.add(new ObjectClass(className,colours[currentColour]));
-         classColour = colours[currentColour];
-         numClasses++;
-         currentColour++;
-         if(currentColour == colours.length)
-            currentColour = 0;
+         int size = Math.max(methodNames.length*2,methodID+1);
+         methodNames = (String [])Arrays.copyOf(methodNames,size);
+         methodClasses = (ObjectClass [])Arrays.copyOf(methodClasses,size);
+      }
+      if(methodNames[methodID]==null)
+      {
+         methodClasses[methodID] = objectClass;
+         methodNames[methodID] = methodName;
       }
 
-      // add the method to the method stack and the method list:
+      if(stackCount==stack.length)
+         stack = Arrays.copyOf(stack,stack.length*2);
+
+      // add the method to the method stack and the EventStore
       height += 10;
-      stackList.addLast(new Integer(numMethods));
+      int parent = stackCount>0 ? stack[stackCount-1] : -1;
+      stack[stackCount] = store.add(methodID,stackCount+1,parent,height,time);
       stackCount++;
-      numMethods++;
-      methodList.add(numMethods-1,new MethodClass(methodName,new ObjectClass(className,classColour),stackCount,height));
-
-      if(stackCount==1)
-         getMethod(numMethods-1).setIsFirstMethod();
-      else
-      {
-         getMethod(Integer.parseInt(stackList.get(stackCount-2).toString())).getObjectClass().getName();
-         getMethod(Integer.parseInt(stackList.get(stackCount-1).toString())).getObjectClass().getName();
-      }
 
-      // increment the bar lengths for each method that is alive
-      ListIterator stackIterator = stackList.listIterator();
-      while(stackIterator.hasNext())
-         getMethod(Integer.parseInt(stackIterator.next().toString())).incNumMethodsCalled();
+      if(store.getBarLength(stack[stackCount-1]) + height > biggestBarLength)
+         biggestBarLength = store.getBarLength(stack[stackCount-1]) + height;
 
-      threadFrame.writeMethod(this);
+      if(threadFrame!=null)
+         threadFrame.writeMethod(this);
    }
 
    /**
     *  A method has been exited. Remove it from the method
     *  stack. Update the ThreadFrame to take account of this.
+    *  The methods started since it was are the methods it
+    *  called, so their number is known without walking the stack.
+    *
+    *  @param  time  The time at which the method ended.
+    *  @return The record number of the method that has ended in
+    *          the EventStore, or its node in the CallTree.
     */
-   public MethodClass endMethod()
+   public int endMethod(long time)
    {
+      if(callTree!=null)
+      {
+         int node = callTree.exit(time);
+         if(threadFrame!=null)
+            threadFrame.endMethod(this);
+         return node;
+      }
+
       height += 20;
       stackCount--;
+      int index = stack[stackCount];
+      int numMethods = store.size();
 
       if(stackCount > 0)
-         getMethod(getStackNumber(stackCount-1)).setBarLength(getMethod(getStackNumber(stackCount)).getBarLength()+10);
-
-      if(stackCount==0)
-         getBiggestBarLength();
+      {
+         int caller = stack[stackCount-1];
+         store.setBarLength(caller,store.getBarLength(caller) + store.getBarLength(index) + 10);
+         if(store.getBarLength(caller) + store.getHeight(caller) > biggestBarLength)
+            biggestBarLength = store.getBarLength(caller) + store.getHeight(caller);
+      }
 
-      MethodClass lastMethod = getMethod(getStackNumber(stackCount)); // get the last method on the stack
-      lastMethod.setEndTime(); // set the time that the method exitted at
-      stackList.removeLast();
-      threadFrame.endMethod(this);
+      store.end(index,time,numMethods - index); // set the time that the method exitted at
+      lastExecutionTime = store.getExecutionTime(index);
+      lastNumMethodsCalled = numMethods - index;
+      if(threadFrame!=null)
+         threadFrame.endMethod(this);
 
-      return lastMethod;
+      return index;
    }
 
    /**
-    *  Returns the number of methods in the method list.
+    *  Returns the number of methods in the EventStore.
     *
-    *  @return The number of methods in the method list.
+    *  @return The number of methods in the EventStore.
     */
    public int getNumMethods()
    {
-      return numMethods;
+      if(store==null)
+         return 0;
+      return store.size();
    }
 
    /**
-    *  Returns a method from the method list.
+    *  Returns a method from the EventStore. The method is made
+    *  from the method's record, so changing it does not change
+    *  the record.
     *
-    *  @param  n  The index of the method.
-    *  @return The method at index n in the list.
+    *  @param  n  The record number of the method.
+    *  @return The method.
     */
    public MethodClass getMethod(int n)
    {
-        return (MethodClass)methodList.get(n);
+      int methodID = store.getMethodID(n);
+      long startTime = store.getStartTime(n);
+      MethodClass method = new MethodClass(methodNames[methodID],methodClasses[methodID],store.getDepth(n),store.getHeight(n),startTime,methodID);
+      method.setBarLength(store.getBarLength(n) - method.getBarLength());
+      method.setColour(store.getColour(n));
+      if(store.getDepth(n)==1)
+         method.setIsFirstMethod();
+      long executionTime = store.getExecutionTime(n);
+      if(executionTime>=0)
+      {
+         method.setNumMethodsCalled(store.getNumMethodsCalled(n));
+         method.setEndTime(startTime + executionTime);
+      }
+      return method;
+   }
+
+   /**
+    *  Returns the EventStore the calls are kept in.
+    *
+    *  @return The EventStore, or null if the calls are
+    *          merged into a CallTree.
+    */
+   public EventStore getEventStore()
+   {
+      return store;
+   }
+
+   /**
+    *  The thread has died. Closes the EventStore, so that its
+    *  segment file is not kept open.
+    */
+   public void closeEventStore()
+   {
+      if(store!=null)
+         store.close();
+   }
+
+   /**
+    *  Returns the name of a method.
+    *
+    *  @param  methodID The MethodTable ID number of the method.
+    *  @return The name of the method.
+    */
+   public String getMethodName(int methodID)
+   {
+      return methodNames[methodID];
+   }
+
+   /**
+    *  Returns the class of a method.
+    *
+    *  @param  methodID The MethodTable ID number of the method.
+    *  @return The class of the method.
+    */
+   public ObjectClass getMethodClass(int methodID)
+   {
+      return methodClasses[methodID];
    }
 
    /**
-    *  Returns the index of a method in the list from the stack.
+    *  Returns the record number of a method from the stack.
     *
     *  @param  n  The index of the method on the stack.
-    *  @return The index of the method in the list.
+    *  @return The record number of the method in the EventStore.
     */
    public int getStackNumber(int n)
    {
-      return Integer.parseInt(stackList.get(n).toString());
+      return stack[n];
    }
 
    /**
@@ -247,6 +413,12 @@ public class ThreadManager
     */
    public MethodClass getLastMethodOnStack()
    {
+      if(callTree!=null)
+      {
+         if(callTree.getStackCount()>0)
+            return callTree.getMethod(callTree.getStackNode(callTree.getStackCount()-1));
+         return null;
+      }
       if(stackCount>0)
          return getMethod(getStackNumber(stackCount-1));
       else
@@ -260,29 +432,104 @@ public class ThreadManager
     */
    public MethodClass getSecondLastMethodOnStack()
    {
+      if(callTree!=null)
+         return callTree.getMethod(callTree.getStackNode(callTree.getStackCount()-2));
       return getMethod(getStackNumber(stackCount-2));
    }
 
    /**
-    *  Returns the biggest bar length belonging to
-    *  the methods on the stack.
+    *  Returns the runtime of the method that ended last.
     *
-    *  @return The biggest bar length.
+    *  @return The runtime in nanoseconds.
     */
-   public int getBiggestBarLength()
+   public long getLastExecutionTime()
    {
-      int temp;
-      MethodClass current;
+      if(callTree!=null)
+         return callTree.getLastTime();
+      return lastExecutionTime;
+   }
 
-      ListIterator iterator = stackList.listIterator();
-      while(iterator.hasNext())
+   /**
+    *  Returns the number of methods traced while the method
+    *  that ended last ran, counting itself.
+    *
+    *  @return The number of methods.
+    */
+   public long getLastNumMethodsCalled()
+   {
+      if(callTree!=null)
+         return callTree.getLastTracedCalls();
+      return lastNumMethodsCalled;
+   }
+
+   /**
+    *  Returns the MethodTable ID number of the last method
+    *  on the stack.
+    *
+    *  @return The ID number of the method, or -1 if the
+    *          stack is empty.
+    */
+   public int getLastMethodID()
+   {
+      if(callTree!=null)
       {
-         current = getMethod(Integer.parseInt(iterator.next().toString()));
-         temp = current.getBarLength() + current.getHeight();
-         if(temp > biggestBarLength)
-            biggestBarLength = temp;
+         if(callTree.getStackCount()<1)
+            return -1;
+         return callTree.getMethodID(callTree.getStackNode(callTree.getStackCount()-1));
       }
+      if(stackCount<1)
+         return -1;
+      return store.getMethodID(stack[stackCount-1]);
+   }
 
+   /**
+    *  Sets the colours of the last two methods on the stack.
+    *
+    *  @param  callerColour   The colour of the second last method.
+    *  @param  calledColour   The colour of the last method.
+    */
+   public void setStackColours(Color callerColour,Color calledColour)
+   {
+      if(callTree!=null)
+      {
+         int count = callTree.getStackCount();
+         callTree.getMethod(callTree.getStackNode(count-2)).setColour(callerColour);
+         callTree.getMethod(callTree.getStackNode(count-1)).setColour(calledColour);
+         return;
+      }
+      store.setColour(stack[stackCount-2],callerColour);
+      store.setColour(stack[stackCount-1],calledColour);
+   }
+
+   /**
+    *  Returns the MethodTable ID number of the second last
+    *  method on the stack, which called the last one.
+    *
+    *  @return The ID number of the method, or -1 if there is
+    *          only one method on the stack.
+    */
+   public int getCallerMethodID()
+   {
+      if(callTree!=null)
+      {
+         if(callTree.getStackCount()<2)
+            return -1;
+         return callTree.getMethodID(callTree.getStackNode(callTree.getStackCount()-2));
+      }
+      if(stackCount<2)
+         return -1;
+      return store.getMethodID(stack[stackCount-2]);
+   }
+
+   /**
+    *  Returns the biggest bar length belonging to the methods
+    *  that have been on the stack. It is kept up to date as
+    *  methods start and end.
+    *
+    *  @return The biggest bar length.
+    */
+   public int getBiggestBarLength()
+   {
       return biggestBarLength;
    }
 
@@ -293,9 +540,21 @@ public class ThreadManager
     */
    public int getStackCount()
    {
+      if(callTree!=null)
+         return callTree.getStackCount();
       return stackCount;
    }
 
+   /**
+    *  Returns the CallTree the calls are merged into.
+    *
+    *  @return The CallTree, or null if every call is kept.
+    */
+   public CallTree getCallTree()
+   {
+      return callTree;
+   }
+
    /**
     *  Returns the number of classes in the class list.
     *
@@ -318,13 +577,70 @@ public class ThreadManager
    }
 
    /**
-    *  Returns the method list.
+    *  Returns the MethodTable ID number of a method.
+    *
+    *  @param  n  The record number of the method.
+    *  @return The ID number of the method.
+    */
+   public int getMethodID(int n)
+   {
+      return store.getMethodID(n);
+   }
+
+   /**
+    *  Returns the stack depth of a method.
     *
-    *  @return The method list.
+    *  @param  n  The record number of the method.
+    *  @return The stack depth, starting at 1.
     */
-   public ArrayList getMethodList()
+   public int getDepth(int n)
    {
-      return methodList;
+      return store.getDepth(n);
+   }
+
+   /**
+    *  Returns the method that called a method.
+    *
+    *  @param  n  The record number of the method.
+    *  @return The record number of the calling method, or -1 if
+    *          the method was first on the stack.
+    */
+   public int getParent(int n)
+   {
+      return store.getParent(n);
+   }
+
+   /**
+    *  Returns the start time of a method.
+    *
+    *  @param  n  The record number of the method.
+    *  @return The start time.
+    */
+   public long getStartTime(int n)
+   {
+      return store.getStartTime(n);
+   }
+
+   /**
+    *  Returns the end time of a method.
+    *
+    *  @param  n  The record number of the method.
+    *  @return The end time. It is only meaningful if the method has ended.
+    */
+   public long getEndTime(int n)
+   {
+      return store.getEndTime(n);
+   }
+
+   /**
+    *  Returns true if a method has ended.
+    *
+    *  @param  n  The record number of the method.
+    *  @return True if the method has ended.
+    */
+   public boolean isEnded(int n)
+   {
+      return store.isEnded(n);
    }
 
    /**
@@ -359,7 +675,9 @@ public class ThreadManager
 
    /**
     *  Searches the method names for a string.
-    *  It returns the method found.
+    *  It returns the method found. If the calls are merged
+    *  into a CallTree, the calling contexts are searched in
+    *  the rows they are drawn in.
     *
     *  @param  findMethodName The string to search for.
     *  @param  currentHeight  The height at which to start searching.
@@ -368,46 +686,60 @@ public class ThreadManager
    public MethodClass findMethod(String findMethodName,int currentHeight)
    {
       findMethodName = findMethodName.toLowerCase();
-      MethodClass tempMethod;
+      if(callTree!=null)
+      {
+         int row = 0;
+         for(int node=callTree.getNextNode(0);node>=0;node=callTree.getNextNode(node))
+         {
+            row++;
+            MethodClass meth = callTree.getMethod(node);
+            if(meth!=null && meth.getName().toLowerCase().indexOf(findMethodName)>-1 && row*20-10 > currentHeight)
+            {
+               // the calling context shares one MethodClass, so return one placed on its row
+               return new MethodClass(meth.getName(),meth.getObjectClass(),callTree.getDepth(node),row*20,0,callTree.getMethodID(node));
+            }
+         }
+         return null;
+      }
+      if(store==null)
+         return null;
       String methName;
-      ListIterator iterator = methodList.listIterator();
-      while(iterator.hasNext())
+      EventStore.Cursor cursor = store.cursor(0);
+      while(cursor.next())
       {
-         tempMethod = (MethodClass)iterator.next();
-         methName = tempMethod.getName().toLowerCase();
-         if(methName.indexOf(findMethodName)>-1 && tempMethod.getHeight()-10 > currentHeight)
-            return tempMethod;
+         methName = methodNames[cursor.getMethodID()].toLowerCase();
+         if(methName.indexOf(findMethodName)>-1 && cursor.getHeight()-10 > currentHeight)
+            return getMethod(cursor.getIndex());
       }
       return null;
    }
 
    /**
-    *  Pauses the execution time for each method in the
-    *  list.
+    *  Pauses the execution time for each method that
+    *  has not ended.
     *
     *  @param  stopTime The time at which the program was paused.
     */
    public void pauseExecutionTime(long stopTime)
    {
-      // for each method pause the execution time
-      ListIterator it = methodList.listIterator();
-      while(it.hasNext())
-      {
-         ((MethodClass)(it.next())).pauseExecutionTime(stopTime);
-      }
+      pauseTime = stopTime;
+      // only the methods on the stack have not ended
+      for(int i=0;i<stackCount;i++)
+         store.pauseExecutionTime(stack[i],stopTime);
    }
 
    /**
-    *  Restarts the execution time for each method in the
-    *  list.
+    *  Restarts the execution time for each method that
+    *  has not ended.
+    *
+    *  @param  restartTime The time at which the program was restarted.
     */
-   public void restartExecutionTime()
+   public void restartExecutionTime(long restartTime)
    {
-      // for each method restart the execution time
-      ListIterator it = methodList.listIterator();
-      while(it.hasNext())
-      {
-         ((MethodClass)(it.next())).restartExecutionTime();
-      }
+      if(callTree!=null)
+         callTree.skipTime(restartTime - pauseTime);
+      // only the methods on the stack have not ended
+      for(int i=0;i<stackCount;i++)
+         store.restartExecutionTime(stack[i],restartTime);
    }
 }
\ No newline at end of file
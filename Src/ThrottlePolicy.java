@@ -0,0 +1,379 @@
+package ObjectTracker;
+
+import java.util.*;
+
+/**
+ *  This class decides which method calls are traced. It counts
+ *  the calls to each method, and once a method has been called
+ *  more times than the call budget it is throttled: its calls are
+ *  only counted from then on, not sent to the displays. Calls to a
+ *  throttled method that were traced before it was throttled still
+ *  have their exits traced. Each thread has a stack of its open
+ *  calls, marked as traced or counted, so that each exit is traced
+ *  exactly when the entry it ends was, whatever other threads or
+ *  recursive calls to the same method are doing.
+ *  <p>
+ *  It also keeps track of the classes whose methods have all been
+ *  throttled, so that the ObjectTracker can stop asking the JVM for
+ *  their method events altogether.
+ *
+ *  @author  Eoin O'Connor
+ *  @see ObjectTracker
+ *  @see MethodTable
+ */
+public class ThrottlePolicy
+{
+   /**
+    *  The call is to be traced.
+    */
+   public static final int TRACE = 0;
+   /**
+    *  The call is only to be counted.
+    */
+   public static final int COUNT = 1;
+   /**
+    *  The method has just been throttled. The call is only
+    *  to be counted.
+    */
+   public static final int THROTTLE = 2;
+
+   /**
+    *  Gives the class ID numbers of the methods.
+    */
+   private MethodTable methodTable;
+   /**
+    *  The number of calls after which a method is throttled,
+    *  or 0 if methods are never throttled.
+    */
+   private int callBudget;
+   /**
+    *  The number of calls to each method, indexed by method ID number.
+    */
+   private long [] counts;
+   /**
+    *  The number of traced calls to each method that have not
+    *  exited in any thread, indexed by method ID number.
+    */
+   private int [] openCalls;
+   /**
+    *  The stack of open calls of each thread, keyed by thread ID.
+    */
+   private LongMap callStacks;
+   /**
+    *  True for each method that has been throttled, indexed by
+    *  method ID number.
+    */
+   private boolean [] isThrottled;
+   /**
+    *  The MethodTable class ID number of each method, which is used
+    *  as its class index, indexed by method ID number, or -1 if the
+    *  method has not been seen.
+    */
+   private int [] classIndexes;
+   /**
+    *  The number of methods seen in each class, indexed by class index.
+    */
+   private int [] numClassMethods;
+   /**
+    *  The number of throttled methods in each class, indexed by
+    *  class index.
+    */
+   private int [] numClassThrottled;
+   /**
+    *  The number of traced calls to throttled methods of each class
+    *  that have not exited, indexed by class index.
+    */
+   private int [] classOpenCalls;
+
+   /**
+    *  Constructor: creates a policy with the given call budget.
+    *
+    *  @param  methodTable The table giving the class ID numbers of the methods.
+    *  @param  callBudget  The number of calls after which a method
+    *                      is throttled, or 0 for no limit.
+    */
+   public ThrottlePolicy(MethodTable methodTable,int callBudget)
+   {
+      this.methodTable = methodTable;
+      this.callBudget = callBudget;
+      counts = new long[256];
+      openCalls = new int[256];
+      callStacks = new LongMap();
+      isThrottled = new boolean[256];
+      classIndexes = new int[256];
+      Arrays.fill(classIndexes,-1);
+      numClassMethods = new int[64];
+      numClassThrottled = new int[64];
+      classOpenCalls = new int[64];
+   }
+
+   /**
+    *  Returns the call budget.
+    *
+    *  @return The number of calls after which a method is
+    *          throttled, or 0 for no limit.
+    */
+   public int getCallBudget()
+   {
+      return callBudget;
+   }
+
+   /**
+    *  A method has been entered. Counts the call and decides
+    *  whether it is to be traced.
+    *
+    *  @param  threadID The ID number of the thread.
+    *  @param  id       The ID number of the method.
+    *  @return TRACE, COUNT or THROTTLE.
+    */
+   public int enter(long threadID,int id)
+   {
+      if(callBudget==0)
+         return TRACE;
+      if(id>=counts.length || classIndexes[id]<0)
+         addMethod(id);
+
+      counts[id]++;
+      int status = TRACE;
+      if(isThrottled[id])
+         status = COUNT;
+      else if(counts[id] > callBudget)
+      {
+         int classIndex = classIndexes[id];
+         isThrottled[id] = true;
+         numClassThrottled[classIndex]++;
+         classOpenCalls[classIndex] += openCalls[id];
+         status = THROTTLE;
+      }
+      else
+         openCalls[id]++;
+
+      CallStack stack = (CallStack)callStacks.get(threadID);
+      if(stack==null)
+      {
+         stack = new CallStack();
+         callStacks.put(threadID,stack);
+      }
+      stack.push(id,status==TRACE);
+      return status;
+   }
+
+   /**
+    *  A method has been exited. Decides whether the exit is to be
+    *  traced, which it is if the call it ends was traced. The call
+    *  it ends is the innermost open call to the method in the
+    *  thread; calls inside it whose exits were not seen are closed.
+    *
+    *  @param  threadID The ID number of the thread.
+    *  @param  id       The ID number of the method.
+    *  @return True if the exit is to be traced.
+    */
+   public boolean exit(long threadID,int id)
+   {
+      if(callBudget==0)
+         return true;
+      if(id>=counts.length || classIndexes[id]<0)
+         return true; // the entry was not seen
+
+      CallStack stack = (CallStack)callStacks.get(threadID);
+      int top = stack==null ? -1 : stack.find(id);
+      if(top<0) // the entry was not seen
+         return !isThrottled[id];
+
+      boolean isTraced = stack.isTraced[top];
+      while(stack.size>top)
+         pop(stack);
+      return isTraced;
+   }
+
+   /**
+    *  A thread has ended. Closes the calls still open in it.
+    *
+    *  @param  threadID The ID number of the thread.
+    */
+   public void endThread(long threadID)
+   {
+      CallStack stack = (CallStack)callStacks.get(threadID);
+      callStacks.remove(threadID);
+      while(stack!=null && stack.size>0)
+         pop(stack);
+   }
+
+   /**
+    *  Tracing has been stopped. Closes the calls open in
+    *  every thread, as their exits will not be seen.
+    */
+   public void closeAll()
+   {
+      callStacks.clear();
+      Arrays.fill(openCalls,0);
+      Arrays.fill(classOpenCalls,0);
+   }
+
+   /**
+    *  Removes the innermost call from a thread's stack,
+    *  and from the open calls if it was traced.
+    *
+    *  @param  stack The thread's stack.
+    */
+   private void pop(CallStack stack)
+   {
+      stack.size--;
+      if(!stack.isTraced[stack.size])
+         return;
+      int id = stack.methods[stack.size];
+      openCalls[id]--;
+      if(isThrottled[id])
+         classOpenCalls[classIndexes[id]]--;
+   }
+
+   /**
+    *  Adds calls to a method that were counted by the JVM.
+    *
+    *  @param  id The ID number of the method.
+    *  @param  n  The number of calls.
+    */
+   public void addCalls(int id,long n)
+   {
+      if(id>=counts.length || classIndexes[id]<0)
+         addMethod(id);
+      counts[id] += n;
+   }
+
+   /**
+    *  Returns true if every method seen in a method's class has
+    *  been throttled and none of their traced calls are still open.
+    *
+    *  @param  id The ID number of a method of the class.
+    *  @return True if all the methods seen in the class are throttled.
+    */
+   public boolean isClassThrottled(int id)
+   {
+      if(callBudget==0 || id>=counts.length || classIndexes[id]<0)
+         return false;
+      int classIndex = classIndexes[id];
+      return numClassThrottled[classIndex]==numClassMethods[classIndex] && classOpenCalls[classIndex]==0;
+   }
+
+   /**
+    *  Returns the number of throttled methods in a method's class.
+    *
+    *  @param  id The ID number of a method of the class.
+    *  @return The number of throttled methods.
+    */
+   public int getNumClassThrottled(int id)
+   {
+      if(id>=counts.length || classIndexes[id]<0)
+         return 0;
+      return numClassThrottled[classIndexes[id]];
+   }
+
+   /**
+    *  Returns true if a method has been throttled.
+    *
+    *  @param  id The ID number of the method.
+    *  @return True if the method has been throttled.
+    */
+   public boolean isThrottled(int id)
+   {
+      return id<counts.length && isThrottled[id];
+   }
+
+   /**
+    *  Returns the number of calls counted for a method.
+    *
+    *  @param  id The ID number of the method.
+    *  @return The number of calls.
+    */
+   public long getCount(int id)
+   {
+      if(id>=counts.length)
+         return 0;
+      return counts[id];
+   }
+
+   /**
+    *  Makes room for a method's counts and finds its class.
+    *
+    *  @param  id The ID number of the method.
+    */
+   private void addMethod(int id)
+   {
+      if(id>=counts.length)
+      {
+         int size = Math.max(counts.length*2,id+1);
+         counts = Arrays.copyOf(counts,size);
+         openCalls = Arrays.copyOf(openCalls,size);
+         isThrottled = Arrays.copyOf(isThrottled,size);
+         int oldSize = classIndexes.length;
+         classIndexes = Arrays.copyOf(classIndexes,size);
+         Arrays.fill(classIndexes,oldSize,size,-1);
+      }
+
+      int classIndex = methodTable.getMethodClass(id);
+      if(classIndex>=numClassMethods.length)
+      {
+         int size = Math.max(numClassMethods.length*2,classIndex+1);
+         numClassMethods = Arrays.copyOf(numClassMethods,size);
+         numClassThrottled = Arrays.copyOf(numClassThrottled,size);
+         classOpenCalls = Arrays.copyOf(classOpenCalls,size);
+      }
+      classIndexes[id] = classIndex;
+      numClassMethods[classIndex]++;
+   }
+
+   /**
+    *  This class holds the open calls of a thread,
+    *  innermost last.
+    */
+   private static class CallStack
+   {
+      /**
+       *  The ID number of the method of each call.
+       */
+      private int [] methods = new int[16];
+      /**
+       *  True for each call that is traced, false for
+       *  each that is only counted.
+       */
+      private boolean [] isTraced = new boolean[16];
+      /**
+       *  The number of open calls.
+       */
+      private int size = 0;
+
+      /**
+       *  Adds a call to the top of the stack.
+       *
+       *  @param  id       The ID number of the method.
+       *  @param  traced   True if the call is traced.
+       */
+      private void push(int id,boolean traced)
+      {
+         if(size==methods.length)
+         {
+            methods = Arrays.copyOf(methods,size*2);
+            isTraced = Arrays.copyOf(isTraced,size*2);
+         }
+         methods[size] = id;
+         isTraced[size] = traced;
+         size++;
+      }
+
+      /**
+       *  Returns the position of the innermost open call to a method.
+       *
+       *  @param  id The ID number of the method.
+       *  @return The position, or -1 if there is none.
+       */
+      private int find(int id)
+      {
+         for(int i=size-1;i>=0;i--)
+         {
+            if(methods[i]==id)
+               return i;
+         }
+         return -1;
+      }
+   }
+}
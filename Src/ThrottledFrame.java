@@ -0,0 +1,83 @@
+package ObjectTracker;
+
+import javax.swing.*;
+import java.awt.*;
+import java.text.*;
+import java.util.*;
+
+/**
+ *  This class implements an internal frame that lists
+ *  the methods that have been throttled, and the classes
+ *  whose method events are no longer requested, with the
+ *  time at which each happened.
+ *
+ *  @author  Eoin O'Connor
+ *  @see ThrottlePolicy
+ *  @see ObjectDisplayer
+ */
+public class ThrottledFrame extends JInternalFrame
+{
+   /**
+    *  Used to display the throttled methods.
+    */
+   private JTextArea textArea;
+   /**
+    *  Used to display the time at which each method was throttled.
+    */
+   private SimpleDateFormat timeFormat;
+   /**
+    *  The number of throttled methods.
+    */
+   private int numMethods;
+
+   /**
+    *  Constructor: creates a new ThrottledFrame.
+    */
+   public ThrottledFrame()
+   {
+      setClosable(true);
+      setMaximizable(true);
+      setIconifiable(true);
+      setResizable(true);
+      setSize(400,200);
+      setTitle("Throttled Methods");
+
+      numMethods = 0;
+      timeFormat = new SimpleDateFormat("HH:mm:ss.SSS");
+      textArea = new JTextArea();
+      textArea.setEditable(false);
+      textArea.setFont(new Font("Courier new",0,12));
+      getContentPane().add(new JScrollPane(textArea),"Center");
+   }
+
+   /**
+    *  A method has been throttled. Adds it to the list.
+    *
+    *  @param  methodName  The name of the method.
+    *  @param  callBudget  The number of calls traced before it was throttled.
+    *  @param  time        The time at which it was throttled, from
+    *                      System.currentTimeMillis().
+    */
+   public void addMethod(String methodName,int callBudget,long time)
+   {
+      numMethods++;
+      setTitle("Throttled Methods (" + numMethods + ")");
+      textArea.append(timeFormat.format(new Date(time)) + "  " + methodName
+         + " - only counted after " + callBudget + " calls\n");
+   }
+
+   /**
+    *  The method events of a class are no longer requested.
+    *  Adds it to the list.
+    *
+    *  @param  className   The name of the class.
+    *  @param  callBudget  The number of calls between each count.
+    *  @param  time        The time at which its events stopped, from
+    *                      System.currentTimeMillis().
+    */
+   public void addClass(String className,int callBudget,long time)
+   {
+      textArea.append(timeFormat.format(new Date(time)) + "  " + className
+         + " - no longer traced, calls counted every " + callBudget + "\n");
+   }
+}
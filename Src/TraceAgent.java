@@ -0,0 +1,977 @@
+package ObjectTracker;
+
+import java.lang.instrument.*;
+import java.lang.invoke.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.locks.*;
+
+/**
+ *  This class is a Java agent that is loaded into the target
+ *  program when it is launched. It instruments the methods of the
+ *  classes to be traced as they are loaded, so that each entry and
+ *  exit is written into a memory-mapped file as it happens. The
+ *  ObjectTracker reads the file with an AgentTraceReader. No JDWP
+ *  round trips are made for method calls, so the target program
+ *  runs close to full speed.
+ *  <p>
+ *  Each traced method is renamed, made private, and replaced by a
+ *  method with its old name, access and attributes that records the
+ *  entry, calls the renamed method, and records the exit in a finally
+ *  block. The code of the renamed method is not changed, so none of
+ *  its offsets, exception handlers or stack map frames have to be
+ *  moved. Constructors, static initializers, and abstract, native,
+ *  bridge and synthetic methods are not traced, nor are interfaces
+ *  or the classes loaded by the bootstrap and platform class loaders,
+ *  which cannot see the agent.
+ *  <p>
+ *  The agent must be packaged in its own jar with the manifest
+ *  TraceAgent.mf, and must not use any other ObjectTracker class.
+ *  It is given its options as a comma separated list:
+ *  file=&lt;trace file&gt;,jdk=&lt;true|false&gt;
+ *  <p>
+ *  The trace file starts with a header holding the write and read
+ *  positions, the agent's clock offset and the class filter, followed
+ *  by a ring of records. The class filter is written by the
+ *  ObjectTracker as class names separated by new lines; while it is
+ *  empty every class is traced. Times are recorded with
+ *  System.nanoTime(); the clock offset is the difference between
+ *  System.currentTimeMillis() and System.nanoTime() in nanoseconds,
+ *  so that the ObjectTracker can move the times onto its own clock.
+ *  Each record starts with its length and its kind, and is a multiple
+ *  of eight bytes long. A length of WRAP means the rest of the ring
+ *  is unused and the next record is at the start.
+ *  <p>
+ *  The traced threads do not share a lock. Each thread builds its
+ *  record in its own buffer, reserves room for it by moving the write
+ *  position on with a compare and set, copies it into the ring, and
+ *  writes its length last. A length of zero means a record has been
+ *  reserved but not yet written, so the ObjectTracker stops there
+ *  until it is. The ObjectTracker clears each record after reading it.
+ *
+ *  @author  Eoin O'Connor
+ *  @see AgentTraceReader
+ *  @see ObjectTracker
+ */
+public class TraceAgent implements ClassFileTransformer
+{
+   /**
+    *  The size of the trace file header.
+    */
+   public static final int HEADER_SIZE = 65536;
+   /**
+    *  The position in the header of the total number of bytes written.
+    */
+   public static final int WRITE_POSITION = 0;
+   /**
+    *  The position in the header of the total number of bytes read.
+    */
+   public static final int READ_POSITION = 8;
+   /**
+    *  The position in the header of the agent's clock offset.
+    */
+   public static final int CLOCK_OFFSET = 16;
+   /**
+    *  The position in the header of the length of the class filter.
+    */
+   public static final int FILTER_LENGTH = 24;
+   /**
+    *  The position in the header of the class filter.
+    */
+   public static final int FILTER_AREA = 64;
+   /**
+    *  The length that marks the end of the used part of the ring.
+    */
+   public static final int WRAP = -1;
+   /**
+    *  A record giving the name of a new thread.
+    */
+   public static final int THREAD_RECORD = 1;
+   /**
+    *  A record giving the class and method name of a new method ID number.
+    */
+   public static final int METHOD_RECORD = 2;
+   /**
+    *  A record of a method being entered.
+    */
+   public static final int ENTRY_RECORD = 3;
+   /**
+    *  A record of a method being exited.
+    */
+   public static final int EXIT_RECORD = 4;
+   /**
+    *  Used to read and write the header positions with the memory
+    *  ordering needed between the two processes.
+    */
+   public static final VarHandle POSITION = MethodHandles.byteBufferViewVarHandle(long[].class,ByteOrder.nativeOrder());
+   /**
+    *  Used to read and write the length of a record, which
+    *  is written after the rest of the record.
+    */
+   public static final VarHandle LENGTH = MethodHandles.byteBufferViewVarHandle(int[].class,ByteOrder.nativeOrder());
+
+   /**
+    *  Added to the name of a traced method to name the method
+    *  that holds its code.
+    */
+   private static final String TRACED_SUFFIX = "$traced";
+   /**
+    *  The name of this class in the JVM's internal form.
+    */
+   private static final String AGENT_CLASS = "ObjectTracker/TraceAgent";
+
+   // access flags
+   private static final int ACC_PRIVATE = 0x0002;
+   private static final int ACC_STATIC = 0x0008;
+   private static final int ACC_FINAL = 0x0010;
+   private static final int ACC_SYNCHRONIZED = 0x0020;
+   private static final int ACC_BRIDGE = 0x0040;
+   private static final int ACC_NATIVE = 0x0100;
+   private static final int ACC_INTERFACE = 0x0200;
+   private static final int ACC_ABSTRACT = 0x0400;
+   private static final int ACC_STRICT = 0x0800;
+   private static final int ACC_SYNTHETIC = 0x1000;
+   private static final int ACC_MODULE = 0x8000;
+
+   /**
+    *  The agent running in this JVM, or null before it has started.
+    */
+   private static TraceAgent agent;
+   /**
+    *  Set for each thread once its name has been recorded.
+    */
+   private static final ThreadLocal isRecordedThread = new ThreadLocal();
+   /**
+    *  The buffer each thread builds its records in before
+    *  they are written.
+    */
+   private static final ThreadLocal records = new ThreadLocal();
+
+   /**
+    *  The memory-mapped trace file.
+    */
+   private MappedByteBuffer buffer;
+   /**
+    *  The size of the ring of records.
+    */
+   private int capacity;
+   /**
+    *  True if the JDK classes should be traced.
+    */
+   private boolean includeJDKClasses;
+   /**
+    *  The ID number of each method, keyed by its class and method name.
+    */
+   private HashMap methodIDs;
+   /**
+    *  The length of the class filter when it was last read.
+    */
+   private long filterLength;
+   /**
+    *  The names of the classes to be traced, or null if every
+    *  class is to be traced.
+    */
+   private HashSet filter;
+
+   /**
+    *  The constants added to the class being instrumented.
+    */
+   private DataOutputStream constants;
+   /**
+    *  The bytes of the constants added to the class being instrumented.
+    */
+   private ByteArrayOutputStream constantBytes;
+   /**
+    *  The index of the next constant added to the class being instrumented.
+    */
+   private int nextConstant;
+   /**
+    *  The index of each constant added to the class being
+    *  instrumented, keyed by its tag and value.
+    */
+   private HashMap constantIndexes;
+
+   /**
+    *  Constructor: maps the trace file.
+    *
+    *  @param  file  The trace file.
+    *  @param  includeJDKClasses True if JDK classes should be traced.
+    *  @throws IOException If the trace file cannot be mapped.
+    */
+   public TraceAgent(File file,boolean includeJDKClasses) throws IOException
+   {
+      RandomAccessFile raf = new RandomAccessFile(file,"rw");
+      buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE,0,raf.length());
+      buffer.order(ByteOrder.nativeOrder());
+      raf.close();
+      capacity = (buffer.capacity() - HEADER_SIZE) & ~7;
+      buffer.putLong(CLOCK_OFFSET,getClockOffset()); // written before any record is published
+      this.includeJDKClasses = includeJDKClasses;
+      methodIDs = new HashMap();
+      filterLength = 0;
+      filter = null;
+   }
+
+   /**
+    *  Called by the JVM before the target program's main method.
+    *  Starts instrumenting the classes as they are loaded.
+    *
+    *  @param  args  The agent options.
+    *  @param  inst  The instrumentation services of the JVM.
+    */
+   public static void premain(String args,Instrumentation inst)
+   {
+      String fileName = null;
+      boolean includeJDK = false;
+
+      StringTokenizer tokens = new StringTokenizer(args==null ? "" : args,",");
+      while(tokens.hasMoreTokens())
+      {
+         String option = tokens.nextToken();
+         int equals = option.indexOf('=');
+         if(equals<0)
+            continue;
+         String key = option.substring(0,equals);
+         String value = option.substring(equals+1);
+         if(key.equals("file"))
+            fileName = value;
+         else if(key.equals("jdk"))
+            includeJDK = value.equals("true");
+      }
+
+      try
+      {
+         agent = new TraceAgent(new File(fileName),includeJDK);
+         inst.addTransformer(agent);
+      }
+      catch(IOException e)
+      {
+         e.printStackTrace();
+      }
+   }
+
+   /**
+    *  Called by an instrumented method when it is entered.
+    *
+    *  @param  methodID The ID number of the method.
+    */
+   public static void enter(int methodID)
+   {
+      TraceAgent current = agent;
+      if(current!=null)
+         current.writeCall(ENTRY_RECORD,methodID);
+   }
+
+   /**
+    *  Called by an instrumented method when it is exited,
+    *  whether it returns or throws.
+    *
+    *  @param  methodID The ID number of the method.
+    */
+   public static void exit(int methodID)
+   {
+      TraceAgent current = agent;
+      if(current!=null)
+         current.writeCall(EXIT_RECORD,methodID);
+   }
+
+   /**
+    *  Instruments a class as it is loaded, if it is to be traced.
+    *
+    *  @param  loader      The class loader of the class.
+    *  @param  className   The name of the class in internal form.
+    *  @param  classBeingRedefined  The class if it is being redefined,
+    *                      or null if it is being loaded.
+    *  @param  domain      The protection domain of the class.
+    *  @param  classBytes  The class file.
+    *  @return The instrumented class file, or null to leave it as it is.
+    */
+   public synchronized byte [] transform(ClassLoader loader,String className,Class classBeingRedefined,
+      ProtectionDomain domain,byte [] classBytes)
+   {
+      // the bootstrap and platform loaders cannot see the agent, and classes already loaded keep their methods
+      if(loader==null || loader==ClassLoader.getPlatformClassLoader() || className==null
+         || classBeingRedefined!=null || className.equals(AGENT_CLASS))
+         return null;
+      String name = className.replace('/','.');
+      if(!isTracedClass(name))
+         return null;
+
+      try
+      {
+         return instrument(classBytes,name);
+      }
+      catch(Throwable e) // leave a class that cannot be read as it is
+      {
+         return null;
+      }
+   }
+
+   /**
+    *  Returns true if a class is to be traced. JDK classes are
+    *  only traced if the user has chosen to include them, and if
+    *  the ObjectTracker has written a class filter only the
+    *  classes in it are traced.
+    *
+    *  @param  name  The name of the class.
+    *  @return True if the class is to be traced.
+    */
+   private boolean isTracedClass(String name)
+   {
+      if(!includeJDKClasses && isJDKClass(name))
+         return false;
+
+      long length = (long)POSITION.getAcquire(buffer,FILTER_LENGTH);
+      if(length!=filterLength) // the filter has been written
+      {
+         byte [] bytes = new byte[(int)length];
+         for(int i=0;i<bytes.length;i++)
+            bytes[i] = buffer.get(FILTER_AREA + i);
+         filter = new HashSet();
+         StringTokenizer tokens = new StringTokenizer(decode(bytes),"\n");
+         while(tokens.hasMoreTokens())
+            filter.add(tokens.nextToken());
+         filterLength = length;
+      }
+      return filter==null || filter.contains(name);
+   }
+
+   /**
+    *  Renames each traced method of a class and adds a method in
+    *  its place that records its entry and exit around a call to it.
+    *  New constants are added to the end of the constant pool, so
+    *  every constant the class already uses keeps its index, and
+    *  everything but the methods is copied unchanged.
+    *
+    *  @param  classBytes  The class file.
+    *  @param  className   The name of the class.
+    *  @return The instrumented class file, or null if it has no
+    *          method to trace.
+    *  @throws IOException If the class file cannot be read.
+    */
+   private byte [] instrument(byte [] classBytes,String className) throws IOException
+   {
+      ByteArrayInputStream bytes = new ByteArrayInputStream(classBytes);
+      DataInputStream in = new DataInputStream(bytes);
+      if(in.readInt()!=0xCAFEBABE)
+         return null;
+      in.readUnsignedShort();
+      int majorVersion = in.readUnsignedShort();
+
+      // read the constant pool, keeping the strings
+      int numConstants = in.readUnsignedShort();
+      String [] strings = new String[numConstants];
+      for(int i=1;i<numConstants;i++)
+      {
+         int tag = in.readUnsignedByte();
+         if(tag==1)
+            strings[i] = in.readUTF();
+         else if(tag==5 || tag==6) // a long or double takes two entries
+         {
+            in.skipBytes(8);
+            i++;
+         }
+         else if(tag==7 || tag==8 || tag==16 || tag==19 || tag==20)
+            in.skipBytes(2);
+         else if(tag==15)
+            in.skipBytes(3);
+         else if(tag==3 || tag==4 || tag==9 || tag==10 || tag==11 || tag==12 || tag==17 || tag==18)
+            in.skipBytes(4);
+         else
+            return null; // a constant this agent does not know
+      }
+      int constantsEnd = classBytes.length - bytes.available();
+
+      int access = in.readUnsignedShort();
+      if((access & (ACC_INTERFACE | ACC_MODULE))!=0)
+         return null;
+      int thisClass = in.readUnsignedShort();
+      in.readUnsignedShort();
+      in.skipBytes(2*in.readUnsignedShort()); // the interfaces
+      int numFields = in.readUnsignedShort();
+      for(int i=0;i<numFields;i++)
+      {
+         in.skipBytes(6);
+         skipAttributes(in);
+      }
+
+      // read the methods, keeping where each one's attributes are
+      int methodsStart = classBytes.length - bytes.available();
+      int numMethods = in.readUnsignedShort();
+      int [] accesses = new int[numMethods];
+      int [] names = new int[numMethods];
+      int [] descriptors = new int[numMethods];
+      int [] starts = new int[numMethods+1];
+      int [] codeStarts = new int[numMethods];
+      int [] codeEnds = new int[numMethods];
+      for(int i=0;i<numMethods;i++)
+      {
+         starts[i] = classBytes.length - bytes.available();
+         accesses[i] = in.readUnsignedShort();
+         names[i] = in.readUnsignedShort();
+         descriptors[i] = in.readUnsignedShort();
+         codeStarts[i] = -1;
+         int numAttributes = in.readUnsignedShort();
+         for(int k=0;k<numAttributes;k++)
+         {
+            int attributeStart = classBytes.length - bytes.available();
+            String attributeName = strings[in.readUnsignedShort()];
+            in.skipBytes(in.readInt());
+            if("Code".equals(attributeName))
+            {
+               codeStarts[i] = attributeStart;
+               codeEnds[i] = classBytes.length - bytes.available();
+            }
+         }
+      }
+      starts[numMethods] = classBytes.length - bytes.available();
+
+      // make the constants the new methods need
+      constantBytes = new ByteArrayOutputStream();
+      constants = new DataOutputStream(constantBytes);
+      nextConstant = numConstants;
+      constantIndexes = new HashMap();
+      int agentClass = addClass(AGENT_CLASS);
+      int enterMethod = addMethodRef(agentClass,"enter","(I)V");
+      int exitMethod = addMethodRef(agentClass,"exit","(I)V");
+      int throwableClass = addClass("java/lang/Throwable");
+      int codeName = addUtf8("Code");
+      int stackMapName = addUtf8("StackMapTable");
+
+      byte [][] wrappers = new byte[numMethods][];
+      int [] tracedNames = new int[numMethods];
+      int numWrapped = 0;
+      for(int i=0;i<numMethods;i++)
+      {
+         String name = strings[names[i]];
+         if(codeStarts[i]<0 || name.startsWith("<") || name.endsWith(TRACED_SUFFIX)
+            || (accesses[i] & (ACC_ABSTRACT | ACC_NATIVE | ACC_BRIDGE | ACC_SYNTHETIC))!=0)
+            continue;
+
+         int methodID = getMethodID(className,name);
+         tracedNames[i] = addUtf8(name + TRACED_SUFFIX);
+         int tracedMethod = addMethodRef(thisClass,name + TRACED_SUFFIX,strings[descriptors[i]]);
+         wrappers[i] = makeWrapper(accesses[i],strings[descriptors[i]],thisClass,tracedMethod,addInteger(methodID),
+            enterMethod,exitMethod,throwableClass,codeName,majorVersion>=50 ? stackMapName : -1);
+         numWrapped++;
+      }
+      if(numWrapped==0 || nextConstant>0xFFFF)
+         return null;
+      constants.flush();
+
+      ByteArrayOutputStream outBytes = new ByteArrayOutputStream(classBytes.length + constantBytes.size() + numWrapped*64);
+      DataOutputStream out = new DataOutputStream(outBytes);
+      out.write(classBytes,0,8);
+      out.writeShort(nextConstant);
+      out.write(classBytes,10,constantsEnd-10);
+      constantBytes.writeTo(out);
+      out.write(classBytes,constantsEnd,methodsStart-constantsEnd);
+      out.writeShort(numMethods + numWrapped);
+      for(int i=0;i<numMethods;i++)
+      {
+         if(wrappers[i]==null)
+         {
+            out.write(classBytes,starts[i],starts[i+1]-starts[i]);
+            continue;
+         }
+
+         // the method that holds the code keeps only its Code attribute
+         out.writeShort((accesses[i] & (ACC_STATIC | ACC_FINAL | ACC_SYNCHRONIZED | ACC_STRICT)) | ACC_PRIVATE | ACC_SYNTHETIC);
+         out.writeShort(tracedNames[i]);
+         out.writeShort(descriptors[i]);
+         out.writeShort(1);
+         out.write(classBytes,codeStarts[i],codeEnds[i]-codeStarts[i]);
+
+         // the method that takes its place keeps its name, access and other attributes
+         int attributesStart = starts[i] + 8;
+         int numAttributes = ((classBytes[attributesStart-2] & 0xFF) << 8) | (classBytes[attributesStart-1] & 0xFF);
+         out.writeShort(accesses[i] & ~ACC_SYNCHRONIZED);
+         out.writeShort(names[i]);
+         out.writeShort(descriptors[i]);
+         out.writeShort(numAttributes);
+         out.write(wrappers[i]);
+         out.write(classBytes,attributesStart,codeStarts[i]-attributesStart);
+         out.write(classBytes,codeEnds[i],starts[i+1]-codeEnds[i]);
+      }
+      out.write(classBytes,starts[numMethods],classBytes.length-starts[numMethods]);
+      out.flush();
+      return outBytes.toByteArray();
+   }
+
+   /**
+    *  Makes the Code attribute of a method that records the entry
+    *  to a traced method, calls the method that holds its code, and
+    *  records its exit whether it returns or throws.
+    *
+    *  @param  access         The access flags of the traced method.
+    *  @param  descriptor     The descriptor of the traced method.
+    *  @param  thisClass      The constant of the class.
+    *  @param  tracedMethod   The constant of the method that holds the code.
+    *  @param  methodID       The constant of the method's ID number.
+    *  @param  enterMethod    The constant of TraceAgent.enter().
+    *  @param  exitMethod     The constant of TraceAgent.exit().
+    *  @param  throwableClass The constant of java.lang.Throwable.
+    *  @param  codeName       The constant of the name "Code".
+    *  @param  stackMapName   The constant of the name "StackMapTable",
+    *                         or -1 if the class file is too old to need one.
+    *  @return The Code attribute.
+    *  @throws IOException If the attribute cannot be written.
+    */
+   private byte [] makeWrapper(int access,String descriptor,int thisClass,int tracedMethod,int methodID,int enterMethod,
+      int exitMethod,int throwableClass,int codeName,int stackMapName) throws IOException
+   {
+      ByteArrayOutputStream codeBytes = new ByteArrayOutputStream();
+      DataOutputStream code = new DataOutputStream(codeBytes);
+      ByteArrayOutputStream frameBytes = new ByteArrayOutputStream();
+      DataOutputStream locals = new DataOutputStream(frameBytes);
+      boolean isStatic = (access & ACC_STATIC)!=0;
+
+      code.writeByte(0x13); // ldc_w
+      code.writeShort(methodID);
+      code.writeByte(0xB8); // invokestatic
+      code.writeShort(enterMethod);
+      int tryStart = code.size();
+
+      // pass on this and the arguments, noting their types for the stack map frame
+      int slot = 0;
+      int numLocals = 0;
+      if(!isStatic)
+      {
+         code.writeByte(0x2A); // aload_0
+         locals.writeByte(7);
+         locals.writeShort(thisClass);
+         slot++;
+         numLocals++;
+      }
+      int i = 1;
+      while(descriptor.charAt(i)!=')')
+      {
+         char type = descriptor.charAt(i);
+         int end = i+1;
+         int opcode;
+         if(type=='J')
+         {
+            opcode = 0x16; // lload
+            locals.writeByte(4);
+         }
+         else if(type=='D')
+         {
+            opcode = 0x18; // dload
+            locals.writeByte(3);
+         }
+         else if(type=='F')
+         {
+            opcode = 0x17; // fload
+            locals.writeByte(2);
+         }
+         else if(type=='L' || type=='[')
+         {
+            while(descriptor.charAt(end-1)=='[')
+               end++;
+            if(descriptor.charAt(end-1)=='L')
+               end = descriptor.indexOf(';',end) + 1;
+            String name = type=='L' ? descriptor.substring(i+1,end-1) : descriptor.substring(i,end);
+            opcode = 0x19; // aload
+            locals.writeByte(7);
+            locals.writeShort(addClass(name));
+         }
+         else // boolean, byte, char, short and int
+         {
+            opcode = 0x15; // iload
+            locals.writeByte(1);
+         }
+
+         if(slot<256)
+         {
+            code.writeByte(opcode);
+            code.writeByte(slot);
+         }
+         else
+         {
+            code.writeByte(0xC4); // wide
+            code.writeByte(opcode);
+            code.writeShort(slot);
+         }
+         slot += type=='J' || type=='D' ? 2 : 1;
+         numLocals++;
+         i = end;
+      }
+      code.writeByte(isStatic ? 0xB8 : 0xB7); // invokestatic or invokespecial
+      code.writeShort(tracedMethod);
+      int tryEnd = code.size();
+
+      // record the exit and return the result
+      code.writeByte(0x13);
+      code.writeShort(methodID);
+      code.writeByte(0xB8);
+      code.writeShort(exitMethod);
+      char returnType = descriptor.charAt(descriptor.indexOf(')')+1);
+      if(returnType=='V')
+         code.writeByte(0xB1); // return
+      else if(returnType=='J')
+         code.writeByte(0xAD); // lreturn
+      else if(returnType=='D')
+         code.writeByte(0xAF); // dreturn
+      else if(returnType=='F')
+         code.writeByte(0xAE); // freturn
+      else if(returnType=='L' || returnType=='[')
+         code.writeByte(0xB0); // areturn
+      else
+         code.writeByte(0xAC); // ireturn
+
+      // record the exit and throw the exception on
+      int handler = code.size();
+      code.writeByte(0x13);
+      code.writeShort(methodID);
+      code.writeByte(0xB8);
+      code.writeShort(exitMethod);
+      code.writeByte(0xBF); // athrow
+      code.flush();
+      locals.flush();
+
+      ByteArrayOutputStream attributeBytes = new ByteArrayOutputStream();
+      DataOutputStream attribute = new DataOutputStream(attributeBytes);
+      int stackMapLength = stackMapName<0 ? 0 : 6 + 2 + 1 + 2 + 2 + frameBytes.size() + 2 + 3;
+      attribute.writeShort(codeName);
+      attribute.writeInt(2 + 2 + 4 + codeBytes.size() + 2 + 8 + 2 + stackMapLength);
+      attribute.writeShort(Math.max(slot,3)); // the arguments, or a long result and the method ID
+      attribute.writeShort(slot);
+      attribute.writeInt(codeBytes.size());
+      codeBytes.writeTo(attribute);
+      attribute.writeShort(1); // the exception table
+      attribute.writeShort(tryStart);
+      attribute.writeShort(tryEnd);
+      attribute.writeShort(handler);
+      attribute.writeShort(0); // any exception
+      if(stackMapName<0)
+         attribute.writeShort(0);
+      else
+      {
+         attribute.writeShort(1);
+         attribute.writeShort(stackMapName);
+         attribute.writeInt(stackMapLength - 6);
+         attribute.writeShort(1); // one frame, at the handler
+         attribute.writeByte(255); // full_frame
+         attribute.writeShort(handler);
+         attribute.writeShort(numLocals);
+         frameBytes.writeTo(attribute);
+         attribute.writeShort(1);
+         attribute.writeByte(7);
+         attribute.writeShort(throwableClass);
+      }
+      attribute.flush();
+      return attributeBytes.toByteArray();
+   }
+
+   /**
+    *  Skips the attributes of a field or method.
+    *
+    *  @param  in The class file, positioned at the attributes.
+    *  @throws IOException If the class file cannot be read.
+    */
+   private static void skipAttributes(DataInputStream in) throws IOException
+   {
+      int numAttributes = in.readUnsignedShort();
+      for(int i=0;i<numAttributes;i++)
+      {
+         in.readUnsignedShort();
+         in.skipBytes(in.readInt());
+      }
+   }
+
+   /**
+    *  Adds a string constant to the class being instrumented.
+    *
+    *  @param  s  The string.
+    *  @return The index of the constant.
+    *  @throws IOException If the constant cannot be written.
+    */
+   private int addUtf8(String s) throws IOException
+   {
+      String key = "1:" + s;
+      Integer index = (Integer)constantIndexes.get(key);
+      if(index==null)
+      {
+         constants.writeByte(1);
+         constants.writeUTF(s);
+         index = addConstant(key);
+      }
+      return index.intValue();
+   }
+
+   /**
+    *  Adds a class constant to the class being instrumented.
+    *
+    *  @param  name  The name of the class in internal form.
+    *  @return The index of the constant.
+    *  @throws IOException If the constant cannot be written.
+    */
+   private int addClass(String name) throws IOException
+   {
+      String key = "7:" + name;
+      Integer index = (Integer)constantIndexes.get(key);
+      if(index==null)
+      {
+         int nameIndex = addUtf8(name);
+         constants.writeByte(7);
+         constants.writeShort(nameIndex);
+         index = addConstant(key);
+      }
+      return index.intValue();
+   }
+
+   /**
+    *  Adds a method constant to the class being instrumented.
+    *
+    *  @param  classIndex  The constant of the method's class.
+    *  @param  name        The name of the method.
+    *  @param  descriptor  The descriptor of the method.
+    *  @return The index of the constant.
+    *  @throws IOException If the constant cannot be written.
+    */
+   private int addMethodRef(int classIndex,String name,String descriptor) throws IOException
+   {
+      int nameIndex = addUtf8(name);
+      int descriptorIndex = addUtf8(descriptor);
+      constants.writeByte(12); // the name and type
+      constants.writeShort(nameIndex);
+      constants.writeShort(descriptorIndex);
+      int nameAndType = addConstant(null).intValue();
+      constants.writeByte(10);
+      constants.writeShort(classIndex);
+      constants.writeShort(nameAndType);
+      return addConstant(null).intValue();
+   }
+
+   /**
+    *  Adds an int constant to the class being instrumented.
+    *
+    *  @param  value The value.
+    *  @return The index of the constant.
+    *  @throws IOException If the constant cannot be written.
+    */
+   private int addInteger(int value) throws IOException
+   {
+      String key = "3:" + value;
+      Integer index = (Integer)constantIndexes.get(key);
+      if(index==null)
+      {
+         constants.writeByte(3);
+         constants.writeInt(value);
+         index = addConstant(key);
+      }
+      return index.intValue();
+   }
+
+   /**
+    *  Gives the constant just written the next index.
+    *
+    *  @param  key   The tag and value of the constant, or null
+    *                if it is not looked up again.
+    *  @return The index of the constant.
+    */
+   private Integer addConstant(String key)
+   {
+      Integer index = new Integer(nextConstant++);
+      if(key!=null)
+         constantIndexes.put(key,index);
+      return index;
+   }
+
+   /**
+    *  Returns the difference between the wall clock and the
+    *  System.nanoTime() clock of this JVM.
+    *
+    *  @return The clock offset in nanoseconds.
+    */
+   public static long getClockOffset()
+   {
+      return System.currentTimeMillis()*1000000L - System.nanoTime();
+   }
+
+   /**
+    *  Returns true if a class belongs to the JDK.
+    *
+    *  @param  name  The name of the class.
+    *  @return True if the class belongs to the JDK.
+    */
+   private boolean isJDKClass(String name)
+   {
+      return name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("org.")
+         || name.startsWith("sun.") || name.startsWith("com.") || name.startsWith("jdk.");
+   }
+
+   /**
+    *  Returns the ID number of a method. A new method is given
+    *  the next ID number and its names are recorded.
+    *
+    *  @param  className   The name of the method's class.
+    *  @param  methodName  The name of the method.
+    *  @return The ID number of the method.
+    */
+   private int getMethodID(String className,String methodName)
+   {
+      String key = className + "." + methodName;
+      Integer id = (Integer)methodIDs.get(key);
+      if(id==null)
+      {
+         id = new Integer(methodIDs.size());
+         methodIDs.put(key,id);
+
+         ByteBuffer record = startRecord(METHOD_RECORD);
+         record.putInt(id.intValue());
+         record = putString(record,className);
+         record = putString(record,key);
+         append(record);
+      }
+      return id.intValue();
+   }
+
+   /**
+    *  Records a method being entered or exited by the current
+    *  thread. The first time a thread calls a traced method,
+    *  its name is recorded too.
+    *
+    *  @param  kind        ENTRY_RECORD or EXIT_RECORD.
+    *  @param  methodID    The ID number of the method.
+    */
+   private void writeCall(int kind,int methodID)
+   {
+      long time = System.nanoTime();
+      Thread thread = Thread.currentThread();
+      ByteBuffer record;
+      if(isRecordedThread.get()==null)
+      {
+         isRecordedThread.set(Boolean.TRUE);
+         record = startRecord(THREAD_RECORD);
+         record.putLong(thread.getId());
+         record = putString(record,thread.getName());
+         append(record);
+      }
+      record = startRecord(kind);
+      record.putLong(thread.getId());
+      record.putInt(methodID);
+      record.putInt(0);
+      record.putLong(time);
+      append(record);
+   }
+
+   /**
+    *  Starts a new record in the current thread's buffer.
+    *  The length is filled in by append().
+    *
+    *  @param  kind  The kind of record.
+    *  @return The buffer holding the record.
+    */
+   private ByteBuffer startRecord(int kind)
+   {
+      ByteBuffer record = (ByteBuffer)records.get();
+      if(record==null)
+      {
+         record = ByteBuffer.allocate(256);
+         record.order(ByteOrder.nativeOrder());
+         records.set(record);
+      }
+      record.clear();
+      record.putInt(0);
+      record.put((byte)kind);
+      record.put((byte)0);
+      record.putShort((short)0);
+      return record;
+   }
+
+   /**
+    *  Adds a string to a record.
+    *
+    *  @param  record   The buffer holding the record.
+    *  @param  s  The string to add.
+    *  @return The buffer holding the record, which is
+    *          a bigger one if the string did not fit.
+    */
+   private ByteBuffer putString(ByteBuffer record,String s)
+   {
+      byte [] bytes;
+      try
+      {
+         bytes = s.getBytes("UTF-8");
+      }
+      catch(UnsupportedEncodingException e)
+      {
+         bytes = s.getBytes();
+      }
+      if(bytes.length > Short.MAX_VALUE)
+         bytes = Arrays.copyOf(bytes,Short.MAX_VALUE);
+      if(record.remaining() < bytes.length + 2)
+      {
+         ByteBuffer bigger = ByteBuffer.allocate(record.capacity() + bytes.length + 256);
+         bigger.order(ByteOrder.nativeOrder());
+         record.flip();
+         bigger.put(record);
+         record = bigger;
+         records.set(record);
+      }
+      record.putShort((short)bytes.length);
+      record.put(bytes);
+      return record;
+   }
+
+   /**
+    *  Decodes a UTF-8 string.
+    *
+    *  @param  bytes The bytes of the string.
+    *  @return The string.
+    */
+   private static String decode(byte [] bytes)
+   {
+      try
+      {
+         return new String(bytes,"UTF-8");
+      }
+      catch(UnsupportedEncodingException e)
+      {
+         return new String(bytes);
+      }
+   }
+
+   /**
+    *  Copies a record into the ring, waiting until the ObjectTracker
+    *  has read enough to make room. The room is reserved by moving
+    *  the write position on with a compare and set, so the threads
+    *  only wait for each other if two reserve at the same time. The
+    *  traced thread is parked rather than put to sleep, so that an
+    *  interrupt cannot make it lose a record.
+    *
+    *  @param  record   The buffer holding the record.
+    */
+   private void append(ByteBuffer record)
+   {
+      int length = (record.position() + 7) & ~7;
+      long position;
+      int offset;
+      int contiguous;
+      while(true)
+      {
+         position = (long)POSITION.getVolatile(buffer,WRITE_POSITION);
+         offset = (int)(position % capacity);
+         contiguous = capacity - offset;
+         int needed = length <= contiguous ? length : contiguous + length;
+         if(position + needed - (long)POSITION.getAcquire(buffer,READ_POSITION) > capacity)
+            LockSupport.parkNanos(1000000L); // wait for the ObjectTracker to make room
+         else if(POSITION.compareAndSet(buffer,WRITE_POSITION,position,position + needed))
+            break;
+      }
+
+      if(length > contiguous) // the record does not fit before the end
+      {
+         LENGTH.setRelease(buffer,HEADER_SIZE + offset,WRAP);
+         offset = 0;
+      }
+
+      // the length is written last, once the rest of the record can be read
+      buffer.put(HEADER_SIZE + offset + 4,record,4,record.position() - 4);
+      LENGTH.setRelease(buffer,HEADER_SIZE + offset,length);
+   }
+}
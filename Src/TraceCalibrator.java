@@ -0,0 +1,229 @@
+package ObjectTracker;
+
+import com.sun.jdi.*;
+import com.sun.jdi.connect.*;
+import com.sun.jdi.event.*;
+import com.sun.jdi.request.*;
+import java.util.*;
+
+/**
+ *  This class measures the time the ObjectTracker adds to each
+ *  traced method call. If the user chooses, before the first
+ *  program is launched it launches a JVM of its own running this
+ *  class's main method, and traces it in the same way as the
+ *  ObjectTracker. The main method calls an empty method, and a
+ *  method that does nothing but call the empty method, many times.
+ *  The difference between the times measured for the two is the
+ *  time that tracing one call adds to the call it is made from,
+ *  which is the call cost. The result is kept, so the calibration
+ *  JVM is only run once.
+ *  <p>
+ *  The time measured for a call includes the tracing of every call
+ *  made while it ran, but not its own. So the call cost is taken off
+ *  a call's time once for each call traced while it ran, not
+ *  counting the call itself, and off its self time once for each
+ *  call it made directly. MethodClass.removeCallCost() does this for
+ *  the RunTimePanel and the MethodStats.
+ *
+ *  @author  Eoin O'Connor
+ *  @see ObjectTracker
+ *  @see RunTimePanel
+ */
+public class TraceCalibrator
+{
+   /**
+    *  The number of calls made to the empty method.
+    */
+   private static final int NUM_CALLS = 2000;
+   /**
+    *  The number of calls ignored while the JVMs warm up.
+    */
+   private static final int NUM_WARM_UP_CALLS = 200;
+
+   /**
+    *  The call cost measured, or -1 if it has not been measured.
+    */
+   private static long callCost = -1;
+
+   /**
+    *  A method that is traced. It does nothing.
+    */
+   public static void emptyMethod()
+   {
+   }
+
+   /**
+    *  A method that is traced. It makes one traced call.
+    */
+   public static void callingMethod()
+   {
+      emptyMethod();
+   }
+
+   /**
+    *  Called in the calibration JVM. Calls the empty method
+    *  and the calling method.
+    *
+    *  @param  args  Not used.
+    */
+   public static void main(String [] args)
+   {
+      for(int i=0;i<NUM_CALLS;i++)
+      {
+         emptyMethod();
+         callingMethod();
+      }
+   }
+
+   /**
+    *  Returns the call cost, measuring it the first time.
+    *
+    *  @return The time in nanoseconds that tracing a call adds
+    *          to the call it is made from, or 0 if it could not
+    *          be measured.
+    */
+   public static synchronized long getCallCost()
+   {
+      if(callCost<0)
+         callCost = calibrate();
+      return callCost;
+   }
+
+   /**
+    *  Launches a JVM running this class and returns the difference
+    *  between the median times of the calling method and the empty
+    *  method called from main.
+    *
+    *  @return The time in nanoseconds that tracing a call adds
+    *          to the call it is made from, or 0 if it could not
+    *          be measured.
+    */
+   private static long calibrate()
+   {
+      VirtualMachine vm;
+      try
+      {
+         LaunchingConnector connector = Bootstrap.virtualMachineManager().defaultConnector();
+         Map arguments = connector.defaultArguments();
+         ((Connector.Argument)arguments.get("main")).setValue(TraceCalibrator.class.getName());
+         ((Connector.Argument)arguments.get("options")).setValue("-cp \"" + System.getProperty("java.class.path") + "\"");
+         vm = connector.launch(arguments);
+      }
+      catch(Exception e)
+      {
+         e.printStackTrace();
+         return 0;
+      }
+
+      long [] emptyTimes = new long[NUM_CALLS];
+      long [] callingTimes = new long[NUM_CALLS];
+      int numTimes = 0;
+      try
+      {
+         EventRequestManager manager = vm.eventRequestManager();
+         MethodEntryRequest entryRequest = manager.createMethodEntryRequest();
+         entryRequest.addClassFilter(TraceCalibrator.class.getName());
+         entryRequest.setSuspendPolicy(EventRequest.SUSPEND_EVENT_THREAD);
+         entryRequest.enable();
+         MethodExitRequest exitRequest = manager.createMethodExitRequest();
+         exitRequest.addClassFilter(TraceCalibrator.class.getName());
+         exitRequest.setSuspendPolicy(EventRequest.SUSPEND_EVENT_THREAD);
+         exitRequest.enable();
+
+         HashMap methodIDs = new HashMap();
+         long [] entryTimes = new long[4]; // indexed by depth: main, then the methods it calls
+         int depth = 0;
+         vm.resume();
+         while(numTimes < NUM_CALLS)
+         {
+            EventSet es = vm.eventQueue().remove();
+            long time = System.nanoTime(); // stamped as the ObjectTracker does
+            EventIterator it = es.eventIterator();
+            while(it.hasNext())
+            {
+               Event event = it.nextEvent();
+               if(event instanceof VMDeathEvent || event instanceof VMDisconnectEvent)
+                  return difference(emptyTimes,callingTimes,numTimes);
+               else if(event instanceof MethodEntryEvent || event instanceof MethodExitEvent)
+               {
+                  // do the same lookups as the ObjectTracker
+                  Method method = ((LocatableEvent)event).location().method();
+                  ((LocatableEvent)event).thread().uniqueID();
+                  if(!methodIDs.containsKey(method))
+                     methodIDs.put(method,method.toString());
+
+                  if(event instanceof MethodEntryEvent)
+                  {
+                     if(depth<entryTimes.length)
+                        entryTimes[depth] = time;
+                     depth++;
+                     continue;
+                  }
+                  depth--;
+                  if(depth!=1) // only the calls made from main are measured
+                     continue;
+                  if(method.name().equals("emptyMethod"))
+                     emptyTimes[numTimes] = time - entryTimes[depth];
+                  else if(method.name().equals("callingMethod"))
+                     callingTimes[numTimes++] = time - entryTimes[depth];
+               }
+            }
+            es.resume();
+         }
+         return difference(emptyTimes,callingTimes,numTimes);
+      }
+      catch(InterruptedException e)
+      {
+         e.printStackTrace();
+         return difference(emptyTimes,callingTimes,numTimes);
+      }
+      catch(VMDisconnectedException e)
+      {
+         return difference(emptyTimes,callingTimes,numTimes);
+      }
+      finally
+      {
+         try
+         {
+            vm.exit(0);
+         }
+         catch(VMDisconnectedException e)
+         {
+            // the calibration JVM has already ended
+         }
+      }
+   }
+
+   /**
+    *  Returns the difference between the median times of the
+    *  calling method and the empty method.
+    *
+    *  @param  emptyTimes   The times measured for the empty method.
+    *  @param  callingTimes The times measured for the calling method.
+    *  @param  numTimes     The number of times measured for each.
+    *  @return The difference in nanoseconds, or 0 if too few
+    *          were measured.
+    */
+   private static long difference(long [] emptyTimes,long [] callingTimes,int numTimes)
+   {
+      return Math.max(0,median(callingTimes,numTimes) - median(emptyTimes,numTimes));
+   }
+
+   /**
+    *  Returns the median of the times measured after the
+    *  warm up calls.
+    *
+    *  @param  times    The times measured.
+    *  @param  numTimes The number of times measured.
+    *  @return The median time, or 0 if too few were measured.
+    */
+   private static long median(long [] times,int numTimes)
+   {
+      if(numTimes <= NUM_WARM_UP_CALLS)
+         return 0;
+      long [] sorted = new long[numTimes - NUM_WARM_UP_CALLS];
+      System.arraycopy(times,NUM_WARM_UP_CALLS,sorted,0,sorted.length);
+      Arrays.sort(sorted);
+      return sorted[sorted.length/2];
+   }
+}
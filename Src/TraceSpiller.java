@@ -0,0 +1,256 @@
+package ObjectTracker;
+
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+import javax.swing.*;
+
+/**
+ *  This class keeps the memory taken by the EventStores of the
+ *  threads within a budget. The stores tell it when they add a
+ *  chunk. When the chunks in memory take more than the budget,
+ *  the chunks that were added first are written to the end of
+ *  their store's segment file, and read back from the file through
+ *  a memory mapping, so the operating system pages them in when
+ *  they are scrolled to or searched and can drop them again when
+ *  memory is short.
+ *  <p>
+ *  The last chunk of each store is where its new calls are added,
+ *  so it is never spilled while its thread is alive. The direct
+ *  buffer of a spilled chunk is kept and used for a chunk added
+ *  later, so the memory it takes is counted until it is used again
+ *  rather than until the garbage collector frees it. The panels
+ *  read the chunks on the event dispatch thread and may still hold
+ *  the buffer when it is replaced, so it is only kept for use once
+ *  the event dispatch thread has finished what it was doing. Only
+ *  the EventDispatcher thread adds chunks, so only it spills them.
+ *
+ *  @author  Eoin O'Connor
+ *  @see EventStore
+ *  @see ObjectDisplayer
+ */
+public class TraceSpiller
+{
+   /**
+    *  The number of bytes the chunks in memory may take,
+    *  or 0 if they are never spilled.
+    */
+   private long budget;
+   /**
+    *  The number of bytes taken by the direct buffers of the chunks
+    *  in memory, including the buffers of spilled chunks not yet used again.
+    */
+   private long residentBytes;
+   /**
+    *  The number of bytes taken by the chunks that the stores
+    *  keep in memory.
+    */
+   private long chunkBytes;
+   /**
+    *  The number of bytes written to segment files.
+    */
+   private long spilledBytes;
+   /**
+    *  The store of each chunk in memory, in the order they were added.
+    */
+   private EventStore [] queueStores;
+   /**
+    *  The chunk number of each chunk in memory, in the order they
+    *  were added.
+    */
+   private int [] queueChunks;
+   /**
+    *  The position in the queue of the chunk added first.
+    */
+   private int queueHead;
+   /**
+    *  The number of chunks in the queue.
+    */
+   private int queueCount;
+   /**
+    *  The buffers of spilled chunks that no panel can still be
+    *  reading, kept to be used again. Guarded by the spiller's lock,
+    *  as they are added on the event dispatch thread.
+    */
+   private ArrayList spareChunks;
+
+   /**
+    *  Constructor: creates a spiller with a budget.
+    *
+    *  @param  budgetMB The number of megabytes the chunks in memory
+    *                   may take, or 0 if they are never spilled.
+    */
+   public TraceSpiller(int budgetMB)
+   {
+      budget = (long)budgetMB*1024*1024;
+      residentBytes = 0;
+      chunkBytes = 0;
+      spilledBytes = 0;
+      queueStores = new EventStore[64];
+      queueChunks = new int[64];
+      queueHead = 0;
+      queueCount = 0;
+      spareChunks = new ArrayList();
+   }
+
+   /**
+    *  Returns an empty chunk for a store to add. If the chunk would
+    *  take the chunks kept in memory over the budget, the chunk that
+    *  was added first is spilled. Its buffer is used for a later
+    *  chunk once no panel can still be reading it. The buffer of a
+    *  chunk spilled earlier is used if there is one, and otherwise
+    *  a new buffer is made, so the budget is only passed by the few
+    *  buffers spilled while the event dispatch thread is busy.
+    *
+    *  @param  bytes The number of bytes in a chunk.
+    *  @return The chunk.
+    */
+   public ByteBuffer allocateChunk(int bytes)
+   {
+      if(budget>0 && chunkBytes+bytes>budget)
+         spillOldest();
+
+      chunkBytes += bytes;
+      ByteBuffer chunk = takeSpareChunk();
+      if(chunk==null)
+      {
+         chunk = ByteBuffer.allocateDirect(bytes);
+         residentBytes += bytes;
+      }
+      chunk.order(ByteOrder.nativeOrder());
+      return chunk;
+   }
+
+   /**
+    *  A store has added a chunk, so it may be spilled later.
+    *
+    *  @param  store The store.
+    *  @param  chunk The chunk number in the store.
+    */
+   public void chunkAdded(EventStore store,int chunk)
+   {
+      addToQueue(store,chunk);
+   }
+
+   /**
+    *  Spills the chunk that was added first and is no longer being
+    *  added to, and keeps its buffer to be used again once the event
+    *  dispatch thread has finished what it was doing.
+    */
+   private void spillOldest()
+   {
+      // a store's last chunk is put back in the queue, so stop once every chunk has been looked at
+      int numChecked = 0;
+      while(numChecked<queueCount)
+      {
+         EventStore oldStore = queueStores[queueHead];
+         int oldChunk = queueChunks[queueHead];
+         queueStores[queueHead] = null;
+         queueHead = (queueHead + 1) % queueStores.length;
+         queueCount--;
+
+         if(oldChunk==oldStore.getNumChunks()-1 && !oldStore.isClosed()) // still being added to
+         {
+            addToQueue(oldStore,oldChunk);
+            numChecked++;
+            continue;
+         }
+
+         final ByteBuffer replaced = oldStore.spill(oldChunk);
+         if(replaced==null)
+         {
+            budget = 0; // the segment files cannot be written, so keep everything in memory
+            return;
+         }
+         spilledBytes += replaced.capacity();
+         chunkBytes -= replaced.capacity();
+
+         // the panels only read the chunks on the event dispatch thread, and look them up again for each paint
+         SwingUtilities.invokeLater(new Runnable()
+         {
+            public void run()
+            {
+               synchronized(TraceSpiller.this)
+               {
+                  spareChunks.add(replaced);
+               }
+            }
+         });
+         return;
+      }
+   }
+
+   /**
+    *  Returns a buffer kept to be used again.
+    *
+    *  @return The buffer, or null if there is none.
+    */
+   private synchronized ByteBuffer takeSpareChunk()
+   {
+      if(spareChunks.isEmpty())
+         return null;
+      return (ByteBuffer)spareChunks.remove(spareChunks.size()-1);
+   }
+
+   /**
+    *  Adds a chunk to the end of the queue.
+    *
+    *  @param  store The store.
+    *  @param  chunk The chunk number in the store.
+    */
+   private void addToQueue(EventStore store,int chunk)
+   {
+      if(queueCount==queueStores.length)
+      {
+         EventStore [] newStores = new EventStore[queueStores.length*2];
+         int [] newChunks = new int[queueStores.length*2];
+         for(int i=0;i<queueCount;i++)
+         {
+            newStores[i] = queueStores[(queueHead + i) % queueStores.length];
+            newChunks[i] = queueChunks[(queueHead + i) % queueStores.length];
+         }
+         queueStores = newStores;
+         queueChunks = newChunks;
+         queueHead = 0;
+      }
+      int tail = (queueHead + queueCount) % queueStores.length;
+      queueStores[tail] = store;
+      queueChunks[tail] = chunk;
+      queueCount++;
+   }
+
+   /**
+    *  Creates an empty segment file for a store. The file is
+    *  deleted when the ObjectTracker exits.
+    *
+    *  @return The file.
+    *  @throws IOException If the file cannot be created.
+    */
+   public File createSegmentFile() throws IOException
+   {
+      File file = File.createTempFile("trace",".seg");
+      file.deleteOnExit();
+      return file;
+   }
+
+   /**
+    *  Returns the number of bytes taken by the chunks in memory,
+    *  including the buffers of spilled chunks not yet used again.
+    *
+    *  @return The number of bytes.
+    */
+   public long getResidentBytes()
+   {
+      return residentBytes;
+   }
+
+   /**
+    *  Returns the number of bytes written to segment files.
+    *
+    *  @return The number of bytes.
+    */
+   public long getSpilledBytes()
+   {
+      return spilledBytes;
+   }
+}
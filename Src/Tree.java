@@ -3,7 +3,20 @@ package ObjectTracker;
 import java.util.*;
 
 /**
- *  This class represents a binary tree.
+ *  This class represents a balanced binary tree that keeps
+ *  its objects in order of largest first. Objects that are
+ *  equal are kept in the order they were inserted.
+ *  <p>
+ *  The tree is a treap: each node has a random priority and
+ *  is rotated above any node with a lower priority, so the
+ *  tree has an expected depth of O(log n) even when the objects
+ *  arrive already sorted. Each node knows the size of its
+ *  subtree, so inserting, finding the object at a position and
+ *  listing the objects from a position all take O(log n) time
+ *  plus the number of objects listed. Nothing is done recursively.
+ *  <p>
+ *  The tree may be read by the event dispatch thread while
+ *  another thread inserts into it, so its methods are synchronized.
  *
  *  @author  Eoin O'Connor
  *  @see Node
@@ -15,6 +28,15 @@ public class Tree
     *  The root node of the tree.
     */
    private Node root;
+   /**
+    *  Used to give the nodes their priorities.
+    */
+   private Random random;
+   /**
+    *  The nodes on the path from the root to the node
+    *  being inserted.
+    */
+   private Node [] path;
 
    /**
     *  Constructor: creates an empty tree.
@@ -22,35 +44,184 @@ public class Tree
    public Tree()
    {
       root = null;
+      random = new Random();
+      path = new Node[64];
    }
 
    /**
-    *  Inserts a new node into the tree.
+    *  Inserts a new node into the tree. It goes after the
+    *  objects that are larger than or equal to it.
     *
     *  @param  obj   The object to insert.
     */
-   public void insert(Comparable obj)
+   public synchronized void insert(Comparable obj)
    {
-      Node newNode = new Node();
-      newNode.data = obj;
-      newNode.left = null;
-      newNode.right = null;
-      if(root==null)
+      Node newNode = new Node(obj,random.nextInt());
+
+      // walk down to where the node belongs, counting it in the size of each node passed
+      int depth = 0;
+      Node node = root;
+      while(node!=null)
+      {
+         if(depth==path.length)
+            path = (Node [])Arrays.copyOf(path,path.length*2);
+         path[depth++] = node;
+         node.size++;
+         if(obj.compareTo(node.data) > 0)
+            node = node.left;
+         else
+            node = node.right;
+      }
+      if(depth==0)
+      {
          root = newNode;
+         return;
+      }
+      Node parent = path[depth-1];
+      if(obj.compareTo(parent.data) > 0)
+         parent.left = newNode;
       else
-         root.insertNode(newNode);
+         parent.right = newNode;
+
+      // rotate the node up until its parent has a higher priority
+      while(depth>0 && path[depth-1].priority < newNode.priority)
+      {
+         parent = path[--depth];
+         if(parent.left==newNode)
+         {
+            parent.left = newNode.right;
+            newNode.right = parent;
+         }
+         else
+         {
+            parent.right = newNode.left;
+            newNode.left = parent;
+         }
+         parent.updateSize();
+         newNode.updateSize();
+
+         if(depth==0)
+            root = newNode;
+         else if(path[depth-1].left==parent)
+            path[depth-1].left = newNode;
+         else
+            path[depth-1].right = newNode;
+      }
    }
 
    /**
-    *  Returns the list of nodes.
+    *  Removes the last object in the tree, which is the smallest.
     *
-    *  @return The list of nodes.
+    *  @return The object removed, or null if the tree is empty.
     */
-   public ArrayList get()
+   public synchronized Comparable removeLast()
+   {
+      if(root==null)
+         return null;
+
+      // the last node is the rightmost, and has no right child to take its place
+      Node parent = null;
+      Node node = root;
+      while(node.right!=null)
+      {
+         node.size--;
+         parent = node;
+         node = node.right;
+      }
+      if(parent==null)
+         root = node.left;
+      else
+         parent.right = node.left;
+      return node.data;
+   }
+
+   /**
+    *  Returns the number of objects in the tree.
+    *
+    *  @return The number of objects.
+    */
+   public synchronized int size()
+   {
+      return Node.size(root);
+   }
+
+   /**
+    *  Returns the object at a position in the tree.
+    *
+    *  @param  rank  The position, starting at 0 for the largest object.
+    *  @return The object, or null if there is no such position.
+    */
+   public synchronized Comparable get(int rank)
+   {
+      Node node = root;
+      while(node!=null)
+      {
+         int leftSize = Node.size(node.left);
+         if(rank < leftSize)
+            node = node.left;
+         else if(rank==leftSize)
+            return node.data;
+         else
+         {
+            rank -= leftSize + 1;
+            node = node.right;
+         }
+      }
+      return null;
+   }
+
+   /**
+    *  Returns a list of the objects from a position in the tree.
+    *
+    *  @param  first The position of the first object, starting at 0
+    *                for the largest object.
+    *  @param  count The greatest number of objects to return.
+    *  @return The list of objects.
+    */
+   public synchronized ArrayList get(int first,int count)
    {
       ArrayList list = new ArrayList();
-      if(root!=null)
-         list = root.get(list);
+      if(first<0 || count<=0)
+         return list;
+
+      // find the first node, keeping the nodes that come after it on a stack
+      Node [] stack = new Node[64];
+      int stackCount = 0;
+      Node node = root;
+      int rank = first;
+      while(node!=null)
+      {
+         int leftSize = Node.size(node.left);
+         if(rank <= leftSize)
+         {
+            if(stackCount==stack.length)
+               stack = (Node [])Arrays.copyOf(stack,stack.length*2);
+            stack[stackCount++] = node;
+            if(rank==leftSize)
+               break;
+            node = node.left;
+         }
+         else
+         {
+            rank -= leftSize + 1;
+            node = node.right;
+         }
+      }
+
+      // walk through the nodes in order
+      while(stackCount>0 && list.size()<count)
+      {
+         node = stack[--stackCount];
+         list.add(node.data);
+         node = node.right;
+         while(node!=null)
+         {
+            if(stackCount==stack.length)
+               stack = (Node [])Arrays.copyOf(stack,stack.length*2);
+            stack[stackCount++] = node;
+            node = node.left;
+         }
+      }
       return list;
    }
-}
\ No newline at end of file
+}
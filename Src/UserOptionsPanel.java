@@ -35,6 +35,47 @@ public class UserOptionsPanel extends JPanel
     *  during the execution of the target program.
     */
    private boolean fullExec;
+   /**
+    *  Sets whether to sample the call stacks of the target
+    *  program instead of tracing every method call.
+    */
+   private boolean sampling;
+   /**
+    *  The time in milliseconds between samples when
+    *  sampling the target program.
+    */
+   private int samplingInterval;
+   /**
+    *  The path of the trace agent jar, or an empty string
+    *  if the agent is not to be used.
+    */
+   private String agentJar;
+   /**
+    *  The host:port address of a running JVM to attach to,
+    *  or an empty string if the program is to be launched.
+    */
+   private String attachAddress;
+   /**
+    *  The number of calls after which a method is only
+    *  counted, or 0 if every call is to be traced.
+    */
+   private int callBudget;
+   /**
+    *  The number of megabytes the calls kept by the threads may
+    *  take before the oldest are spilled to segment files, or 0
+    *  if they are all to be kept in memory.
+    */
+   private int memoryBudget;
+   /**
+    *  True if each thread's calls are to be merged into
+    *  a calling context tree.
+    */
+   private boolean aggregate;
+   /**
+    *  True if the time tracing a call adds to the call it is made
+    *  from is to be measured and taken from the method times.
+    */
+   private boolean calibrate;
    /**
     *  Used to listen for menu options to be selected.
     */
@@ -96,6 +137,14 @@ public class UserOptionsPanel extends JPanel
     *  Pauses the execution of the target program.
     */
    private JMenuItem pauseMenuItem;
+   /**
+    *  Starts tracing the method calls of the target program.
+    */
+   private JMenuItem startTraceMenuItem;
+   /**
+    *  Stops tracing the method calls of the target program.
+    */
+   private JMenuItem stopTraceMenuItem;
    /**
     *  Displays the search window for the Execution
     *  Tracker.
@@ -142,6 +191,14 @@ public class UserOptionsPanel extends JPanel
       programName = null;
       cmdLineArgs = null;
       fullExec = false;
+      sampling = false;
+      samplingInterval = 10;
+      agentJar = "";
+      attachAddress = "";
+      callBudget = 0;
+      memoryBudget = 256;
+      aggregate = false;
+      calibrate = false;
 
       classFilterList = new ArrayList();
       breakpointsPanel = new BreakpointsPanel();
@@ -158,6 +215,8 @@ public class UserOptionsPanel extends JPanel
       exitMenuItem = new JMenuItem("Exit");
       runMenuItem = new JMenuItem("Run Program");
       pauseMenuItem = new JMenuItem("Pause Execution");
+      startTraceMenuItem = new JMenuItem("Start Trace");
+      stopTraceMenuItem = new JMenuItem("Stop Trace");
       filterMenuItem = new JMenuItem("Filter Classes");
       breakpointsMenuItem = new JMenuItem("Set Breakpoints");
       showLinesMenuItem = new JMenuItem();
@@ -175,6 +234,8 @@ public class UserOptionsPanel extends JPanel
 
       controlsMenu.add(runMenuItem);
       controlsMenu.add(pauseMenuItem);
+      controlsMenu.add(startTraceMenuItem);
+      controlsMenu.add(stopTraceMenuItem);
       controlsMenu.add(exitMenuItem);
       optionsMenu.add(filterMenuItem);
       optionsMenu.add(breakpointsMenuItem);
@@ -211,7 +272,19 @@ public class UserOptionsPanel extends JPanel
       JTextField programNameField = new JTextField();
       JTextField cmdLineArgsField = new JTextField();
       JCheckBox fullExecBox = new JCheckBox("Include JDK Classes");
-      Object [] message = {"Program name:",programNameField,"Command line arguments:",cmdLineArgsField,fullExecBox};
+      JCheckBox samplingBox = new JCheckBox("Sample Execution (faster, estimated times)");
+      JTextField samplingIntervalField = new JTextField("" + samplingInterval);
+      JTextField agentJarField = new JTextField(agentJar);
+      JTextField attachAddressField = new JTextField(attachAddress);
+      JTextField callBudgetField = new JTextField("" + callBudget);
+      JTextField memoryBudgetField = new JTextField("" + memoryBudget);
+      JCheckBox aggregateBox = new JCheckBox("Merge calls into a calling context tree (for long runs)");
+      JCheckBox calibrateBox = new JCheckBox("Take the measured cost of tracing from method times (runs a test JVM once)",calibrate);
+      Object [] message = {"Program name:",programNameField,"Command line arguments:",cmdLineArgsField,fullExecBox,
+         samplingBox,"Sampling interval (ms):",samplingIntervalField,"Trace agent jar (optional):",agentJarField,
+         "Attach to running JVM at host:port (optional):",attachAddressField,
+         "Calls traced per method before it is only counted (0 for no limit):",callBudgetField,
+         "Call history kept in memory before older calls go to disk (MB, 0 for no limit):",memoryBudgetField,aggregateBox,calibrateBox};
       Object [] buttons = {"Set"};
       int s = JOptionPane.showOptionDialog(
                     frame,
@@ -227,6 +300,35 @@ public class UserOptionsPanel extends JPanel
       programName = programNameField.getText();
       cmdLineArgs = cmdLineArgsField.getText();
       fullExec = fullExecBox.isSelected();
+      sampling = samplingBox.isSelected();
+      aggregate = aggregateBox.isSelected();
+      calibrate = calibrateBox.isSelected();
+      agentJar = agentJarField.getText().trim();
+      attachAddress = attachAddressField.getText().trim();
+      try
+      {
+         samplingInterval = Math.max(1,Integer.parseInt(samplingIntervalField.getText().trim()));
+      }
+      catch(NumberFormatException e)
+      {
+         e.printStackTrace(); // keep the default interval
+      }
+      try
+      {
+         callBudget = Math.max(0,Integer.parseInt(callBudgetField.getText().trim()));
+      }
+      catch(NumberFormatException e)
+      {
+         e.printStackTrace(); // keep the default budget
+      }
+      try
+      {
+         memoryBudget = Math.max(0,Integer.parseInt(memoryBudgetField.getText().trim()));
+      }
+      catch(NumberFormatException e)
+      {
+         e.printStackTrace(); // keep the default budget
+      }
    }
 
    /**
@@ -304,9 +406,9 @@ public class UserOptionsPanel extends JPanel
    }
 
    /**
-    *  Returns the list of breakpoints methods.
+    *  Returns the list of breakpoints.
     *
-    *  @return The list of breakpoints methods.
+    *  @return The list of breakpoints, as BreakpointClass objects.
     */
    public ArrayList getMethodList()
    {
@@ -345,6 +447,93 @@ public class UserOptionsPanel extends JPanel
      return fullExec;
    }
 
+   /**
+    *  Returns whether to sample the call stacks of the
+    *  target program instead of tracing every method call.
+    *
+    *  @return Whether to sample the target program.
+    */
+   public boolean getSampling()
+   {
+      return sampling;
+   }
+
+   /**
+    *  Returns the time in milliseconds between samples.
+    *
+    *  @return The time in milliseconds between samples.
+    */
+   public int getSamplingInterval()
+   {
+      return samplingInterval;
+   }
+
+   /**
+    *  Returns the path of the trace agent jar.
+    *
+    *  @return The path of the trace agent jar, or an empty
+    *          string if the agent is not to be used.
+    */
+   public String getAgentJar()
+   {
+      return agentJar;
+   }
+
+   /**
+    *  Returns the number of calls after which a method is only counted.
+    *
+    *  @return The number of calls, or 0 if every call is to be traced.
+    */
+   public int getCallBudget()
+   {
+      return callBudget;
+   }
+
+   /**
+    *  Returns the number of megabytes the calls kept by the threads
+    *  may take before the oldest are spilled to segment files.
+    *
+    *  @return The number of megabytes, or 0 if the calls are all
+    *          to be kept in memory.
+    */
+   public int getMemoryBudget()
+   {
+      return memoryBudget;
+   }
+
+   /**
+    *  Returns true if each thread's calls are to be merged
+    *  into a calling context tree.
+    *
+    *  @return True if the calls are to be merged.
+    */
+   public boolean getAggregate()
+   {
+      return aggregate;
+   }
+
+   /**
+    *  Returns true if the time tracing a call adds to the call it
+    *  is made from is to be measured and taken from the method times.
+    *
+    *  @return True if the cost of tracing is to be measured.
+    */
+   public boolean getCalibrate()
+   {
+      return calibrate;
+   }
+
+   /**
+    *  Returns the address of the running JVM to attach to.
+    *
+    *  @return The host:port address, or an empty string if
+    *          the program is to be launched.
+    */
+   public String getAttachAddress()
+   {
+      return attachAddress;
+   }
+
    /**
     *  Returns the Set Class Filter menu option.
     *
@@ -405,6 +594,26 @@ public class UserOptionsPanel extends JPanel
       return pauseMenuItem;
    }
 
+   /**
+    *  Returns the Start Trace menu option.
+    *
+    *  @return The Start Trace menu option.
+    */
+   public JMenuItem getStartTraceMenuItem()
+   {
+      return startTraceMenuItem;
+   }
+
+   /**
+    *  Returns the Stop Trace menu option.
+    *
+    *  @return The Stop Trace menu option.
+    */
+   public JMenuItem getStopTraceMenuItem()
+   {
+      return stopTraceMenuItem;
+   }
+
    /**
     *  Returns the Show Connection Lines menu option.
     *